@@ -0,0 +1,57 @@
+package org.auscope.portal.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.auscope.portal.core.services.csw.CSWServiceItem;
+import org.auscope.portal.core.services.responses.csw.CSWGetRecordResponse;
+import org.auscope.portal.core.services.responses.csw.CSWRecord;
+import org.auscope.portal.core.util.DOMUtil;
+import org.auscope.portal.core.util.ResourceUtil;
+import org.w3c.dom.Document;
+
+/**
+ * Fixtures shared by the benchmarks, built from the test responses that ship with the portal
+ */
+final class BenchmarkFixtures {
+
+    /** CSW GetRecords responses (15 and 20 records) */
+    static final String[] CSW_RESPONSES = new String[] {
+        "org/auscope/portal/core/test/responses/csw/cswRecordResponse.xml",
+        "org/auscope/portal/core/test/responses/csw/cswRecordResponse_Geoserver.xml"
+    };
+
+    static final CSWServiceItem ORIGIN = new CSWServiceItem("benchmark", "http://example.com/csw",
+            "http://example.com/csw?uuid=%1$s", "Benchmark registry");
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Parses every record in {@link #CSW_RESPONSES}
+     */
+    static List<CSWRecord> loadCSWRecords() throws Exception {
+        List<CSWRecord> records = new ArrayList<>();
+        for (String resource : CSW_RESPONSES) {
+            Document doc = DOMUtil.buildDomFromStream(ResourceUtil.loadResourceAsStream(resource));
+            records.addAll(new CSWGetRecordResponse(ORIGIN, doc).getRecords());
+        }
+        return records;
+    }
+
+    /**
+     * Returns copies of records (each with a unique file identifier) until there are at least count records, to
+     * approximate the size of a production record cache
+     */
+    static List<CSWRecord> replicate(List<CSWRecord> records, int count) {
+        List<CSWRecord> replicated = new ArrayList<>(count);
+        for (int i = 0; replicated.size() < count; i++) {
+            for (CSWRecord record : records) {
+                CSWRecord copy = record.clone();
+                copy.setFileIdentifier(record.getFileIdentifier() + "-" + i);
+                replicated.add(copy);
+            }
+        }
+        return replicated;
+    }
+}
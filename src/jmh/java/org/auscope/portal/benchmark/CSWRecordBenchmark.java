@@ -0,0 +1,72 @@
+package org.auscope.portal.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.auscope.portal.core.services.responses.csw.CSWGetRecordResponse;
+import org.auscope.portal.core.services.responses.csw.CSWRecord;
+import org.auscope.portal.core.util.DOMUtil;
+import org.auscope.portal.core.util.ResourceUtil;
+import org.auscope.portal.core.view.ViewCSWRecordFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.ui.ModelMap;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks parsing CSW GetRecords responses into CSWRecords (CSWRecordTransformer) and converting records into their
+ * view representation (ViewCSWRecordFactory)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class CSWRecordBenchmark {
+
+    @Param({"0", "1"})
+    public int response;
+
+    private String responseXml;
+    private Document responseDoc;
+    private List<CSWRecord> records;
+    private ViewCSWRecordFactory viewFactory;
+
+    @Setup
+    public void setup() throws Exception {
+        responseXml = ResourceUtil.loadResourceAsString(BenchmarkFixtures.CSW_RESPONSES[response]);
+        responseDoc = DOMUtil.buildDomFromString(responseXml);
+        records = new CSWGetRecordResponse(BenchmarkFixtures.ORIGIN, responseDoc).getRecords();
+        viewFactory = new ViewCSWRecordFactory();
+    }
+
+    /**
+     * DOM parsing plus record transformation, as done for each page of a CSW cache update
+     */
+    @Benchmark
+    public CSWGetRecordResponse parseGetRecordsResponse() throws Exception {
+        return new CSWGetRecordResponse(BenchmarkFixtures.ORIGIN, DOMUtil.buildDomFromString(responseXml));
+    }
+
+    /**
+     * Record transformation alone (CSWRecordTransformer over an already parsed DOM)
+     */
+    @Benchmark
+    public CSWGetRecordResponse transformRecords() throws Exception {
+        return new CSWGetRecordResponse(BenchmarkFixtures.ORIGIN, responseDoc);
+    }
+
+    @Benchmark
+    public List<ModelMap> recordsToView() {
+        List<ModelMap> views = new ArrayList<>(records.size());
+        for (CSWRecord record : records) {
+            views.add(viewFactory.toView(record));
+        }
+        return views;
+    }
+}
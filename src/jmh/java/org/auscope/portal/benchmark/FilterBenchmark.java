@@ -0,0 +1,50 @@
+package org.auscope.portal.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.auscope.portal.core.services.methodmakers.filter.FilterBoundingBox;
+import org.auscope.portal.core.uifilter.GenericFilterAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks OGC filter generation from the optional filters sent by the UI (GenericFilter), as done for every WFS
+ * feature and count request
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+
+    /** A text, dropdown and provider filter, as sent for the mineral tenements layer */
+    private static final String OPTIONAL_FILTERS = "{\"label\":\"Name\",\"predicate\":\"ISLIKE\",\"type\":\"OPTIONAL.TEXT\",\"value\":\"er\",\"xpath\":\"mt:name\"},"
+            + "{\"label\":\"Tenement Type\",\"options\":[],\"predicate\":\"ISLIKE\",\"type\":\"OPTIONAL.DROPDOWNSELECTLIST\",\"value\":\"prospecting\",\"xpath\":\"mt:tenementType\"},"
+            + "{\"label\":\"Provider\",\"type\":\"OPTIONAL.PROVIDER\",\"value\":{\"auscope.dpi.nsw.gov.au\":true,\"geology.data.nt.gov.au\":true}}";
+
+    private final FilterBoundingBox bbox = new FilterBoundingBox("EPSG:4326", new double[] {110.0, -45.0},
+            new double[] {155.0, -10.0});
+
+    private final GenericFilterAdapter filter = new GenericFilterAdapter(OPTIONAL_FILTERS, "mt:shape");
+
+    /**
+     * Parsing the optional filters and generating their fragments
+     */
+    @Benchmark
+    public GenericFilterAdapter parseOptionalFilters() {
+        return new GenericFilterAdapter(OPTIONAL_FILTERS, "mt:shape");
+    }
+
+    @Benchmark
+    public String filterStringAllRecords() {
+        return filter.getFilterStringAllRecords();
+    }
+
+    @Benchmark
+    public String filterStringBoundingBox() {
+        return filter.getFilterStringBoundingBox(bbox);
+    }
+}
@@ -0,0 +1,104 @@
+package org.auscope.portal.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.auscope.portal.core.services.CSWCacheService;
+import org.auscope.portal.core.services.KnownLayerService;
+import org.auscope.portal.core.services.responses.csw.AbstractCSWOnlineResource;
+import org.auscope.portal.core.services.responses.csw.AbstractCSWOnlineResource.OnlineResourceType;
+import org.auscope.portal.core.services.responses.csw.CSWRecord;
+import org.auscope.portal.core.view.ViewCSWRecordFactory;
+import org.auscope.portal.core.view.ViewGetCapabilitiesFactory;
+import org.auscope.portal.core.view.ViewKnownLayerFactory;
+import org.auscope.portal.core.view.knownlayer.KnownLayer;
+import org.auscope.portal.core.view.knownlayer.KnownLayerGrouping;
+import org.auscope.portal.core.view.knownlayer.WFSSelector;
+import org.auscope.portal.core.view.knownlayer.WMSSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks KnownLayerService.groupKnownLayerRecords against a record cache built from the CSW test responses.
+ *
+ * The production layers.yaml isn't part of the source tree, so a known layer is generated for every WMS/WFS layer
+ * named by the records along with a number of layers that match nothing (as most configured layers won't match a
+ * given record).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class KnownLayerGroupingBenchmark {
+
+    private static final int UNMATCHED_LAYERS = 200;
+
+    @Param({"1000", "10000"})
+    public int recordCount;
+
+    private KnownLayerService knownLayerService;
+
+    /**
+     * Serves a fixed record list without contacting a registry or elasticsearch
+     */
+    private static class FixedCSWCacheService extends CSWCacheService {
+        private final List<CSWRecord> records;
+
+        FixedCSWCacheService(List<CSWRecord> records) {
+            super(null, null, new ArrayList<>(), null);
+            this.records = records;
+        }
+
+        @Override
+        public synchronized List<CSWRecord> getRecordCache() {
+            return records;
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        List<CSWRecord> records = BenchmarkFixtures.loadCSWRecords();
+
+        Set<String> wmsNames = new LinkedHashSet<>();
+        Set<String> wfsNames = new LinkedHashSet<>();
+        for (CSWRecord record : records) {
+            for (AbstractCSWOnlineResource resource : record.getOnlineResources()) {
+                if (resource.getType() == OnlineResourceType.WMS) {
+                    wmsNames.add(resource.getName());
+                } else if (resource.getType() == OnlineResourceType.WFS) {
+                    wfsNames.add(resource.getName());
+                }
+            }
+        }
+
+        List<KnownLayer> knownLayers = new ArrayList<>();
+        for (String name : wmsNames) {
+            knownLayers.add(new KnownLayer("wms-" + name, new WMSSelector(name)));
+        }
+        for (String name : wfsNames) {
+            knownLayers.add(new KnownLayer("wfs-" + name, new WFSSelector(name)));
+        }
+        for (int i = 0; i < UNMATCHED_LAYERS; i++) {
+            knownLayers.add(new KnownLayer("unmatched-" + i, i % 2 == 0 ? new WMSSelector("ns:unmatched" + i)
+                    : new WFSSelector("ns:unmatched" + i)));
+        }
+
+        knownLayerService = new KnownLayerService(knownLayers, new ViewKnownLayerFactory(),
+                new ViewCSWRecordFactory(), new ViewGetCapabilitiesFactory(), null, null);
+        knownLayerService.setCSWCacheService(
+                new FixedCSWCacheService(BenchmarkFixtures.replicate(records, recordCount)));
+    }
+
+    @Benchmark
+    public KnownLayerGrouping groupKnownLayerRecords() {
+        return knownLayerService.groupKnownLayerRecords();
+    }
+}
@@ -0,0 +1,79 @@
+package org.auscope.portal.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.auscope.portal.core.server.http.HttpClientInputStream;
+import org.auscope.portal.core.server.http.HttpServiceCaller;
+import org.auscope.portal.server.domain.nvcldataservice.BinnedCSVResponse;
+import org.auscope.portal.server.web.NVCL2_0_DataServiceMethodMaker;
+import org.auscope.portal.server.web.service.NVCL2_0_DataService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the CSV parsing and depth binning done by NVCL2_0_DataService.getNVCL2_0_JobsScalarBinned.
+ *
+ * The response is synthesised in the format of the downloadscalar test response (depth, value, valid) at the ~6mm
+ * sample spacing of a HyLogger scan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class NVCLBinningBenchmark {
+
+    @Param({"10000", "100000"})
+    public int sampleCount;
+
+    private NVCL2_0_DataService dataService;
+
+    /**
+     * Returns the same CSV response for every request
+     */
+    private static class FixedResponseServiceCaller extends HttpServiceCaller {
+        private final byte[] response;
+
+        FixedResponseServiceCaller(byte[] response) {
+            super(900000);
+            this.response = response;
+        }
+
+        @Override
+        public HttpClientInputStream getMethodResponseAsStream(HttpRequestBase method) throws IOException {
+            return new HttpClientInputStream(new ByteArrayInputStream(response), null);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder(sampleCount * 32);
+        csv.append("StartDepth,Value, Valid\n");
+        double depth = 106.936996459961;
+        for (int i = 0; i < sampleCount; i++) {
+            csv.append(String.format(Locale.ROOT, "%1$.12f,%2$.4f,%3$s\n", depth, random.nextDouble(),
+                    random.nextInt(20) == 0 ? "False" : "True"));
+            depth += 0.006118774414;
+        }
+
+        dataService = new NVCL2_0_DataService(
+                new FixedResponseServiceCaller(csv.toString().getBytes(StandardCharsets.UTF_8)),
+                new NVCL2_0_DataServiceMethodMaker(), "http://localhost/NVCLAnalyticalServices");
+    }
+
+    @Benchmark
+    public BinnedCSVResponse binJobScalar() throws Exception {
+        return dataService.getNVCL2_0_JobsScalarBinned(new String[] {"benchmark-job"}, "benchmark-borehole", 1.0);
+    }
+}
@@ -0,0 +1,105 @@
+package org.auscope.portal.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.auscope.portal.core.services.namespaces.ErmlNamespaceContext;
+import org.auscope.portal.core.services.responses.ows.OWSException;
+import org.auscope.portal.core.services.responses.ows.OWSExceptionParser;
+import org.auscope.portal.core.util.DOMUtil;
+import org.auscope.portal.core.util.ResourceUtil;
+import org.auscope.portal.core.xslt.GmlToHtml;
+import org.auscope.portal.core.xslt.WfsToKmlTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks the XML handling applied to most OGC responses: DOM parsing and serialisation (DOMUtil), the OWS exception
+ * check (OWSExceptionParser) and the XSLT transforms used for feature popups and KML.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class XmlBenchmark {
+
+    private String cswResponse;
+    private Document cswDoc;
+    private String featureResponse;
+    private String mineResponse;
+    private String exceptionResponse;
+
+    private GmlToHtml gmlToHtml;
+    private WfsToKmlTransformer wfsToKml;
+
+    @Setup
+    public void setup() throws Exception {
+        cswResponse = ResourceUtil.loadResourceAsString(BenchmarkFixtures.CSW_RESPONSES[1]);
+        cswDoc = DOMUtil.buildDomFromString(cswResponse);
+        featureResponse = ResourceUtil
+                .loadResourceAsString("org/auscope/portal/core/test/responses/wfs/GetUndefinedFeatureSet.xml");
+        mineResponse = ResourceUtil.loadResourceAsString("org/auscope/portal/core/erml/mine/mineGetFeatureResponse.xml");
+        exceptionResponse = ResourceUtil
+                .loadResourceAsString("org/auscope/portal/core/test/responses/ows/OWSExceptionSample1.xml");
+
+        gmlToHtml = new GmlToHtml();
+        wfsToKml = new WfsToKmlTransformer();
+    }
+
+    @Benchmark
+    public Document buildDomFromString() throws Exception {
+        return DOMUtil.buildDomFromString(cswResponse);
+    }
+
+    @Benchmark
+    public String buildStringFromDom() throws Exception {
+        return DOMUtil.buildStringFromDom(cswDoc, false);
+    }
+
+    /**
+     * The exception check on a normal (non exception) response
+     */
+    @Benchmark
+    public String checkForExceptionResponse() throws Exception {
+        OWSExceptionParser.checkForExceptionResponse(featureResponse);
+        return featureResponse;
+    }
+
+    /**
+     * The exception check on a stream, which has to buffer the start of the response
+     */
+    @Benchmark
+    public int checkForExceptionResponseStream() throws Exception {
+        try (InputStream stream = OWSExceptionParser.checkForExceptionResponse(
+                new ByteArrayInputStream(featureResponse.getBytes(StandardCharsets.UTF_8)))) {
+            return stream.read();
+        }
+    }
+
+    @Benchmark
+    public OWSException checkForExceptionResponseException() {
+        try {
+            OWSExceptionParser.checkForExceptionResponse(exceptionResponse);
+            return null;
+        } catch (OWSException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public String gmlToHtml() {
+        return gmlToHtml.convert(mineResponse, new ErmlNamespaceContext(), "https://portal.org/api");
+    }
+
+    @Benchmark
+    public String wfsToKml() {
+        return wfsToKml.convert(featureResponse, "http://example.com/wfs");
+    }
+}
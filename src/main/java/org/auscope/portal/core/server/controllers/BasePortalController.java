@@ -14,8 +14,14 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.entity.StringEntity;
+import org.auscope.portal.core.server.http.CircuitOpenException;
 import org.auscope.portal.core.services.PortalServiceException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.ui.ModelMap;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.view.json.MappingJackson2JsonView;
 
@@ -35,6 +41,7 @@ public abstract class BasePortalController {
     public static final String NO_RESULTS = "No results matched your query.";
     public static final String UNKNOWN_HOST_OR_FAILED_CONNECTION = "The service you wish to query can not be reached. ";
     public static final String OPERATION_TIMOUT = "The service is taking too long to respond.";
+    public static final String SERVICE_SUSPENDED = "The service you wish to query is not responding and will be retried shortly.";
     public static final String GET_PROVIDERS_FAILED = "An error occurred when getting the list of data providers.";
 
     /**
@@ -278,6 +285,11 @@ public abstract class BasePortalController {
             return generateExceptionResponse(portalServiceEx.getCause(), serviceUrl, portalServiceEx.getRootMethod());
         }
 
+        // Service has been failing, requests to it are being suspended
+        if (e instanceof CircuitOpenException) {
+            return this.generateJSONResponseMAV(false, null, SERVICE_SUSPENDED, makeDebugInfoModel(request));
+        }
+
         // Service down or host down
         if (e instanceof ConnectException || e instanceof UnknownHostException) {
             return this.generateJSONResponseMAV(false, null, UNKNOWN_HOST_OR_FAILED_CONNECTION,
@@ -296,4 +308,20 @@ public abstract class BasePortalController {
         // An error we don't specifically handle or expect
         return this.generateJSONResponseMAV(false, null, FILTER_FAILED, makeDebugInfoModel(request));
     }
+
+    /**
+     * Handles requests that weren't made because the upstream service has been failing (and weren't otherwise handled
+     * by the controller), eg when proxying. Responds with 503 and an OWS ExceptionReport.
+     *
+     * @param e
+     * @return
+     */
+    @ExceptionHandler(CircuitOpenException.class)
+    public ResponseEntity<String> handleCircuitOpen(CircuitOpenException e) {
+        log.debug(e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                .contentType(MediaType.APPLICATION_XML)
+                .body(e.toExceptionReport());
+    }
 }
@@ -2,11 +2,19 @@ package org.auscope.portal.core.server.controllers;
 
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Resource;
 
+import jakarta.annotation.PostConstruct;
+
 import org.auscope.portal.core.services.CSWFilterService;
+import org.auscope.portal.core.services.csw.CSWKeywordIndex;
 import org.auscope.portal.core.services.csw.CSWServiceItem;
 import org.auscope.portal.core.services.csw.custom.CustomRegistryInt;
 import org.auscope.portal.core.services.methodmakers.filter.FilterBoundingBox;
@@ -19,6 +27,7 @@ import org.auscope.portal.core.services.responses.csw.CSWGetRecordResponse;
 import org.auscope.portal.core.services.responses.csw.CSWRecord;
 import org.auscope.portal.core.view.ViewCSWRecordFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
@@ -32,37 +41,106 @@ import static org.auscope.portal.core.util.DateUtil.stringYearToDate;
 
 /**
  * A controller class for marshalling access to the underling CSWFilterService
+ *
+ * The keywords of each registry are cached as a CSWKeywordIndex. Once an index is older than the keyword cache TTL it is
+ * still used while a single background rebuild replaces it, and concurrent requests for a registry that has no index
+ * yet share a single build. Every registry's index is built in the background at startup so the first keyword request
+ * doesn't have to wait for it.
  * 
  * @author Josh Vote
  */
 @Controller
 public class CSWFilterController extends BaseCSWController {
     public static final int DEFAULT_MAX_RECORDS = 100;
+    public static final long DEFAULT_KEYWORD_CACHE_TTL_MINUTES = 6 * 60;
+    public static final int DEFAULT_KEYWORD_MAX_RESULTS = 1000;
     private static final char SINGLE_CHAR_WILDCARD = '#';
     private CSWFilterService cswFilterService;
-    protected static ConcurrentHashMap<String, Set> catalogueKeywordCache;
+    /** How long (in ms) a registry's keywords are used before they are rebuilt in the background */
+    private long keywordCacheTtlMs;
+    /** The most keywords returned by a single keyword request */
+    private int keywordMaxResults;
+    protected static ConcurrentHashMap<String, KeywordCacheEntry> catalogueKeywordCache;
+    /** In progress keyword builds keyed by service ID */
+    private static ConcurrentHashMap<String, CompletableFuture<KeywordCacheEntry>> keywordCacheBuilds;
+    private static final Executor keywordCacheExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "csw-keyword-cache-build");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Resource(name="conversionService")
     private ConversionService converter;
 
     static {
-        catalogueKeywordCache = new ConcurrentHashMap<String, Set>();
+        catalogueKeywordCache = new ConcurrentHashMap<String, KeywordCacheEntry>();
+        keywordCacheBuilds = new ConcurrentHashMap<String, CompletableFuture<KeywordCacheEntry>>();
     }
 
     /**
-     * Creates a new CSWFilterController with the specified dependencies.
+     * Creates a new CSWFilterController with the specified dependencies and the default keyword cache settings.
      * 
      * @param cswFilterService
      *            Used to make filtered CSW requests
      * @param viewCSWRecordFactory
      *            Used to transform CSWRecords for the view
      */
-    @Autowired
     public CSWFilterController(CSWFilterService cswFilterService,
             ViewCSWRecordFactory viewCSWRecordFactory) {
+        this(cswFilterService, viewCSWRecordFactory, DEFAULT_KEYWORD_CACHE_TTL_MINUTES, DEFAULT_KEYWORD_MAX_RESULTS);
+    }
+
+    /**
+     * Creates a new CSWFilterController with the specified dependencies.
+     *
+     * @param cswFilterService
+     *            Used to make filtered CSW requests
+     * @param viewCSWRecordFactory
+     *            Used to transform CSWRecords for the view
+     * @param keywordCacheTtlMinutes
+     *            How long a registry's keywords are used before they are rebuilt in the background
+     * @param keywordMaxResults
+     *            The most keywords returned by a single keyword request (negative for no limit)
+     */
+    @Autowired
+    public CSWFilterController(CSWFilterService cswFilterService,
+            ViewCSWRecordFactory viewCSWRecordFactory,
+            @Value("${cswKeywordCacheTtlMinutes:" + DEFAULT_KEYWORD_CACHE_TTL_MINUTES + "}") long keywordCacheTtlMinutes,
+            @Value("${cswKeywordMaxResults:" + DEFAULT_KEYWORD_MAX_RESULTS + "}") int keywordMaxResults) {
         super(viewCSWRecordFactory);
         this.cswFilterService = cswFilterService;
+        this.keywordCacheTtlMs = TimeUnit.MINUTES.toMillis(keywordCacheTtlMinutes);
+        this.keywordMaxResults = keywordMaxResults;
+    }
 
+    /**
+     * Sets how long (in ms) a registry's keywords are used before they are rebuilt in the background
+     *
+     * @param keywordCacheTtlMs
+     */
+    public void setKeywordCacheTtlMs(long keywordCacheTtlMs) {
+        this.keywordCacheTtlMs = keywordCacheTtlMs;
+    }
+
+    /**
+     * Sets the most keywords returned by a single keyword request (negative for no limit)
+     *
+     * @param keywordMaxResults
+     */
+    public void setKeywordMaxResults(int keywordMaxResults) {
+        this.keywordMaxResults = keywordMaxResults;
+    }
+
+    /**
+     * Starts building the keyword index of every catalogue registry in the background
+     */
+    @PostConstruct
+    public void warmKeywordCaches() {
+        for (CSWServiceItem item : cswFilterService.getCSWServiceItems()) {
+            if (!item.getHideFromCatalogue() && !catalogueKeywordCache.containsKey(item.getId())) {
+                buildKeywordCache(item.getId(), true);
+            }
+        }
     }
 
     @InitBinder
@@ -121,11 +199,12 @@ public class CSWFilterController extends BaseCSWController {
 
 
     /**
+     * Collects every keyword used by the records of a registry
      *
      * @param serviceId
      * @throws Exception
      */
-    private void generateKeywordCache(String serviceId) throws Exception {
+    private Set<String> generateKeywordCache(String serviceId) throws Exception {
         Set<String> keywordList = new HashSet<String>();
         final String getDomain = "GetDomain";
         final String keywordTerm = "Subject";
@@ -153,7 +232,81 @@ public class CSWFilterController extends BaseCSWController {
             } while (startPosition > 1);
         }
 
-        catalogueKeywordCache.put(serviceId,keywordList);
+        return keywordList;
+    }
+
+    /**
+     * Gets the keyword index for a registry. A stale index is returned immediately while it is rebuilt in the
+     * background; if there is no index yet the caller waits on the (possibly shared) build.
+     *
+     * @param serviceId
+     * @return
+     * @throws Exception
+     *             If the keywords of a registry with no index couldn't be fetched
+     */
+    private CSWKeywordIndex getKeywordIndex(String serviceId) throws Exception {
+        KeywordCacheEntry cacheEntry = catalogueKeywordCache.get(serviceId);
+        if (cacheEntry != null) {
+            if (System.currentTimeMillis() - cacheEntry.getCreated() >= keywordCacheTtlMs) {
+                buildKeywordCache(serviceId, true);
+            }
+            return cacheEntry.getIndex();
+        }
+
+        try {
+            return buildKeywordCache(serviceId, false).join().getIndex();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Starts building the keyword index for serviceId unless a build is already in progress
+     *
+     * @param serviceId
+     * @param background
+     *            If true a new build is run on the executor, otherwise it is run by the calling thread
+     * @return The (possibly already) in progress build
+     */
+    private CompletableFuture<KeywordCacheEntry> buildKeywordCache(String serviceId, boolean background) {
+        CompletableFuture<KeywordCacheEntry> future = new CompletableFuture<KeywordCacheEntry>();
+        CompletableFuture<KeywordCacheEntry> existing = keywordCacheBuilds.putIfAbsent(serviceId, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        Runnable build = () -> {
+            try {
+                long created = System.currentTimeMillis();
+                KeywordCacheEntry cacheEntry = new KeywordCacheEntry(created,
+                        new CSWKeywordIndex(generateKeywordCache(serviceId)));
+                catalogueKeywordCache.put(serviceId, cacheEntry);
+                keywordCacheBuilds.remove(serviceId, future);
+                future.complete(cacheEntry);
+            } catch (Exception ex) {
+                if (background) {
+                    log.warn(String.format("Unable to update keyword cache for '%1$s': %2$s", serviceId, ex.getMessage()));
+                }
+                keywordCacheBuilds.remove(serviceId, future);
+                future.completeExceptionally(ex);
+            }
+        };
+
+        if (background) {
+            try {
+                keywordCacheExecutor.execute(build);
+            } catch (RuntimeException ex) {
+                // the stale index will be rebuilt by a later request
+                keywordCacheBuilds.remove(serviceId, future);
+                future.completeExceptionally(ex);
+            }
+        } else {
+            build.run();
+        }
+        return future;
     }
 
     /**
@@ -253,34 +406,30 @@ public class CSWFilterController extends BaseCSWController {
                 return generateJSONResponseMAV(true);
             }
 
-            for (String serviceId : cswServiceIds) {
-                if (!catalogueKeywordCache.containsKey(serviceId)) {
-                    try {
-                        this.generateKeywordCache(serviceId);
-                    } catch (IllegalArgumentException ex) {
-                        //VT: if the key does not exist, it does not matter.
-                        log.info(String.format("serviceId '%s' DNE", serviceId));
-                    }
-                }
-            }
-
-            List<ModelMap> returnedKeywords = new ArrayList<ModelMap>();
-            Set<String> keywordSet = new HashSet<String>();
             //VT: this is to append the results from the different registries
+            Set<String> keywordSet = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder()));
+            boolean hasKeywords = false;
             for (String serviceId : cswServiceIds) {
-                if (catalogueKeywordCache.get(serviceId) != null) {
-                    keywordSet.addAll(catalogueKeywordCache.get(serviceId));
+                try {
+                    CSWKeywordIndex index = this.getKeywordIndex(serviceId);
+                    hasKeywords |= index.size() > 0;
+                    keywordSet.addAll(index.search(keyword, keywordMaxResults));
+                } catch (IllegalArgumentException ex) {
+                    //VT: if the key does not exist, it does not matter.
+                    log.info(String.format("serviceId '%s' DNE", serviceId));
                 }
             }
             //VT: if no keyword is found, just return.
-            if (keywordSet.isEmpty()) {
+            if (!hasKeywords) {
                 return generateJSONResponseMAV(true);
             }
 
             //VT: Put the accumulated results into a ModalMap.
+            int limit = keywordMaxResults < 0 ? keywordSet.size() : Math.min(keywordSet.size(), keywordMaxResults);
+            List<ModelMap> returnedKeywords = new ArrayList<ModelMap>(limit);
             for (String k : keywordSet) {
-                if (!k.toLowerCase().contains(keyword.toLowerCase())) {
-                    continue;
+                if (returnedKeywords.size() >= limit) {
+                    break;
                 }
                 ModelMap modelMap = new ModelMap();
                 modelMap.put("keyword", k);
@@ -455,4 +604,28 @@ public class CSWFilterController extends BaseCSWController {
         return generateJSONResponseMAV(true, count, "");
     }
 
+    /**
+     * An immutable keyword index for a single registry
+     */
+    protected static class KeywordCacheEntry {
+        private final long created;
+        private final CSWKeywordIndex index;
+
+        public KeywordCacheEntry(long created, CSWKeywordIndex index) {
+            this.created = created;
+            this.index = index;
+        }
+
+        /**
+         * The time (in ms since the epoch) at which the keywords were fetched
+         * @return
+         */
+        public long getCreated() {
+            return created;
+        }
+
+        public CSWKeywordIndex getIndex() {
+            return index;
+        }
+    }
 }
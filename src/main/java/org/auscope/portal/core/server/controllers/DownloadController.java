@@ -30,6 +30,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -50,9 +51,10 @@ import org.springframework.web.util.UriComponentsBuilder;
 import com.google.common.io.Files;
 
 
-import org.auscope.portal.core.server.http.HttpClientInputStream;
 import org.auscope.portal.core.configuration.ServiceConfiguration;
+import org.auscope.portal.core.server.http.HttpClientResponse;
 import org.auscope.portal.core.server.http.HttpServiceCaller;
+import org.auscope.portal.core.server.http.ProxyResponseCache;
 import org.auscope.portal.core.server.http.download.DownloadResponse;
 import org.auscope.portal.core.server.http.download.DownloadTracker;
 import org.auscope.portal.core.server.http.download.Progression;
@@ -71,8 +73,15 @@ public class DownloadController extends BasePortalController {
     private final Log logger = LogFactory.getLog(getClass());
     // Minimum number of lines we expect a download to be (header file plus at least one data row)
     private final static Integer MINIMUM_NUMBER_OF_LINES = 2;
+    // Request headers passed on by getViaProxy.do
+    private final static String[] PROXY_REQUEST_HEADERS = {"If-None-Match", "If-Modified-Since", "Range", "If-Range"};
+    // Response headers passed back by getViaProxy.do
+    private final static String[] PROXY_RESPONSE_HEADERS = {"ETag", "Last-Modified", "Content-Range", "Accept-Ranges"};
+    // Used by getViaProxy.do when the upstream response has no Cache-Control or Expires header
+    private final static String PROXY_CACHE_CONTROL = "public, max-age=604800, must-revalidate, no-transform";
     private HttpServiceCaller serviceCaller;
     private ServiceConfiguration serviceConfiguration;
+    private ProxyResponseCache proxyResponseCache;
 
     @Value("${access.whitelist}")
     private String whitelist;
@@ -83,6 +92,16 @@ public class DownloadController extends BasePortalController {
         this.serviceConfiguration = serviceConfiguration;
     }
 
+    /**
+     * Optional cache of the (small, cacheable) responses fetched by getViaProxy.do. If null nothing is cached
+     *
+     * @param proxyResponseCache
+     */
+    @Autowired(required = false)
+    public void setProxyResponseCache(ProxyResponseCache proxyResponseCache) {
+        this.proxyResponseCache = proxyResponseCache;
+    }
+
     /**
      * Given a list of URls, this function will collate the responses into a zip file and send the response back to the browser. if no email is provided, a zip
      * is written to the response output If email address is provided, a html response is returned to the user informing his request has been processed and to
@@ -268,6 +287,11 @@ public class DownloadController extends BasePortalController {
      * If the incoming request is POST it will send out a POST, if the
      * incoming request is GET it will send out a GET request
      *
+     * GET requests pass conditional (If-None-Match, If-Modified-Since) and Range headers upstream and the upstream's
+     * ETag, Last-Modified, Content-Length and Content-Range back, so 304 and 206 responses reach the client. Small
+     * cacheable responses may be served from the proxy response cache. The upstream's Cache-Control and Expires are
+     * passed back (with an Age for cached responses), otherwise clients may cache the response for a week.
+     *
      * @param response response object
      * @param request incoming request object
      * @param url the URL to be proxied
@@ -306,7 +330,19 @@ public class DownloadController extends BasePortalController {
 
         // Assemble method depending on the incoming request's method
         HttpRequestBase method;
-        if (request.getMethod().equals("POST") || usePost) {
+        boolean isGet = !(request.getMethod().equals("POST") || usePost);
+        boolean isRange = isGet && request.getHeader("Range") != null;
+        // Only whitelisted (GET) responses are cached
+        boolean useCache = isGet && !isRange && useWhitelist && proxyResponseCache != null;
+        if (useCache) {
+            ProxyResponseCache.CachedResponse cached = proxyResponseCache.get(url);
+            if (cached != null) {
+                writeCachedResponse(cached, request, response);
+                return;
+            }
+        }
+
+        if (!isGet) {
             // Use old request parameters to assemble new request
             Map<String, String[]> pMap = request.getParameterMap();
             List<NameValuePair> nvpList = new ArrayList<>(pMap.size());
@@ -329,12 +365,104 @@ public class DownloadController extends BasePortalController {
         } else {
             // Use an HTTP GET request
             method = new HttpGet(url);
+            for (String name : PROXY_REQUEST_HEADERS) {
+                String value = request.getHeader(name);
+                if (value != null) {
+                    method.setHeader(name, value);
+                }
+            }
+            // Ranges of a compressed response can't be decompressed, so ask for the raw content
+            if (isRange) {
+                method.setHeader("Accept-Encoding", "identity");
+            }
+        }
+
+        try (HttpClientResponse result = serviceCaller.getConditionalMethodResponse(method)) {
+            int statusCode = result.getStatusLine().getStatusCode();
+            response.setStatus(statusCode);
+            for (String name : PROXY_RESPONSE_HEADERS) {
+                Header header = result.getFirstHeader(name);
+                if (header != null) {
+                    response.setHeader(name, header.getValue());
+                }
+            }
+            Header expires = result.getFirstHeader("Expires");
+            writeCacheHeaders(response, ProxyResponseCache.cacheControl(result), expires == null ? null : expires.getValue());
+
+            HttpEntity entity = result.getEntity();
+            if (statusCode == HttpServletResponse.SC_NOT_MODIFIED || entity == null) {
+                return;
+            }
+            long contentLength = entity.getContentLength();
+            if (contentLength >= 0) {
+                response.setContentLengthLong(contentLength);
+            }
+
+            try (OutputStream outputStream = response.getOutputStream();) {
+                if (useCache && proxyResponseCache.isCacheable(result, contentLength)) {
+                    byte[] body = IOUtils.toByteArray(entity.getContent());
+                    proxyResponseCache.put(url, result, body);
+                    outputStream.write(body);
+                } else {
+                    IOUtils.copy(entity.getContent(), outputStream);
+                }
+            } catch (IOException e) {
+                throw new PortalServiceException("Exception during getViaProxy.do "+e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Passes the upstream Cache-Control and Expires headers back to the client. PROXY_CACHE_CONTROL is only used if
+     * upstream sent neither.
+     *
+     * @param response
+     * @param cacheControl
+     *            Upstream Cache-Control (can be null)
+     * @param expires
+     *            Upstream Expires (can be null)
+     */
+    private static void writeCacheHeaders(HttpServletResponse response, String cacheControl, String expires) {
+        if (cacheControl == null && expires == null) {
+            response.setHeader("Cache-Control", PROXY_CACHE_CONTROL);
+            return;
+        }
+        if (cacheControl != null) {
+            response.setHeader("Cache-Control", cacheControl);
+        }
+        if (expires != null) {
+            response.setHeader("Expires", expires);
         }
-        
-        HttpClientInputStream result = serviceCaller.getMethodResponseAsStream(method);
-        response.addHeader("Cache-Control", "public, max-age=604800, must-revalidate, no-transform");
+    }
+
+    /**
+     * Writes a cached getViaProxy.do response, or 304 if the request's conditional headers show the client already has it
+     *
+     * @param cached
+     * @param request
+     * @param response
+     * @throws PortalServiceException
+     */
+    private void writeCachedResponse(ProxyResponseCache.CachedResponse cached, HttpServletRequest request,
+            HttpServletResponse response) throws PortalServiceException {
+        if (cached.getETag() != null) {
+            response.setHeader("ETag", cached.getETag());
+        }
+        if (cached.getLastModified() != null) {
+            response.setHeader("Last-Modified", cached.getLastModified());
+        }
+        writeCacheHeaders(response, cached.getCacheControl(), cached.getExpiresHeader());
+        response.setHeader("Age", Long.toString(cached.getAgeSeconds(System.currentTimeMillis())));
+
+        if (ProxyResponseCache.isNotModified(cached, request.getHeader("If-None-Match"),
+                request.getHeader("If-Modified-Since"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentLength(cached.getBody().length);
         try (OutputStream outputStream = response.getOutputStream();) {
-            IOUtils.copy(result, outputStream);
+            outputStream.write(cached.getBody());
         } catch (IOException e) {
             throw new PortalServiceException("Exception during getViaProxy.do "+e.getMessage(), e);
         }
@@ -1,20 +1,29 @@
 package org.auscope.portal.core.server.controllers;
 
-import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+import jakarta.servlet.http.HttpServletResponse;
+
 import org.auscope.portal.core.services.ElasticsearchService;
 import org.auscope.portal.core.services.responses.csw.CSWRecord;
 import org.auscope.portal.core.services.responses.es.CSWRecordSearchResponse;
 import org.auscope.portal.core.view.ViewCSWRecordFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.geo.Point;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.ModelAndView;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
 @Controller
 public class ElasticsearchController extends BasePortalController {
 	
@@ -24,6 +33,8 @@ public class ElasticsearchController extends BasePortalController {
 	@Autowired
 	ViewCSWRecordFactory viewCSWRecordFactory;
 	
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	
 
 	/**
 	 * Search the CSW record index.
@@ -42,7 +53,8 @@ public class ElasticsearchController extends BasePortalController {
 	 * @param southBoundLatitude south latitude bound of bounding box for spatial searching (optional)
 	 * @param northBoundLatitude south latitude bound of bounding box for spatial searching (optional)
 	 * @param points a list of points representing a polygon for spatial searching (optional)
-	 * @return a list of CSWRecord objects and KnownLayer IDs matching the search criteria
+	 * @param response the list of CSWRecord objects and KnownLayer IDs matching the search criteria is written to this as JSON
+	 * @return null once the results have been written to response, or an error response if they couldn't be serialised
 	 */
     @RequestMapping("/searchCSWRecords.do")
     public ModelAndView searchKnownLayersAndCSWRecords(
@@ -56,21 +68,67 @@ public class ElasticsearchController extends BasePortalController {
     		@RequestParam(value = "eastBoundLongitude", required = false) Double eastBoundLongitude,
     		@RequestParam(value = "southBoundLatitude", required = false) Double southBoundLatitude,
     		@RequestParam(value = "northBoundLatitude", required = false) Double northBoundLatitude,
-    		@RequestParam(value = "points", required = false) List<Point> points) {
-    	CSWRecordSearchResponse response = this.elasticsearchService.searchCSWRecords(
+    		@RequestParam(value = "points", required = false) List<Point> points,
+    		HttpServletResponse response) throws IOException {
+    	CSWRecordSearchResponse searchResponse = this.elasticsearchService.searchCSWRecords(
     			query, queryFields, page, pageSize, ogcServices, spatialRelation, westBoundLongitude, eastBoundLongitude,
     			southBoundLatitude, northBoundLatitude, points);
-    	ModelMap modelMap = new ModelMap();
-    	modelMap.put("totalCSWRecordHits", response.getTotalCSWRecordHits());
-    	
-    	List<ModelMap> cswRecords = new ArrayList<ModelMap>(response.getCSWRecords().size());
-    	for (CSWRecord record: response.cswRecords) {
-    		cswRecords.add(viewCSWRecordFactory.toView(record));
+
+    	// The page is serialised before anything is sent so a record that fails part way through results in an
+    	// error response rather than truncated JSON
+    	ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+    	try {
+    		writeSearchResponse(searchResponse, buffer);
+    	} catch (IOException | RuntimeException ex) {
+    		log.warn(String.format("Unable to write search results for query '%1$s': %2$s", query, ex.getMessage()));
+    		log.debug("Exception:", ex);
+    		return generateJSONResponseMAV(false, null, "Error writing search results");
+    	}
+
+    	// Same headers as the MappingJackson2JsonView used by generateJSONResponseMAV
+    	response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    	response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    	response.addHeader("Cache-Control", "no-store");
+    	response.setContentLength(buffer.size());
+    	buffer.writeTo(response.getOutputStream());
+    	return null;
+    }
+
+    /**
+     * Writes a search response to os as JSON. The output is identical to rendering a generateJSONResponseMAV response
+     * containing the view of each CSWRecord, but each record is written straight to the stream rather than first being
+     * converted to a ModelMap. If a record can't be written os is left holding incomplete JSON.
+     *
+     * @param searchResponse
+     * @param os
+     * @throws IOException
+     */
+    void writeSearchResponse(CSWRecordSearchResponse searchResponse, OutputStream os) throws IOException {
+    	try (JsonGenerator gen = JSON_FACTORY.createGenerator(os, JsonEncoding.UTF8)) {
+    		// Top level keys are ordered as MappingJackson2JsonView writes the response model
+    		gen.writeStartObject();
+    		gen.writeObjectFieldStart("data");
+    		gen.writeNumberField("totalCSWRecordHits", searchResponse.getTotalCSWRecordHits());
+    		gen.writeArrayFieldStart("cswRecords");
+    		for (CSWRecord record : searchResponse.getCSWRecords()) {
+    			viewCSWRecordFactory.writeView(record, gen);
+    		}
+    		gen.writeEndArray();
+    		gen.writeFieldName("knownLayerIds");
+    		if (searchResponse.getKnownLayerIds() == null) {
+    			gen.writeNull();
+    		} else {
+    			gen.writeStartArray();
+    			for (String id : searchResponse.getKnownLayerIds()) {
+    				gen.writeString(id);
+    			}
+    			gen.writeEndArray();
+    		}
+    		gen.writeEndObject();
+    		gen.writeStringField("msg", "");
+    		gen.writeBooleanField("success", true);
+    		gen.writeEndObject();
     	}
-    	modelMap.put("cswRecords", cswRecords);
-    	modelMap.put("knownLayerIds", response.getKnownLayerIds());
-    	
-        return generateJSONResponseMAV(true, modelMap, "");
     }
     
     @RequestMapping("/suggestTerms.do")
@@ -208,15 +208,9 @@ public class WFSController extends BasePortalController {
         }
         
         //Make our request, transform and then return it.
-        WFSTransformedResponse htmlResponse = null;
         try {
-            if (typeName == null) {
-                htmlResponse = wfsService.getWfsResponseAsHtml(serviceUrl, portalUrl);
-            } else {
-                htmlResponse = wfsService.getWfsResponseAsHtml(serviceUrl, typeName, featureId, portalUrl);
-            }
-
-            outputStream.write(htmlResponse.getTransformed().getBytes());
+            String html = wfsService.getWfsPopupHtml(serviceUrl, typeName, featureId, portalUrl);
+            outputStream.write(html.getBytes());
         } catch (Exception ex) {
             log.warn(String.format("Internal error requesting/writing popup for '%1$s' from '%2$s': %3$s", typeName,
                     serviceUrl, ex));
@@ -252,9 +246,7 @@ public class WFSController extends BasePortalController {
         WFSTransformedResponse htmlResponse = null;
         WFSService service = wfsService;
         try {
-            System.out.println("[WFSController]transformToHtml().gml="+gml.toString());
             htmlResponse = service.transformToHtml(gml, null, portalUrl);
-            System.out.println("[WFSController]transformToHtml().htmlResponse="+htmlResponse.toString());
             outputStream.write(htmlResponse.getTransformed().getBytes());
         } catch (Exception ex) {
             log.warn(String.format("Internal error requesting/writing popup for '%1$s': %3$s", gml, ex));
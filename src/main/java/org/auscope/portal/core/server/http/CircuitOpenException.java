@@ -0,0 +1,64 @@
+package org.auscope.portal.core.server.http;
+
+import java.net.ConnectException;
+
+/**
+ * Thrown instead of making a request to an upstream host whose circuit is open (see {@link HttpCircuitBreaker}).
+ *
+ * This is a ConnectException so callers treat it like any other unreachable service.
+ */
+public class CircuitOpenException extends ConnectException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String host;
+    private final long retryAfterMs;
+
+    /**
+     * @param host
+     *            The upstream host
+     * @param retryAfterMs
+     *            How long until the host will be tried again (in ms)
+     */
+    public CircuitOpenException(String host, long retryAfterMs) {
+        super(String.format("%1$s is not responding, requests to it are suspended for %2$d s", host,
+                retryAfterSeconds(retryAfterMs)));
+        this.host = host;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    /**
+     * Returns how long until the host will be tried again in whole seconds (at least 1), eg for a Retry-After header
+     *
+     * @return
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds(retryAfterMs);
+    }
+
+    private static long retryAfterSeconds(long retryAfterMs) {
+        return Math.max(1, (retryAfterMs + 999) / 1000);
+    }
+
+    /**
+     * Returns this exception as an OWS ExceptionReport, for clients expecting a response from an OGC service
+     *
+     * @return
+     */
+    public String toExceptionReport() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows\" version=\"1.0.0\">"
+                + "<ows:Exception exceptionCode=\"NoApplicableCode\" locator=\"" + host + "\">"
+                + "<ows:ExceptionText>" + getMessage() + "</ows:ExceptionText>"
+                + "</ows:Exception>"
+                + "</ows:ExceptionReport>";
+    }
+}
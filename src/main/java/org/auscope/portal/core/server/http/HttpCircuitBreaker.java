@@ -0,0 +1,244 @@
+package org.auscope.portal.core.server.http;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Per upstream host circuit breaking and latency derived timeouts for the requests made by HttpServiceCallers.
+ *
+ * A host's circuit opens after failureThreshold consecutive failures (no response, or a 502, 503 or 504 response).
+ * Requests to an open circuit fail fast with a {@link CircuitOpenException}. Once openMs has passed a single probe
+ * request is let through (half open): if it succeeds the circuit closes, otherwise it opens again.
+ *
+ * The latencies (to the response headers) of the last WINDOW successful requests are kept for each host and OGC
+ * request type. Once there are enough of them, requests from callers that opt in (see
+ * {@link HttpServiceCaller#setDerivedTimeouts(boolean)}) are given a timeout of their p99 latency times
+ * latencyMultiplier (but no less than minTimeoutMs and no more than the caller's own timeout), so a hung server is given
+ * up on long before the caller's timeout. Requests given up on this way don't count as failures.
+ */
+public class HttpCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /** Number of latencies kept for each host and request type */
+    private static final int WINDOW = 128;
+    /** The timeout is recalculated after this many new latencies */
+    private static final int RECALCULATE_EVERY = 16;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final int failureThreshold;
+    private final long openMs;
+    private final int minTimeoutMs;
+    private final double latencyMultiplier;
+    private final int minSamples;
+    private final int maxHosts;
+
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private static class Circuit {
+        State state = State.CLOSED;
+        int consecutiveFailures = 0;
+        long openedAt;
+    }
+
+    private class LatencyWindow {
+        private final long[] samplesMs = new long[WINDOW];
+        private int count = 0;
+        private int next = 0;
+        private int sinceCalculated = 0;
+        /** Derived timeout or -1 if there aren't enough samples yet */
+        private volatile int timeoutMs = -1;
+
+        synchronized void add(long latencyMs) {
+            samplesMs[next] = latencyMs;
+            next = (next + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+            if (count >= minSamples && (timeoutMs < 0 || ++sinceCalculated >= RECALCULATE_EVERY)) {
+                long[] sorted = Arrays.copyOf(samplesMs, count);
+                Arrays.sort(sorted);
+                long p99 = sorted[(int) Math.ceil(0.99 * count) - 1];
+                timeoutMs = (int) Math.min(Integer.MAX_VALUE, Math.max(minTimeoutMs, p99 * latencyMultiplier));
+                sinceCalculated = 0;
+            }
+        }
+    }
+
+    /**
+     * @param failureThreshold
+     *            Consecutive failures that will open a host's circuit
+     * @param openMs
+     *            How long a circuit stays open before a probe request is allowed (in ms)
+     * @param minTimeoutMs
+     *            The smallest latency derived timeout (in ms)
+     * @param latencyMultiplier
+     *            Latency derived timeouts are this multiple of the p99 latency. 0 disables latency derived timeouts
+     * @param minSamples
+     *            Latencies needed before a timeout is derived from them
+     * @param maxHosts
+     *            Hosts beyond this many distinct hosts are not tracked
+     */
+    public HttpCircuitBreaker(int failureThreshold, long openMs, int minTimeoutMs, double latencyMultiplier,
+            int minSamples, int maxHosts) {
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+        this.minTimeoutMs = minTimeoutMs;
+        this.latencyMultiplier = latencyMultiplier;
+        this.minSamples = Math.max(1, Math.min(minSamples, WINDOW));
+        this.maxHosts = maxHosts;
+    }
+
+    private Circuit circuit(String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit == null && circuits.size() < maxHosts) {
+            circuit = circuits.computeIfAbsent(host, h -> new Circuit());
+        }
+        return circuit;
+    }
+
+    /**
+     * Checks a request can be made to host. If host's circuit has been open for long enough, this request becomes the
+     * probe for it.
+     *
+     * @param host
+     * @throws CircuitOpenException
+     *             If requests to host should fail fast
+     */
+    public void beforeRequest(String host) throws CircuitOpenException {
+        Circuit circuit = circuits.get(host);
+        if (circuit == null) {
+            return;
+        }
+
+        synchronized (circuit) {
+            if (circuit.state == State.CLOSED) {
+                return;
+            }
+
+            long openFor = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - circuit.openedAt);
+            if (circuit.state == State.OPEN && openFor >= openMs) {
+                circuit.state = State.HALF_OPEN;
+                log.info(String.format("Probing %1$s after %2$d ms", host, openFor));
+                return;
+            }
+            throw new CircuitOpenException(host, Math.max(0, openMs - openFor));
+        }
+    }
+
+    /**
+     * Returns the timeout for a request
+     *
+     * @param host
+     * @param request
+     *            OGC request type
+     * @param maxTimeoutMs
+     *            The caller's own timeout
+     * @return
+     */
+    public int timeoutMs(String host, String request, int maxTimeoutMs) {
+        LatencyWindow window = latencies.get(host + '\u0000' + request);
+        if (window == null || window.timeoutMs < 0) {
+            return maxTimeoutMs;
+        }
+        return Math.min(maxTimeoutMs, window.timeoutMs);
+    }
+
+    /**
+     * Records a request that received a response
+     *
+     * @param host
+     * @param request
+     *            OGC request type
+     * @param statusCode
+     * @param latencyNanos
+     *            Time taken to receive the response headers
+     */
+    public void recordResponse(String host, String request, int statusCode, long latencyNanos) {
+        if (statusCode == 502 || statusCode == 503 || statusCode == 504) {
+            recordFailure(host);
+            return;
+        }
+
+        Circuit circuit = circuit(host);
+        if (circuit == null) {
+            return;
+        }
+        synchronized (circuit) {
+            if (circuit.state != State.CLOSED) {
+                log.info(String.format("%1$s has recovered, closing its circuit", host));
+            }
+            circuit.state = State.CLOSED;
+            circuit.consecutiveFailures = 0;
+        }
+
+        if (latencyMultiplier > 0) {
+            latencies.computeIfAbsent(host + '\u0000' + request, k -> new LatencyWindow())
+                    .add(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+        }
+    }
+
+    /**
+     * Records a request that failed (including any failed probe)
+     *
+     * @param host
+     */
+    public void recordFailure(String host) {
+        Circuit circuit = circuit(host);
+        if (circuit == null) {
+            return;
+        }
+        synchronized (circuit) {
+            circuit.consecutiveFailures++;
+            if (circuit.state == State.HALF_OPEN
+                    || (circuit.state == State.CLOSED && circuit.consecutiveFailures >= failureThreshold)) {
+                log.warn(String.format("%1$s has failed %2$d consecutive requests, suspending requests to it for %3$d ms",
+                        host, circuit.consecutiveFailures, openMs));
+                circuit.state = State.OPEN;
+                circuit.openedAt = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Records a request that was given up on after exceeding its latency derived timeout. This isn't counted as a
+     * failure as the host may only be slower than usual, but if the request was a probe the next request becomes the
+     * probe instead
+     *
+     * @param host
+     */
+    public void recordAbandoned(String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit == null) {
+            return;
+        }
+        synchronized (circuit) {
+            if (circuit.state == State.HALF_OPEN) {
+                circuit.state = State.OPEN;
+            }
+        }
+    }
+
+    /**
+     * Returns the state of host's circuit
+     *
+     * @param host
+     * @return
+     */
+    public State getState(String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit == null) {
+            return State.CLOSED;
+        }
+        synchronized (circuit) {
+            return circuit.state;
+        }
+    }
+}
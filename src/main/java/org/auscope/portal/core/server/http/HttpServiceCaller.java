@@ -3,6 +3,7 @@ package org.auscope.portal.core.server.http;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.ConnectException;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -26,6 +27,7 @@ import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.TrustAllStrategy;
@@ -33,6 +35,8 @@ import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 
+import io.micrometer.core.instrument.Tags;
+
 
 /**
  * Utility class used to call web service end points.
@@ -47,6 +51,12 @@ public class HttpServiceCaller {
     private HttpClientConnectionManager connectionManager;
     private int connectionTimeOut;
     private boolean noSSLCheck = false;
+    /** Optional request metrics. If null nothing is recorded */
+    private HttpServiceCallerMetrics metrics;
+    /** Optional per host circuit breaking and latency derived timeouts. If null neither is applied */
+    private HttpCircuitBreaker circuitBreaker;
+    /** If true (and there is a circuitBreaker) requests are given up on based on the host's usual latency */
+    private boolean derivedTimeouts = false;
 
     /**
      * Default constructor
@@ -79,21 +89,71 @@ public class HttpServiceCaller {
         this.connectionManager = connectionManager;
     }
 
+    public HttpServiceCallerMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
-     * Generate a CloseableHttpClient using this instance's configuration
-     * @param credentialsProvider if null, no credentialprovider will be used
+     * Optional latency, size and error metrics for every request made by this instance. If null nothing is recorded
+     *
+     * @param metrics
+     */
+    public void setMetrics(HttpServiceCallerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public HttpCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Optional per host circuit breaking and latency derived timeouts for every request made by this instance. The same
+     * instance can be shared between HttpServiceCallers. If null neither is applied
+     *
+     * @param circuitBreaker
+     */
+    public void setCircuitBreaker(HttpCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public boolean isDerivedTimeouts() {
+        return derivedTimeouts;
+    }
+
+    /**
+     * If true (and there is a circuitBreaker) requests without their own configuration are given a timeout derived from
+     * the host's usual latency instead of this instance's timeout. Leave false for callers whose timeout is deliberately
+     * long (e.g. catalogue harvests and downloads), as a request can legitimately take far longer than usual. Defaults to
+     * false
+     *
+     * @param derivedTimeouts
+     */
+    public void setDerivedTimeouts(boolean derivedTimeouts) {
+        this.derivedTimeouts = derivedTimeouts;
+    }
+
+    /**
+     * Generate the request configuration for the specified timeout
+     * @param timeOut connect and socket timeout (milliseconds)
      * @return
      */
-    private CloseableHttpClient generateClient(CredentialsProvider credentialsProvider) {
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(this.connectionTimeOut)
-                .setSocketTimeout(this.connectionTimeOut)
+    private RequestConfig generateRequestConfig(int timeOut) {
+        return RequestConfig.custom()
+                .setConnectTimeout(timeOut)
+                .setSocketTimeout(timeOut)
                 .setCookieSpec(CookieSpecs.STANDARD)
                 .build();
+    }
 
+    /**
+     * Generate a CloseableHttpClient using this instance's configuration
+     * @param credentialsProvider if null, no credentialprovider will be used
+     * @return
+     */
+    private CloseableHttpClient generateClient(CredentialsProvider credentialsProvider) {
         HttpClientBuilder builder = HttpClientBuilder.create()
                 .useSystemProperties()
-                .setDefaultRequestConfig(requestConfig);
+                .setDefaultRequestConfig(generateRequestConfig(this.connectionTimeOut));
 
         if (connectionManager != null) {
             builder.setConnectionManager(connectionManager);
@@ -305,6 +365,20 @@ public class HttpServiceCaller {
         return new HttpClientResponse(this.invokeTheMethod(method, httpClient), httpClient);
     }
 
+    /**
+     * Invokes a conditional or range request (eg with If-None-Match or Range headers) and returns the raw
+     * HttpClientResponse. Unlike getMethodResponseAsHttpResponse, 206 (Partial Content), 304 (Not Modified) and 416
+     * (Range Not Satisfiable) responses are returned rather than treated as errors.
+     *
+     * @param method The method to be executed
+     * @return
+     * @throws IOException
+     */
+    public HttpClientResponse getConditionalMethodResponse(HttpRequestBase method) throws IOException {
+        CloseableHttpClient httpClient = generateClient(null);
+        return new HttpClientResponse(this.invokeTheMethod(method, httpClient, true), httpClient);
+    }
+
     /**
      * Invokes a httpmethod and takes care of some error handling.
      *
@@ -314,6 +388,19 @@ public class HttpServiceCaller {
      * @throws IllegalStateException
      */
     private HttpResponse invokeTheMethod(HttpRequestBase method, HttpClient client) throws IOException {
+        return invokeTheMethod(method, client, false);
+    }
+
+    /**
+     * Invokes a httpmethod and takes care of some error handling.
+     *
+     * @param method
+     * @param httpClient
+     * @param conditional If true the responses to a conditional or range request are also successful
+     * @throws IOException
+     * @throws IllegalStateException
+     */
+    private HttpResponse invokeTheMethod(HttpRequestBase method, HttpClient client, boolean conditional) throws IOException {
         if (client==null) {
             throw new IllegalArgumentException("HttpClient must not be null");
         }
@@ -331,7 +418,88 @@ public class HttpServiceCaller {
             }
         }
 
+        // Fail fast if the host isn't responding, otherwise (if enabled) limit the wait to what the host normally
+        // takes. Methods with their own configuration keep their timeouts
+        String host = null;
+        String request = null;
+        boolean derivedTimeout = false;
+        if (circuitBreaker != null) {
+            URI uri = method.getURI();
+            host = HttpServiceCallerMetrics.host(uri);
+            request = HttpServiceCallerMetrics.requestType(uri);
+            circuitBreaker.beforeRequest(host);
+            if (derivedTimeouts && method.getConfig() == null) {
+                int timeOut = circuitBreaker.timeoutMs(host, request, this.connectionTimeOut);
+                if (timeOut < this.connectionTimeOut) {
+                    method.setConfig(generateRequestConfig(timeOut));
+                    derivedTimeout = true;
+                }
+            }
+        }
+
         // Make the call
+        Tags tags = metrics == null ? null : HttpServiceCallerMetrics.tags(method);
+        long start = System.nanoTime();
+        HttpResponse response;
+        try {
+            response = executeFollowingRedirect(method, client);
+        } catch (IOException | RuntimeException ex) {
+            if (metrics != null) {
+                metrics.recordFailure(tags, ex, start);
+            }
+            if (circuitBreaker != null) {
+                // Giving up early on a host that is only slower than usual isn't evidence that it is down
+                if (derivedTimeout && (ex instanceof SocketTimeoutException || ex instanceof ConnectTimeoutException)) {
+                    circuitBreaker.recordAbandoned(host);
+                } else {
+                    circuitBreaker.recordFailure(host);
+                }
+            }
+            throw ex;
+        }
+        StatusLine statusLine = response.getStatusLine();
+        int statusCode = statusLine.getStatusCode();
+        if (metrics != null) {
+            metrics.recordResponse(tags, statusCode, start);
+            if (response.getEntity() != null) {
+                response.setEntity(metrics.countBytes(tags, response.getEntity()));
+            }
+        }
+        if (circuitBreaker != null) {
+            circuitBreaker.recordResponse(host, request, statusCode, System.nanoTime() - start);
+        }
+
+        // If it is not a successful status code
+        if (statusCode != HttpStatus.SC_OK &&
+                statusCode != HttpStatus.SC_CREATED &&
+                statusCode != HttpStatus.SC_ACCEPTED &&
+                !(conditional && (statusCode == HttpStatus.SC_PARTIAL_CONTENT ||
+                        statusCode == HttpStatus.SC_NOT_MODIFIED ||
+                        statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE))) {
+            // if it's unavailable then throw connection exception
+            if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+                throw new ConnectException();
+            }
+            if (log.isTraceEnabled()) {
+            	String responseBody = responseToString(response.getEntity().getContent());
+                log.trace("Returned response body: " + responseBody);
+            }
+            // The IOException contains the error code.
+            throw new IOException(Integer.toString(statusCode));
+        } else {
+            return response;
+        }
+    }
+
+    /**
+     * Executes method, following a single moved or redirect response.
+     *
+     * @param method
+     * @param client
+     * @return The final response
+     * @throws IOException
+     */
+    private HttpResponse executeFollowingRedirect(HttpRequestBase method, HttpClient client) throws IOException {
         HttpResponse response = client.execute(method);
         StatusLine statusLine = response.getStatusLine();
         int statusCode = statusLine.getStatusCode();
@@ -359,24 +527,7 @@ public class HttpServiceCaller {
             statusCodeText = statusLine.getReasonPhrase();
             log.trace("Status code text: '" + statusCodeText + "'");
         }
-
-        // If it is not a successful status code
-        if (statusCode != HttpStatus.SC_OK &&
-                statusCode != HttpStatus.SC_CREATED &&
-                statusCode != HttpStatus.SC_ACCEPTED) {
-            // if it's unavailable then throw connection exception
-            if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
-                throw new ConnectException();
-            }
-            if (log.isTraceEnabled()) {
-            	String responseBody = responseToString(response.getEntity().getContent());
-                log.trace("Returned response body: " + responseBody);
-            }
-            // The IOException contains the error code.
-            throw new IOException(Integer.toString(statusCode));
-        } else {
-            return response;
-        }
+        return response;
     }
 
     /**
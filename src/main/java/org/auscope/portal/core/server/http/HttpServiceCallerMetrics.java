@@ -0,0 +1,254 @@
+package org.auscope.portal.core.server.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records latency, response size and error metrics for the requests made by a HttpServiceCaller.
+ *
+ * Every meter is tagged with the upstream host, the HTTP method and the OGC request type (the REQUEST parameter of the
+ * URL, eg GetFeature). Request latency is measured up to the response headers (including any redirect) and is also
+ * tagged with the status class (2xx, 4xx, ...). Response bytes are counted as the body is read.
+ */
+public class HttpServiceCallerMetrics {
+
+    /** Timer of requests, tagged with host, method, request and status */
+    public static final String REQUESTS = "portal.upstream.requests";
+    /** Distribution of response body sizes in bytes, tagged with host, method and request */
+    public static final String RESPONSE_BYTES = "portal.upstream.response.bytes";
+    /** Count of failed requests, tagged with host, method, request and error (status class or exception) */
+    public static final String ERRORS = "portal.upstream.errors";
+
+    public static final String TAG_HOST = "host";
+    public static final String TAG_METHOD = "method";
+    public static final String TAG_REQUEST = "request";
+    public static final String TAG_STATUS = "status";
+    public static final String TAG_ERROR = "error";
+
+    private static final double[] PERCENTILES = new double[] {0.5, 0.95, 0.99};
+
+    /** OGC request names are plain words, anything else is reported as "other" to bound the number of tag values */
+    private static final Pattern REQUEST_TYPE = Pattern.compile("[A-Za-z]{1,40}");
+
+    private final MeterRegistry registry;
+
+    /**
+     * @param registry
+     *            Where the meters will be registered
+     */
+    public HttpServiceCallerMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Generates the host, method and request tags for a method. This should be called before the method is executed
+     * (redirects replace the URI of the method).
+     *
+     * @param method
+     * @return
+     */
+    public static Tags tags(HttpRequestBase method) {
+        URI uri = method.getURI();
+        return Tags.of(TAG_HOST, host(uri), TAG_METHOD, method.getMethod(), TAG_REQUEST, requestType(uri));
+    }
+
+    /**
+     * Returns the (lower case) host of uri
+     *
+     * @param uri
+     * @return The host or "unknown" if there isn't one
+     */
+    static String host(URI uri) {
+        return uri == null || uri.getHost() == null ? "unknown" : uri.getHost().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Extracts the (case insensitive) REQUEST parameter from the query of uri
+     *
+     * @param uri
+     * @return The request type, "unknown" if there isn't one or "other" if it doesn't look like an OGC request name
+     */
+    static String requestType(URI uri) {
+        String query = uri == null ? null : uri.getRawQuery();
+        if (query == null) {
+            return "unknown";
+        }
+
+        for (String kvp : query.split("&")) {
+            int eq = kvp.indexOf('=');
+            if (eq == 7 && kvp.regionMatches(true, 0, "request", 0, 7)) {
+                String value = kvp.substring(eq + 1);
+                return REQUEST_TYPE.matcher(value).matches() ? value : "other";
+            }
+        }
+        return "unknown";
+    }
+
+    /**
+     * Returns the status class of an HTTP status code, eg 2xx
+     *
+     * @param statusCode
+     * @return
+     */
+    static String statusClass(int statusCode) {
+        if (statusCode < 100 || statusCode > 599) {
+            return "unknown";
+        }
+        return (statusCode / 100) + "xx";
+    }
+
+    /**
+     * Records a request that received a response
+     *
+     * @param tags From {@link #tags(HttpRequestBase)}
+     * @param statusCode The final status code (after any redirect)
+     * @param startNanos System.nanoTime() before the request was made
+     */
+    public void recordResponse(Tags tags, int statusCode, long startNanos) {
+        String status = statusClass(statusCode);
+        timer(tags, status).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (statusCode >= 400) {
+            errors(tags, status).increment();
+        }
+    }
+
+    /**
+     * Records a request that failed without a response (eg connection refused or timed out)
+     *
+     * @param tags From {@link #tags(HttpRequestBase)}
+     * @param ex The reason the request failed
+     * @param startNanos System.nanoTime() before the request was made
+     */
+    public void recordFailure(Tags tags, Exception ex, long startNanos) {
+        timer(tags, "none").record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        errors(tags, ex.getClass().getSimpleName()).increment();
+    }
+
+    /**
+     * Wraps entity so that the bytes read from its content are recorded
+     *
+     * @param tags From {@link #tags(HttpRequestBase)}
+     * @param entity
+     * @return
+     */
+    public HttpEntity countBytes(Tags tags, HttpEntity entity) {
+        DistributionSummary summary = DistributionSummary.builder(RESPONSE_BYTES)
+                .baseUnit("bytes")
+                .tags(tags)
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+        return new CountingEntity(entity, summary);
+    }
+
+    private Timer timer(Tags tags, String status) {
+        return Timer.builder(REQUESTS)
+                .tags(tags)
+                .tag(TAG_STATUS, status)
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+    }
+
+    private Counter errors(Tags tags, String error) {
+        return Counter.builder(ERRORS)
+                .tags(tags)
+                .tag(TAG_ERROR, error)
+                .register(registry);
+    }
+
+    private static class CountingEntity extends HttpEntityWrapper {
+        private final DistributionSummary summary;
+
+        CountingEntity(HttpEntity entity, DistributionSummary summary) {
+            super(entity);
+            this.summary = summary;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new CountingInputStream(super.getContent(), summary);
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            try (InputStream content = getContent()) {
+                IOUtils.copy(content, outStream);
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read and records them once, on EOF or close (whichever comes first)
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final DistributionSummary summary;
+        private long count = 0;
+        private boolean recorded = false;
+
+        CountingInputStream(InputStream in, DistributionSummary summary) {
+            super(in);
+            this.summary = summary;
+        }
+
+        private void record() {
+            if (!recorded) {
+                recorded = true;
+                summary.record(count);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                record();
+            } else {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                record();
+            } else {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                record();
+            }
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package org.auscope.portal.core.server.http;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.DateUtils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * A small in memory cache of proxied upstream responses (eg legends, KML and documents).
+ *
+ * Only complete 200 responses whose cache directives allow a shared cache to store them are held. They are kept for the
+ * upstream's max-age (or until its Expires date), else defaultTtlMs, but never longer than maxTtlMs. Bodies larger than
+ * maxEntryBytes aren't cached and the least recently used responses are evicted once the cache holds more than
+ * maxEntries.
+ *
+ * The hit and miss counts, hit ratio and size are registered as gauges when bound to a MeterRegistry.
+ */
+public class ProxyResponseCache implements MeterBinder {
+
+    /**
+     * A cached response body along with the headers needed to serve and revalidate it
+     */
+    public static class CachedResponse {
+        private final byte[] body;
+        private final String eTag;
+        private final String lastModified;
+        private final String cacheControl;
+        private final String expiresHeader;
+        private final long created;
+        private final long expires;
+
+        CachedResponse(byte[] body, String eTag, String lastModified, String cacheControl, String expiresHeader,
+                long created, long expires) {
+            this.body = body;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.cacheControl = cacheControl;
+            this.expiresHeader = expiresHeader;
+            this.created = created;
+            this.expires = expires;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return The upstream ETag or null
+         */
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * @return The upstream Last-Modified date or null
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return The upstream Cache-Control directives or null
+         */
+        public String getCacheControl() {
+            return cacheControl;
+        }
+
+        /**
+         * @return The upstream Expires date or null
+         */
+        public String getExpiresHeader() {
+            return expiresHeader;
+        }
+
+        /**
+         * Returns how long the response has been cached for in whole seconds, eg for an Age header
+         *
+         * @param now
+         *            The current time (in ms)
+         * @return
+         */
+        public long getAgeSeconds(long now) {
+            return Math.max(0, (now - created) / 1000);
+        }
+    }
+
+    private final int maxEntries;
+    private final int maxEntryBytes;
+    private final long defaultTtlMs;
+    private final long maxTtlMs;
+
+    private final LinkedHashMap<String, CachedResponse> responses = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxEntries
+     *            Maximum number of responses held (0 disables the cache)
+     * @param maxEntryBytes
+     *            Largest response body that will be cached
+     * @param defaultTtlMs
+     *            How long responses without an expiry are cached for (in ms)
+     * @param maxTtlMs
+     *            The longest any response is cached for (in ms)
+     */
+    public ProxyResponseCache(int maxEntries, int maxEntryBytes, long defaultTtlMs, long maxTtlMs) {
+        this.maxEntries = maxEntries;
+        this.maxEntryBytes = maxEntryBytes;
+        this.defaultTtlMs = defaultTtlMs;
+        this.maxTtlMs = maxTtlMs;
+    }
+
+    /**
+     * Returns how long a response can be cached for according to its cache directives
+     *
+     * @param response
+     *            The upstream response
+     * @param now
+     *            The current time (in ms)
+     * @return The time to live (in ms) or 0 if the response must not be cached
+     */
+    long freshnessMs(HttpResponse response, long now) {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK
+                || response.containsHeader("Set-Cookie")
+                || response.containsHeader("Content-Range")) {
+            return 0;
+        }
+        Header vary = response.getFirstHeader("Vary");
+        if (vary != null && vary.getValue().contains("*")) {
+            return 0;
+        }
+
+        Long maxAgeSeconds = null;
+        Long sharedMaxAgeSeconds = null;
+        for (Header header : response.getHeaders("Cache-Control")) {
+            for (String directive : header.getValue().split(",")) {
+                String d = directive.trim().toLowerCase(Locale.ROOT);
+                if (d.equals("no-store") || d.startsWith("no-cache") || d.startsWith("private")) {
+                    return 0;
+                } else if (d.startsWith("s-maxage=")) {
+                    sharedMaxAgeSeconds = parseSeconds(d.substring(9));
+                } else if (d.startsWith("max-age=")) {
+                    maxAgeSeconds = parseSeconds(d.substring(8));
+                }
+            }
+        }
+
+        long ttlMs;
+        if (sharedMaxAgeSeconds != null || maxAgeSeconds != null) {
+            ttlMs = (sharedMaxAgeSeconds != null ? sharedMaxAgeSeconds : maxAgeSeconds) * 1000;
+        } else if (response.containsHeader("Expires")) {
+            Date expires = DateUtils.parseDate(response.getFirstHeader("Expires").getValue());
+            ttlMs = expires == null ? 0 : expires.getTime() - now;
+        } else {
+            ttlMs = defaultTtlMs;
+        }
+        return Math.max(0, Math.min(ttlMs, maxTtlMs));
+    }
+
+    private static long parseSeconds(String s) {
+        try {
+            return Long.parseLong(s.replace("\"", "").trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns true if a response with a body of contentLength bytes could be cached
+     *
+     * @param response
+     *            The upstream response
+     * @param contentLength
+     *            The length of the body (negative if unknown)
+     * @return
+     */
+    public boolean isCacheable(HttpResponse response, long contentLength) {
+        return maxEntries > 0 && contentLength >= 0 && contentLength <= maxEntryBytes
+                && freshnessMs(response, System.currentTimeMillis()) > 0;
+    }
+
+    /**
+     * Returns the cached response for url or null if it isn't cached (or has expired)
+     *
+     * @param url
+     * @return
+     */
+    public synchronized CachedResponse get(String url) {
+        CachedResponse cached = responses.get(url);
+        if (cached != null && cached.expires <= System.currentTimeMillis()) {
+            responses.remove(url);
+            cached = null;
+        }
+        if (cached == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return cached;
+    }
+
+    /**
+     * Caches the response to url (if it is cacheable)
+     *
+     * @param url
+     * @param response
+     *            The upstream response
+     * @param body
+     *            The full response body
+     */
+    public void put(String url, HttpResponse response, byte[] body) {
+        long now = System.currentTimeMillis();
+        long ttlMs = freshnessMs(response, now);
+        if (maxEntries <= 0 || ttlMs <= 0 || body.length > maxEntryBytes) {
+            return;
+        }
+
+        CachedResponse cached = new CachedResponse(body,
+                headerValue(response, "ETag"),
+                headerValue(response, "Last-Modified"),
+                cacheControl(response),
+                headerValue(response, "Expires"),
+                now, now + ttlMs);
+
+        synchronized (this) {
+            responses.put(url, cached);
+            Iterator<CachedResponse> it = responses.values().iterator();
+            while (responses.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    private static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * Returns every Cache-Control directive of response as a single header value
+     *
+     * @param response
+     *            The upstream response
+     * @return The directives or null if there aren't any
+     */
+    public static String cacheControl(HttpResponse response) {
+        Header[] headers = response.getHeaders("Cache-Control");
+        if (headers.length == 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(headers[0].getValue());
+        for (int i = 1; i < headers.length; i++) {
+            sb.append(", ").append(headers[i].getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns true if the conditional request headers If-None-Match or If-Modified-Since show the client already has
+     * cached (ie a 304 Not Modified response can be sent)
+     *
+     * @param cached
+     * @param ifNoneMatch
+     *            If-None-Match request header (can be null)
+     * @param ifModifiedSince
+     *            If-Modified-Since request header (can be null)
+     * @return
+     */
+    public static boolean isNotModified(CachedResponse cached, String ifNoneMatch, String ifModifiedSince) {
+        // If-None-Match takes precedence over If-Modified-Since
+        if (ifNoneMatch != null) {
+            if (cached.eTag == null) {
+                return false;
+            }
+            String eTag = weakTag(cached.eTag);
+            for (String tag : ifNoneMatch.split(",")) {
+                String t = tag.trim();
+                if (t.equals("*") || weakTag(t).equals(eTag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (ifModifiedSince != null && cached.lastModified != null) {
+            Date since = DateUtils.parseDate(ifModifiedSince);
+            Date lastModified = DateUtils.parseDate(cached.lastModified);
+            return since != null && lastModified != null && !lastModified.after(since);
+        }
+        return false;
+    }
+
+    /**
+     * If-None-Match uses weak comparison, so W/ prefixes are ignored
+     */
+    private static String weakTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Fraction of lookups answered from the cache
+     *
+     * @return
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public synchronized int size() {
+        return responses.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("portal.proxy.cache.hits", this, ProxyResponseCache::getHits)
+                .description("getViaProxy.do responses served from the cache").register(registry);
+        Gauge.builder("portal.proxy.cache.misses", this, ProxyResponseCache::getMisses)
+                .description("getViaProxy.do responses fetched from upstream").register(registry);
+        Gauge.builder("portal.proxy.cache.hit.ratio", this, ProxyResponseCache::getHitRatio).register(registry);
+        Gauge.builder("portal.proxy.cache.size", this, ProxyResponseCache::size).register(registry);
+    }
+}
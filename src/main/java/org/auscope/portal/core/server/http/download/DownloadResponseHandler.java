@@ -0,0 +1,18 @@
+package org.auscope.portal.core.server.http.download;
+
+import java.io.IOException;
+
+/**
+ * Receives each DownloadResponse of a ServiceDownloadManager as soon as it completes
+ */
+public interface DownloadResponseHandler {
+    /**
+     * Called (on the thread that started the downloads) for each download that completed
+     *
+     * @param response
+     *            The completed download. Its response stream is closed once this method returns
+     * @throws IOException
+     *             Stops any remaining downloads from being handled
+     */
+    public void handle(DownloadResponse response) throws IOException;
+}
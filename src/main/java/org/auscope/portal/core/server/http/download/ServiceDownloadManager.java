@@ -12,8 +12,10 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
@@ -133,6 +135,66 @@ public class ServiceDownloadManager {
         return responses;
     }
 
+    /**
+     * Downloads every URL, handing each response to handler as soon as it completes rather than waiting for the slowest
+     * endpoint. Downloads that don't complete are skipped, as they are in downloadAll().
+     *
+     * @param handler
+     *            Receives completed downloads in the order they complete
+     * @throws URISyntaxException
+     * @throws IOException
+     *             If handler fails. Downloads that haven't been handled yet are abandoned
+     */
+    public synchronized void downloadAll(DownloadResponseHandler handler) throws URISyntaxException, IOException {
+        Semaphore processSemaphore = new Semaphore(this.maxThreadPerSession,
+                true);
+        BlockingQueue<GMLDownload> finished = new LinkedBlockingQueue<>();
+
+        for (int i = 0; i < urls.length; i++) {
+            Semaphore sem = endpointSemaphores.get(this.getHost(urls[i]));
+            GMLDownload gmlDownload = new GMLDownload(urls[i], sem, i,
+                    processSemaphore, this.fileExtensionOverride);
+            pool.execute(() -> {
+                try {
+                    gmlDownload.run();
+                } finally {
+                    finished.add(gmlDownload);
+                }
+            });
+        }
+        pool.shutdown();
+
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(ServiceDownloadManager.MAX_WAIT_TIME_MINUTE);
+        try {
+            for (int i = 0; i < urls.length; i++) {
+                GMLDownload gmlDownload = finished.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (gmlDownload == null) {
+                    logger.warn(callerId + "->" + (urls.length - i) + " downloads did not complete in time");
+                    break;
+                }
+
+                DownloadResponse response;
+                try {
+                    response = gmlDownload.getGMLDownload();
+                } catch (InCompleteDownloadException ex) {
+                    continue;
+                }
+
+                try {
+                    handler.handle(response);
+                } finally {
+                    FileIOUtil.closeQuietly(response.getResponseAsStream());
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.info("ServiceDownloadManager#downloadAll was interrupted waiting for downloads.");
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            pool.shutdownNow();
+            throw e;
+        }
+    }
+
     public String getHost(String url) throws URISyntaxException {
         URI uri = new URI(url);
         String query = uri.getQuery();
@@ -77,6 +77,8 @@ public class CSWCacheService {
     protected CSWServiceItem[] deferredCacheCSWServiceList;
 
     protected boolean updateRunning; //don't set this variable directly
+    /** True if the running update is harvesting every (non deferred) CSW rather than a subset of them */
+    protected boolean fullUpdateRunning;
     /** If true, this class will force the usage of HTTP GetMethods instead of POST methods (where possible). Useful workaround for some CSW services */
     protected boolean forceGetMethods = false;
     protected Date lastCacheUpdate;
@@ -148,6 +150,12 @@ public class CSWCacheService {
         } else {
         	log.info("CSW record cache empty");
         }
+        // Serve suggestions from memory without waiting for the next harvest
+        try {
+        	elasticsearchService.restoreCompletionTerms();
+        } catch(Exception e) {
+        	log.error("Error restoring completion terms: " + e.getLocalizedMessage());
+        }
     }
     
     // KnownLayerService needs to be informed when indexing is finished, must be @Lazy loaded to avoid circular dependencies
@@ -225,8 +233,8 @@ public class CSWCacheService {
 
         // Index CSWRecords and completion terms from newRecordCache
         try {
-	        elasticsearchService.indexCSWRecords(newRecordCache);
-	        elasticsearchService.indexCompletionTerms(newRecordCache);
+	        elasticsearchService.indexCSWRecords(newRecordCache, fullUpdateRunning);
+	        elasticsearchService.indexCompletionTerms(newRecordCache, fullUpdateRunning);
         } catch(DataAccessResourceFailureException e) {
         	log.error(e.getLocalizedMessage());
         	this.updateRunning = false;
@@ -345,6 +353,10 @@ public class CSWCacheService {
 	            return false;
 	        }
 	        
+	        // Only a harvest of every CSW can replace the CSWRecord index outright
+	        this.fullUpdateRunning = (serviceIds == null || serviceIds.isEmpty())
+	                && (deferredCacheCSWServiceList == null || deferredCacheCSWServiceList.length == 0);
+
 	        // This will be our new cache
 	        Map<String, Set<CSWRecord>> newKeywordCache = new HashMap<>();
 	        Map<String, Set<String>> newKeywordByEndpointCache = new HashMap<>();
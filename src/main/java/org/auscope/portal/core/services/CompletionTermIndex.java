@@ -0,0 +1,132 @@
+package org.auscope.portal.core.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable in memory index of completion terms, ranked by the number of times each term appears in the CSW records.
+ *
+ * Terms are held in a sorted array so that the terms matching a prefix form a contiguous range found by binary search.
+ * As a one or two character prefix can match a large part of the vocabulary, the ranked suggestions for every prefix
+ * up to PRECOMPUTED_PREFIX_LENGTH characters are calculated when the index is built. Longer prefixes match few enough
+ * terms that their range is ranked on request.
+ */
+public class CompletionTermIndex {
+
+    /** Prefixes up to this length have their suggestions calculated when the index is built */
+    private static final int PRECOMPUTED_PREFIX_LENGTH = 2;
+
+    private final int maxSuggestions;
+    private final String[] terms;
+    private final int[] counts;
+    private final Map<String, List<String>> precomputed;
+
+    /**
+     * Creates a new index
+     *
+     * @param termCounts Map of (lower case) term to the number of times it appears
+     * @param maxSuggestions The maximum number of suggestions returned for a prefix
+     */
+    public CompletionTermIndex(Map<String, Integer> termCounts, int maxSuggestions) {
+        this.maxSuggestions = maxSuggestions;
+
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(termCounts.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+        this.terms = new String[entries.size()];
+        this.counts = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            terms[i] = entries.get(i).getKey();
+            counts[i] = entries.get(i).getValue();
+        }
+
+        // Rank every term once and hand each one to the short prefixes it belongs to. As terms are visited in rank
+        // order each prefix list is complete once it holds maxSuggestions terms.
+        Integer[] ranked = new Integer[terms.length];
+        for (int i = 0; i < ranked.length; i++) {
+            ranked[i] = i;
+        }
+        Arrays.sort(ranked, rankComparator());
+
+        Map<String, List<String>> prefixes = new HashMap<>();
+        for (int i : ranked) {
+            String term = terms[i];
+            for (int length = 1; length <= PRECOMPUTED_PREFIX_LENGTH && length <= term.length(); length++) {
+                List<String> suggestions = prefixes.computeIfAbsent(term.substring(0, length), k -> new ArrayList<>());
+                if (suggestions.size() < maxSuggestions) {
+                    suggestions.add(term);
+                }
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : prefixes.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        this.precomputed = prefixes;
+    }
+
+    /**
+     * Orders term indexes by descending count, then alphabetically
+     */
+    private Comparator<Integer> rankComparator() {
+        return (a, b) -> counts[a] != counts[b] ? Integer.compare(counts[b], counts[a]) : terms[a].compareTo(terms[b]);
+    }
+
+    /**
+     * Returns the terms starting with prefix, most frequent first.
+     *
+     * @param prefix The start of a term (case insensitive)
+     * @return Up to maxSuggestions terms, never null
+     */
+    public List<String> suggest(String prefix) {
+        if (prefix == null) {
+            return Collections.emptyList();
+        }
+        prefix = prefix.trim().toLowerCase(Locale.ROOT);
+        if (prefix.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        if (prefix.length() <= PRECOMPUTED_PREFIX_LENGTH) {
+            List<String> suggestions = precomputed.get(prefix);
+            return suggestions == null ? Collections.<String>emptyList() : suggestions;
+        }
+
+        // Terms starting with prefix sort between prefix and the next possible prefix
+        int start = lowerBound(prefix);
+        int end = start;
+        while (end < terms.length && terms[end].startsWith(prefix)) {
+            end++;
+        }
+
+        Integer[] range = new Integer[end - start];
+        for (int i = 0; i < range.length; i++) {
+            range[i] = start + i;
+        }
+        Arrays.sort(range, rankComparator());
+
+        List<String> suggestions = new ArrayList<>(Math.min(range.length, maxSuggestions));
+        for (int i = 0; i < range.length && i < maxSuggestions; i++) {
+            suggestions.add(terms[range[i]]);
+        }
+        return suggestions;
+    }
+
+    private int lowerBound(String prefix) {
+        int index = Arrays.binarySearch(terms, prefix);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    /**
+     * The number of distinct terms in this index
+     *
+     * @return
+     */
+    public int size() {
+        return terms.length;
+    }
+}
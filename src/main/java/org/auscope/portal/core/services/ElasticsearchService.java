@@ -4,12 +4,22 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -40,17 +50,22 @@ import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
 import org.springframework.data.elasticsearch.core.SearchScrollHits;
 import org.springframework.data.elasticsearch.core.document.Document;
-import org.springframework.data.elasticsearch.core.geo.GeoJsonPolygon;
-import org.springframework.data.elasticsearch.core.geo.GeoPoint;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
 import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
-import org.springframework.data.elasticsearch.core.query.Criteria;
-import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
 import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.data.elasticsearch.core.suggest.Completion;
 import org.springframework.data.geo.Point;
 
 import com.google.common.collect.Lists;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.GeoShapeRelation;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Operator;
+import co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders;
+import co.elastic.clients.json.JsonData;
 import jakarta.annotation.PostConstruct;
 
 /**
@@ -80,6 +95,65 @@ public class ElasticsearchService {
 
 	private URL elasticsearchSuggestionUrl;
 
+	// If true, full CSW cache updates are written to a new versioned index that cswRecordIndex (an alias) is then
+	// pointed at, rather than being written over the live index
+	@Value("${spring.data.elasticsearch.aliasReindex:false}")
+	private boolean aliasReindex = false;
+
+	// Maximum number of concurrent bulk requests made while indexing CSWRecords
+	@Value("${spring.data.elasticsearch.bulkConcurrency:4}")
+	private int bulkConcurrency = 4;
+
+	// Shared executor that runs concurrent bulk requests, if null bulk requests are made by the calling thread
+	private Executor bulkExecutor;
+
+	// Settings restored on a versioned index once it has been loaded
+	@Value("${spring.data.elasticsearch.replicas:1}")
+	private int indexReplicas = 1;
+
+	@Value("${spring.data.elasticsearch.refreshInterval:1s}")
+	private String indexRefreshInterval = "1s";
+
+	// If true, suggestTerms queries Elasticsearch until the in memory completion index has been built
+	@Value("${spring.data.elasticsearch.suggestionFallback:true}")
+	private boolean suggestionFallback = true;
+
+	// Maximum number of suggested terms returned
+	private static final int SUGGESTION_SIZE = 10;
+
+	// In memory completion terms, replaced whenever completion terms are indexed
+	private volatile CompletionTermIndex completionTermIndex;
+
+	// Completion term contributions of each indexed record, by service ID then record ID
+	private Map<String, Map<String, RecordTerms>> recordTerms = new HashMap<String, Map<String, RecordTerms>>();
+
+	// Count of each completion term across all indexed records
+	private Map<String, Integer> termCounts = new HashMap<String, Integer>();
+
+	// Weight of each suggestion stored in the suggestion index, read from the index the first time completion terms
+	// are indexed (so that suggestions left over from before a restart can be updated or removed)
+	private Map<String, Integer> indexedTermCounts = null;
+
+	// Maximum number of cached searchCSWRecords responses (0 disables the cache)
+	@Value("${spring.data.elasticsearch.searchCacheSize:500}")
+	private int searchCacheSize = 500;
+
+	// Cached searchCSWRecords responses by normalised search parameters, least recently used first
+	private final Map<String, CSWRecordSearchResponse> searchCache = new LinkedHashMap<String, CSWRecordSearchResponse>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CSWRecordSearchResponse> eldest) {
+			return size() > searchCacheSize;
+		}
+	};
+
+	// Incremented (under the searchCache lock) whenever the CSWRecord index is written to
+	private long searchCacheGeneration = 0;
+
+	// Characters that have special meaning in a query_string query
+	private static final String QUERY_STRING_RESERVED_CHARS = "\\+-=&|><!(){}[]^\"~*?:/";
+
 	// CSWRecord search fields and associated search weightings
 	public static final Map<String, Float> CSWRECORD_QUERY_FIELDS = Map.of(
 			// Native CSWRecord fields
@@ -115,6 +189,9 @@ public class ElasticsearchService {
 		if (cswRecordIndex == null) {
 			cswRecordIndex = "test-index";
 		}
+		if (cswSuggestionIndex == null) {
+			cswSuggestionIndex = "test-suggestion-index";
+		}
 	}
 	
 	/**
@@ -139,6 +216,16 @@ public class ElasticsearchService {
 		if (!io.exists()) {
 		    io.create();
 		}
+		io.putMapping(createCSWRecordGeoMapping());
+	}
+
+	/**
+	 * GeoShape annotations (boundingPolygon) aren't applied from the CSWRecord
+	 * class, so the mapping is created manually
+	 * 
+	 * @return the mapping of the cswGeographicElements field
+	 */
+	private Document createCSWRecordGeoMapping() {
 		Document mapping = Document.create();
 		mapping.put("properties", Map.of(
 		    "cswGeographicElements", Map.of(
@@ -157,7 +244,7 @@ public class ElasticsearchService {
 		        )
 		    )
 		));
-		io.putMapping(mapping);
+		return mapping;
 	}
 
 	/**
@@ -165,8 +252,10 @@ public class ElasticsearchService {
 	 * CSWGeographicElement.
 	 * 
 	 * @param cswRecords the CSWRecord list
+	 * @param fullUpdate true if cswRecords is the complete set of records, in which case (if aliasReindex is
+	 *                   enabled) a new index is built and swapped in rather than updating the live index
 	 */
-	public void indexCSWRecords(final List<CSWRecord> cswRecords) throws DataAccessResourceFailureException {
+	public void indexCSWRecords(final List<CSWRecord> cswRecords, boolean fullUpdate) throws DataAccessResourceFailureException {
 		log.info("Indexing CSW records");
 		// Check geographical bounds
 		for (CSWRecord record : cswRecords) {
@@ -216,14 +305,191 @@ public class ElasticsearchService {
 				record.setMaxScale((double)Float.MAX_VALUE);
 			}
 		}
-		try {
-			this.updateCSWRecords(cswRecords);
-		} catch (DataAccessResourceFailureException e) {
-			throw e;
+		if (fullUpdate && aliasReindex) {
+			this.reindexCSWRecords(cswRecords);
+		} else {
+			this.bulkUpdateCSWRecords(cswRecords);
 		}
 		log.info("Indexing CSW records complete (" + cswRecords.size() + " records)");
 	}
 
+	/**
+	 * Index CSWRecords. Creates a bounding polygon for each record from the
+	 * CSWGeographicElement. Records are written to the live index.
+	 * 
+	 * @param cswRecords the CSWRecord list
+	 */
+	public void indexCSWRecords(final List<CSWRecord> cswRecords) throws DataAccessResourceFailureException {
+		indexCSWRecords(cswRecords, false);
+	}
+
+	/**
+	 * Write CSWRecords to the live index with bounded parallel bulk requests that
+	 * don't refresh the index, then refresh it once at the end.
+	 * 
+	 * @param cswRecords the CSWRecord list
+	 * @return the indexing throughput in records per second
+	 */
+	public double bulkUpdateCSWRecords(final List<CSWRecord> cswRecords) throws DataAccessResourceFailureException {
+		IndexCoordinates index = IndexCoordinates.of(cswRecordIndex);
+		double recordsPerSecond;
+		try {
+			recordsPerSecond = bulkSave(cswRecords, recordSet -> elasticsearchOperations.save(recordSet, index));
+			elasticsearchOperations.indexOps(index).refresh();
+		} finally {
+			invalidateSearchCache();
+		}
+		log.info(String.format("Bulk indexed %1$d CSW records at %2$.0f records/s", cswRecords.size(), recordsPerSecond));
+		return recordsPerSecond;
+	}
+
+	/**
+	 * Rebuild the CSWRecord index without affecting searches. The records are
+	 * written to a new versioned index (with refresh disabled and no replicas)
+	 * which cswRecordIndex is then atomically aliased to. Indexes previously
+	 * behind the alias are deleted.
+	 * 
+	 * If cswRecordIndex is currently a concrete index it is replaced by the alias
+	 * as part of the same atomic operation.
+	 * 
+	 * @param cswRecords the complete CSWRecord list
+	 * @return the indexing throughput in records per second
+	 */
+	public double reindexCSWRecords(final List<CSWRecord> cswRecords) throws DataAccessResourceFailureException {
+		String alias = cswRecordIndex;
+		String versionedIndex = alias + "-" + System.currentTimeMillis();
+		IndexOperations versionedOps = elasticsearchOperations.indexOps(IndexCoordinates.of(versionedIndex));
+
+		double recordsPerSecond;
+		try {
+			versionedOps.create(Map.of("index.refresh_interval", "-1", "index.number_of_replicas", 0));
+			versionedOps.putMapping(elasticsearchOperations.indexOps(CSWRecord.class).createMapping());
+			versionedOps.putMapping(createCSWRecordGeoMapping());
+
+			recordsPerSecond = bulkSave(cswRecords,
+					recordSet -> elasticsearchOperations.save(recordSet, IndexCoordinates.of(versionedIndex)));
+
+			updateIndexSettings(versionedIndex, indexRefreshInterval, indexReplicas);
+			versionedOps.refresh();
+		} catch (Exception e) {
+			log.error("Error building index " + versionedIndex + ", " + alias + " is unchanged: " + e.getLocalizedMessage());
+			try {
+				versionedOps.delete();
+			} catch (Exception deleteException) {
+				log.warn("Unable to delete index " + versionedIndex + ": " + deleteException.getLocalizedMessage());
+			}
+			throw e instanceof DataAccessResourceFailureException ? (DataAccessResourceFailureException) e
+					: new DataAccessResourceFailureException("Error building index " + versionedIndex, e);
+		}
+
+		// Point the alias at the new index in a single request
+		IndexOperations aliasOps = elasticsearchOperations.indexOps(IndexCoordinates.of(alias));
+		Set<String> previousIndices = new HashSet<String>();
+		try {
+			previousIndices.addAll(aliasOps.getAliases(alias).keySet());
+		} catch (Exception e) {
+			log.debug("No existing indices for alias " + alias + ": " + e.getLocalizedMessage());
+		}
+		List<AliasAction> actions = new ArrayList<AliasAction>();
+		if (previousIndices.isEmpty() && aliasOps.exists()) {
+			actions.add(new AliasAction.RemoveIndex(AliasActionParameters.builder().withIndices(alias).build()));
+		} else if (!previousIndices.isEmpty()) {
+			actions.add(new AliasAction.Remove(AliasActionParameters.builder()
+					.withIndices(previousIndices.toArray(new String[previousIndices.size()])).withAliases(alias).build()));
+		}
+		actions.add(new AliasAction.Add(AliasActionParameters.builder().withIndices(versionedIndex).withAliases(alias).build()));
+		aliasOps.alias(new AliasActions(actions.toArray(new AliasAction[actions.size()])));
+		invalidateSearchCache();
+
+		for (String previousIndex : previousIndices) {
+			try {
+				elasticsearchOperations.indexOps(IndexCoordinates.of(previousIndex)).delete();
+			} catch (Exception e) {
+				log.warn("Unable to delete previous index " + previousIndex + ": " + e.getLocalizedMessage());
+			}
+		}
+
+		log.info(String.format("Reindexed %1$d CSW records into %2$s at %3$.0f records/s", cswRecords.size(), versionedIndex, recordsPerSecond));
+		return recordsPerSecond;
+	}
+
+	/**
+	 * Save records in PAGE_SIZE bulk requests, with at most bulkConcurrency requests in flight.
+	 * 
+	 * The calling thread always saves batches itself and up to bulkConcurrency - 1 helpers are run on the shared
+	 * bulkExecutor, so saving progresses even when every thread of the executor is busy (e.g. when called from a
+	 * CSW cache update thread). The first failed batch stops any further batches from being started.
+	 * 
+	 * @param cswRecords the CSWRecords to save
+	 * @param saveBatch saves a single batch of records
+	 * @return the throughput in records per second
+	 */
+	private double bulkSave(final List<CSWRecord> cswRecords, final Consumer<List<CSWRecord>> saveBatch)
+			throws DataAccessResourceFailureException {
+		long startTime = System.nanoTime();
+		List<List<CSWRecord>> batchRecords = Lists.partition(cswRecords, PAGE_SIZE);
+		int batchCount = batchRecords.size();
+		AtomicInteger nextBatch = new AtomicInteger();
+		CountDownLatch savedBatches = new CountDownLatch(batchCount);
+		AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		Runnable worker = () -> {
+			for (int i = nextBatch.getAndIncrement(); i < batchCount; i = nextBatch.getAndIncrement()) {
+				try {
+					saveBatch.accept(batchRecords.get(i));
+				} catch (RuntimeException e) {
+					failure.compareAndSet(null, e);
+					// Skip the batches that haven't been started
+					for (int skipped = nextBatch.getAndSet(batchCount); skipped < batchCount; skipped++) {
+						savedBatches.countDown();
+					}
+				} finally {
+					savedBatches.countDown();
+				}
+			}
+		};
+
+		int helpers = bulkExecutor == null ? 0 : Math.min(bulkConcurrency, batchCount) - 1;
+		try {
+			for (int i = 0; i < helpers; i++) {
+				bulkExecutor.execute(worker);
+			}
+		} catch (RejectedExecutionException e) {
+			log.debug("Bulk executor is saturated, saving the remaining batches on the calling thread");
+		}
+		worker.run();
+		try {
+			savedBatches.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DataAccessResourceFailureException("Interrupted while indexing CSW records", e);
+		}
+
+		RuntimeException failed = failure.get();
+		if (failed instanceof DataAccessResourceFailureException) {
+			throw (DataAccessResourceFailureException) failed;
+		} else if (failed != null) {
+			throw new DataAccessResourceFailureException("Error indexing CSW records", failed);
+		}
+		double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+		return cswRecords.size() / seconds;
+	}
+
+	/**
+	 * Update the refresh interval and replica count of an index
+	 * 
+	 * @param indexName the index to update
+	 * @param refreshInterval the refresh interval (e.g. 1s)
+	 * @param replicas the number of replicas
+	 * @throws IOException
+	 */
+	protected void updateIndexSettings(String indexName, String refreshInterval, int replicas) throws IOException {
+		elasticsearchClient.indices().putSettings(r -> r
+				.index(indexName)
+				.settings(is -> is
+						.refreshInterval(t -> t.time(refreshInterval))
+						.numberOfReplicas(Integer.toString(replicas))));
+	}
+
 	/**
 	 * Update the current CSWRecord in the index
 	 * 
@@ -242,24 +508,24 @@ public class ElasticsearchService {
 			this.recordRepository.save(cswRecord);
 		} catch (DataAccessResourceFailureException e) {
 			throw e;
+		} finally {
+			invalidateSearchCache();
 		}
 	}
 
 	/**
 	 * Update a List of CSWRecords. Currently used by the KnownLayerService to
 	 * update the KnownLayerIds lists of CSWRecords. Does not calculate bounding
-	 * polygon information.
+	 * polygon information. Records are saved in concurrent batches as they are
+	 * by {@link #bulkUpdateCSWRecords(List)}.
 	 * 
 	 * @param cswRecords List of CSWRecords
 	 */
 	public void updateCSWRecords(final List<CSWRecord> cswRecords) throws DataAccessResourceFailureException {
 		try {
-			List<List<CSWRecord>> batchRecords = Lists.partition(cswRecords, PAGE_SIZE);
-			for (List<CSWRecord> recordSet : batchRecords) {
-				this.recordRepository.saveAll(recordSet);
-			}
-		} catch (DataAccessResourceFailureException e) {
-			throw e;
+			bulkSave(cswRecords, recordSet -> this.recordRepository.saveAll(recordSet));
+		} finally {
+			invalidateSearchCache();
 		}
 	}
 
@@ -362,7 +628,7 @@ public class ElasticsearchService {
 	}
 
 	/**
-	 * Construct a spatial bound Criteria if bounds have been supplied
+	 * Construct a spatial bounds query if bounds have been supplied
 	 * 
 	 * @param spatialField the filed containing the spatial object
 	 * @param spatialRelation the relation (e.g. intersects)
@@ -370,45 +636,143 @@ public class ElasticsearchService {
 	 * @param eastBoundLongitude east bound longitude
 	 * @param southBoundLatitude south bound latitude
 	 * @param northBoundLatitude north bound latitude
-	 * @return the spatial Criteria object to apply during searching
+	 * @param points a list of points representing a polygon (used if bounds are not supplied)
+	 * @return the geo_shape query to filter by, or null if there is no spatial restriction
 	 */
-	private Criteria createSpatialBoundsCriteria(
+	private co.elastic.clients.elasticsearch._types.query_dsl.Query createSpatialBoundsQuery(
 			String spatialField, String spatialRelation,
 			final Double westBoundLongitude, final Double eastBoundLongitude, final Double southBoundLatitude,
 			final Double northBoundLatitude, final List<Point> points) {
-		
-		Criteria spatialCriteria = null;
+		if (spatialRelation == null) {
+			return null;
+		}
+
+		// GeoJSON polygon ring, coordinates are [longitude, latitude]
+		List<List<Double>> ring = new ArrayList<List<Double>>();
+		if (northBoundLatitude != null && eastBoundLongitude != null && southBoundLatitude != null && westBoundLongitude != null) {
+			ring.add(Arrays.asList(westBoundLongitude, northBoundLatitude));
+			ring.add(Arrays.asList(westBoundLongitude, southBoundLatitude));
+			ring.add(Arrays.asList(eastBoundLongitude, southBoundLatitude));
+			ring.add(Arrays.asList(eastBoundLongitude, northBoundLatitude));
+			ring.add(Arrays.asList(westBoundLongitude, northBoundLatitude));
+		} else if (points != null && points.size() > 2) {
+			for (Point point : points) {
+				ring.add(Arrays.asList(point.getX(), point.getY()));
+			}
+			if (!ring.get(0).equals(ring.get(ring.size() - 1))) {
+				ring.add(ring.get(0));
+			}
+		} else {
+			return null;
+		}
+
+		GeoShapeRelation relation;
+		switch(spatialRelation) {
+			case "contains":
+				relation = GeoShapeRelation.Contains;
+				break;
+			case "within":
+				relation = GeoShapeRelation.Within;
+				break;
+			case "intersects":
+			default:
+				relation = GeoShapeRelation.Intersects;
+				break;
+		}
+		JsonData shape = JsonData.of(Map.of("type", "Polygon", "coordinates", List.of(ring)));
+		return QueryBuilders.geoShape(g -> g
+				.field(spatialField)
+				.shape(gs -> gs.shape(shape).relation(relation)));
+	}
+
+	/**
+	 * Create a query_string query for a single field, as Criteria.expression does. Terms are ANDed, so a multi term
+	 * query only matches records containing every term, as Criteria.expression did.
+	 * 
+	 * @param field the field to query
+	 * @param text the query_string text
+	 * @param boost the query boost
+	 * @return the query
+	 */
+	private static co.elastic.clients.elasticsearch._types.query_dsl.Query createFieldExpressionQuery(String field,
+			String text, float boost) {
+		return QueryBuilders.queryString(qs -> qs.fields(field).query(text).boost(boost).defaultOperator(Operator.And));
+	}
+
+	/**
+	 * Escape the query_string reserved characters in text so that it is matched literally
+	 * 
+	 * @param text the text to escape
+	 * @return the escaped text
+	 */
+	private static String escapeQueryString(String text) {
+		StringBuilder sb = new StringBuilder(text.length() + 8);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (QUERY_STRING_RESERVED_CHARS.indexOf(c) >= 0) {
+				sb.append('\\');
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Create the search cache key for a set of (normalised) search parameters. Parameters that can be supplied in any
+	 * order are sorted so that equivalent searches share an entry.
+	 */
+	private static String createSearchCacheKey(String matchPhraseText, List<String> cswRecordFields, Integer page,
+			Integer pageSize, List<String> ogcServices, String spatialRelation, Double westBoundLongitude,
+			Double eastBoundLongitude, Double southBoundLatitude, Double northBoundLatitude, List<Point> points) {
+		List<String> sortedFields = new ArrayList<String>(cswRecordFields);
+		Collections.sort(sortedFields);
+		List<String> sortedServices = new ArrayList<String>();
+		if (ogcServices != null) {
+			sortedServices.addAll(ogcServices);
+			Collections.sort(sortedServices);
+		}
+		StringBuilder key = new StringBuilder();
+		key.append(StringUtils.defaultString(matchPhraseText)).append('\u0000')
+			.append(sortedFields).append('\u0000')
+			.append(page).append('/').append(pageSize).append('\u0000')
+			.append(sortedServices).append('\u0000');
 		if (spatialRelation != null) {
-			GeoJsonPolygon boundsPoly = null;
-			
-			if (northBoundLatitude != null && eastBoundLongitude != null && southBoundLatitude != null && westBoundLongitude != null) {
-				// GeoJsonPolygon from supplied bounds
-				boundsPoly = GeoJsonPolygon.of(
-						new GeoPoint(northBoundLatitude, westBoundLongitude),
-						new GeoPoint(southBoundLatitude, westBoundLongitude),
-						new GeoPoint(southBoundLatitude, eastBoundLongitude),
-						new GeoPoint(northBoundLatitude, eastBoundLongitude),
-						new GeoPoint(northBoundLatitude, westBoundLongitude));
-			} else if(points != null && points.size() > 2) {
-				boundsPoly = GeoJsonPolygon.of(points);
-			}
-			
-			if (boundsPoly != null) {
-				switch(spatialRelation) {
-					case "contains":
-						spatialCriteria = new Criteria(spatialField).contains(boundsPoly);
-						break;
-					case "within":
-						spatialCriteria = new Criteria(spatialField).within(boundsPoly);
-						break;
-					case "intersects":
-					default:
-						spatialCriteria = new Criteria(spatialField).intersects(boundsPoly);
-						break;
+			key.append(spatialRelation).append(':')
+				.append(westBoundLongitude).append(',').append(eastBoundLongitude).append(',')
+				.append(southBoundLatitude).append(',').append(northBoundLatitude);
+			if (points != null) {
+				for (Point point : points) {
+					key.append(';').append(point.getX()).append(',').append(point.getY());
 				}
 			}
 		}
-		return spatialCriteria;
+		return key.toString();
+	}
+
+	/**
+	 * Copy a search response, so callers may modify the records of a response (e.g. to remove online resources)
+	 * without affecting the copy held by the search cache
+	 * 
+	 * @param response the response to copy
+	 * @return a copy of the response whose records are clones of the response's records
+	 */
+	private static CSWRecordSearchResponse copySearchResponse(CSWRecordSearchResponse response) {
+		List<CSWRecord> cswRecords = new ArrayList<CSWRecord>(response.getCSWRecords().size());
+		for (CSWRecord record : response.getCSWRecords()) {
+			cswRecords.add(record.clone());
+		}
+		return new CSWRecordSearchResponse(response.getTotalCSWRecordHits(), cswRecords,
+				new ArrayList<String>(response.getKnownLayerIds()));
+	}
+
+	/**
+	 * Discard all cached search results. Called whenever the CSWRecord index is written to.
+	 */
+	private void invalidateSearchCache() {
+		synchronized (searchCache) {
+			searchCacheGeneration++;
+			searchCache.clear();
+		}
 	}
 
 	/**
@@ -428,7 +792,9 @@ public class ElasticsearchService {
 	 * @param northBoundLatitude north bounds for the spatial criteria (optional)
 	 * @param points             a list of points representing a polygon for spatial searching (optional)
 	 * @return                   a CSWRecordSearchResponse object containing a List of CSWRecord objects
-	 *                           matching the search criteria and a List of matching KnownLayer IDs 
+	 *                           matching the search criteria and a List of matching KnownLayer IDs. The
+	 *                           response may be shared with other callers (it is cached) and must not be
+	 *                           modified.
 	 */
 	public CSWRecordSearchResponse searchCSWRecords(final String matchPhraseText, final List<String> queryFields,
 			final Integer page, final Integer pageSize, final List<String> ogcServices, final String spatialRelation,
@@ -446,23 +812,44 @@ public class ElasticsearchService {
 			}
 		}
 
-		// Construct Criteria from text query
-		Criteria cswSearchCriteria = null;
+		Pageable pageable = PageRequest.of(0, PAGE_SIZE);
+		if (page != null && pageSize != null) {
+			pageable = PageRequest.of(page, pageSize);
+		}
+
+		// Serve repeated searches from the cache, unless the index has changed since they were made
+		String cacheKey = null;
+		long generation = 0;
+		if (searchCacheSize > 0) {
+			cacheKey = createSearchCacheKey(matchPhraseText, cswRecordFields, pageable.getPageNumber(),
+					pageable.getPageSize(), ogcServices, spatialRelation, westBoundLongitude, eastBoundLongitude,
+					southBoundLatitude, northBoundLatitude, points);
+			CSWRecordSearchResponse cached;
+			synchronized (searchCache) {
+				generation = searchCacheGeneration;
+				cached = searchCache.get(cacheKey);
+			}
+			// Cached records are never handed out, callers may modify the records they're given
+			if (cached != null) {
+				return copySearchResponse(cached);
+			}
+		}
+
+		// Text query, the only part of the search that is scored
+		BoolQuery.Builder textQuery = new BoolQuery.Builder().minimumShouldMatch("1");
+		boolean hasTextQuery = false;
 		if (StringUtils.isNotBlank(matchPhraseText)) {
 			try {
 				final float phraseBoostMultiplier = 3.0f;
 				
-				// Build Criteria per field
+				// Build query per field
 				for (String field : cswRecordFields) {
 					Float fieldWeight = CSWRECORD_QUERY_FIELDS.getOrDefault(field, 1.0f);
+					hasTextQuery = true;
 					 
-					// If no spaces, just use an expression Criteria and move on
+					// If no spaces, just use an expression query and move on
 					if (!StringUtils.contains(matchPhraseText, " ")) {
-						Criteria expressionCriteria = new Criteria(field)
-								.expression(matchPhraseText)
-								.boost(phraseBoostMultiplier * fieldWeight);
-
-						cswSearchCriteria = (cswSearchCriteria == null) ? expressionCriteria : cswSearchCriteria.or(expressionCriteria);
+						textQuery.should(createFieldExpressionQuery(field, matchPhraseText, phraseBoostMultiplier * fieldWeight));
 						continue;
 					}
 
@@ -472,20 +859,14 @@ public class ElasticsearchService {
 							matchPhraseText.contains("\"") ? matchPhraseText : "\"" + matchPhraseText + "\"";
 
 					// Boost the phrase query results
-					Criteria phraseCriteria = new Criteria(field)
-							.expression(quotedMatchPhraseText)
-							.boost(phraseBoostMultiplier * fieldWeight);
+					textQuery.should(createFieldExpressionQuery(field, quotedMatchPhraseText, phraseBoostMultiplier * fieldWeight));
 
-					// If quotes use the current phase criteria, otherwise we'll construct a term criteria as well.
+					// If no quotes we'll construct a term query as well.
 					// Note: we're also limiting KnownLayer searches to phrase searching as queries such as "mt isa" would
 					// match KnownLayers containing (for example) "mt" and "polarisation" and put them to the top of the list. 
-					if (matchPhraseText.contains("\"") || field.equals("knownLayerNames")) {
-						cswSearchCriteria = (cswSearchCriteria == null) ? phraseCriteria: cswSearchCriteria.or(phraseCriteria);
-					} else {
+					if (!matchPhraseText.contains("\"") && !field.equals("knownLayerNames")) {
 						// No boosting beyond the default field weights for term query
-						Criteria termCriteria = new Criteria(field).expression(matchPhraseText).boost(fieldWeight);
-						Criteria combined = phraseCriteria.or(termCriteria);
-						cswSearchCriteria = (cswSearchCriteria == null) ? combined : cswSearchCriteria.or(combined);
+						textQuery.should(createFieldExpressionQuery(field, matchPhraseText, fieldWeight));
 					}
 				}
 			} catch (Exception e) {
@@ -494,36 +875,37 @@ public class ElasticsearchService {
 			}
 		}
 
-		// Spatial Criteria
-		Criteria spatialCriteria = createSpatialBoundsCriteria("cswGeographicElements.boundingPolygon", spatialRelation,
-				westBoundLongitude, eastBoundLongitude, southBoundLatitude, northBoundLatitude, points);
+		// Spatial and OGC service restrictions don't affect scoring, so are applied in filter context where
+		// Elasticsearch can cache them
+		BoolQuery.Builder searchQuery = new BoolQuery.Builder();
+		if (hasTextQuery) {
+			searchQuery.must(textQuery.build()._toQuery());
+		}
+
+		co.elastic.clients.elasticsearch._types.query_dsl.Query spatialQuery = createSpatialBoundsQuery(
+				"cswGeographicElements.boundingPolygon", spatialRelation, westBoundLongitude, eastBoundLongitude,
+				southBoundLatitude, northBoundLatitude, points);
+		if (spatialQuery != null) {
+			searchQuery.filter(spatialQuery);
+		}
 
-		// OGC services query
-		Criteria ogcServicesCriteria = null;
 		if (ogcServices != null && ogcServices.size() > 0) {
-			ogcServicesCriteria = new Criteria();
+			BoolQuery.Builder ogcServicesQuery = new BoolQuery.Builder().minimumShouldMatch("1");
 			for (String service : ogcServices) {
-				Criteria serviceCriteria = new Criteria("onlineResources.protocol").contains(service);
-				ogcServicesCriteria = ogcServicesCriteria.or(serviceCriteria);
+				String protocolText = "*" + escapeQueryString(service) + "*";
+				ogcServicesQuery.should(QueryBuilders.queryString(qs -> qs
+						.fields("onlineResources.protocol")
+						.query(protocolText)
+						.analyzeWildcard(true)));
 			}
-		}
-
-		// Combine Criteria
-		Criteria cswRecordCriteria = cswSearchCriteria;
-		if (ogcServicesCriteria != null) {
-			cswRecordCriteria = Criteria.and().subCriteria(cswSearchCriteria).subCriteria(ogcServicesCriteria);
-		}
-		if (spatialCriteria != null) {
-			cswRecordCriteria = cswRecordCriteria.and(spatialCriteria);
+			searchQuery.filter(ogcServicesQuery.build()._toQuery());
 		}
 
 		// Search
-		Query cswRecordQuery = new CriteriaQuery(cswRecordCriteria);
-		Pageable pageable = PageRequest.of(0, PAGE_SIZE);
-		if (page != null && pageSize != null) {
-			pageable = PageRequest.of(page, pageSize);
-		}
-		cswRecordQuery.setPageable(pageable);
+		Query cswRecordQuery = NativeQuery.builder()
+				.withQuery(searchQuery.build()._toQuery())
+				.withPageable(pageable)
+				.build();
 
 		List<CSWRecord> recordResults = new ArrayList<CSWRecord>();
 		SearchHits<CSWRecord> searchHits = null;
@@ -544,8 +926,18 @@ public class ElasticsearchService {
 			}
 		}
 
-		return new CSWRecordSearchResponse(searchHits.getTotalHits(), recordResults,
+		CSWRecordSearchResponse response = new CSWRecordSearchResponse(searchHits.getTotalHits(), recordResults,
 				new ArrayList<String>(knownLayerIds));
+		if (cacheKey != null) {
+			CSWRecordSearchResponse cached = copySearchResponse(response);
+			synchronized (searchCache) {
+				// Results from before the index last changed may be stale
+				if (generation == searchCacheGeneration) {
+					searchCache.put(cacheKey, cached);
+				}
+			}
+		}
+		return response;
 	}
 	
 	/**
@@ -562,6 +954,7 @@ public class ElasticsearchService {
 	    try {
 	        log.info("Deleting " + ids.size() + " CSWRecords from index");
 	        this.recordRepository.deleteAllById(ids);
+	        invalidateSearchCache();
 	        log.info("Deleted CSWRecords: " + String.join(", ", ids));
 	    } catch (DataAccessResourceFailureException e) {
 	        throw e;
@@ -590,12 +983,30 @@ public class ElasticsearchService {
 	}
 
 	/**
-	 * Make a completion query in order to suggest terms
+	 * Suggest terms starting with prefix, most frequent first. Terms are served from the in memory completion
+	 * index, if the index hasn't been built yet (and fallback is enabled) Elasticsearch is queried instead.
 	 * 
-	 * @param query the start of the suggestion term
+	 * @param prefix the start of the suggestion term
 	 * @return a list of suggestion terms
 	 */
 	public List<String> suggestTerms(String prefix) {
+		CompletionTermIndex index = this.completionTermIndex;
+		if (index != null) {
+			return new ArrayList<String>(index.suggest(prefix));
+		}
+		if (!suggestionFallback) {
+			return new ArrayList<String>();
+		}
+		return suggestTermsFromElasticsearch(prefix);
+	}
+
+	/**
+	 * Make a completion query to Elasticsearch in order to suggest terms
+	 * 
+	 * @param prefix the start of the suggestion term
+	 * @return a list of suggestion terms
+	 */
+	protected List<String> suggestTermsFromElasticsearch(String prefix) {
 		Set<String> terms = new HashSet<String>();
 		try {
 			HttpPost method = createSuggestTermMethod(prefix);
@@ -627,6 +1038,9 @@ public class ElasticsearchService {
 	 * @param text  the text to split
 	 */
 	private void addSplitWords(Map<String, Integer> terms, String text) {
+		if (text == null) {
+			return;
+		}
 		// Split on anything that isn't a letter, number or '-'
 		String[] spaceSeparatedWords = text.split("[^a-zA-Z0-9-]+");
 		for (String word : spaceSeparatedWords) {
@@ -636,51 +1050,288 @@ public class ElasticsearchService {
 	}
 
 	/**
-	 * Index the completion terms from the list of CSWRecords
+	 * Returns true if a term should be stored as a completion suggestion
+	 * 
+	 * @param term the lower-cased word
+	 * @return true if the term is a valid suggestion
+	 */
+	private static boolean isSuggestionTerm(String term) {
+		return StringUtils.isNotBlank(term) && term.length() > 2 && term.length() < 100;
+	}
+
+	/**
+	 * Splits the text fields of a CSWRecord into its completion term contributions
+	 * 
+	 * @param record the CSWRecord
+	 * @param contributions map of term to count that the record's terms will be added to
+	 */
+	private void addRecordTerms(CSWRecord record, Map<String, Integer> contributions) {
+		addSplitWords(contributions, record.getServiceName());
+		addSplitWords(contributions, record.getDataIdentificationAbstract());
+		if (record.getDescriptiveKeywords() != null) {
+			for (String keywords : record.getDescriptiveKeywords()) {
+				addSplitWords(contributions, keywords);
+			}
+		}
+		if (record.getKnownLayerNames() != null) {
+			for (String layerName : record.getKnownLayerNames()) {
+				addSplitWords(contributions, layerName);
+			}
+		}
+		if (record.getKnownLayerDescriptions() != null) {
+			for (String layerDescription : record.getKnownLayerDescriptions()) {
+				addSplitWords(contributions, layerDescription);
+			}
+		}
+	}
+
+	/**
+	 * Retrieve the weight of every suggestion in the suggestion index. Uses scrolling to get over the 10,000 result
+	 * maximum.
+	 * 
+	 * @return map of suggestion term to weight
+	 */
+	protected Map<String, Integer> getIndexedSuggestionCounts() {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		IndexCoordinates index = IndexCoordinates.of(cswSuggestionIndex);
+		Query query = NativeQuery.builder().withQuery(q -> q.matchAll(ma -> ma)).withPageable(PageRequest.of(0, PAGE_SIZE))
+				.build();
+		SearchScrollHits<CSWSuggestion> scroll = elasticsearchTemplate.searchScrollStart(PAGE_SIZE, query,
+				CSWSuggestion.class, index);
+		String scrollId = scroll.getScrollId();
+		while (scroll.hasSearchHits()) {
+			for (SearchHit<CSWSuggestion> searchHit : scroll.getSearchHits()) {
+				CSWSuggestion suggestion = searchHit.getContent();
+				Completion completion = suggestion.getSuggestionCompletion();
+				counts.put(suggestion.getId(), completion == null || completion.getWeight() == null ? 0 : completion.getWeight());
+			}
+			scrollId = scroll.getScrollId();
+			scroll = elasticsearchTemplate.searchScrollContinue(scrollId, PAGE_SIZE, CSWSuggestion.class, index);
+		}
+		elasticsearchTemplate.searchScrollClear(scrollId);
+		return counts;
+	}
+
+	/**
+	 * Builds the in memory completion index from the suggestion index so that suggestions are served from memory
+	 * at startup, rather than only once the next harvest has indexed its completion terms. Does nothing if the
+	 * completion index has already been built.
+	 */
+	public synchronized void restoreCompletionTerms() throws DataAccessResourceFailureException {
+		if (this.completionTermIndex != null) {
+			return;
+		}
+		if (indexedTermCounts == null) {
+			indexedTermCounts = getIndexedSuggestionCounts();
+		}
+		this.completionTermIndex = new CompletionTermIndex(indexedTermCounts, SUGGESTION_SIZE);
+		log.info(String.format("Restored %1$d suggestions from the suggestion index", indexedTermCounts.size()));
+	}
+
+	/**
+	 * Index the completion terms from the list of CSWRecords. Services without records in cswRecords are left as
+	 * they are.
 	 * 
 	 * @param cswRecords the list of CSWRecords to index search terms for
+	 * @see #indexCompletionTerms(List, boolean)
 	 */
 	public void indexCompletionTerms(List<CSWRecord> cswRecords) throws DataAccessResourceFailureException {
+		indexCompletionTerms(cswRecords, false);
+	}
+
+	/**
+	 * Index the completion terms from the list of CSWRecords.
+	 * 
+	 * The term contributions of every record are remembered between calls, keyed by the record's service, so that
+	 * only the suggestions whose count has changed (or that have appeared or disappeared) are written to or deleted
+	 * from the index. Each service that has records in cswRecords is treated as fully harvested, i.e. any record
+	 * previously indexed for that service that is missing from cswRecords has its terms removed.
+	 * 
+	 * The weights already stored in the suggestion index are read on the first call, and every write is checked
+	 * against them. After a full harvest the suggestion index is made to match cswRecords exactly, which removes
+	 * suggestions left over from services that are no longer harvested or from before a restart.
+	 * 
+	 * @param cswRecords the list of CSWRecords to index search terms for
+	 * @param fullHarvest true if cswRecords holds the records of every service, in which case services without
+	 *                    records in cswRecords have all of their terms removed
+	 */
+	public synchronized void indexCompletionTerms(List<CSWRecord> cswRecords, boolean fullHarvest)
+			throws DataAccessResourceFailureException {
 		log.info("Indexing CSW record suggestions");
-		// Map of terms with appearance count
-		Map<String, Integer> uniqueTerms = new HashMap<String, Integer>();
+		long startTime = System.currentTimeMillis();
+
+		if (indexedTermCounts == null) {
+			indexedTermCounts = getIndexedSuggestionCounts();
+			log.info(String.format("Read %1$d existing suggestions from the suggestion index", indexedTermCounts.size()));
+		}
+
+		// Group the term contributions of the supplied records by service and record ID
+		Map<String, Map<String, RecordTerms>> harvestedTerms = new HashMap<String, Map<String, RecordTerms>>();
+		Map<String, Map<String, Map<String, Integer>>> harvestedCounts = new HashMap<String, Map<String, Map<String, Integer>>>();
 		for (CSWRecord record : cswRecords) {
-			addSplitWords(uniqueTerms, record.getServiceName());
-			addSplitWords(uniqueTerms, record.getDataIdentificationAbstract());
-			for (String keywords : record.getDescriptiveKeywords()) {
-				addSplitWords(uniqueTerms, keywords);
+			String serviceId = record.getServiceId() == null ? "" : record.getServiceId();
+			String recordId = record.getFileIdentifier() == null ? "" : record.getFileIdentifier();
+			Map<String, Integer> contributions = harvestedCounts
+					.computeIfAbsent(serviceId, k -> new HashMap<String, Map<String, Integer>>())
+					.computeIfAbsent(recordId, k -> new HashMap<String, Integer>());
+			addRecordTerms(record, contributions);
+		}
+		for (Map.Entry<String, Map<String, Map<String, Integer>>> service : harvestedCounts.entrySet()) {
+			Map<String, RecordTerms> records = new HashMap<String, RecordTerms>();
+			for (Map.Entry<String, Map<String, Integer>> record : service.getValue().entrySet()) {
+				records.put(record.getKey(), RecordTerms.of(record.getValue()));
 			}
-			if (record.getKnownLayerNames() != null) {
-				for (String layerName : record.getKnownLayerNames()) {
-					addSplitWords(uniqueTerms, layerName);
+			harvestedTerms.put(service.getKey(), records);
+		}
+
+		// Work out the change in count of each term
+		Map<String, Integer> deltas = new HashMap<String, Integer>();
+		for (Map.Entry<String, Map<String, RecordTerms>> service : harvestedTerms.entrySet()) {
+			Map<String, RecordTerms> previousRecords = recordTerms.getOrDefault(service.getKey(), Collections.emptyMap());
+			for (Map.Entry<String, RecordTerms> record : service.getValue().entrySet()) {
+				RecordTerms previous = previousRecords.get(record.getKey());
+				if (!record.getValue().equals(previous)) {
+					if (previous != null) {
+						previous.addTo(deltas, -1);
+					}
+					record.getValue().addTo(deltas, 1);
 				}
 			}
-			if (record.getKnownLayerDescriptions() != null) {
-				for (String layerDescription : record.getKnownLayerDescriptions()) {
-					addSplitWords(uniqueTerms, layerDescription);
+			for (Map.Entry<String, RecordTerms> record : previousRecords.entrySet()) {
+				if (!service.getValue().containsKey(record.getKey())) {
+					record.getValue().addTo(deltas, -1);
 				}
 			}
 		}
-		if (uniqueTerms.size() > 0) {
-			List<CSWSuggestion> suggestionList = new ArrayList<CSWSuggestion>();
-			for (Map.Entry<String, Integer> term : uniqueTerms.entrySet()) {
-				if (StringUtils.isNotBlank(term.getKey()) && term.getKey().length() > 2
-						&& term.getKey().length() < 100) {
-					CSWSuggestion suggestion = new CSWSuggestion(term.getKey(), term.getValue());
-					suggestionList.add(suggestion);
+		if (fullHarvest) {
+			for (Map.Entry<String, Map<String, RecordTerms>> service : recordTerms.entrySet()) {
+				if (!harvestedTerms.containsKey(service.getKey())) {
+					for (RecordTerms record : service.getValue().values()) {
+						record.addTo(deltas, -1);
+					}
 				}
 			}
+		}
 
-			List<List<CSWSuggestion>> batchSuggestions = Lists.partition(suggestionList, 100);
-			for (List<CSWSuggestion> suggestionSet : batchSuggestions) {
-				try {
-					suggestionRepository.saveAll(suggestionSet);
-				} catch (DataAccessResourceFailureException e) {
-					throw e;
+		// Apply the changes to a copy of the term counts so a failed write leaves the current state intact
+		Map<String, Integer> newTermCounts = new HashMap<String, Integer>(termCounts);
+		for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+			if (delta.getValue() == 0) {
+				continue;
+			}
+			int count = newTermCounts.getOrDefault(delta.getKey(), 0) + delta.getValue();
+			if (count > 0) {
+				newTermCounts.put(delta.getKey(), count);
+			} else {
+				newTermCounts.remove(delta.getKey());
+			}
+		}
+
+		// Compare the changed terms (or after a full harvest, every term) with what is in the suggestion index
+		Set<String> candidates = new HashSet<String>();
+		for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+			if (delta.getValue() != 0) {
+				candidates.add(delta.getKey());
+			}
+		}
+		if (fullHarvest) {
+			candidates.addAll(newTermCounts.keySet());
+			candidates.addAll(indexedTermCounts.keySet());
+		}
+		Map<String, Integer> newIndexedTermCounts = new HashMap<String, Integer>(indexedTermCounts);
+		List<CSWSuggestion> changedSuggestions = new ArrayList<CSWSuggestion>();
+		List<String> removedSuggestions = new ArrayList<String>();
+		for (String term : candidates) {
+			Integer count = newTermCounts.get(term);
+			if (count != null) {
+				if (!count.equals(indexedTermCounts.get(term))) {
+					newIndexedTermCounts.put(term, count);
+					changedSuggestions.add(new CSWSuggestion(term, count));
+				}
+			} else if (indexedTermCounts.containsKey(term)) {
+				newIndexedTermCounts.remove(term);
+				removedSuggestions.add(term);
+			}
+		}
+
+		// Swap in the new in memory index (which mirrors the suggestion index) before writing to Elasticsearch so
+		// suggestions don't depend on it
+		if (!changedSuggestions.isEmpty() || !removedSuggestions.isEmpty() || this.completionTermIndex == null) {
+			this.completionTermIndex = new CompletionTermIndex(newIndexedTermCounts, SUGGESTION_SIZE);
+		}
+
+		for (List<CSWSuggestion> suggestionSet : Lists.partition(changedSuggestions, 100)) {
+			suggestionRepository.saveAll(suggestionSet);
+		}
+		for (List<String> idSet : Lists.partition(removedSuggestions, 100)) {
+			suggestionRepository.deleteAllById(idSet);
+		}
+
+		Map<String, Map<String, RecordTerms>> newRecordTerms = new HashMap<String, Map<String, RecordTerms>>();
+		if (!fullHarvest) {
+			newRecordTerms.putAll(recordTerms);
+		}
+		newRecordTerms.putAll(harvestedTerms);
+		this.recordTerms = newRecordTerms;
+		this.termCounts = newTermCounts;
+		this.indexedTermCounts = newIndexedTermCounts;
+
+		log.info(String.format("Indexing CSW record suggestions complete (%1$d written, %2$d deleted, %3$d unchanged) in %4$dms",
+				changedSuggestions.size(), removedSuggestions.size(),
+				newIndexedTermCounts.size() - changedSuggestions.size(), System.currentTimeMillis() - startTime));
+	}
+
+	/**
+	 * The completion terms contributed by a single CSWRecord, sorted by term so that contributions can be compared
+	 * cheaply between harvests. Term strings are shared with the other records where possible.
+	 */
+	private static class RecordTerms {
+		private static final RecordTerms EMPTY = new RecordTerms(new String[0], new int[0]);
+
+		final String[] terms;
+		final int[] counts;
+
+		private RecordTerms(String[] terms, int[] counts) {
+			this.terms = terms;
+			this.counts = counts;
+		}
+
+		static RecordTerms of(Map<String, Integer> contributions) {
+			List<String> terms = new ArrayList<String>(contributions.size());
+			for (String term : contributions.keySet()) {
+				if (isSuggestionTerm(term)) {
+					terms.add(term.intern());
 				}
 			}
+			if (terms.isEmpty()) {
+				return EMPTY;
+			}
+			Collections.sort(terms);
+			int[] counts = new int[terms.size()];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = contributions.get(terms.get(i));
+			}
+			return new RecordTerms(terms.toArray(new String[terms.size()]), counts);
+		}
+
+		void addTo(Map<String, Integer> deltas, int sign) {
+			for (int i = 0; i < terms.length; i++) {
+				deltas.merge(terms[i], sign * counts[i], Integer::sum);
+			}
+		}
 
-			log.info("Indexing CSW record suggestions complete (" + suggestionList.size() + " records)");
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof RecordTerms)) {
+				return false;
+			}
+			RecordTerms other = (RecordTerms) o;
+			return Arrays.equals(terms, other.terms) && Arrays.equals(counts, other.counts);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Arrays.hashCode(terms) + Arrays.hashCode(counts);
 		}
 	}
 	
@@ -703,5 +1354,39 @@ public class ElasticsearchService {
 	protected void setElasticsearchSuggestionUrl(URL elasticSearchSuggestionUrl) {
 		this.elasticsearchSuggestionUrl = elasticSearchSuggestionUrl;
 	}
+	
+	protected void setSuggestionFallback(boolean suggestionFallback) {
+		this.suggestionFallback = suggestionFallback;
+	}
+	
+	protected void setAliasReindex(boolean aliasReindex) {
+		this.aliasReindex = aliasReindex;
+	}
+	
+	protected void setSearchCacheSize(int searchCacheSize) {
+		this.searchCacheSize = searchCacheSize;
+	}
+	
+	protected void setBulkConcurrency(int bulkConcurrency) {
+		this.bulkConcurrency = bulkConcurrency;
+	}
+
+	/**
+	 * Sets the shared executor that concurrent bulk requests are run on
+	 * 
+	 * @param bulkExecutor the executor, if null bulk requests are made by the calling thread
+	 */
+	public void setBulkExecutor(Executor bulkExecutor) {
+		this.bulkExecutor = bulkExecutor;
+	}
+	
+	/**
+	 * Returns the current in memory completion index
+	 * 
+	 * @return the index or null if completion terms have not been indexed yet
+	 */
+	public CompletionTermIndex getCompletionTermIndex() {
+		return completionTermIndex;
+	}
 
 }
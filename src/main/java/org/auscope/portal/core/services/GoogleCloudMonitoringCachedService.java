@@ -3,31 +3,64 @@ package org.auscope.portal.core.services;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.auscope.portal.core.services.methodmakers.GoogleCloudMonitoringMethodMaker;
 import org.auscope.portal.core.services.responses.stackdriver.ServiceStatusResponse;
 
 /**
  * A caching extension built around GoogleCloudMonitoringService, inspired by Nagios4CachedService.
  *
+ * Statuses are cached per service group and read without locking. Once an entry is older than the TTL (less a random
+ * jitter so that groups don't all expire together) it is still returned immediately while a single background refresh
+ * for its group replaces it. Callers only wait on the remote monitoring call when there is no entry for a group yet or
+ * the entry has been stale for longer than the maximum staleness.
+ *
  * @author Josh Vote (CSIRO)
  * @author Rini Angreani (CSIRO)
  *
  */
 public class GoogleCloudMonitoringCachedService extends GoogleCloudMonitoringService {
 
+    private final Log logger = LogFactory.getLog(getClass());
+
     public static final long DEFAULT_TTL_SECONDS = 60 * 15; //15 Minutes
+    public static final long DEFAULT_MAX_STALENESS_SECONDS = 60 * 15; //15 Minutes
+    public static final double DEFAULT_REFRESH_JITTER = 0.1;
 
     /** How long a cache entry can exist before it requires an update*/
     private long ttlSeconds = DEFAULT_TTL_SECONDS;
+    /** How long past the TTL a cache entry can still be returned while it is being updated (negative for no limit)*/
+    private long maxStalenessSeconds = DEFAULT_MAX_STALENESS_SECONDS;
+    /** Fraction of the TTL by which an entry's update may be randomly brought forward*/
+    private double refreshJitter = DEFAULT_REFRESH_JITTER;
     private ConcurrentHashMap<String, CacheEntry> cache; //cache entries keyed by service group
+    private ConcurrentHashMap<String, CompletableFuture<CacheEntry>> refreshes; //in progress updates keyed by service group
+    private Executor executor;
 
 	private Map<String, List<String>> servicesMap;
 
     public GoogleCloudMonitoringCachedService(GoogleCloudMonitoringMethodMaker methodMaker) {
         super(methodMaker);
         cache = new ConcurrentHashMap<String, CacheEntry>();
+        refreshes = new ConcurrentHashMap<String, CompletableFuture<CacheEntry>>();
+        executor = createDefaultExecutor();
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "google-cloud-monitoring-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     public long getTtlSeconds() {
@@ -38,6 +71,35 @@ public class GoogleCloudMonitoringCachedService extends GoogleCloudMonitoringSer
         this.ttlSeconds = ttlSeconds;
     }
 
+    public long getMaxStalenessSeconds() {
+        return maxStalenessSeconds;
+    }
+
+    public void setMaxStalenessSeconds(long maxStalenessSeconds) {
+        this.maxStalenessSeconds = maxStalenessSeconds;
+    }
+
+    public double getRefreshJitter() {
+        return refreshJitter;
+    }
+
+    /**
+     * @param refreshJitter
+     *            Fraction of the TTL (0 to 1) by which an entry's update may be randomly brought forward
+     */
+    public void setRefreshJitter(double refreshJitter) {
+        this.refreshJitter = Math.max(0, Math.min(1, refreshJitter));
+    }
+
+    /**
+     * Sets the executor used for background updates of stale entries
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
     public void setServicesMap(Map<String, List<String>> servicesMap) {
     	this.servicesMap = servicesMap;
     }
@@ -49,81 +111,147 @@ public class GoogleCloudMonitoringCachedService extends GoogleCloudMonitoringSer
     /**
      * See parent implementation for details on method.
      *
-     * This method is synchronised to avoid swarms of requests going out when the cache entries expire. The cache lookups should be super
-     * fast so unless we are servicing tens of thousands of simultaneous requests, this should hold up fine.
+     * This method never blocks on another service group. A stale entry is returned immediately (up to the maximum
+     * staleness) while it is updated in the background, and concurrent callers share a single update per service group
+     * rather than sending swarms of requests when an entry expires.
      * @param serviceGroup
      *
      *
      * @see GoogleCloudMonitoringService.getStatuses
      */
-	public synchronized Map<String, List<ServiceStatusResponse>> getStatuses(String serviceGroup) throws PortalServiceException {
-
+	public Map<String, List<ServiceStatusResponse>> getStatuses(String serviceGroup) throws PortalServiceException {
+        long now = System.currentTimeMillis();
     	CacheEntry cacheEntry = cache.get(serviceGroup);
 
     	if (cacheEntry != null) {
+            if (now < cacheEntry.getRefreshAfter()) {
+                return cacheEntry.getStatuses();
+            }
 
-       		// check if within cache period
-            long differenceSeconds = (new Date().getTime() - cacheEntry.getCreated().getTime()) / 1000l;
-           	if (differenceSeconds < ttlSeconds) {
-
-           		// throw exception if within cache period
-               	if(cacheEntry.getPortalServiceException() != null){
-               		throw cacheEntry.getPortalServiceException();
-               	}
-            	// return cache
-            	return cacheEntry.responses;
-             }
+            // stale - return it while it is updated, unless it has been stale for too long
+            long staleSeconds = (now - cacheEntry.getCreated().getTime()) / 1000l - ttlSeconds;
+            if (maxStalenessSeconds < 0 || staleSeconds < maxStalenessSeconds) {
+                refresh(serviceGroup, true);
+                return cacheEntry.getStatuses();
+            }
     	}
-    	Map<String, List<ServiceStatusResponse>> responses;
+
+        try {
+            return refresh(serviceGroup, false).join().getStatuses();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Starts updating the entry for serviceGroup unless an update is already in progress
+     *
+     * @param serviceGroup
+     * @param background
+     *            If true a new update is run on the executor, otherwise it is run by the calling thread
+     * @return The (possibly already) in progress update
+     */
+    private CompletableFuture<CacheEntry> refresh(String serviceGroup, boolean background) {
+        CompletableFuture<CacheEntry> future = new CompletableFuture<CacheEntry>();
+        CompletableFuture<CacheEntry> existing = refreshes.putIfAbsent(serviceGroup, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        Runnable update = () -> {
+            try {
+                CacheEntry cacheEntry = load(serviceGroup);
+                cache.put(serviceGroup, cacheEntry);
+                refreshes.remove(serviceGroup, future);
+                future.complete(cacheEntry);
+            } catch (RuntimeException ex) {
+                logger.warn(String.format("Unable to update service statuses for '%1$s': %2$s", serviceGroup, ex.getMessage()));
+                refreshes.remove(serviceGroup, future);
+                future.completeExceptionally(ex);
+            }
+        };
+
+        if (background) {
+            try {
+                executor.execute(update);
+            } catch (RuntimeException ex) {
+                // eg the executor is shutting down, the stale entry will be updated by a later request
+                refreshes.remove(serviceGroup, future);
+                future.completeExceptionally(ex);
+            }
+        } else {
+            update.run();
+        }
+        return future;
+    }
+
+    private CacheEntry load(String serviceGroup) {
+        Date created = new Date();
+        long ttlMillis = ttlSeconds * 1000l;
+        long refreshAfter = created.getTime() + ttlMillis - (long) (ttlMillis * refreshJitter * ThreadLocalRandom.current().nextDouble());
     	try{
-        	responses = super.getStatuses(servicesMap.get(serviceGroup));
+        	return new CacheEntry(created, refreshAfter, getStatuses(servicesMap.get(serviceGroup)));
         } catch(PortalServiceException pse){
-        	cacheEntry = new CacheEntry(new Date(), pse); // This could potentially recycle the CacheEntry objects instead
-            cache.put(serviceGroup, cacheEntry);
-        	throw pse;
+        	return new CacheEntry(created, refreshAfter, pse);
         }
-		cacheEntry = new CacheEntry(new Date(), responses); // This could potentially recycle the CacheEntry objects instead
-        cache.put(serviceGroup, cacheEntry);
-
-        return responses;
     }
 
-	public class CacheEntry {
-        private Date created;
-        private Map<String, List<ServiceStatusResponse>> responses;
-        private PortalServiceException portalServiceException;
+    /**
+     * An immutable set of statuses (or the error raised fetching them) for a single service group
+     */
+	public static class CacheEntry {
+        private final Date created;
+        private final long refreshAfter;
+        private final Map<String, List<ServiceStatusResponse>> responses;
+        private final PortalServiceException portalServiceException;
 
-        public CacheEntry(Date created, Map<String, List<ServiceStatusResponse>> responses) {
+        public CacheEntry(Date created, long refreshAfter, Map<String, List<ServiceStatusResponse>> responses) {
             super();
             this.created = created;
+            this.refreshAfter = refreshAfter;
             this.responses = responses;
             this.portalServiceException = null;
         }
 
-        public CacheEntry(Date created, PortalServiceException ex) {
+        public CacheEntry(Date created, long refreshAfter, PortalServiceException ex) {
             super();
             this.created = created;
-            this.setPortalServiceException(ex);
+            this.refreshAfter = refreshAfter;
+            this.portalServiceException = ex;
             this.responses = null;
         }
 
         public Date getCreated() {
             return created;
         }
-        public void setCreated(Date created) {
-            this.created = created;
+        /**
+         * The time (in ms since the epoch) after which this entry should be updated
+         * @return
+         */
+        public long getRefreshAfter() {
+            return refreshAfter;
         }
         public Map<String, List<ServiceStatusResponse>> getResponse() {
             return responses;
-        }
-        public void setResponse(Map<String, List<ServiceStatusResponse>> responses) {
-            this.responses = responses;
         }
 		public PortalServiceException getPortalServiceException() {
 			return portalServiceException;
 		}
-		public void setPortalServiceException(PortalServiceException exception) {
-			this.portalServiceException = exception;
-		}
+
+        /**
+         * Gets the cached statuses
+         * @return
+         * @throws PortalServiceException
+         *             The cached error if the statuses couldn't be fetched
+         */
+        Map<String, List<ServiceStatusResponse>> getStatuses() throws PortalServiceException {
+            if (portalServiceException != null) {
+                throw portalServiceException;
+            }
+            return responses;
+        }
     }
 }
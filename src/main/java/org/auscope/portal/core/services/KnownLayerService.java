@@ -322,6 +322,31 @@ public class KnownLayerService {
 
     private List<ModelMap> knownLayersCache = new ArrayList<>();
 
+    /**
+     * The grouped layers behind knownLayersCache, kept so that service status can be refreshed without regrouping.
+     * Replaced (never modified) by each full update.
+     */
+    private volatile List<KnownLayerSnapshot> knownLayerSnapshots = null;
+
+    /**
+     * The view of a single grouped known layer (without any service status) along with what is needed to overlay its
+     * service status
+     */
+    private static class KnownLayerSnapshot {
+        private final ModelMap viewKnownLayer;
+        private final String name;
+        private final String stackdriverServiceGroup;
+        private final Set<String> onlineResourceEndpoints;
+
+        public KnownLayerSnapshot(ModelMap viewKnownLayer, String name, String stackdriverServiceGroup,
+                Set<String> onlineResourceEndpoints) {
+            this.viewKnownLayer = viewKnownLayer;
+            this.name = name;
+            this.stackdriverServiceGroup = stackdriverServiceGroup;
+            this.onlineResourceEndpoints = onlineResourceEndpoints;
+        }
+    }
+
     /***
      * Returns the list of known layers. This list is populated by {@link KnownLayerService#updateKnownLayersCache()}. 
      * {@link KnownLayerService#updateKnownLayersCache()} is threadsafe and can be called directly or from a background
@@ -335,15 +360,56 @@ public class KnownLayerService {
         }
     }
 
+    /**
+     * Returns a copy of the snapshot's view with the latest StackDriver status of its endpoints overlaid
+     *
+     * @param snapshot
+     * @return
+     */
+    private ModelMap withServiceStatus(KnownLayerSnapshot snapshot) {
+        ModelMap viewKnownLayer = new ModelMap();
+        viewKnownLayer.putAll(snapshot.viewKnownLayer);
+
+        if (stackDriverService != null && snapshot.stackdriverServiceGroup != null) {
+            try {
+                Map<String, List<ServiceStatusResponse>> response = stackDriverService.getStatuses(snapshot.stackdriverServiceGroup);
+                List<String> failingHosts = new ArrayList<String>();
+                for (Entry<String, List<ServiceStatusResponse>> entry : response.entrySet()) {
+                    for (ServiceStatusResponse status : entry.getValue()) {
+                        if (!status.isUp()) {
+                            if (snapshot.onlineResourceEndpoints.contains(entry.getKey())) {
+                                failingHosts.add(entry.getKey());
+                                break;
+                            }
+                        }
+                    }
+                }
+
+                if (!failingHosts.isEmpty()) {
+                    viewKnownLayer.put("stackdriverFailingHosts", failingHosts);
+                }
+            } catch (PortalServiceException ex) {
+                logger.error("Error updating stackdriver host info for " + snapshot.name + " :" + ex.getMessage());
+            }
+        }
+
+        return viewKnownLayer;
+    }
+
     /***
-     * Updated the list of known layers depending on their status as obtained from StackDriver. This method is
-     * threadsafe and can be called directly or from a background thread.
+     * Regroups the known layers against the current CSW records and rebuilds the list of known layers, including their
+     * status as obtained from StackDriver. This method is threadsafe and can be called directly or from a background
+     * thread.
+     * 
+     * This is expensive and only needs to run when the CSW records change, use
+     * {@link KnownLayerService#refreshKnownLayerStatuses()} to pick up status changes alone.
      * 
      * To access the results of the update, call {@link KnownLayerService#getKnownLayersCache()}
      */
     public void updateKnownLayersCache(boolean updateCSWRecordsWithKnownLayerInfo) {
         logger.info("Updating service status for KnownLayers");
-        ArrayList<ModelMap> newKnownLayersCache = new ArrayList<>();
+        long start = System.nanoTime();
+        List<KnownLayerSnapshot> newSnapshots = new ArrayList<>();
         
         // Keep track of CSW records updated with KnownLayer info that will be updated in the cache
         List<CSWRecord> recordsToUpdate = new ArrayList<CSWRecord>();
@@ -445,30 +511,8 @@ public class KnownLayerService {
             viewKnownLayer.put("relatedRecords", viewRelatedRecords);
             viewKnownLayer.put("capabilityRecords", viewCapabilityRecords);
 
-            if (stackDriverService != null && kl.getStackdriverServiceGroup() != null) {
-                try {
-                    Map<String, List<ServiceStatusResponse>> response = stackDriverService.getStatuses(kl.getStackdriverServiceGroup());
-                    List<String> failingHosts = new ArrayList<String>();
-                    for (Entry<String, List<ServiceStatusResponse>> entry : response.entrySet()) {
-                        for (ServiceStatusResponse status : entry.getValue()) {
-                            if (!status.isUp()) {
-                                if (onlineResourceEndpoints.contains(entry.getKey())) {
-                                    failingHosts.add(entry.getKey());
-                                    break;
-                                }
-                            }
-                        }
-                    }
-
-                    if (!failingHosts.isEmpty()) {
-                        viewKnownLayer.put("stackdriverFailingHosts", failingHosts);
-                    }
-                } catch (PortalServiceException ex) {
-                    logger.error("Error updating stackdriver host info for " + kl.getName() + " :" + ex.getMessage());
-                }
-            }
-
-            newKnownLayersCache.add(viewKnownLayer);
+            newSnapshots.add(new KnownLayerSnapshot(viewKnownLayer, kl.getName(), kl.getStackdriverServiceGroup(),
+                    onlineResourceEndpoints));
         }
         
         // Update the CSW records in the index with the KnownLayer ID. If the record doesn't exist yet
@@ -479,11 +523,51 @@ public class KnownLayerService {
 	        logger.info("CSW records updated (" + recordsToUpdate.size() + ")");
         }
         
+        List<ModelMap> newKnownLayersCache = new ArrayList<>(newSnapshots.size());
+        for (KnownLayerSnapshot snapshot : newSnapshots) {
+            newKnownLayersCache.add(withServiceStatus(snapshot));
+        }
+
         synchronized (knownLayersCache) {
+            knownLayerSnapshots = newSnapshots;
             knownLayersCache.clear();
             knownLayersCache.addAll(newKnownLayersCache);
         }
-        logger.info("Finished updating service status for KnownLayers. New size: " + knownLayers.size());
+        logger.info(String.format("Finished regrouping KnownLayers in %1$d ms. New size: %2$d",
+                (System.nanoTime() - start) / 1000000, knownLayers.size()));
+    }
+
+    /***
+     * Overlays the latest StackDriver status onto the known layers grouped by the last
+     * {@link KnownLayerService#updateKnownLayersCache(boolean)} without regrouping them against the CSW records. This
+     * method is threadsafe and can be called directly or from a background thread.
+     * 
+     * To access the results of the refresh, call {@link KnownLayerService#getKnownLayersCache()}
+     * 
+     * @return false if the known layers have never been grouped (nothing was refreshed), true otherwise
+     */
+    public boolean refreshKnownLayerStatuses() {
+        List<KnownLayerSnapshot> snapshots = knownLayerSnapshots;
+        if (snapshots == null) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        List<ModelMap> newKnownLayersCache = new ArrayList<>(snapshots.size());
+        for (KnownLayerSnapshot snapshot : snapshots) {
+            newKnownLayersCache.add(withServiceStatus(snapshot));
+        }
+
+        synchronized (knownLayersCache) {
+            // A full update finishing in the meantime has fresher layers (and statuses) than ours
+            if (snapshots == knownLayerSnapshots) {
+                knownLayersCache.clear();
+                knownLayersCache.addAll(newKnownLayersCache);
+            }
+        }
+        logger.info(String.format("Finished refreshing service status for %1$d KnownLayers in %2$d ms",
+                snapshots.size(), (System.nanoTime() - start) / 1000000));
+        return true;
     }
   
 }
@@ -2,6 +2,14 @@ package org.auscope.portal.core.services;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -10,17 +18,25 @@ import org.auscope.portal.core.server.http.HttpServiceCaller;
 import org.auscope.portal.core.services.methodmakers.OPeNDAPGetDataMethodMaker;
 import org.auscope.portal.core.services.methodmakers.OPeNDAPGetDataMethodMaker.OPeNDAPFormat;
 import org.auscope.portal.core.services.responses.opendap.AbstractViewVariable;
+import org.auscope.portal.core.services.responses.opendap.SimpleGrid;
 import org.auscope.portal.core.services.responses.opendap.ViewVariableFactory;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import ucar.nc2.dataset.NetcdfDataset;
 
 /**
  * Service class for interacting with an OPeNDAP endpoint
  * 
+ * Opened datasets (and the variables parsed from them) are cached by service URL so that the DDS/DAS metadata of an
+ * endpoint is only downloaded and parsed once per TTL. Datasets are closed once they have been evicted and are no
+ * longer in use. NetcdfDatasets aren't thread safe, so every use of a cached dataset holds the lock of its cache entry.
+ * 
  * @author Josh Vote
  *
  */
-public class OpendapService {
+public class OpendapService implements MeterBinder {
 
     /** The log. */
     private final Log log = LogFactory.getLog(getClass());
@@ -29,9 +45,57 @@ public class OpendapService {
     /** The get data method maker. */
     private OPeNDAPGetDataMethodMaker getDataMethodMaker;
 
+    public static final int DEFAULT_MAX_CACHED_DATASETS = 20;
+    public static final long DEFAULT_DATASET_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    /** Maximum number of open datasets kept in the cache (0 disables caching) */
+    private int maxCachedDatasets;
+    /** How long (in ms) a dataset is served from the cache */
+    private long datasetTtlMs;
+    /** Opened datasets by service URL, least recently used first. Also guards the lease counts of all entries */
+    private final LinkedHashMap<String, CachedDataset> datasetCache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong datasetCacheHits = new AtomicLong();
+    private final AtomicLong datasetCacheMisses = new AtomicLong();
+
+    /**
+     * An opened dataset along with the variables that have been parsed from it
+     */
+    private static class CachedDataset {
+        /** The opened dataset, guarded by this */
+        final NetcdfDataset dataset;
+        final long created;
+        /** Parsed variables by variable filter ("" for all variables), guarded by this */
+        final Map<String, AbstractViewVariable[]> variables = new HashMap<>();
+        /** Number of callers currently using dataset, guarded by the datasetCache lock */
+        int leases = 0;
+        /** True once removed from the cache, the dataset is closed when the last lease is released */
+        boolean evicted = false;
+
+        CachedDataset(NetcdfDataset dataset, long created) {
+            this.dataset = dataset;
+            this.created = created;
+        }
+    }
+
     public OpendapService(HttpServiceCaller serviceCaller, OPeNDAPGetDataMethodMaker getDataMethodMaker) {
+        this(serviceCaller, getDataMethodMaker, DEFAULT_MAX_CACHED_DATASETS, DEFAULT_DATASET_TTL_MS);
+    }
+
+    /**
+     * @param serviceCaller
+     * @param getDataMethodMaker
+     * @param maxCachedDatasets
+     *            Maximum number of open datasets to cache (0 to disable caching)
+     * @param datasetTtlMs
+     *            How long (in ms) an opened dataset is reused for
+     */
+    public OpendapService(HttpServiceCaller serviceCaller, OPeNDAPGetDataMethodMaker getDataMethodMaker,
+            int maxCachedDatasets, long datasetTtlMs) {
         this.serviceCaller = serviceCaller;
         this.getDataMethodMaker = getDataMethodMaker;
+        this.maxCachedDatasets = maxCachedDatasets;
+        this.datasetTtlMs = datasetTtlMs;
     }
 
     /**
@@ -52,6 +116,116 @@ public class OpendapService {
         }
     }
 
+    /**
+     * Gets the (possibly cached) dataset at serviceUrl. Every call must be matched by a call to releaseDataset once
+     * the caller has finished with the dataset.
+     * 
+     * @param serviceUrl
+     *            The OPeNDAP endpoint
+     * @return
+     * @throws PortalServiceException
+     */
+    private CachedDataset acquireDataset(String serviceUrl) throws PortalServiceException {
+        List<NetcdfDataset> toClose = new ArrayList<>();
+        try {
+            synchronized (datasetCache) {
+                CachedDataset cached = datasetCache.get(serviceUrl);
+                if (cached != null) {
+                    if (System.currentTimeMillis() - cached.created <= datasetTtlMs) {
+                        cached.leases++;
+                        datasetCacheHits.incrementAndGet();
+                        return cached;
+                    }
+                    datasetCache.remove(serviceUrl);
+                    evict(cached, toClose);
+                }
+            }
+        } finally {
+            closeDatasets(toClose);
+        }
+
+        datasetCacheMisses.incrementAndGet();
+        CachedDataset opened = new CachedDataset(fetchDataset(serviceUrl), System.currentTimeMillis());
+        opened.leases = 1;
+        try {
+            synchronized (datasetCache) {
+                if (maxCachedDatasets <= 0) {
+                    opened.evicted = true;
+                    return opened;
+                }
+
+                CachedDataset previous = datasetCache.put(serviceUrl, opened);
+                if (previous != null) {
+                    evict(previous, toClose);
+                }
+                Iterator<CachedDataset> it = datasetCache.values().iterator();
+                while (datasetCache.size() > maxCachedDatasets && it.hasNext()) {
+                    CachedDataset eldest = it.next();
+                    it.remove();
+                    evict(eldest, toClose);
+                }
+                return opened;
+            }
+        } finally {
+            closeDatasets(toClose);
+        }
+    }
+
+    /**
+     * Releases a dataset returned by acquireDataset, closing it if it has been evicted and is no longer in use
+     * 
+     * @param cached
+     */
+    private void releaseDataset(CachedDataset cached) {
+        boolean close;
+        synchronized (datasetCache) {
+            cached.leases--;
+            close = cached.evicted && cached.leases == 0;
+        }
+        if (close) {
+            closeDataset(cached.dataset);
+        }
+    }
+
+    /**
+     * Marks cached as evicted, adding its dataset to toClose if it isn't in use. Must hold the datasetCache lock.
+     */
+    private static void evict(CachedDataset cached, List<NetcdfDataset> toClose) {
+        cached.evicted = true;
+        if (cached.leases == 0) {
+            toClose.add(cached.dataset);
+        }
+    }
+
+    private void closeDatasets(List<NetcdfDataset> datasets) {
+        for (NetcdfDataset ds : datasets) {
+            closeDataset(ds);
+        }
+        datasets.clear();
+    }
+
+    private void closeDataset(NetcdfDataset ds) {
+        try {
+            ds.close();
+        } catch (IOException ex) {
+            log.debug("Error closing dataset", ex);
+        }
+    }
+
+    /**
+     * Closes every cached dataset that isn't in use (datasets in use are closed as soon as they are released)
+     */
+    public void close() {
+        List<NetcdfDataset> toClose = new ArrayList<>();
+        synchronized (datasetCache) {
+            for (CachedDataset cached : datasetCache.values()) {
+                evict(cached, toClose);
+            }
+            datasetCache.clear();
+        }
+        closeDatasets(toClose);
+    }
+
     /**
      * Gets the exposed variables from an OPeNDAP endpoint.
      * 
@@ -63,14 +237,74 @@ public class OpendapService {
      * @throws PortalServiceException
      */
     public AbstractViewVariable[] getVariables(String serviceUrl, String variableFilter) throws PortalServiceException {
-        NetcdfDataset ds = fetchDataset(serviceUrl);
-
-        //Attempt to parse our response
+        CachedDataset cached = acquireDataset(serviceUrl);
         try {
-            return ViewVariableFactory.fromNetCDFDataset(ds, variableFilter);
-        } catch (IOException ex) {
-            log.error(String.format("Error parsing from '%1$s'", serviceUrl), ex);
-            throw new PortalServiceException(String.format("Error parsing to '%1$s'", serviceUrl), ex);
+            return parsedVariables(serviceUrl, cached, variableFilter).clone();
+        } finally {
+            releaseDataset(cached);
+        }
+    }
+
+    /**
+     * Gets the variables parsed from a cached dataset, parsing them if this is the first request for variableFilter.
+     * The returned array is shared and must not be modified.
+     */
+    private AbstractViewVariable[] parsedVariables(String serviceUrl, CachedDataset cached, String variableFilter)
+            throws PortalServiceException {
+        String key = variableFilter == null ? "" : variableFilter;
+        synchronized (cached) {
+            AbstractViewVariable[] variables = cached.variables.get(key);
+            if (variables == null) {
+                try {
+                    variables = ViewVariableFactory.fromNetCDFDataset(cached.dataset, variableFilter);
+                } catch (IOException ex) {
+                    log.error(String.format("Error parsing from '%1$s'", serviceUrl), ex);
+                    throw new PortalServiceException(String.format("Error parsing to '%1$s'", serviceUrl), ex);
+                }
+                cached.variables.put(key, variables);
+            }
+            return variables;
+        }
+    }
+
+    /**
+     * Checks that every constraint names a variable of the dataset (using the variables already parsed from it) and
+     * that each axis of a grid constraint matches an axis of that variable.
+     *
+     * @throws PortalServiceException
+     *             If a constraint doesn't match the dataset
+     */
+    private void validateConstraints(String serviceUrl, CachedDataset cached, AbstractViewVariable[] constraints)
+            throws PortalServiceException {
+        if (constraints == null) {
+            return;
+        }
+
+        Map<String, AbstractViewVariable> variablesByName = new HashMap<>();
+        for (AbstractViewVariable variable : parsedVariables(serviceUrl, cached, null)) {
+            variablesByName.put(variable.getName(), variable);
+        }
+
+        for (AbstractViewVariable constraint : constraints) {
+            AbstractViewVariable variable = variablesByName.get(constraint.getName());
+            if (variable == null || !variable.getClass().equals(constraint.getClass())) {
+                throw new PortalServiceException(String.format("'%1$s' has no %2$s variable named '%3$s'",
+                        serviceUrl, constraint.getType(), constraint.getName()));
+            }
+            if (constraint instanceof SimpleGrid) {
+                AbstractViewVariable[] axes = ((SimpleGrid) variable).getAxes();
+                AbstractViewVariable[] constraintAxes = ((SimpleGrid) constraint).getAxes();
+                if (constraintAxes == null || constraintAxes.length != axes.length) {
+                    throw new PortalServiceException(String.format("Grid '%1$s' of '%2$s' has %3$d axes",
+                            constraint.getName(), serviceUrl, axes.length));
+                }
+                for (int i = 0; i < axes.length; i++) {
+                    if (!axes[i].getName().equals(constraintAxes[i].getName())) {
+                        throw new PortalServiceException(String.format("Grid '%1$s' of '%2$s' has no axis named '%3$s'",
+                                constraint.getName(), serviceUrl, constraintAxes[i].getName()));
+                    }
+                }
+            }
         }
     }
 
@@ -88,11 +322,24 @@ public class OpendapService {
      */
     public InputStream getData(String serviceUrl, OPeNDAPFormat downloadFormat, AbstractViewVariable[] constraints)
             throws PortalServiceException {
-        NetcdfDataset ds = fetchDataset(serviceUrl);
+        CachedDataset cached = acquireDataset(serviceUrl);
         HttpRequestBase method = null;
 
         try {
-            method = getDataMethodMaker.getMethod(serviceUrl, downloadFormat, ds, constraints);
+            validateConstraints(serviceUrl, cached, constraints);
+            synchronized (cached) {
+                method = getDataMethodMaker.getMethod(serviceUrl, downloadFormat, cached.dataset, constraints);
+            }
+        } catch (PortalServiceException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            log.error(String.format("Error requesting data from '%1$s'", serviceUrl), ex);
+            throw new PortalServiceException(method, String.format("Error requesting data from '%1$s'", serviceUrl), ex);
+        } finally {
+            releaseDataset(cached);
+        }
+
+        try {
             return serviceCaller.getMethodResponseAsStream(method);
         } catch (Exception ex) {
             log.error(String.format("Error requesting data from '%1$s'", serviceUrl), ex);
@@ -114,20 +361,59 @@ public class OpendapService {
      */
     public String getQueryDetails(String serviceUrl, OPeNDAPFormat downloadFormat, AbstractViewVariable[] constraints)
             throws PortalServiceException {
-        NetcdfDataset ds = fetchDataset(serviceUrl);
+        CachedDataset cached = acquireDataset(serviceUrl);
         HttpRequestBase method = null;
 
         try {
-            method = getDataMethodMaker.getMethod(serviceUrl, downloadFormat, ds, constraints);
-            String details = "ServiceUrl: " + method.getURI().toString();
-            details += "\n" + "DownloadFormat: " + downloadFormat;
-            details += "\n" + "DataSet: " + ds;
+            validateConstraints(serviceUrl, cached, constraints);
+            synchronized (cached) {
+                method = getDataMethodMaker.getMethod(serviceUrl, downloadFormat, cached.dataset, constraints);
+                String details = "ServiceUrl: " + method.getURI().toString();
+                details += "\n" + "DownloadFormat: " + downloadFormat;
+                details += "\n" + "DataSet: " + cached.dataset;
 
-            return details;
+                return details;
+            }
+        } catch (PortalServiceException ex) {
+            throw ex;
         } catch (Exception ex) {
             throw new PortalServiceException(method, String.format(
                     "Error parsing query URI", serviceUrl), ex);
+        } finally {
+            releaseDataset(cached);
         }
     }
 
+    public long getDatasetCacheHits() {
+        return datasetCacheHits.get();
+    }
+
+    public long getDatasetCacheMisses() {
+        return datasetCacheMisses.get();
+    }
+
+    /**
+     * Fraction of dataset requests served without contacting the OPeNDAP endpoint
+     *
+     * @return
+     */
+    public double getDatasetCacheHitRatio() {
+        long hits = datasetCacheHits.get();
+        long total = hits + datasetCacheMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Registers the dataset cache hit and miss counts
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("portal.opendap.dataset.cache.hits", this, OpendapService::getDatasetCacheHits)
+                .description("OPeNDAP dataset requests served from the cache").register(registry);
+        Gauge.builder("portal.opendap.dataset.cache.misses", this, OpendapService::getDatasetCacheMisses)
+                .description("OPeNDAP dataset requests that opened the dataset").register(registry);
+        Gauge.builder("portal.opendap.dataset.cache.hit.ratio", this, OpendapService::getDatasetCacheHitRatio)
+                .register(registry);
+    }
+
 }
@@ -0,0 +1,205 @@
+package org.auscope.portal.core.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content addressed store of generated SLD documents.
+ *
+ * Each SLD is stored under the SHA-256 hash of its content so that WMS requests can reference a style by URL
+ * (SLD=...) rather than inlining the full document (SLD_BODY=...). As identical styles always map to the same URL,
+ * both the upstream WMS and the browser are able to cache the style and the tiles rendered with it.
+ *
+ * An SLD expires once it hasn't been registered or fetched for ttlMs. Cached tiles and open map sessions keep
+ * referencing an SLD's URL, so an SLD is never evicted before it expires: once more than maxEntries SLDs are held the
+ * expired ones are removed, but unexpired SLDs stay resolvable even if that leaves more than maxEntries.
+ */
+public class SLDRegistryService {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_TTL_MS = TimeUnit.HOURS.toMillis(24);
+
+    private static class Entry {
+        final String sld;
+        long lastAccessed;
+
+        Entry(String sld, long lastAccessed) {
+            this.sld = sld;
+            this.lastAccessed = lastAccessed;
+        }
+    }
+
+    private final String baseUrl;
+    private final boolean referenceInRequests;
+    private final int maxEntries;
+    private final long ttlMs;
+    /** Registered SLDs by hash, least recently accessed first */
+    private final LinkedHashMap<String, Entry> sldsByHash = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, String> hashesByKey;
+
+    /**
+     * @param baseUrl The URL that registered SLDs are served under, the hash is appended to this
+     * @param maxEntries The number of SLDs held before expired entries are removed
+     * @param referenceInRequests If true, method makers should reference registered SLDs by URL instead of inlining them
+     */
+    public SLDRegistryService(String baseUrl, int maxEntries, boolean referenceInRequests) {
+        this(baseUrl, maxEntries, DEFAULT_TTL_MS, referenceInRequests);
+    }
+
+    /**
+     * @param baseUrl The URL that registered SLDs are served under, the hash is appended to this
+     * @param maxEntries The number of SLDs held before expired entries are removed
+     * @param ttlMs How long (in ms) an SLD is kept after it was last registered or fetched
+     * @param referenceInRequests If true, method makers should reference registered SLDs by URL instead of inlining them
+     */
+    public SLDRegistryService(String baseUrl, int maxEntries, long ttlMs, boolean referenceInRequests) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.referenceInRequests = referenceInRequests;
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.hashesByKey = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * If true, method makers should reference registered SLDs by URL instead of inlining them
+     *
+     * @return
+     */
+    public boolean isReferenceInRequests() {
+        return referenceInRequests;
+    }
+
+    /**
+     * Stores sld and returns its content hash
+     *
+     * @param sld The SLD document
+     * @return The hash that the SLD can be retrieved with
+     */
+    public String register(String sld) {
+        String hash = contentHash(sld);
+        long now = System.currentTimeMillis();
+        synchronized (sldsByHash) {
+            Entry entry = sldsByHash.get(hash);
+            if (entry == null) {
+                sldsByHash.put(hash, new Entry(sld, now));
+                if (sldsByHash.size() > maxEntries) {
+                    removeExpired(now);
+                }
+            } else {
+                entry.lastAccessed = now;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Removes the SLDs that haven't been accessed for ttlMs. Must be called holding the sldsByHash lock.
+     */
+    private void removeExpired(long now) {
+        // Iteration is in access order so the expired entries come first
+        Iterator<Entry> it = sldsByHash.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastAccessed < ttlMs) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    /**
+     * Returns the live entry for hash, refreshing its TTL. Must be called holding the sldsByHash lock.
+     */
+    private Entry access(String hash) {
+        Entry entry = sldsByHash.get(hash);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - entry.lastAccessed >= ttlMs) {
+            sldsByHash.remove(hash);
+            return null;
+        }
+        entry.lastAccessed = now;
+        return entry;
+    }
+
+    /**
+     * Stores sld and records that it was generated from the inputs identified by key so that it can later be
+     * looked up with {@link #getHashByKey(String)} instead of being regenerated.
+     *
+     * @param key Uniquely identifies the inputs used to generate the SLD
+     * @param sld The SLD document
+     * @return The hash that the SLD can be retrieved with
+     */
+    public String register(String key, String sld) {
+        String hash = register(sld);
+        synchronized (sldsByHash) {
+            hashesByKey.put(key, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the hash of the SLD previously registered against key
+     *
+     * @param key Uniquely identifies the inputs used to generate the SLD
+     * @return The hash or null if no SLD is registered for key (or it has since expired)
+     */
+    public String getHashByKey(String key) {
+        synchronized (sldsByHash) {
+            String hash = hashesByKey.get(key);
+            return hash != null && access(hash) != null ? hash : null;
+        }
+    }
+
+    /**
+     * Returns the SLD registered under hash
+     *
+     * @param hash
+     * @return The SLD or null if there is no SLD registered under hash (or it has expired)
+     */
+    public String getSld(String hash) {
+        synchronized (sldsByHash) {
+            Entry entry = access(hash);
+            return entry == null ? null : entry.sld;
+        }
+    }
+
+    /**
+     * Returns the URL that the SLD registered under hash is served from
+     *
+     * @param hash
+     * @return
+     */
+    public String getSldUrl(String hash) {
+        return baseUrl + hash;
+    }
+
+    /**
+     * Hex encoded SHA-256 hash of sld
+     *
+     * @param sld
+     * @return
+     */
+    public static String contentHash(String sld) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(sld.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -3,14 +3,19 @@ package org.auscope.portal.core.services;
 import org.apache.jena.rdf.model.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.auscope.portal.core.services.vocabs.VocabularyIndex;
 import org.auscope.portal.core.services.vocabs.VocabularyServiceItem;
+import org.auscope.portal.core.services.vocabs.VocabularySnapshotStore;
 
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 
 public class VocabularyCacheService {
@@ -23,12 +28,100 @@ public class VocabularyCacheService {
     protected Map<String, Model> vocabularyCache;
     protected boolean updateRunning;
 
+    /** Lookup structures rebuilt from vocabularyCache at the end of each update. Swapped as a whole. */
+    protected volatile Map<String, VocabularyIndex> vocabularyIndexes;
+
+    /** Content hash of each cached vocabulary, used to skip replacing vocabularies that haven't changed */
+    protected Map<String, String> vocabularyHashes;
+
+    /** Optional local store of vocabulary snapshots. If null, nothing is persisted */
+    protected VocabularySnapshotStore snapshotStore;
+
     public VocabularyCacheService(Executor executor,
                                   ArrayList<VocabularyServiceItem> serviceList) {
         this.executor = executor;
         this.serviceList = serviceList;
 
         this.vocabularyCache = new HashMap<String, Model>();
+        this.vocabularyIndexes = Collections.emptyMap();
+        this.vocabularyHashes = new ConcurrentHashMap<String, String>();
+    }
+
+    /**
+     * Optional local store of vocabulary snapshots. If null, nothing is persisted
+     *
+     * @return
+     */
+    public VocabularySnapshotStore getSnapshotStore() {
+        return snapshotStore;
+    }
+
+    /**
+     * Optional local store of vocabulary snapshots. If null, nothing is persisted
+     *
+     * @param snapshotStore
+     */
+    public void setSnapshotStore(VocabularySnapshotStore snapshotStore) {
+        this.snapshotStore = snapshotStore;
+    }
+
+    /**
+     * Populates the cache from the local snapshot store (if configured) so that vocabularies are available
+     * immediately at startup. A subsequent {@link #updateCache()} will only replace vocabularies whose content
+     * has changed on the remote service.
+     *
+     * @return The number of vocabularies restored
+     */
+    public int restoreSnapshots() {
+        if (snapshotStore == null) {
+            return 0;
+        }
+
+        int restored = 0;
+        synchronized (this) {
+            for (VocabularyServiceItem serviceItem : serviceList) {
+                Model model = snapshotStore.read(serviceItem.getId());
+                if (model == null) {
+                    continue;
+                }
+                synchronized (this.vocabularyCache) {
+                    this.vocabularyCache.put(serviceItem.getId(), model);
+                }
+                this.vocabularyHashes.put(serviceItem.getId(), VocabularySnapshotStore.contentHash(model));
+                restored++;
+            }
+            this.vocabularyIndexes = buildIndexes(this.vocabularyCache);
+        }
+
+        log.info(String.format("Restored '%1$d' vocabularies from snapshots in '%2$s'", restored, snapshotStore.getDirectory()));
+        return restored;
+    }
+
+    /**
+     * Stores a freshly loaded model against vocabularyId unless its content is identical to what is already cached.
+     * Changed vocabularies are also written to the snapshot store (if configured).
+     *
+     * @return true if the cache was modified
+     */
+    private boolean storeVocabulary(Map<String, Model> vocabularyCache, String vocabularyId, Model model) {
+        String hash = VocabularySnapshotStore.contentHash(model);
+        synchronized (vocabularyCache) {
+            if (hash.equals(this.vocabularyHashes.get(vocabularyId)) && vocabularyCache.containsKey(vocabularyId)) {
+                return false;
+            }
+            vocabularyCache.put(vocabularyId, model);
+            this.vocabularyHashes.put(vocabularyId, hash);
+        }
+
+        if (snapshotStore != null) {
+            try {
+                snapshotStore.write(vocabularyId, model);
+            } catch (IOException e) {
+                log.warn(String.format("Unable to write snapshot for vocabulary '%1$s': %2$s", vocabularyId, e.getMessage()));
+                log.debug("Exception:", e);
+            }
+        }
+        return true;
     }
 
     /**
@@ -77,11 +170,33 @@ public class VocabularyCacheService {
         for (Entry<String, Model> entry : this.vocabularyCache.entrySet()) {
             numberOfTerms +=  entry.getValue().size();
         }
+        this.vocabularyIndexes = buildIndexes(this.vocabularyCache);
+
         log.info(String.format("Vocabulary cache updated! Cache now has '%1$d' unique vocabulary terms, from '%2$d' vocabulary services",
                 numberOfTerms, numberOfVocabularies));
+    }
 
-
-
+    /**
+     * Builds an immutable {@link VocabularyIndex} for every model in vocabularyCache, reusing the index of any
+     * model that hasn't been replaced since the last build
+     *
+     * @param vocabularyCache
+     * @return
+     */
+    private Map<String, VocabularyIndex> buildIndexes(Map<String, Model> vocabularyCache) {
+        Map<String, VocabularyIndex> indexes = new HashMap<>();
+        synchronized (vocabularyCache) {
+            for (Entry<String, Model> entry : vocabularyCache.entrySet()) {
+                // Unchanged vocabularies keep their existing index
+                VocabularyIndex existing = this.vocabularyIndexes.get(entry.getKey());
+                if (existing != null && existing.getModel() == entry.getValue()) {
+                    indexes.put(entry.getKey(), existing);
+                } else {
+                    indexes.put(entry.getKey(), new VocabularyIndex(entry.getValue()));
+                }
+            }
+        }
+        return Collections.unmodifiableMap(indexes);
     }
 
 
@@ -126,8 +241,8 @@ public class VocabularyCacheService {
             try {
                 VocabularyService service = serviceItem.getVocabularyService();
                 Model model  = service.getModel();
-                synchronized (this.vocabularyCache){
-                    this.vocabularyCache.put(this.serviceItem.getId(), model);
+                if (!parent.storeVocabulary(this.vocabularyCache, this.serviceItem.getId(), model)) {
+                    threadLog.debug(String.format("Vocabulary '%1$s' unchanged", this.serviceItem.getId()));
                 }
             }
             catch (PortalServiceException | URISyntaxException e) {
@@ -178,4 +293,15 @@ public class VocabularyCacheService {
         return this.vocabularyCache.get(vocabularyId);
     }
 
+    /**
+     * Returns the precomputed lookup index for the vocabulary with the respective cache ID. The index is rebuilt whenever
+     * the cache finishes updating.
+     *
+     * @param vocabularyId ID of the vocabulary you wish to access
+     * @return The index or null if the vocabulary hasn't been loaded
+     */
+    public VocabularyIndex getVocabularyIndexById(String vocabularyId) {
+        return this.vocabularyIndexes.get(vocabularyId);
+    }
+
 }
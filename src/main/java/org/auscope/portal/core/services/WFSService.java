@@ -11,6 +11,7 @@ import org.auscope.portal.core.services.namespaces.ErmlNamespaceContext;
 import org.auscope.portal.core.services.responses.ows.OWSExceptionParser;
 import org.auscope.portal.core.services.responses.wfs.WFSResponse;
 import org.auscope.portal.core.services.responses.wfs.WFSTransformedResponse;
+import org.auscope.portal.core.services.wfs.WFSPopupCache;
 import org.auscope.portal.core.xslt.GmlToHtml;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -26,6 +27,9 @@ public class WFSService extends BaseWFSService {
 
     private GmlToHtml gmlToHtml;
 
+    /** Optional cache of rendered feature popups. If null every popup is requested from the WFS */
+    private WFSPopupCache popupCache;
+
     /**
      * Creates a new instance of this class with the specified dependencies
      *
@@ -46,6 +50,19 @@ public class WFSService extends BaseWFSService {
         this.gmlToHtml = gmlToHtml;
     }
 
+    public WFSPopupCache getPopupCache() {
+        return popupCache;
+    }
+
+    /**
+     * Optional cache of rendered feature popups. If null every popup is requested from the WFS
+     *
+     * @param popupCache
+     */
+    public void setPopupCache(WFSPopupCache popupCache) {
+        this.popupCache = popupCache;
+    }
+
     /**
      * Sends out WFS request and returns its response
      * 
@@ -101,7 +118,6 @@ public class WFSService extends BaseWFSService {
 	 * @return HTML converted response
 	 */
     public WFSTransformedResponse transformToHtml(String wfs, HttpRequestBase method, String baseUrl) {
-        System.out.println("[WFSService]transformToHtml(start)");
     	ErmlNamespaceContext erml;
         if (wfs.contains("http://xmlns.earthresourceml.org/EarthResource/2.0")) {
         	// Tell the XSLT which ERML version to use
@@ -109,16 +125,7 @@ public class WFSService extends BaseWFSService {
         } else {
         	erml = new ErmlNamespaceContext();
         }
-        System.out.println("[WFSService]transformToHtml().method=");
-        //System.out.println("[WFSService]transformToHtml().method="+method.toString());
-        System.out.println("[WFSService]transformToHtml().wfs=");
-        System.out.println("[WFSService]transformToHtml().wfs="+wfs.toString());
-        System.out.println("[WFSService]transformToHtml().erml=");
-        System.out.println("[WFSService]transformToHtml().erml="+erml.toString());
-        System.out.println("[WFSService]transformToHtml().baseUrl=");
-        System.out.println("[WFSService]transformToHtml().baseUrl="+baseUrl.toString());
     	String html = this.gmlToHtml.convert(wfs, erml, baseUrl);
-        System.out.println("[WFSService]transformToHtml().html="+html.toString());
     	return new WFSTransformedResponse(wfs, html, method);
     }
 
@@ -210,4 +217,32 @@ public class WFSService extends BaseWFSService {
         HttpRequestBase method = new HttpGet(wfsUrl);
         return doRequestAndHtmlTransform(method, baseUrl);
     }
+
+    /**
+     * Returns a single feature rendered as a HTML popup. If a popup cache is set, repeated requests for the same
+     * feature are served from it.
+     *
+     * @param wfsUrl
+     *            Either a WFS endpoint OR (if featureType is null) a URL that when resolved returns a WFS response
+     * @param featureType
+     *            [Optional] If specified a WFS GetFeature request will be generated
+     * @param featureId
+     *            [Optional] A unique ID of the feature to query
+     * @param baseUrl
+     *            The base URL of the request e.g.  https://portal.org/api
+     * @return
+     * @throws PortalServiceException
+     * @throws URISyntaxException
+     */
+    public String getWfsPopupHtml(String wfsUrl, String featureType, String featureId, String baseUrl)
+            throws PortalServiceException, URISyntaxException {
+        HttpRequestBase method = featureType == null ? new HttpGet(wfsUrl)
+                : generateWFSRequest(wfsUrl, featureType, featureId, null, null, null, null);
+        if (popupCache == null) {
+            return doRequestAndHtmlTransform(method, baseUrl).getTransformed();
+        }
+
+        String key = WFSPopupCache.popupKey(wfsUrl, featureType, featureId, baseUrl);
+        return popupCache.get(key, () -> doRequestAndHtmlTransform(method, baseUrl).getTransformed());
+    }
 }
@@ -111,4 +111,16 @@ public class AdminDiagnosticResponse implements Serializable {
         this.errors.add(error);
     }
 
+    /**
+     * Appends all details, warnings and errors of another response to this response
+     * 
+     * @param response
+     *            the response to append
+     */
+    public void addAll(AdminDiagnosticResponse response) {
+        this.details.addAll(response.details);
+        this.warnings.addAll(response.warnings);
+        this.errors.addAll(response.errors);
+    }
+
 }
@@ -0,0 +1,18 @@
+package org.auscope.portal.core.services.admin;
+
+/**
+ * Receives the result of each endpoint probe made by AdminService as soon as it completes
+ *
+ * Probes run concurrently so implementors must be thread safe.
+ *
+ * @author Josh Vote
+ */
+public interface AdminProbeListener {
+    /**
+     * Called once for every probed endpoint (in order of completion)
+     *
+     * @param result
+     *            The findings and latency of the probe
+     */
+    public void probeComplete(AdminProbeResult result);
+}
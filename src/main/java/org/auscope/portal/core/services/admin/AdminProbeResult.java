@@ -0,0 +1,58 @@
+package org.auscope.portal.core.services.admin;
+
+/**
+ * The outcome of probing a single endpoint as part of a connectivity diagnostic
+ *
+ * @author Josh Vote
+ */
+public class AdminProbeResult {
+    /** the endpoint (URL) that was probed */
+    private String endpoint;
+    /** how long the probe took in milliseconds */
+    private long latencyMs;
+    /** the findings of this probe */
+    private AdminDiagnosticResponse response;
+
+    /**
+     * Creates a new instance
+     *
+     * @param endpoint
+     *            the endpoint (URL) that was probed
+     * @param latencyMs
+     *            how long the probe took in milliseconds
+     * @param response
+     *            the findings of this probe
+     */
+    public AdminProbeResult(String endpoint, long latencyMs, AdminDiagnosticResponse response) {
+        this.endpoint = endpoint;
+        this.latencyMs = latencyMs;
+        this.response = response;
+    }
+
+    /**
+     * Gets the endpoint (URL) that was probed
+     *
+     * @return
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Gets how long the probe took in milliseconds
+     *
+     * @return
+     */
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    /**
+     * Gets the findings of this probe
+     *
+     * @return
+     */
+    public AdminDiagnosticResponse getResponse() {
+        return response;
+    }
+}
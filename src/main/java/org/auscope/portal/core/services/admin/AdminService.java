@@ -4,9 +4,19 @@ import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.http.Header;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.auscope.portal.core.server.OgcServiceProviderType;
@@ -30,12 +40,25 @@ import org.w3c.dom.Document;
 /**
  * Service class providing access into some portal low level functionality purely for the purposes of getting diagnostic information
  * 
+ * Endpoints are probed concurrently. Each request is limited to probeTimeoutMs and each diagnostic as a whole to deadlineMs
+ * so that a single unresponsive service can't stall a diagnostic. Requests to the same endpoint are still made in turn so
+ * that an endpoint returning a HTTP error is only contacted once.
+ * 
  * @author Josh Vote
  *
  */
 public class AdminService {
+    public static final long DEFAULT_PROBE_TIMEOUT_MS = 30 * 1000;
+    public static final long DEFAULT_DEADLINE_MS = 2 * 60 * 1000;
+
     /** For testing basic requests */
     protected HttpServiceCaller serviceCaller;
+    /** Runs the probes */
+    private Executor executor;
+    /** Connect/read timeout of each probe request */
+    private long probeTimeoutMs = DEFAULT_PROBE_TIMEOUT_MS;
+    /** How long a diagnostic waits for all of its probes */
+    private long deadlineMs = DEFAULT_DEADLINE_MS;
 
     /**
      * Creates a new AdminService
@@ -51,6 +74,163 @@ public class AdminService {
     public AdminService(HttpServiceCaller serviceCaller) {
         super();
         this.serviceCaller = serviceCaller;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "admin-diagnostic-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the executor used to run probes concurrently
+     * 
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the connect/read timeout of each probe request
+     * 
+     * @param probeTimeoutMs
+     */
+    public void setProbeTimeoutMs(long probeTimeoutMs) {
+        this.probeTimeoutMs = probeTimeoutMs;
+    }
+
+    /**
+     * Sets how long a diagnostic waits for all of its probes. Probes still running at the deadline are aborted and
+     * reported as errors.
+     * 
+     * @param deadlineMs
+     */
+    public void setDeadlineMs(long deadlineMs) {
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * A set of requests to a single endpoint, made in turn by task
+     */
+    private static class Probe {
+        /** the endpoint being probed */
+        final String endpoint;
+        /** the position of each of this probe's findings in the overall diagnostic */
+        final int[] slots;
+        /** the requests made by this probe, aborted if it passes the deadline */
+        final List<HttpRequestBase> methods;
+        final ProbeTask task;
+        /** set once the probe's result has been passed to the listener */
+        final AtomicBoolean reported = new AtomicBoolean(false);
+
+        Probe(String endpoint, int[] slots, List<HttpRequestBase> methods, ProbeTask task) {
+            this.endpoint = endpoint;
+            this.slots = slots;
+            this.methods = methods;
+            this.task = task;
+        }
+    }
+
+    /**
+     * The work of a single probe
+     */
+    private interface ProbeTask {
+        /**
+         * Makes the probe requests, recording findings in responses
+         * 
+         * @param responses
+         *            One (empty) response for each slot of the probe
+         */
+        public void run(AdminDiagnosticResponse[] responses);
+    }
+
+    /**
+     * Applies the probe timeout to method (on top of any existing config)
+     */
+    private HttpRequestBase withProbeTimeout(HttpRequestBase method) {
+        RequestConfig config = method.getConfig();
+        RequestConfig.Builder builder = config == null ? RequestConfig.custom() : RequestConfig.copy(config);
+        int timeout = (int) Math.min(Integer.MAX_VALUE, probeTimeoutMs);
+        method.setConfig(builder.setConnectTimeout(timeout).setConnectionRequestTimeout(timeout)
+                .setSocketTimeout(timeout).build());
+        return method;
+    }
+
+    /**
+     * Runs probes concurrently, waiting until they have all completed or the deadline has passed.
+     * 
+     * @param slotCount
+     *            The number of slots across all probes
+     * @param probes
+     *            The probes to run
+     * @param listener
+     *            Notified as each probe completes (can be null)
+     * @return The findings of every probe, ordered by slot
+     */
+    private AdminDiagnosticResponse runProbes(int slotCount, List<Probe> probes, AdminProbeListener listener) {
+        List<CompletableFuture<AdminDiagnosticResponse[]>> futures = new ArrayList<>();
+        for (Probe probe : probes) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                AdminDiagnosticResponse[] responses = new AdminDiagnosticResponse[probe.slots.length];
+                for (int i = 0; i < responses.length; i++) {
+                    responses[i] = new AdminDiagnosticResponse();
+                }
+                probe.task.run(responses);
+                notifyListener(listener, probe, System.nanoTime() - start, responses);
+                return responses;
+            }, executor));
+        }
+
+        AdminDiagnosticResponse[] slots = new AdminDiagnosticResponse[slotCount];
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        for (int i = 0; i < probes.size(); i++) {
+            Probe probe = probes.get(i);
+            CompletableFuture<AdminDiagnosticResponse[]> future = futures.get(i);
+            AdminDiagnosticResponse[] responses;
+            try {
+                responses = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | InterruptedException | ExecutionException ex) {
+                if (ex instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                future.cancel(true);
+                for (HttpRequestBase method : probe.methods) {
+                    method.abort();
+                }
+
+                AdminDiagnosticResponse failed = new AdminDiagnosticResponse();
+                failed.addError(ex instanceof TimeoutException
+                        ? String.format("Endpoint '%1$s' did not respond within %2$s ms.", probe.endpoint, deadlineMs)
+                        : String.format("Endpoint '%1$s' could not be tested - %2$s", probe.endpoint, ex));
+                notifyListener(listener, probe, TimeUnit.MILLISECONDS.toNanos(deadlineMs), new AdminDiagnosticResponse[] {failed});
+                responses = new AdminDiagnosticResponse[] {failed};
+            }
+
+            for (int j = 0; j < responses.length; j++) {
+                slots[probe.slots[j]] = responses[j];
+            }
+        }
+
+        AdminDiagnosticResponse response = new AdminDiagnosticResponse();
+        for (AdminDiagnosticResponse slot : slots) {
+            if (slot != null) {
+                response.addAll(slot);
+            }
+        }
+        return response;
+    }
+
+    private static void notifyListener(AdminProbeListener listener, Probe probe, long latencyNanos,
+            AdminDiagnosticResponse[] responses) {
+        if (listener == null || !probe.reported.compareAndSet(false, true)) {
+            return;
+        }
+        AdminDiagnosticResponse merged = new AdminDiagnosticResponse();
+        for (AdminDiagnosticResponse response : responses) {
+            merged.addAll(response);
+        }
+        listener.probeComplete(new AdminProbeResult(probe.endpoint, TimeUnit.NANOSECONDS.toMillis(latencyNanos), merged));
     }
 
     /**
@@ -61,28 +241,45 @@ public class AdminService {
      * @return
      */
     public AdminDiagnosticResponse externalConnectivity(URL[] urlsToTest) {
-        AdminDiagnosticResponse response = new AdminDiagnosticResponse();
-        for (URL url : urlsToTest) {
+        return externalConnectivity(urlsToTest, null);
+    }
+
+    /**
+     * Tests external connectivity by attempting to access the specified URLs
+     * 
+     * @param urlsToTest
+     *            The URLs tp test
+     * @param listener
+     *            Notified of the result for each URL as soon as it is available (can be null)
+     * @return
+     */
+    public AdminDiagnosticResponse externalConnectivity(URL[] urlsToTest, AdminProbeListener listener) {
+        List<Probe> probes = new ArrayList<>();
+        for (int i = 0; i < urlsToTest.length; i++) {
+            URL url = urlsToTest[i];
             String protocol = url.getProtocol().toLowerCase();
             String urlString = url.toString();
-
-            try {
-                HttpGet method = new HttpGet(urlString);
-                serviceCaller.getMethodResponseAsString(method); // we dont care about the response
-                response.addDetail(String.format("Succesfully connected to %1$s via '%2$s'.", urlString, protocol));
-            } catch (Exception ex) {
-                // We treat HTTP errors as critical, non http as warnings (such as https)
-                if (protocol.equals("http")) {
-                    response.addError(String.format("Unable to connect to %1$s via http. The error was %2$s",
-                            urlString, ex));
-                } else {
-                    response.addWarning(String.format("Unable to connect to %1$s via '%2$s'. The error was %3$s",
-                            urlString, protocol, ex));
+            HttpRequestBase method = withProbeTimeout(new HttpGet(urlString));
+
+            probes.add(new Probe(urlString, new int[] {i}, List.of(method), responses -> {
+                AdminDiagnosticResponse response = responses[0];
+                try {
+                    serviceCaller.getMethodResponseAsString(method); // we dont care about the response
+                    response.addDetail(String.format("Succesfully connected to %1$s via '%2$s'.", urlString, protocol));
+                } catch (Exception ex) {
+                    // We treat HTTP errors as critical, non http as warnings (such as https)
+                    if (protocol.equals("http")) {
+                        response.addError(String.format("Unable to connect to %1$s via http. The error was %2$s",
+                                urlString, ex));
+                    } else {
+                        response.addWarning(String.format("Unable to connect to %1$s via '%2$s'. The error was %3$s",
+                                urlString, protocol, ex));
+                    }
                 }
-            }
+            }));
         }
 
-        return response;
+        return runProbes(urlsToTest.length, probes, listener);
     }
 
     /**
@@ -93,36 +290,53 @@ public class AdminService {
      * @return
      */
     public AdminDiagnosticResponse cswConnectivity(List<CSWServiceItem> serviceItems) {
-        AdminDiagnosticResponse response = new AdminDiagnosticResponse();
-        final int numRecordsToRequest = 1;
+        return cswConnectivity(serviceItems, null);
+    }
 
-        // Iterate our configured registries performing a simple CSW request to ensure they are 'available'
-        for (CSWServiceItem item : serviceItems) {
+    /**
+     * Tests connectivity to a set of CSW's - also tests some basic CSW requests
+     * 
+     * @param serviceItems
+     *            The services to test
+     * @param listener
+     *            Notified of the result for each CSW as soon as it is available (can be null)
+     * @return
+     */
+    public AdminDiagnosticResponse cswConnectivity(List<CSWServiceItem> serviceItems, AdminProbeListener listener) {
+        final int numRecordsToRequest = 1;
+        List<Probe> probes = new ArrayList<>();
 
+        // Perform a simple CSW request against each of our configured registries to ensure they are 'available'
+        for (int i = 0; i < serviceItems.size(); i++) {
+            CSWServiceItem item = serviceItems.get(i);
             CSWMethodMakerGetDataRecords methodMaker = new CSWMethodMakerGetDataRecords();
-            HttpRequestBase method = methodMaker.makeMethod(item.getServiceUrl(), null, ResultType.Results,
-                    numRecordsToRequest, item.getServerType());
-
-            try (InputStream responseStream = serviceCaller.getMethodResponseAsStream(method)) {
-                Document responseDoc = DOMUtil.buildDomFromStream(responseStream);
-                OWSExceptionParser.checkForExceptionResponse(responseDoc);
-
-                CSWGetRecordResponse responseRecs = new CSWGetRecordResponse(item, responseDoc);
-                if (numRecordsToRequest != responseRecs.getRecords().size()) {
-                    response.addWarning(String.format(
-                            "Expecting a response with %1$s records. Got %2$s records instead.", numRecordsToRequest,
-                            responseRecs.getRecords().size()));
-                } else {
-                    response.addDetail(String.format(
-                            "Succesfully requested %1$s record(s) from '%2$s'. There are %3$s records available.",
-                            numRecordsToRequest, item.getServiceUrl(), responseRecs.getRecordsMatched()));
+            HttpRequestBase method = withProbeTimeout(methodMaker.makeMethod(item.getServiceUrl(), null,
+                    ResultType.Results, numRecordsToRequest, item.getServerType()));
+
+            probes.add(new Probe(item.getServiceUrl(), new int[] {i}, List.of(method), responses -> {
+                AdminDiagnosticResponse response = responses[0];
+                try (InputStream responseStream = serviceCaller.getMethodResponseAsStream(method)) {
+                    Document responseDoc = DOMUtil.buildDomFromStream(responseStream);
+                    OWSExceptionParser.checkForExceptionResponse(responseDoc);
+
+                    CSWGetRecordResponse responseRecs = new CSWGetRecordResponse(item, responseDoc);
+                    if (numRecordsToRequest != responseRecs.getRecords().size()) {
+                        response.addWarning(String.format(
+                                "Expecting a response with %1$s records. Got %2$s records instead.", numRecordsToRequest,
+                                responseRecs.getRecords().size()));
+                    } else {
+                        response.addDetail(String.format(
+                                "Succesfully requested %1$s record(s) from '%2$s'. There are %3$s records available.",
+                                numRecordsToRequest, item.getServiceUrl(), responseRecs.getRecordsMatched()));
+                    }
+                } catch (Exception ex) {
+                    response.addError(String.format("Unable to parse a CSW record response from '%1$s': %2$s",
+                            item.getServiceUrl(), ex));
                 }
-            } catch (Exception ex) {
-                response.addError(String.format("Unable to parse a CSW record response from '%1$s': %2$s",
-                        item.getServiceUrl(), ex));
-            } 
+            }));
         }
-        return response;
+
+        return runProbes(serviceItems.size(), probes, listener);
     }
 
     /**
@@ -151,7 +365,8 @@ public class AdminService {
      *
      * The must be a 1-1 mapping between methods and endpoints
      *
-     * Endpoints that return an outright HTTP error will be blacklisted and skipped for future queries.
+     * Endpoints are probed concurrently but the requests to a single endpoint are made in turn. Endpoints that return an
+     * outright HTTP error will be blacklisted and skipped for future queries.
      *
      * @param methods
      *            The HTTP methods to validate. Must be same length as endpoints.
@@ -159,43 +374,63 @@ public class AdminService {
      *            The endpoints used to generate methods. Must be same length as methods.
      * @param validator
      *            Will be called on each successful method response
+     * @param listener
+     *            Notified of the result for each endpoint as soon as it is available (can be null)
      * @return
      */
     private AdminDiagnosticResponse httpMethodValidator(List<HttpRequestBase> methods,
-            List<EndpointAndSelector> endpoints, ResponseValidator validator) {
-        AdminDiagnosticResponse diagnosticResponse = new AdminDiagnosticResponse();
-        List<String> blacklistedUrls = new ArrayList<>();
-
+            List<EndpointAndSelector> endpoints, ResponseValidator validator, AdminProbeListener listener) {
+        // Group the requests by endpoint, keeping their positions for ordering the findings
+        Map<String, List<Integer>> indexesByEndpoint = new LinkedHashMap<>();
         for (int i = 0; i < methods.size(); i++) {
-            HttpRequestBase method = methods.get(i);
-            EndpointAndSelector endpoint = endpoints.get(i);
-
-            // Check for blacklist
-            if (blacklistedUrls.contains(endpoint.getEndpoint())) {
-                diagnosticResponse
-                        .addError(String
-                                .format("Endpoint '%1$s' with selector '%2$s' will be skipped because the endpoint previously returned a HTTP error.",
-                                        endpoint.getEndpoint(), endpoint.getSelector()));
-                continue;
-            }
+            withProbeTimeout(methods.get(i));
+            indexesByEndpoint.computeIfAbsent(endpoints.get(i).getEndpoint(), k -> new ArrayList<>()).add(i);
+        }
 
-            // Make our request - offload testing to the validator and if there is a
-            // HTTP error, skip that endpoint for the rest of this test
-            InputStream response = null;
-            try {
-                response = serviceCaller.getMethodResponseAsStream(method);
-                validator.validateResponse(response, method, endpoint, diagnosticResponse);
-            } catch (Exception ex) {
-                blacklistedUrls.add(endpoint.getEndpoint());
-                diagnosticResponse.addError(String.format(
-                        "Endpoint '%1$s' cannot be reached when using selector '%2$s' - %3$s", endpoint.getEndpoint(),
-                        endpoint.getSelector(), ex));
-            } finally {
-                FileIOUtil.closeQuietly(response);
+        List<Probe> probes = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> entry : indexesByEndpoint.entrySet()) {
+            List<Integer> indexes = entry.getValue();
+            int[] slots = indexes.stream().mapToInt(Integer::intValue).toArray();
+            List<HttpRequestBase> endpointMethods = new ArrayList<>();
+            for (int index : slots) {
+                endpointMethods.add(methods.get(index));
             }
+
+            probes.add(new Probe(entry.getKey(), slots, endpointMethods, responses -> {
+                boolean blacklisted = false;
+                for (int i = 0; i < slots.length; i++) {
+                    HttpRequestBase method = methods.get(slots[i]);
+                    EndpointAndSelector endpoint = endpoints.get(slots[i]);
+                    AdminDiagnosticResponse diagnosticResponse = responses[i];
+
+                    // Check for blacklist
+                    if (blacklisted) {
+                        diagnosticResponse
+                                .addError(String
+                                        .format("Endpoint '%1$s' with selector '%2$s' will be skipped because the endpoint previously returned a HTTP error.",
+                                                endpoint.getEndpoint(), endpoint.getSelector()));
+                        continue;
+                    }
+
+                    // Make our request - offload testing to the validator and if there is a
+                    // HTTP error, skip that endpoint for the rest of this test
+                    InputStream response = null;
+                    try {
+                        response = serviceCaller.getMethodResponseAsStream(method);
+                        validator.validateResponse(response, method, endpoint, diagnosticResponse);
+                    } catch (Exception ex) {
+                        blacklisted = true;
+                        diagnosticResponse.addError(String.format(
+                                "Endpoint '%1$s' cannot be reached when using selector '%2$s' - %3$s", endpoint.getEndpoint(),
+                                endpoint.getSelector(), ex));
+                    } finally {
+                        FileIOUtil.closeQuietly(response);
+                    }
+                }
+            }));
         }
 
-        return diagnosticResponse;
+        return runProbes(methods.size(), probes, listener);
     }
 
     /**
@@ -211,6 +446,24 @@ public class AdminService {
      */
     public AdminDiagnosticResponse wfsConnectivity(List<EndpointAndSelector> wfsEndpoints, String bboxJson)
             throws URISyntaxException {
+        return wfsConnectivity(wfsEndpoints, bboxJson, null);
+    }
+
+    /**
+     * Iterates through wfsEndpoints making 2 GetFeature requests to both. The first will be requesting the first feature, the second will do the same but
+     * constrained to bbox
+     * 
+     * @param wfsEndpoints
+     *            A list of wfs endpoint/wfs type name combinations
+     * @param bboxJson
+     *            A bounding box to constrain some requests.  In raw JSON format.
+     * @param listener
+     *            Notified of the result for each endpoint as soon as it is available (can be null)
+     * @return
+     * @throws URISyntaxException
+     */
+    public AdminDiagnosticResponse wfsConnectivity(List<EndpointAndSelector> wfsEndpoints, String bboxJson,
+            AdminProbeListener listener) throws URISyntaxException {
         List<HttpRequestBase> methodsToTest = new ArrayList<>();
         List<EndpointAndSelector> endpointsToTest = new ArrayList<>();
 
@@ -253,7 +506,7 @@ public class AdminService {
                                     endpoint.getEndpoint(), endpoint.getSelector(), ex));
                         }
                     }
-                });
+                }, listener);
 
         // Some nice statistical info
         diagnosticResponse.addDetail(String.format("Testing %1$s different endpoint/type name combinations",
@@ -293,6 +546,23 @@ public class AdminService {
      */
     public AdminDiagnosticResponse wmsConnectivity(List<EndpointAndSelector> wmsEndpoints, String bboxJson)
             throws URISyntaxException {
+        return wmsConnectivity(wmsEndpoints, bboxJson, null);
+    }
+
+    /**
+     * Iterates through wmsEndpoints making a simple GetMap and GetFeatureInfo request based on the specified bbox
+     * 
+     * @param wmsEndpoints
+     *            The WMS endpoints to test
+     * @param bboxJson
+     *            The bounding box to test the map query, in raw JSON format.
+     * @param listener
+     *            Notified of the result for each endpoint as soon as it is available (can be null)
+     * @return
+     * @throws URISyntaxException
+     */
+    public AdminDiagnosticResponse wmsConnectivity(List<EndpointAndSelector> wmsEndpoints, String bboxJson,
+            AdminProbeListener listener) throws URISyntaxException {
         List<HttpRequestBase> methodsToTest = new ArrayList<>();
         List<EndpointAndSelector> endpointsToTest = new ArrayList<>();
 
@@ -372,7 +642,7 @@ public class AdminService {
                                     requestType, endpoint.getEndpoint(), endpoint.getSelector(), ex));
                         }
                     }
-                });
+                }, listener);
 
         diagnosticResponse.addDetail(String.format(
                 "Requesting map/feature info from %1$s different endpoint/layer combinations", wmsEndpoints.size()));
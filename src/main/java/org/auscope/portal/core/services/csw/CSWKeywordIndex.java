@@ -0,0 +1,187 @@
+package org.auscope.portal.core.services.csw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable substring index over the keywords of a CSW registry.
+ *
+ * Every suffix of every case folded keyword is held in a sorted suffix array, so the keywords containing a query are
+ * the owners of a contiguous range of suffixes found by binary search. A lookup costs O(log n) plus the number of
+ * matches collected, rather than a scan of the whole vocabulary.
+ */
+public class CSWKeywordIndex {
+
+    /** Keywords in case insensitive order */
+    private final String[] keywords;
+    /** Case folded form of each keyword */
+    private final String[] folded;
+    /** Keyword index of each suffix, in suffix order */
+    private final int[] suffixKeywords;
+    /** Offset into the folded keyword of each suffix, in suffix order */
+    private final int[] suffixOffsets;
+
+    /**
+     * Creates a new index
+     *
+     * @param keywords
+     *            The keywords to index, null and empty keywords are ignored
+     */
+    public CSWKeywordIndex(Collection<String> keywords) {
+        List<String> sorted = new ArrayList<String>(keywords.size());
+        for (String keyword : keywords) {
+            if (keyword != null && !keyword.isEmpty()) {
+                sorted.add(keyword);
+            }
+        }
+        sorted.sort(String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder()));
+        this.keywords = sorted.stream().distinct().toArray(String[]::new);
+
+        this.folded = new String[this.keywords.length];
+        int suffixCount = 0;
+        for (int i = 0; i < this.keywords.length; i++) {
+            folded[i] = fold(this.keywords[i]);
+            suffixCount += folded[i].length();
+        }
+
+        // Each suffix is packed as (keyword index << 32 | offset) for sorting
+        long[] suffixes = new long[suffixCount];
+        int n = 0;
+        for (int i = 0; i < folded.length; i++) {
+            for (int offset = 0; offset < folded[i].length(); offset++) {
+                suffixes[n++] = ((long) i << 32) | offset;
+            }
+        }
+        sortSuffixes(suffixes);
+
+        this.suffixKeywords = new int[suffixCount];
+        this.suffixOffsets = new int[suffixCount];
+        for (int i = 0; i < suffixCount; i++) {
+            suffixKeywords[i] = (int) (suffixes[i] >>> 32);
+            suffixOffsets[i] = (int) suffixes[i];
+        }
+    }
+
+    /**
+     * Sorts packed suffixes with a bottom up merge sort. Arrays.sort has no comparator overload for primitives and
+     * boxing every suffix of a large vocabulary is far more expensive than the scratch array.
+     */
+    private void sortSuffixes(long[] suffixes) {
+        int n = suffixes.length;
+        long[] src = suffixes;
+        long[] dst = new long[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int low = 0; low < n; low += 2 * width) {
+                int mid = Math.min(low + width, n);
+                int high = Math.min(low + 2 * width, n);
+                int i = low;
+                int j = mid;
+                int k = low;
+                while (i < mid && j < high) {
+                    dst[k++] = compareSuffixes(src[j], src[i]) < 0 ? src[j++] : src[i++];
+                }
+                while (i < mid) {
+                    dst[k++] = src[i++];
+                }
+                while (j < high) {
+                    dst[k++] = src[j++];
+                }
+            }
+            long[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != suffixes) {
+            System.arraycopy(src, 0, suffixes, 0, n);
+        }
+    }
+
+    private int compareSuffixes(long a, long b) {
+        return compareSuffixes(folded[(int) (a >>> 32)], (int) a, folded[(int) (b >>> 32)], (int) b);
+    }
+
+    private static String fold(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    private static int compareSuffixes(String a, int aOffset, String b, int bOffset) {
+        int aLength = a.length() - aOffset;
+        int bLength = b.length() - bOffset;
+        for (int i = 0; i < aLength && i < bLength; i++) {
+            char ca = a.charAt(aOffset + i);
+            char cb = b.charAt(bOffset + i);
+            if (ca != cb) {
+                return ca - cb;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * Returns the index of the first suffix that isn't less than query
+     */
+    private int lowerBound(String query) {
+        int low = 0;
+        int high = suffixKeywords.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareSuffixes(folded[suffixKeywords[mid]], suffixOffsets[mid], query, 0) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the keywords that contain query (case insensitive)
+     *
+     * @param query
+     *            The substring to look for. An empty or null query matches every keyword
+     * @param maxResults
+     *            The maximum number of keywords to return (negative for no limit)
+     * @return Matching keywords in case insensitive order, never null
+     */
+    public List<String> search(String query, int maxResults) {
+        int limit = maxResults < 0 ? keywords.length : Math.min(maxResults, keywords.length);
+        if (query == null || query.isEmpty()) {
+            return Collections.unmodifiableList(Arrays.asList(keywords).subList(0, limit));
+        }
+
+        String foldedQuery = fold(query);
+        // A keyword with repeated occurrences of query owns several suffixes in the range
+        BitSet matches = new BitSet(keywords.length);
+        int matchCount = 0;
+        for (int i = lowerBound(foldedQuery); i < suffixKeywords.length && matchCount < limit; i++) {
+            if (!folded[suffixKeywords[i]].startsWith(foldedQuery, suffixOffsets[i])) {
+                break;
+            }
+            if (!matches.get(suffixKeywords[i])) {
+                matches.set(suffixKeywords[i]);
+                matchCount++;
+            }
+        }
+
+        List<String> results = new ArrayList<String>(matchCount);
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            results.add(keywords[i]);
+        }
+        return results;
+    }
+
+    /**
+     * The number of distinct keywords in this index
+     *
+     * @return
+     */
+    public int size() {
+        return keywords.length;
+    }
+}
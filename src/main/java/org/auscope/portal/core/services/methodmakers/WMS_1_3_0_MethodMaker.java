@@ -18,6 +18,7 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.message.BasicNameValuePair;
 import org.auscope.portal.core.server.http.HttpServiceCaller;
+import org.auscope.portal.core.services.SLDRegistryService;
 import org.auscope.portal.core.services.responses.wms.GetCapabilitiesRecord;
 import org.auscope.portal.core.services.responses.wms.GetCapabilitiesRecord_1_3_0;
 import org.auscope.portal.core.util.HttpUtil;
@@ -32,6 +33,9 @@ public class WMS_1_3_0_MethodMaker extends AbstractMethodMaker implements WMSMet
 
     HttpServiceCaller serviceCaller = null;
 
+    /** If set (and enabled), SLDs are referenced by URL from this registry rather than sent inline as SLD_BODY */
+    SLDRegistryService sldRegistry = null;
+
     // -------------------------------------------------------------- Constants
     public static final String VERSION = "1.3.0";
     private final Log log = LogFactory.getLog(getClass());
@@ -40,6 +44,41 @@ public class WMS_1_3_0_MethodMaker extends AbstractMethodMaker implements WMSMet
         this.serviceCaller = serviceCaller;
     }
 
+    public SLDRegistryService getSldRegistry() {
+        return sldRegistry;
+    }
+
+    /**
+     * If set (and the registry has referenceInRequests enabled), SLDs are registered and referenced by URL
+     * using the SLD parameter rather than sent inline using SLD_BODY
+     *
+     * @param sldRegistry
+     */
+    public void setSldRegistry(SLDRegistryService sldRegistry) {
+        this.sldRegistry = sldRegistry;
+    }
+
+    /**
+     * Adds sldBody to params, either inline as SLD_BODY or as an SLD reference to the SLD registry
+     *
+     * @param params The request parameters to append to
+     * @param sldBody The SLD document (can be null/empty)
+     * @return true if the SLD was added as a reference
+     */
+    private boolean addSldParam(List<NameValuePair> params, String sldBody) {
+        if (sldBody == null || sldBody.trim().length() == 0) {
+            return false;
+        }
+
+        if (sldRegistry != null && sldRegistry.isReferenceInRequests()) {
+            params.add(new BasicNameValuePair("SLD", sldRegistry.getSldUrl(sldRegistry.register(sldBody))));
+            return true;
+        }
+
+        params.add(new BasicNameValuePair("SLD_BODY", sldBody));
+        return false;
+    }
+
     /**
      * Generates a WMS method for making a GetCapabilities request
      *
@@ -246,9 +285,7 @@ public class WMS_1_3_0_MethodMaker extends AbstractMethodMaker implements WMSMet
             existingParam.addAll(vendorParams);
         }
 
-        if (sldBody != null && sldBody.trim().length() > 0) {
-            existingParam.add(new BasicNameValuePair("SLD_BODY", sldBody));
-        }
+        addSldParam(existingParam, sldBody);
         if (styles != null && styles.trim().length() > 0) {
             existingParam.add(new BasicNameValuePair("styles", styles.trim()));
         }
@@ -354,9 +391,7 @@ public class WMS_1_3_0_MethodMaker extends AbstractMethodMaker implements WMSMet
             existingParam.addAll(vendorParams);
         }
 
-        if (sldBody != null && sldBody.trim().length() > 0) {
-            existingParam.add(new BasicNameValuePair("SLD_BODY", sldBody));
-        }
+        addSldParam(existingParam, sldBody);
         if (styles != null && styles.trim().length() > 0) {
             existingParam.add(new BasicNameValuePair("styles", styles.trim()));
         }
@@ -392,9 +427,7 @@ public class WMS_1_3_0_MethodMaker extends AbstractMethodMaker implements WMSMet
         existingParam.add(new BasicNameValuePair("service", "WMS"));
         existingParam.add(new BasicNameValuePair("request", "GetMap"));
         existingParam.add(new BasicNameValuePair("version", "1.3.0"));
-        if (sldBody != null && sldBody.trim().length() > 0) {
-            existingParam.add(new BasicNameValuePair("SLD_BODY", sldBody));
-        }
+        boolean sldReferenced = addSldParam(existingParam, sldBody);
         existingParam.add(new BasicNameValuePair("DISPLAYOUTSIDEMAXEXTENT", "TRUE"));
         existingParam.add(new BasicNameValuePair("LAYERS", layer));
         existingParam.add(new BasicNameValuePair("FORMAT", "image/png"));
@@ -407,6 +440,12 @@ public class WMS_1_3_0_MethodMaker extends AbstractMethodMaker implements WMSMet
         existingParam.add(new BasicNameValuePair("STYLES", ""));
         if (StringUtils.isNotBlank(time)) existingParam.add(new BasicNameValuePair("time", time));
 
+        // Without an inline SLD the request is small enough to be a cacheable GET
+        if (sldReferenced) {
+            HttpGet method = new HttpGet(url);
+            method.setURI(HttpUtil.parseURI(url, existingParam));
+            return method;
+        }
 
         HttpPost method = new HttpPost(url);
         UrlEncodedFormEntity entity;
@@ -19,6 +19,10 @@ public class CSWSuggestion {
 	@CompletionField(analyzer = "autocomplete_index", searchAnalyzer = "autocomplete_search")
 	public Completion suggestionCompletion;
 	
+	// Used when reading suggestions back from the index
+	public CSWSuggestion() {
+	}
+
 	public CSWSuggestion(String term, Integer count) {
 		this.id = term;
 		// Manually create Completion and set weight to be the occurrence count so
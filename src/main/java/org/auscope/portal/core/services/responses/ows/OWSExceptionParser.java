@@ -1,8 +1,17 @@
 package org.auscope.portal.core.services.responses.ows;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.StringReader;
 import java.util.Iterator;
 
 import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathException;
 
@@ -24,6 +33,20 @@ public class OWSExceptionParser {
     /** The Constant log. */
     private static final Log log = LogFactory.getLog(OWSExceptionParser.class);
 
+    private static final String OWS_NAMESPACE = "http://www.opengis.net/ows";
+    private static final String EXCEPTION_REPORT = "ExceptionReport";
+
+    /** The most bytes of an InputStream that will be buffered while looking for its root element */
+    static final int PEEK_LIMIT = 64 * 1024;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+    static {
+        XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
     /**
      * Returns an XPath object that is configured to read the ows:Namespace.
      *
@@ -48,7 +71,7 @@ public class OWSExceptionParser {
             @Override
             public String getNamespaceURI(String prefix) {
                 if (prefix.equals("ows")) {
-                    return "http://www.opengis.net/ows";
+                    return OWS_NAMESPACE;
                 } else {
                     return null;
                 }
@@ -56,19 +79,47 @@ public class OWSExceptionParser {
         };
     }
 
+    /**
+     * Reads up to (and including) the root element of a document and returns true if it is an ows:ExceptionReport.
+     *
+     * @param reader
+     *            positioned at the start of the document. It will be closed
+     * @return
+     * @throws XMLStreamException
+     *             if the document isn't well formed before the end of its root element start tag
+     */
+    private static boolean isExceptionReport(XMLStreamReader reader) throws XMLStreamException {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    return EXCEPTION_REPORT.equals(reader.getLocalName())
+                            && OWS_NAMESPACE.equals(reader.getNamespaceURI());
+                }
+            }
+            return false;
+        } finally {
+            reader.close();
+        }
+    }
+
     /**
      * Will attempt to parse an <ows:Exception> element where ows will be http://www.opengis.net/ows.
      *
-     * Will throw an OWSException if document does contain an <ows:ExceptionReport>, otherwise it will do nothing
+     * Will throw an OWSException if document does contain an <ows:ExceptionReport>, otherwise it will do nothing.
+     * Only the prolog and root element are read unless the root element is an <ows:ExceptionReport>, so a large
+     * response body is never parsed here.
      *
-     * @param doc
-     *            a string containing valid XML, this will be parsed into a W3C DOM document
+     * @param xmlString
+     *            a string containing valid XML
      * @throws OWSException
      *             the oWS exception
      */
     public static void checkForExceptionResponse(String xmlString) throws OWSException {
         Document doc = null;
         try {
+            if (!isExceptionReport(XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(xmlString)))) {
+                return;
+            }
             doc = DOMUtil.buildDomFromString(xmlString);
         } catch (Exception ex) {
             //This should *hopefully* never occur
@@ -79,6 +130,55 @@ public class OWSExceptionParser {
         checkForExceptionResponse(doc);
     }
 
+    /**
+     * Will attempt to parse an <ows:Exception> element where ows will be http://www.opengis.net/ows.
+     *
+     * Will throw an OWSException if the stream contains an <ows:ExceptionReport>. Otherwise a stream that returns the
+     * complete, unconsumed content of stream is returned. Only the first PEEK_LIMIT bytes are buffered; if the root
+     * element doesn't start within them the stream is assumed not to be an exception report.
+     *
+     * @param stream
+     *            a stream of XML. It should no longer be read directly once this method has been called
+     * @return a stream with the same content as stream
+     * @throws OWSException
+     *             the oWS exception
+     * @throws IOException
+     *             if stream can't be read
+     */
+    public static InputStream checkForExceptionResponse(InputStream stream) throws OWSException, IOException {
+        byte[] prefix = stream.readNBytes(PEEK_LIMIT);
+        boolean exceptionReport;
+        try {
+            exceptionReport = isExceptionReport(XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(prefix)));
+        } catch (XMLStreamException ex) {
+            if (prefix.length == PEEK_LIMIT) {
+                //The root element simply wasn't reached within the buffered prefix
+                exceptionReport = false;
+            } else {
+                log.error("Error whilst attempting to parse stream for errors", ex);
+                throw new OWSException("Unable to parse stream", ex);
+            }
+        }
+
+        InputStream content = new SequenceInputStream(new ByteArrayInputStream(prefix), stream);
+        if (!exceptionReport) {
+            return content;
+        }
+
+        //Exception reports are small so they can be buffered in full
+        byte[] report = content.readAllBytes();
+        Document doc = null;
+        try {
+            doc = DOMUtil.buildDomFromStream(new ByteArrayInputStream(report));
+        } catch (Exception ex) {
+            log.error("Error whilst attempting to parse stream for errors", ex);
+            throw new OWSException("Unable to parse stream", ex);
+        }
+
+        checkForExceptionResponse(doc);
+        return new ByteArrayInputStream(report);
+    }
+
     /**
      * Will attempt to parse an <ows:Exception> element where ows will be http://www.opengis.net/ows.
      *
@@ -0,0 +1,221 @@
+package org.auscope.portal.core.services.vocabs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.SKOS;
+import org.auscope.portal.core.util.structure.RDFTriple;
+
+/**
+ * Immutable lookup structures for a single cached vocabulary {@link Model}.
+ *
+ * The index is built once when the vocabulary is loaded by the {@link org.auscope.portal.core.services.VocabularyCacheService}
+ * so that vocabulary queries become map lookups rather than scans (and temporary model copies) of the underlying model.
+ */
+public class VocabularyIndex {
+
+    private final Model model;
+
+    /** prefLabel -> resources with that prefLabel */
+    private final Map<String, List<Resource>> resourcesByPrefLabel;
+
+    /** URI -> prefLabel for every resource with a prefLabel */
+    private final Map<String, String> labeledVocabulary;
+
+    /** URI -> direct skos:narrower URIs */
+    private final Map<String, Set<String>> narrower;
+
+    /** URI -> skos:narrowerTransitive URIs as asserted in the vocabulary */
+    private final Map<String, Set<String>> narrowerTransitive;
+
+    /** URI -> every URI reachable by following skos:narrower */
+    private final Map<String, Set<String>> narrowerClosure;
+
+    /** Memoised results of triple filtered queries, keyed by the filter triples */
+    private final Map<String, Map<String, String>> filteredVocabularies = new ConcurrentHashMap<>();
+
+    public VocabularyIndex(Model model) {
+        this.model = model;
+
+        Map<String, List<Resource>> resourcesByPrefLabel = new HashMap<>();
+        Map<String, String> labeledVocabulary = new HashMap<>();
+        ResIterator iterator = model.listResourcesWithProperty(SKOS.prefLabel);
+        while (iterator.hasNext()) {
+            Resource res = iterator.next();
+            String prefLabel = res.getProperty(SKOS.prefLabel).getString();
+            resourcesByPrefLabel.computeIfAbsent(prefLabel, k -> new ArrayList<>()).add(res);
+
+            String urn = res.getURI();
+            if (urn == null) {
+                continue;
+            }
+            StmtIterator prefLabelIt = res.listProperties(SKOS.prefLabel);
+            while (prefLabelIt.hasNext()) {
+                labeledVocabulary.put(urn, prefLabelIt.next().getString());
+            }
+        }
+
+        this.resourcesByPrefLabel = Collections.unmodifiableMap(resourcesByPrefLabel);
+        this.labeledVocabulary = Collections.unmodifiableMap(labeledVocabulary);
+        this.narrower = indexObjectUris(model, SKOS.narrower);
+        this.narrowerTransitive = indexObjectUris(model, SKOS.narrowerTransitive);
+
+        Map<String, Set<String>> narrowerClosure = new HashMap<>();
+        for (String uri : this.narrower.keySet()) {
+            narrowerClosure.put(uri, Collections.unmodifiableSet(walkNarrower(uri)));
+        }
+        this.narrowerClosure = Collections.unmodifiableMap(narrowerClosure);
+    }
+
+    /**
+     * Builds a subject URI -> object URI set map for every statement using property
+     */
+    private static Map<String, Set<String>> indexObjectUris(Model model, Property property) {
+        Map<String, Set<String>> result = new HashMap<>();
+        StmtIterator stmtIterator = model.listStatements(null, property, (RDFNode) null);
+        while (stmtIterator.hasNext()) {
+            Statement statement = stmtIterator.next();
+            String subjectUri = statement.getSubject().getURI();
+            RDFNode object = statement.getObject();
+            if (subjectUri == null || !object.isURIResource()) {
+                continue;
+            }
+            result.computeIfAbsent(subjectUri, k -> new HashSet<>()).add(object.asResource().getURI());
+        }
+
+        for (Map.Entry<String, Set<String>> entry : result.entrySet()) {
+            entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Breadth first walk of the narrower relationships starting at uri. Cycles in the vocabulary are tolerated.
+     */
+    private Set<String> walkNarrower(String uri) {
+        Set<String> result = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>(narrower.getOrDefault(uri, Collections.emptySet()));
+        while (!toVisit.isEmpty()) {
+            String next = toVisit.pop();
+            if (result.add(next)) {
+                toVisit.addAll(narrower.getOrDefault(next, Collections.emptySet()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The underlying vocabulary model
+     *
+     * @return
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the resources whose SKOS prefLabel matches prefLabel
+     *
+     * @param prefLabel
+     * @return
+     */
+    public List<Resource> getResourcesByPrefLabel(String prefLabel) {
+        return resourcesByPrefLabel.getOrDefault(prefLabel, Collections.emptyList());
+    }
+
+    /**
+     * Returns an unmodifiable URI -> prefLabel mapping for the entire vocabulary
+     *
+     * @return
+     */
+    public Map<String, String> getLabeledVocabulary() {
+        return labeledVocabulary;
+    }
+
+    /**
+     * Returns an unmodifiable URI -> prefLabel mapping for every resource that is the subject of at least one
+     * statement matching any of triples. Results are memoised per distinct set of triples.
+     *
+     * @param triples
+     * @return
+     */
+    public Map<String, String> getLabeledVocabulary(RDFTriple... triples) {
+        return filteredVocabularies.computeIfAbsent(tripleKey(triples), k -> filterLabeledVocabulary(triples));
+    }
+
+    private Map<String, String> filterLabeledVocabulary(RDFTriple... triples) {
+        Map<String, String> result = new HashMap<>();
+        for (RDFTriple triple : triples) {
+            StmtIterator stmtIterator;
+            if (triple.language == null) {
+                stmtIterator = model.listStatements(triple.subject, triple.predicate, (RDFNode) triple.object);
+            } else {
+                stmtIterator = model.listStatements(triple.subject, triple.predicate, (String) triple.object, triple.language);
+            }
+            while (stmtIterator.hasNext()) {
+                String urn = stmtIterator.next().getSubject().getURI();
+                String prefLabel = urn == null ? null : labeledVocabulary.get(urn);
+                if (prefLabel != null) {
+                    result.put(urn, prefLabel);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static String tripleKey(RDFTriple... triples) {
+        StringBuilder key = new StringBuilder();
+        for (RDFTriple triple : triples) {
+            key.append(triple.subject).append('\u0000')
+               .append(triple.predicate).append('\u0000')
+               .append(triple.object).append('\u0000')
+               .append(triple.language).append('\u0001');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Direct narrower URIs of uri
+     *
+     * @param uri
+     * @return
+     */
+    public Set<String> getNarrower(String uri) {
+        return narrower.getOrDefault(uri, Collections.emptySet());
+    }
+
+    /**
+     * Narrower transitive URIs of uri as asserted by the vocabulary
+     *
+     * @param uri
+     * @return
+     */
+    public Set<String> getNarrowerTransitive(String uri) {
+        return narrowerTransitive.getOrDefault(uri, Collections.emptySet());
+    }
+
+    /**
+     * Every URI reachable from uri by following narrower relationships
+     *
+     * @param uri
+     * @return
+     */
+    public Set<String> getNarrowerClosure(String uri) {
+        return narrowerClosure.getOrDefault(uri, Collections.emptySet());
+    }
+}
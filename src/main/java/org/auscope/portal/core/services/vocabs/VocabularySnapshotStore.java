@@ -0,0 +1,134 @@
+package org.auscope.portal.core.services.vocabs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+
+/**
+ * Persists vocabulary models to a local directory as binary RDF (RDF Thrift) so that the
+ * {@link org.auscope.portal.core.services.VocabularyCacheService} can be restored at startup without
+ * contacting the remote vocabulary services.
+ */
+public class VocabularySnapshotStore {
+
+    private static final String SNAPSHOT_EXTENSION = ".rt";
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private File directory;
+
+    public VocabularySnapshotStore(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private File snapshotFile(String vocabularyId) {
+        // Vocabulary IDs are config values, keep the file name safe regardless
+        return new File(directory, vocabularyId.replaceAll("[^A-Za-z0-9_.-]", "_") + SNAPSHOT_EXTENSION);
+    }
+
+    /**
+     * Writes model as the snapshot for vocabularyId, replacing any existing snapshot atomically
+     *
+     * @param vocabularyId
+     * @param model
+     * @throws IOException
+     */
+    public void write(String vocabularyId, Model model) throws IOException {
+        Files.createDirectories(directory.toPath());
+        File target = snapshotFile(vocabularyId);
+        File tmp = File.createTempFile(target.getName(), ".tmp", directory);
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp.toPath())) {
+                RDFDataMgr.write(os, model, Lang.RDFTHRIFT);
+            }
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Reads the snapshot for vocabularyId.
+     *
+     * @param vocabularyId
+     * @return The snapshot model or null if there is no readable snapshot
+     */
+    public Model read(String vocabularyId) {
+        File source = snapshotFile(vocabularyId);
+        if (!source.isFile()) {
+            return null;
+        }
+
+        Model model = ModelFactory.createDefaultModel();
+        try (InputStream is = Files.newInputStream(source.toPath())) {
+            RDFDataMgr.read(model, is, Lang.RDFTHRIFT);
+            return model;
+        } catch (Exception e) {
+            log.warn(String.format("Unable to read vocabulary snapshot '%1$s': %2$s", source, e.getMessage()));
+            log.debug("Exception:", e);
+            return null;
+        }
+    }
+
+    /**
+     * Calculates a hash of the statements in model that is independent of statement order and blank node labels.
+     *
+     * @param model
+     * @return Hex encoded SHA-256 digest
+     */
+    public static String contentHash(Model model) {
+        List<String> lines = new ArrayList<>();
+        StmtIterator iterator = model.listStatements();
+        while (iterator.hasNext()) {
+            Statement statement = iterator.next();
+            lines.add(nodeString(statement.getSubject()) + ' ' + statement.getPredicate().getURI() + ' ' + nodeString(statement.getObject()));
+        }
+        Collections.sort(lines);
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String line : lines) {
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String nodeString(RDFNode node) {
+        if (node.isURIResource()) {
+            return '<' + node.asResource().getURI() + '>';
+        } else if (node.isLiteral()) {
+            Literal literal = node.asLiteral();
+            return '"' + literal.getLexicalForm() + "\"@" + literal.getLanguage() + "^^" + literal.getDatatypeURI();
+        }
+        return "_:";
+    }
+}
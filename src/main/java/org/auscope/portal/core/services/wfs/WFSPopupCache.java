@@ -0,0 +1,176 @@
+package org.auscope.portal.core.services.wfs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.auscope.portal.core.services.PortalServiceException;
+
+/**
+ * A bounded cache of WFS feature popups rendered as HTML.
+ *
+ * Popups are keyed on (service url, type name, feature id, base url) and expire after a fixed TTL. The least recently
+ * used popups are evicted once the cache holds more than maxEntries. Concurrent misses for the same popup are coalesced
+ * so that only a single request (and transform) is made for the feature.
+ */
+public class WFSPopupCache {
+
+    /**
+     * Fetches and renders a popup that isn't in the cache
+     */
+    @FunctionalInterface
+    public interface PopupLoader {
+        String load() throws PortalServiceException;
+    }
+
+    private final int maxEntries;
+    private final long ttlMs;
+
+    private final LinkedHashMap<String, CachedPopup> popups = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private static class CachedPopup {
+        final String html;
+        final long created;
+
+        CachedPopup(String html, long created) {
+            this.html = html;
+            this.created = created;
+        }
+    }
+
+    /**
+     * @param maxEntries Maximum number of popups held
+     * @param ttlMs How long popups are valid for (in ms)
+     */
+    public WFSPopupCache(int maxEntries, long ttlMs) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Generates the cache key for a popup.
+     *
+     * The ERML version used for rendering is chosen from the namespaces of the response, so it is determined by the
+     * feature request itself.
+     *
+     * @param serviceUrl WFS endpoint (or resolvable URL of the feature)
+     * @param typeName Feature type name (can be null)
+     * @param featureId Feature ID (can be null)
+     * @param baseUrl Base URL of the portal that links in the popup are made relative to
+     * @return
+     */
+    public static String popupKey(String serviceUrl, String typeName, String featureId, String baseUrl) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(serviceUrl).append('\u0000')
+          .append(typeName == null ? "" : typeName).append('\u0000')
+          .append(featureId == null ? "" : featureId).append('\u0000')
+          .append(baseUrl == null ? "" : baseUrl);
+        return sb.toString();
+    }
+
+    /**
+     * Returns the popup for key, loading it with loader if it isn't cached (or has expired). Concurrent calls for the
+     * same missing popup share a single invocation of loader. Failures are never cached.
+     *
+     * @param key Popup key from {@link #popupKey(String, String, String, String)}
+     * @param loader Fetches and renders the popup
+     * @return
+     * @throws PortalServiceException
+     */
+    public String get(String key, PopupLoader loader) throws PortalServiceException {
+        String html = getCached(key, System.currentTimeMillis());
+        if (html != null) {
+            hits.incrementAndGet();
+            return html;
+        }
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+
+        misses.incrementAndGet();
+        try {
+            html = loader.load();
+            put(key, html, System.currentTimeMillis());
+            future.complete(html);
+            return html;
+        } catch (PortalServiceException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private static String await(CompletableFuture<String> future) throws PortalServiceException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PortalServiceException("Interrupted waiting for popup", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof PortalServiceException) {
+                throw (PortalServiceException) e.getCause();
+            }
+            throw new PortalServiceException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private synchronized String getCached(String key, long now) {
+        CachedPopup popup = popups.get(key);
+        if (popup == null) {
+            return null;
+        }
+        if (now - popup.created > ttlMs) {
+            popups.remove(key);
+            return null;
+        }
+        return popup.html;
+    }
+
+    private synchronized void put(String key, String html, long created) {
+        if (html == null || maxEntries <= 0) {
+            return;
+        }
+        popups.put(key, new CachedPopup(html, created));
+
+        Iterator<CachedPopup> it = popups.values().iterator();
+        while (popups.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of requests that waited on an in flight request for the same popup instead of contacting the WFS
+     *
+     * @return
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public synchronized int size() {
+        return popups.size();
+    }
+}
@@ -1,10 +1,12 @@
 package org.auscope.portal.core.view;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 import org.auscope.portal.core.services.responses.csw.AbstractCSWOnlineResource;
@@ -15,6 +17,8 @@ import org.auscope.portal.core.services.responses.csw.CSWResponsibleParty;
 import org.auscope.portal.core.services.responses.csw.CSWTemporalExtent;
 import org.springframework.ui.ModelMap;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 /**
  * A factory class for generating serializable CSWRecord objects that can be used to communicate with the view.
  *
@@ -264,4 +268,207 @@ public class ViewCSWRecordFactory {
             throw new IllegalArgumentException("unsupported type - " + ex.getClass());
         }
     }
+
+    /**
+     * Writes the view equivalent of a CSWRecord directly to a JSON generator. The output is identical to serialising
+     * the result of {@link #toView(CSWRecord)} but avoids building the intermediate ModelMap tree.
+     *
+     * @param record
+     * @param gen
+     * @throws IOException
+     */
+    public void writeView(CSWRecord record, JsonGenerator gen) throws IOException {
+        gen.writeStartObject();
+
+        gen.writeStringField("name", record.getServiceName());
+        gen.writeStringField("resourceProvider", record.getResourceProvider());
+        gen.writeStringField("id", record.getFileIdentifier());
+        gen.writeStringField("recordInfoUrl", record.getRecordInfoUrl());
+        gen.writeStringField("description", record.getDataIdentificationAbstract());
+        gen.writeBooleanField("noCache", record.getNoCache());
+        gen.writeBooleanField("service", record.isService());
+
+        // Contact Organisation, Contact Person & Adminstrative Area
+        CSWResponsibleParty rp = record.getContact();
+        String adminArea = null;
+        String contactOrg = "Unknown";
+        String contactPerson = null;
+        if (rp != null) {
+            if (rp.getOrganisationName() != null && !rp.getOrganisationName().isEmpty()) {
+                contactOrg = rp.getOrganisationName();
+            }
+            if (rp.getIndividualName() != null && !rp.getIndividualName().isEmpty()) {
+                contactPerson = rp.getIndividualName();
+            }
+            adminArea = (rp.getContactInfo() == null ? null : rp.getContactInfo().getAddressAdministrativeArea());
+        }
+        gen.writeStringField("adminArea", adminArea);
+        gen.writeStringField("contactOrg", contactOrg);
+        gen.writeStringField("contactPerson", contactPerson);
+
+        // Funder
+        CSWResponsibleParty frp = record.getFunder();
+        String funderOrg = "Unknown";
+        if (frp != null && frp.getOrganisationName() != null && !frp.getOrganisationName().isEmpty()) {
+            funderOrg = frp.getOrganisationName();
+        }
+        gen.writeStringField("funderOrg", funderOrg);
+
+        // Authors
+        gen.writeArrayFieldStart("authors");
+        if (record.getAuthors() != null) {
+            for (CSWResponsibleParty authorParty : record.getAuthors()) {
+                if (authorParty.getIndividualName() != null) {
+                    gen.writeString(authorParty.getIndividualName());
+                }
+            }
+        }
+        gen.writeEndArray();
+
+        // Online resources
+        gen.writeArrayFieldStart("onlineResources");
+        if (record.getOnlineResources() != null) {
+            for (AbstractCSWOnlineResource res : record.getOnlineResources()) {
+                if (res.getLinkage() != null) {
+                    writeView(res, gen);
+                }
+            }
+        }
+        gen.writeEndArray();
+
+        // Geographic Elements
+        gen.writeArrayFieldStart("geographicElements");
+        if (record.getCSWGeographicElements() != null) {
+            for (CSWGeographicElement geo : record.getCSWGeographicElements()) {
+                writeView(geo, gen);
+            }
+        }
+        gen.writeEndArray();
+
+        // Temporal Extent
+        if (record.getTemporalExtent() != null) {
+            gen.writeFieldName("temporalExtent");
+            writeTemporalExtentView(record.getTemporalExtent(), gen);
+        }
+
+        writeStringArrayField("descriptiveKeywords", record.getDescriptiveKeywords(), gen);
+        writeStringArrayField("datasetURIs", record.getDataSetURIs(), gen);
+        writeStringArrayField("constraints", record.getConstraints(), gen);
+        writeStringArrayField("useLimitConstraints", record.getUseLimitConstraints(), gen);
+        writeStringArrayField("accessConstraints", record.getAccessConstraints(), gen);
+
+        // Child records
+        gen.writeArrayFieldStart("childRecords");
+        if (record.hasChildRecords()) {
+            for (CSWRecord childRecord : record.getChildRecords()) {
+                writeView(childRecord, gen);
+            }
+        }
+        gen.writeEndArray();
+
+        // Date
+        String dateString = "";
+        if (record.getDate() != null) {
+            DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss zzz");
+            df.setTimeZone(TimeZone.getTimeZone("UTC"));
+            dateString = df.format(record.getDate());
+        }
+        gen.writeStringField("date", dateString);
+
+        // Min scale, max scale
+        writeDoubleField("minScale", record.getMinScale(), gen);
+        writeDoubleField("maxScale", record.getMaxScale(), gen);
+
+        // Known layer ids, names and descriptions are only included when present
+        writeNonEmptyStringSetField("knownLayerIds", record.getKnownLayerIds(), gen);
+        writeNonEmptyStringSetField("knownLayerNames", record.getKnownLayerNames(), gen);
+        writeNonEmptyStringSetField("knownLayerDescriptions", record.getKnownLayerDescriptions(), gen);
+
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes the view equivalent of a CSWOnlineResource directly to a JSON generator.
+     *
+     * @param res
+     * @param gen
+     * @throws IOException
+     */
+    public void writeView(AbstractCSWOnlineResource res, JsonGenerator gen) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("url", res.getLinkage().toString());
+        gen.writeStringField("type", res.getType().name());
+        gen.writeStringField("name", res.getName());
+        gen.writeStringField("description", res.getDescription());
+        gen.writeStringField("version", res.getVersion());
+        gen.writeStringField("applicationProfile", res.getApplicationProfile());
+        gen.writeStringField("protocolRequest", res.getProtocolRequest());
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes the view equivalent of a CSWGeographicElement directly to a JSON generator. If el is not a supported
+     * implementation of CSWGeographicBoundingBox a IllegalArgumentException will be thrown.
+     *
+     * @param el
+     * @param gen
+     * @throws IOException
+     */
+    public void writeView(CSWGeographicElement el, JsonGenerator gen) throws IOException {
+        if (el instanceof CSWGeographicBoundingBox) {
+            CSWGeographicBoundingBox bbox = (CSWGeographicBoundingBox) el;
+            gen.writeStartObject();
+            gen.writeStringField("type", "bbox");
+            gen.writeNumberField("eastBoundLongitude", bbox.getEastBoundLongitude());
+            gen.writeNumberField("westBoundLongitude", bbox.getWestBoundLongitude());
+            gen.writeNumberField("northBoundLatitude", bbox.getNorthBoundLatitude());
+            gen.writeNumberField("southBoundLatitude", bbox.getSouthBoundLatitude());
+            gen.writeEndObject();
+        } else {
+            throw new IllegalArgumentException("unsupported type - " + el.getClass());
+        }
+    }
+
+    /**
+     * Writes the view equivalent of a CSWTemporalExtent directly to a JSON generator.
+     *
+     * @param ex
+     * @param gen
+     * @throws IOException
+     */
+    public void writeTemporalExtentView(CSWTemporalExtent ex, JsonGenerator gen) throws IOException {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        gen.writeStartObject();
+        gen.writeStringField("beginPosition", sdf.format(ex.getBeginPosition()));
+        gen.writeStringField("endPosition", sdf.format(ex.getEndPosition()));
+        gen.writeEndObject();
+    }
+
+    private static void writeStringArrayField(String fieldName, String[] values, JsonGenerator gen) throws IOException {
+        gen.writeArrayFieldStart(fieldName);
+        if (values != null) {
+            for (String s : values) {
+                gen.writeString(s);
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    private static void writeNonEmptyStringSetField(String fieldName, Set<String> values, JsonGenerator gen) throws IOException {
+        if (values != null && values.size() > 0) {
+            gen.writeArrayFieldStart(fieldName);
+            for (String s : values) {
+                gen.writeString(s);
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    private static void writeDoubleField(String fieldName, Double value, JsonGenerator gen) throws IOException {
+        if (value == null) {
+            gen.writeNullField(fieldName);
+        } else {
+            gen.writeNumberField(fieldName, value.doubleValue());
+        }
+    }
 }
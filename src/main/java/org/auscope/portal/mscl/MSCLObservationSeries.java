@@ -0,0 +1,309 @@
+package org.auscope.portal.mscl;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.auscope.portal.core.services.responses.ows.OWSException;
+
+/**
+ * The MSCL observations (mscl:scanned_data features) of a single borehole, held as primitive columns ordered by depth.
+ *
+ * Every numeric mscl property of a feature is kept so that any combination of observations (over any part of the
+ * depth range) can be served without contacting the WFS again. A row that has no value for an observation holds NaN in
+ * that observation's column.
+ */
+public class MSCLObservationSeries {
+
+    public static final String MSCL_NAMESPACE = "http://example.org/mscl";
+    private static final String OWS_NAMESPACE = "http://www.opengis.net/ows";
+
+    public static final String DEPTH = "depth";
+    private static final String SCANNED_DATA = "scanned_data";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+    static {
+        XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /** Ascending depth of each row */
+    private final float[] depths;
+    /** Observation values by name, each the same length as depths */
+    private final Map<String, float[]> observations;
+
+    MSCLObservationSeries(float[] depths, Map<String, float[]> observations) {
+        this.depths = depths;
+        this.observations = Collections.unmodifiableMap(observations);
+    }
+
+    /**
+     * Parses a WFS response of mscl:scanned_data features in a single pass
+     *
+     * @param is
+     *            The WFS response
+     * @return
+     * @throws XMLStreamException
+     *             If the response isn't well formed XML
+     * @throws OWSException
+     *             If the response is an ows:ExceptionReport
+     */
+    public static MSCLObservationSeries parse(InputStream is) throws XMLStreamException, OWSException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+        try {
+            return parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static MSCLObservationSeries parse(XMLStreamReader reader) throws XMLStreamException, OWSException {
+        ColumnsBuilder columns = new ColumnsBuilder();
+        List<String> rowNames = new ArrayList<>();
+        float[] rowValues = new float[16];
+
+        boolean root = true;
+        int level = -1; // Element depth relative to the current scanned_data element (-1 if outside one)
+        String property = null;
+        boolean complexProperty = false;
+        StringBuilder text = new StringBuilder();
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (root) {
+                    root = false;
+                    if (OWS_NAMESPACE.equals(reader.getNamespaceURI()) && "ExceptionReport".equals(reader.getLocalName())) {
+                        throw parseException(reader);
+                    }
+                }
+
+                if (level >= 0) {
+                    level++;
+                    if (level == 1) {
+                        property = MSCL_NAMESPACE.equals(reader.getNamespaceURI()) ? reader.getLocalName() : null;
+                        complexProperty = false;
+                        text.setLength(0);
+                    } else {
+                        complexProperty = true;
+                    }
+                } else if (MSCL_NAMESPACE.equals(reader.getNamespaceURI()) && SCANNED_DATA.equals(reader.getLocalName())) {
+                    level = 0;
+                    rowNames.clear();
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                if (level == 1 && property != null) {
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && level >= 0) {
+                if (level == 1 && property != null && !complexProperty) {
+                    String value = text.toString().trim();
+                    if (!value.isEmpty()) {
+                        try {
+                            float f = Float.parseFloat(value);
+                            int index = rowNames.size();
+                            if (index == rowValues.length) {
+                                rowValues = Arrays.copyOf(rowValues, index * 2);
+                            }
+                            rowNames.add(property);
+                            rowValues[index] = f;
+                        } catch (NumberFormatException ex) {
+                            // Not an observation (eg an identifier)
+                        }
+                    }
+                    property = null;
+                } else if (level == 0) {
+                    // Only rows with a depth can be plotted
+                    if (rowNames.contains(DEPTH)) {
+                        for (int i = 0; i < rowNames.size(); i++) {
+                            columns.set(rowNames.get(i), rowValues[i]);
+                        }
+                        columns.endRow();
+                    }
+                }
+                level--;
+            }
+        }
+
+        return columns.build();
+    }
+
+    /**
+     * Reads the first ows:Exception of an ows:ExceptionReport, reader must be positioned on the ExceptionReport
+     */
+    private static OWSException parseException(XMLStreamReader reader) throws XMLStreamException {
+        String exceptionCode = "";
+        String exceptionText = null;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && OWS_NAMESPACE.equals(reader.getNamespaceURI())) {
+                if ("Exception".equals(reader.getLocalName())) {
+                    String code = reader.getAttributeValue(XMLConstants.NULL_NS_URI, "exceptionCode");
+                    exceptionCode = code == null ? "" : code;
+                } else if ("ExceptionText".equals(reader.getLocalName())) {
+                    exceptionText = reader.getElementText();
+                    break;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && OWS_NAMESPACE.equals(reader.getNamespaceURI())
+                    && "Exception".equals(reader.getLocalName())) {
+                break;
+            }
+        }
+        if (exceptionText == null) {
+            exceptionText = "[Cannot extract error message]";
+        }
+        return new OWSException(String.format("Code='%1$s' Message='%2$s'", exceptionCode, exceptionText));
+    }
+
+    /**
+     * Accumulates rows into growable primitive columns
+     */
+    private static class ColumnsBuilder {
+        private int rows = 0;
+        private int capacity = 256;
+        private final Map<String, float[]> columns = new LinkedHashMap<>();
+
+        void set(String name, float value) {
+            float[] column = columns.get(name);
+            if (column == null) {
+                column = new float[capacity];
+                Arrays.fill(column, Float.NaN);
+                columns.put(name, column);
+            }
+            column[rows] = value;
+        }
+
+        void endRow() {
+            rows++;
+            if (rows == capacity) {
+                capacity *= 2;
+                for (Map.Entry<String, float[]> entry : columns.entrySet()) {
+                    float[] grown = Arrays.copyOf(entry.getValue(), capacity);
+                    Arrays.fill(grown, rows, capacity, Float.NaN);
+                    entry.setValue(grown);
+                }
+            }
+        }
+
+        MSCLObservationSeries build() {
+            float[] depths = columns.containsKey(DEPTH) ? Arrays.copyOf(columns.remove(DEPTH), rows) : new float[0];
+            Map<String, float[]> observations = new LinkedHashMap<>();
+            for (Map.Entry<String, float[]> entry : columns.entrySet()) {
+                observations.put(entry.getKey(), Arrays.copyOf(entry.getValue(), rows));
+            }
+
+            boolean sorted = true;
+            for (int i = 1; i < depths.length && sorted; i++) {
+                sorted = depths[i - 1] <= depths[i];
+            }
+            if (sorted) {
+                return new MSCLObservationSeries(depths, observations);
+            }
+
+            // Stable (merge) sort of the row indexes by depth, then apply the order to every column
+            Integer[] order = new Integer[depths.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            final float[] unsortedDepths = depths;
+            Arrays.sort(order, (a, b) -> Float.compare(unsortedDepths[a], unsortedDepths[b]));
+
+            float[] sortedDepths = new float[depths.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedDepths[i] = depths[order[i]];
+            }
+            for (Map.Entry<String, float[]> entry : observations.entrySet()) {
+                float[] column = entry.getValue();
+                float[] sortedColumn = new float[column.length];
+                for (int i = 0; i < order.length; i++) {
+                    sortedColumn[i] = column[order[i]];
+                }
+                entry.setValue(sortedColumn);
+            }
+            return new MSCLObservationSeries(sortedDepths, observations);
+        }
+    }
+
+    /**
+     * The number of rows (depths) in this series
+     *
+     * @return
+     */
+    public int size() {
+        return depths.length;
+    }
+
+    /**
+     * The depth of a row
+     *
+     * @param row
+     * @return
+     */
+    public float getDepth(int row) {
+        return depths[row];
+    }
+
+    /**
+     * The values of an observation for every row (NaN where a row has no value)
+     *
+     * @param name
+     *            Observation (mscl property) name
+     * @return The values or null if no row has a value for name. The array must not be modified.
+     */
+    public float[] getObservation(String name) {
+        return observations.get(name);
+    }
+
+    /**
+     * Index of the first row at or below depth. Depths are held as floats, so depth is compared at float precision
+     * (e.g. a row at 10.1 is at or below a depth of 10.1 even though 10.1f > 10.1d)
+     *
+     * @param depth
+     * @return
+     */
+    public int fromIndex(double depth) {
+        float d = (float) depth;
+        int lo = 0, hi = depths.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (depths[mid] < d) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Index after the last row at or above depth. Depths are compared at float precision as for fromIndex
+     *
+     * @param depth
+     * @return
+     */
+    public int toIndex(double depth) {
+        float d = (float) depth;
+        int lo = 0, hi = depths.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (depths[mid] <= d) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
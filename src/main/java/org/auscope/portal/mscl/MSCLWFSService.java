@@ -1,8 +1,12 @@
 package org.auscope.portal.mscl;
 
+import java.io.InputStream;
 import java.net.ConnectException;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.conn.ConnectTimeoutException;
@@ -22,6 +26,32 @@ import org.springframework.stereotype.Service;
  */
 @Service
 public class MSCLWFSService extends BaseWFSService {
+
+    /** Maximum number of boreholes whose parsed observations are cached */
+    private static final int MAX_CACHED_SERIES = 20;
+    /** How long parsed observations are cached for */
+    private static final long SERIES_TTL_MS = TimeUnit.MINUTES.toMillis(30);
+
+    /** Parsed observations by service URL and borehole, least recently used first */
+    private final LinkedHashMap<String, CachedSeries> seriesCache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The observations of a borehole over the depth range that was requested from the WFS
+     */
+    private static class CachedSeries {
+        final double startDepth;
+        final double endDepth;
+        final MSCLObservationSeries series;
+        final long created;
+
+        CachedSeries(double startDepth, double endDepth, MSCLObservationSeries series, long created) {
+            this.startDepth = startDepth;
+            this.endDepth = endDepth;
+            this.series = series;
+            this.created = created;
+        }
+    }
+
     /**
      * Creates a new instance of this class with the specified dependencies
      * 
@@ -104,6 +134,74 @@ public class MSCLWFSService extends BaseWFSService {
             final String boreholeHeaderId,
             final String startDepth,
             final String endDepth) throws ConnectException, ConnectTimeoutException, UnknownHostException, Exception {
+        HttpRequestBase method = generateObservationsRequest(serviceUrl, boreholeHeaderId, startDepth, endDepth);
+        return httpServiceCaller.getMethodResponseAsString(method);
+    }
+
+    /**
+     * Get the parsed measurements for a borehole covering (at least) a certain depth range. Measurements are cached
+     * per borehole, so requests within a depth range that has already been fetched don't contact the WFS.
+     * 
+     * @param serviceUrl service URL
+     * @param boreholeHeaderId borehole header id
+     * @param startDepth get observations starting from this depth
+     * @param endDepth get observations ending at this depth
+     * @return The measurements, which may extend beyond startDepth and endDepth
+     */
+    public MSCLObservationSeries getObservationSeries(
+            final String serviceUrl,
+            final String boreholeHeaderId,
+            final String startDepth,
+            final String endDepth) throws ConnectException, ConnectTimeoutException, UnknownHostException, Exception {
+        double start, end;
+        try {
+            start = Double.parseDouble(startDepth);
+            end = Double.parseDouble(endDepth);
+        } catch (NumberFormatException | NullPointerException ex) {
+            // The range can't be compared against cached ranges, leave it to the WFS to interpret
+            return fetchObservationSeries(serviceUrl, boreholeHeaderId, startDepth, endDepth);
+        }
+
+        String key = serviceUrl + "\u0000" + boreholeHeaderId;
+        synchronized (seriesCache) {
+            CachedSeries cached = seriesCache.get(key);
+            if (cached != null && System.currentTimeMillis() - cached.created <= SERIES_TTL_MS
+                    && cached.startDepth <= start && cached.endDepth >= end) {
+                return cached.series;
+            }
+        }
+
+        MSCLObservationSeries series = fetchObservationSeries(serviceUrl, boreholeHeaderId, startDepth, endDepth);
+        synchronized (seriesCache) {
+            seriesCache.put(key, new CachedSeries(start, end, series, System.currentTimeMillis()));
+            Iterator<CachedSeries> it = seriesCache.values().iterator();
+            while (seriesCache.size() > MAX_CACHED_SERIES && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Requests and parses the measurements for a borehole at a certain depth range
+     */
+    protected MSCLObservationSeries fetchObservationSeries(
+            final String serviceUrl,
+            final String boreholeHeaderId,
+            final String startDepth,
+            final String endDepth) throws Exception {
+        HttpRequestBase method = generateObservationsRequest(serviceUrl, boreholeHeaderId, startDepth, endDepth);
+        try (InputStream is = httpServiceCaller.getMethodResponseAsStream(method)) {
+            return MSCLObservationSeries.parse(is);
+        }
+    }
+
+    private HttpRequestBase generateObservationsRequest(
+            final String serviceUrl,
+            final String boreholeHeaderId,
+            final String startDepth,
+            final String endDepth) {
 
         // Remove the first part of the id.; we need to use the numerical part when looking up the observations:
         String boreholeHeaderIdDigitsOnly = boreholeHeaderId.replaceFirst("\\S*\\.", "");
@@ -130,7 +228,7 @@ public class MSCLWFSService extends BaseWFSService {
                 startDepth,
                 endDepth);
 
-        HttpRequestBase method = this.generateWFSRequest(
+        return this.generateWFSRequest(
                 serviceUrl,
                 "mscl:scanned_data", // TODO: hard-coding feels bad but this is, after all, an MSCL-specific service...
                 null,
@@ -139,8 +237,6 @@ public class MSCLWFSService extends BaseWFSService {
                 null,
                 WFSGetFeatureMethodMaker.ResultType.Results,
                 "");
-
-        return httpServiceCaller.getMethodResponseAsString(method);
     }
 
     /**
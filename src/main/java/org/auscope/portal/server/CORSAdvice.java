@@ -17,6 +17,8 @@ public class CORSAdvice {
         config.addAllowedOriginPattern("*");
         config.addAllowedHeader("*");
         config.addAllowedMethod("*");
+        // Lets the front end read the registered SLD URL from style responses
+        config.addExposedHeader("X-SLD-Url");
         source.registerCorsConfiguration("/**", config);
         FilterRegistrationBean<CorsFilter> bean = new FilterRegistrationBean<CorsFilter>(new CorsFilter(source));
         bean.setOrder(0);
@@ -1,5 +1,6 @@
 package org.auscope.portal.server.config;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
@@ -25,7 +26,10 @@ import org.apache.commons.logging.LogFactory;
 import org.auscope.portal.core.configuration.ServiceConfiguration;
 import org.auscope.portal.core.configuration.ServiceConfigurationItem;
 import org.auscope.portal.core.server.PortalPropertySourcesPlaceholderConfigurer;
+import org.auscope.portal.core.server.http.HttpCircuitBreaker;
 import org.auscope.portal.core.server.http.HttpServiceCaller;
+import org.auscope.portal.core.server.http.HttpServiceCallerMetrics;
+import org.auscope.portal.core.server.http.ProxyResponseCache;
 import org.auscope.portal.core.server.http.download.FileDownloadService;
 import org.auscope.portal.core.services.CSWCacheService;
 import org.auscope.portal.core.services.CSWFilterService;
@@ -33,6 +37,7 @@ import org.auscope.portal.core.services.ElasticsearchService;
 import org.auscope.portal.core.services.GoogleCloudMonitoringCachedService;
 import org.auscope.portal.core.services.KnownLayerService;
 import org.auscope.portal.core.services.OpendapService;
+import org.auscope.portal.core.services.SLDRegistryService;
 import org.auscope.portal.core.services.VocabularyCacheService;
 import org.auscope.portal.core.services.VocabularyFilterService;
 import org.auscope.portal.core.services.WCSService;
@@ -52,6 +57,8 @@ import org.auscope.portal.core.services.methodmakers.sissvoc.SISSVoc2MethodMaker
 import org.auscope.portal.core.services.namespaces.ErmlNamespaceContext;
 import org.auscope.portal.core.services.responses.vocab.ConceptFactory;
 import org.auscope.portal.core.services.vocabs.VocabularyServiceItem;
+import org.auscope.portal.core.services.vocabs.VocabularySnapshotStore;
+import org.auscope.portal.core.services.wfs.WFSPopupCache;
 import org.auscope.portal.core.view.ViewCSWRecordFactory;
 import org.auscope.portal.core.view.ViewGetCapabilitiesFactory;
 import org.auscope.portal.core.view.ViewKnownLayerFactory;
@@ -79,6 +86,9 @@ import org.springframework.scheduling.quartz.SchedulerFactoryBean;
 import org.springframework.web.multipart.support.StandardServletMultipartResolver;
 import org.yaml.snakeyaml.Yaml;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+
 
 /**
  * Bean definitions.
@@ -118,6 +128,81 @@ public class AppContext {
     @Value("${spring.data.elasticsearch.manualUpdateOnly:false}")
     private boolean manualUpdateOnly;
 
+    // Directory for persisted vocabulary snapshots, if not set vocabularies are only held in memory
+    @Value("${vocabularySnapshotDir:#{null}}")
+    private String vocabularySnapshotDir;
+
+    @Value("${portalUrl}")
+    private String portalUrl;
+
+    // Number of generated SLDs kept in the SLD registry before expired ones are removed
+    @Value("${sldRegistry.maxEntries:1000}")
+    private int sldRegistryMaxEntries;
+
+    // How long a generated SLD is kept after it was last used
+    @Value("${sldRegistry.ttlMinutes:1440}")
+    private long sldRegistryTtlMinutes;
+
+    // If true, WMS requests reference registered SLDs by URL (the WMS must be able to reach portalUrl)
+    @Value("${sldRegistry.referenceInRequests:false}")
+    private boolean sldRegistryReferenceInRequests;
+
+    // Opened OPeNDAP datasets are cached (by URL) to avoid re-reading their metadata
+    @Value("${opendapDatasetCache.maxEntries:20}")
+    private int opendapDatasetCacheMaxEntries;
+
+    @Value("${opendapDatasetCache.ttlMinutes:10}")
+    private long opendapDatasetCacheTtlMinutes;
+
+    // Rendered WFS feature popups are cached by (url, type name, feature id)
+    @Value("${wfsPopupCache.maxEntries:500}")
+    private int wfsPopupCacheMaxEntries;
+
+    @Value("${wfsPopupCache.ttlMinutes:5}")
+    private long wfsPopupCacheTtlMinutes;
+
+    // Small cacheable responses fetched through getViaProxy.do are cached by URL
+    @Value("${proxyCache.maxEntries:200}")
+    private int proxyCacheMaxEntries;
+
+    @Value("${proxyCache.maxEntryKB:512}")
+    private int proxyCacheMaxEntryKB;
+
+    // Used when the upstream response doesn't specify how long it can be cached for
+    @Value("${proxyCache.defaultTtlMinutes:5}")
+    private long proxyCacheDefaultTtlMinutes;
+
+    @Value("${proxyCache.maxTtlMinutes:60}")
+    private long proxyCacheMaxTtlMinutes;
+
+    // Latency, size and error metrics for requests made to upstream services
+    @Value("${upstreamMetrics.enabled:true}")
+    private boolean upstreamMetricsEnabled;
+
+    // Requests to hosts beyond this many distinct hosts are not recorded
+    @Value("${upstreamMetrics.maxHosts:200}")
+    private int upstreamMetricsMaxHosts;
+
+    // Requests to a host are suspended for openSeconds after failureThreshold consecutive failures
+    @Value("${upstreamCircuitBreaker.enabled:true}")
+    private boolean upstreamCircuitBreakerEnabled;
+
+    @Value("${upstreamCircuitBreaker.failureThreshold:5}")
+    private int upstreamCircuitBreakerFailureThreshold;
+
+    @Value("${upstreamCircuitBreaker.openSeconds:30}")
+    private long upstreamCircuitBreakerOpenSeconds;
+
+    // Search request timeouts are latencyMultiplier x the host's p99 latency (0 disables), but no less than minTimeoutMs
+    @Value("${upstreamCircuitBreaker.latencyMultiplier:4}")
+    private double upstreamCircuitBreakerLatencyMultiplier;
+
+    @Value("${upstreamCircuitBreaker.minTimeoutMs:30000}")
+    private int upstreamCircuitBreakerMinTimeoutMs;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
     @Autowired
     private ArrayList<CSWServiceItem> cswServiceList;
 
@@ -144,7 +229,18 @@ public class AppContext {
     
     @Bean
     public WFSService wfsService() {
-        return new WFSService(httpServiceCallerApp(), methodMaker(), new GmlToHtml());
+        WFSService wfsService = new WFSService(httpServiceCallerApp(), methodMaker(), new GmlToHtml());
+        if (wfsPopupCacheMaxEntries > 0) {
+            wfsService.setPopupCache(new WFSPopupCache(wfsPopupCacheMaxEntries,
+                    TimeUnit.MINUTES.toMillis(wfsPopupCacheTtlMinutes)));
+        }
+        return wfsService;
+    }
+
+    @Bean
+    public ProxyResponseCache proxyResponseCache() {
+        return new ProxyResponseCache(proxyCacheMaxEntries, proxyCacheMaxEntryKB * 1024,
+                TimeUnit.MINUTES.toMillis(proxyCacheDefaultTtlMinutes), TimeUnit.MINUTES.toMillis(proxyCacheMaxTtlMinutes));
     }
 
     /***
@@ -276,21 +372,51 @@ public class AppContext {
     @Bean
     @Primary
     public HttpServiceCaller httpServiceCallerApp() {
-        return new HttpServiceCaller(900000, activeProfile.contains("test"));
+        return withUpstreamMonitoring(new HttpServiceCaller(900000, activeProfile.contains("test")));
     }
     
     // Second HttpServiceCaller to reduce CSW record search timeout
     // Will ignore SSL errors if the test profile is active (locally signed SSL certs)
     @Bean
     public SearchHttpServiceCaller searchHttpServiceCaller() {
-        return new SearchHttpServiceCaller(60000, activeProfile.contains("test"));
+        SearchHttpServiceCaller serviceCaller = withUpstreamMonitoring(
+                new SearchHttpServiceCaller(60000, activeProfile.contains("test")));
+        // Only interactive searches are timed out on the host's usual latency, the 900s callers make harvest and
+        // download requests that can legitimately take far longer than usual
+        serviceCaller.setDerivedTimeouts(true);
+        return serviceCaller;
     }
 
     // Third HttpServiceCaller for CSW cache services 
     // Will ignore SSL errors if the test profile is active (locally signed SSL certs)
     @Bean
     public HttpServiceCaller cswCacheHttpServiceCaller() {
-        return new HttpServiceCaller(900000, activeProfile.contains("test"));
+        return withUpstreamMonitoring(new HttpServiceCaller(900000, activeProfile.contains("test")));
+    }
+
+    private <T extends HttpServiceCaller> T withUpstreamMonitoring(T serviceCaller) {
+        if (upstreamMetricsEnabled && meterRegistry != null) {
+            serviceCaller.setMetrics(new HttpServiceCallerMetrics(meterRegistry));
+        }
+        if (upstreamCircuitBreakerEnabled) {
+            serviceCaller.setCircuitBreaker(upstreamCircuitBreaker());
+        }
+        return serviceCaller;
+    }
+
+    // Shared by every HttpServiceCaller so they all stop calling a failing host
+    @Bean
+    public HttpCircuitBreaker upstreamCircuitBreaker() {
+        return new HttpCircuitBreaker(upstreamCircuitBreakerFailureThreshold, upstreamCircuitBreakerOpenSeconds * 1000,
+                upstreamCircuitBreakerMinTimeoutMs, upstreamCircuitBreakerLatencyMultiplier, 20,
+                upstreamMetricsMaxHosts);
+    }
+
+    // Proxied URLs can name any host, so cap the number of hosts the upstream metrics will track
+    @Bean
+    public MeterFilter upstreamMetricsHostLimit() {
+        return MeterFilter.maximumAllowableTags("portal.upstream", HttpServiceCallerMetrics.TAG_HOST,
+                upstreamMetricsMaxHosts, MeterFilter.deny());
     }
     
     @Bean
@@ -381,7 +507,15 @@ public class AppContext {
 
     @Bean
     public WMS_1_3_0_MethodMaker wms130methodMaker() {
-        return new WMS_1_3_0_MethodMaker(httpServiceCallerApp());
+        WMS_1_3_0_MethodMaker methodMaker = new WMS_1_3_0_MethodMaker(httpServiceCallerApp());
+        methodMaker.setSldRegistry(sldRegistryService());
+        return methodMaker;
+    }
+
+    @Bean
+    public SLDRegistryService sldRegistryService() {
+        return new SLDRegistryService(portalUrl + "/sld/", sldRegistryMaxEntries,
+                TimeUnit.MINUTES.toMillis(sldRegistryTtlMinutes), sldRegistryReferenceInRequests);
     }
 
     @Bean
@@ -406,7 +540,12 @@ public class AppContext {
 
     @Bean
     public VocabularyCacheService vocabularyCacheService() {
-        return new VocabularyCacheService(taskExecutor(), vocabularyServiceList());
+        VocabularyCacheService vocabularyCacheService = new VocabularyCacheService(taskExecutor(), vocabularyServiceList());
+        if (vocabularySnapshotDir != null && !vocabularySnapshotDir.isEmpty()) {
+            vocabularyCacheService.setSnapshotStore(new VocabularySnapshotStore(new File(vocabularySnapshotDir)));
+            vocabularyCacheService.restoreSnapshots();
+        }
+        return vocabularyCacheService;
     }
 
     @Bean
@@ -439,7 +578,8 @@ public class AppContext {
 
     @Bean
     public OpendapService opendapService() {
-        return new OpendapService(httpServiceCallerApp(), getDataMethodMaker());
+        return new OpendapService(httpServiceCallerApp(), getDataMethodMaker(), opendapDatasetCacheMaxEntries,
+                TimeUnit.MINUTES.toMillis(opendapDatasetCacheTtlMinutes));
     }
 
     @Bean
@@ -489,6 +629,9 @@ public class AppContext {
     @Value("${env.stackdriver.client_email}") private String clientEmail;
     @Value("${env.stackdriver.token_uri}") private String tokenUri;
     @Value("${env.stackdriver.project_id}") private String projectId;
+    @Value("${env.stackdriver.cacheTtlSeconds:900}") private long stackdriverCacheTtlSeconds;
+    @Value("${env.stackdriver.maxStalenessSeconds:900}") private long stackdriverMaxStalenessSeconds;
+    @Value("${env.stackdriver.refreshJitter:0.1}") private double stackdriverRefreshJitter;
     @Bean
     public GoogleCloudMonitoringCachedService googleCloudMonitoringCachedService() {
         if (!enableStackdriver) {
@@ -512,6 +655,9 @@ public class AppContext {
         stackdriverService.setClientEmail(clientEmail);
         stackdriverService.setTokenUri(tokenUri);
         stackdriverService.setProjectId(projectId);
+        stackdriverService.setTtlSeconds(stackdriverCacheTtlSeconds);
+        stackdriverService.setMaxStalenessSeconds(stackdriverMaxStalenessSeconds);
+        stackdriverService.setRefreshJitter(stackdriverRefreshJitter);
 
         return stackdriverService;
     }
@@ -528,7 +674,9 @@ public class AppContext {
     
     @Bean
     ElasticsearchService elasticsearchService() {
-    	return new ElasticsearchService(searchHttpServiceCaller());
+    	ElasticsearchService elasticsearchService = new ElasticsearchService(searchHttpServiceCaller());
+    	elasticsearchService.setBulkExecutor(taskExecutor());
+    	return elasticsearchService;
     }
 
 }
@@ -0,0 +1,104 @@
+package org.auscope.portal.server.web;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.auscope.portal.core.server.http.HttpServiceCallerMetrics;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+/**
+ * Actuator endpoint (/actuator/upstreams) summarising the requests made to each upstream server, as recorded by
+ * {@link HttpServiceCallerMetrics}. Each entry covers one (host, method, request, status) combination, slowest first.
+ * Status is the HTTP status class (2xx, 5xx, ...) or "none" for requests that failed without a response.
+ */
+@Component
+@Endpoint(id = "upstreams")
+public class UpstreamMetricsEndpoint {
+
+    private MeterRegistry registry;
+
+    public UpstreamMetricsEndpoint(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> upstreams() {
+        return summarise(null);
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> upstream(@Selector String host) {
+        return summarise(host);
+    }
+
+    private List<Map<String, Object>> summarise(String host) {
+        List<Map<String, Object>> summaries = new ArrayList<>();
+        for (Timer timer : registry.find(HttpServiceCallerMetrics.REQUESTS).timers()) {
+            Meter.Id id = timer.getId();
+            if (host != null && !host.equalsIgnoreCase(id.getTag(HttpServiceCallerMetrics.TAG_HOST))) {
+                continue;
+            }
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("host", id.getTag(HttpServiceCallerMetrics.TAG_HOST));
+            summary.put("method", id.getTag(HttpServiceCallerMetrics.TAG_METHOD));
+            summary.put("request", id.getTag(HttpServiceCallerMetrics.TAG_REQUEST));
+            summary.put("status", id.getTag(HttpServiceCallerMetrics.TAG_STATUS));
+
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            summary.put("count", snapshot.count());
+            summary.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+            summary.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                summary.put(String.format("p%1$.0fMs", percentile.percentile() * 100),
+                        percentile.value(TimeUnit.MILLISECONDS));
+            }
+
+            DistributionSummary bytes = registry.find(HttpServiceCallerMetrics.RESPONSE_BYTES)
+                    .tag(HttpServiceCallerMetrics.TAG_HOST, id.getTag(HttpServiceCallerMetrics.TAG_HOST))
+                    .tag(HttpServiceCallerMetrics.TAG_METHOD, id.getTag(HttpServiceCallerMetrics.TAG_METHOD))
+                    .tag(HttpServiceCallerMetrics.TAG_REQUEST, id.getTag(HttpServiceCallerMetrics.TAG_REQUEST))
+                    .summary();
+            if (bytes != null) {
+                summary.put("responseBytesTotal", bytes.totalAmount());
+                summary.put("responseBytesMean", bytes.mean());
+            }
+
+            // Requests without a response are broken down by the exception that ended them
+            if ("none".equals(id.getTag(HttpServiceCallerMetrics.TAG_STATUS))) {
+                Map<String, Double> failures = new LinkedHashMap<>();
+                for (Counter counter : registry.find(HttpServiceCallerMetrics.ERRORS)
+                        .tag(HttpServiceCallerMetrics.TAG_HOST, id.getTag(HttpServiceCallerMetrics.TAG_HOST))
+                        .tag(HttpServiceCallerMetrics.TAG_METHOD, id.getTag(HttpServiceCallerMetrics.TAG_METHOD))
+                        .tag(HttpServiceCallerMetrics.TAG_REQUEST, id.getTag(HttpServiceCallerMetrics.TAG_REQUEST))
+                        .counters()) {
+                    String error = counter.getId().getTag(HttpServiceCallerMetrics.TAG_ERROR);
+                    if (!error.endsWith("xx")) {
+                        failures.put(error, counter.count());
+                    }
+                }
+                summary.put("failures", failures);
+            }
+
+            summaries.add(summary);
+        }
+
+        summaries.sort(Comparator.comparingDouble((Map<String, Object> s) -> (Double) s.get("meanMs")).reversed());
+        return summaries;
+    }
+}
@@ -0,0 +1,183 @@
+package org.auscope.portal.server.web.controllers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Serves the images in a classpath directory from memory.
+ *
+ * The directory is listed once when the cache is created so that requests for unknown images are answered without
+ * touching the classpath. Known images are read the first time they are requested and then held in memory with a
+ * strong ETag (the SHA-256 of their content), which is used to answer conditional requests with a 304.
+ */
+public class ClasspathImageCache {
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private static final CacheControl CACHE_CONTROL = CacheControl.maxAge(7, TimeUnit.DAYS).cachePublic();
+
+    /** Image resources by file name */
+    private final Map<String, Resource> resources;
+    /** Images that have been read, by file name */
+    private final Map<String, CachedImage> images = new ConcurrentHashMap<>();
+
+    private static class CachedImage {
+        final byte[] data;
+        final String eTag;
+        final long lastModified;
+        final MediaType contentType;
+
+        CachedImage(byte[] data, String eTag, long lastModified, MediaType contentType) {
+            this.data = data;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * @param imagePath
+     *            Classpath directory holding the images, eg images/legend/
+     */
+    public ClasspathImageCache(String imagePath) {
+        Map<String, Resource> found = new HashMap<>();
+        try {
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources("classpath*:" + imagePath + "*")) {
+                String filename = resource.getFilename();
+                if (filename != null && !filename.isEmpty() && resource.isReadable()) {
+                    found.putIfAbsent(filename, resource);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn(String.format("Unable to list images in '%1$s': %2$s", imagePath, e.getMessage()));
+        }
+        this.resources = Collections.unmodifiableMap(found);
+    }
+
+    /**
+     * The number of images available
+     *
+     * @return
+     */
+    public int size() {
+        return resources.size();
+    }
+
+    /**
+     * Gets the response for an image request
+     *
+     * @param filename
+     *            The name of the image file
+     * @param ifNoneMatch
+     *            The If-None-Match request header (can be null)
+     * @return The image, a 304 if ifNoneMatch matches its ETag or a 404 if there is no such image
+     */
+    public ResponseEntity<byte[]> getImageResponse(String filename, String ifNoneMatch) {
+        CachedImage image = getImage(filename);
+        if (image == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        if (matches(ifNoneMatch, image.eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .cacheControl(CACHE_CONTROL)
+                    .eTag(image.eTag)
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(image.contentType)
+                .cacheControl(CACHE_CONTROL)
+                .eTag(image.eTag);
+        if (image.lastModified > 0) {
+            builder.lastModified(image.lastModified);
+        }
+        return builder.body(image.data);
+    }
+
+    private CachedImage getImage(String filename) {
+        Resource resource = filename == null ? null : resources.get(filename);
+        if (resource == null) {
+            return null;
+        }
+
+        CachedImage image = images.get(filename);
+        if (image == null) {
+            try {
+                image = readImage(filename, resource);
+            } catch (IOException e) {
+                logger.warn(String.format("Unable to read image '%1$s': %2$s", filename, e.getMessage()));
+                return null;
+            }
+            CachedImage existing = images.putIfAbsent(filename, image);
+            if (existing != null) {
+                image = existing;
+            }
+        }
+        return image;
+    }
+
+    private static CachedImage readImage(String filename, Resource resource) throws IOException {
+        byte[] data;
+        try (InputStream is = resource.getInputStream()) {
+            data = is.readAllBytes();
+        }
+
+        long lastModified;
+        try {
+            lastModified = resource.lastModified();
+        } catch (IOException e) {
+            lastModified = 0;
+        }
+
+        String eTag;
+        try {
+            eTag = "\"" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return new CachedImage(data, eTag, lastModified,
+                MediaTypeFactory.getMediaType(filename).orElse(MediaType.IMAGE_PNG));
+    }
+
+    /**
+     * Returns true if an If-None-Match header matches eTag (using the weak comparison required for If-None-Match)
+     */
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -5,6 +5,7 @@ import java.io.OutputStream;
 
 import jakarta.servlet.http.HttpServletResponse;
 import org.auscope.portal.core.server.controllers.BasePortalController;
+import org.auscope.portal.core.services.SLDRegistryService;
 import org.auscope.portal.core.services.methodmakers.filter.FilterBoundingBox;
 import org.auscope.portal.core.util.FileIOUtil;
 import org.auscope.portal.server.web.service.GenericService;
@@ -22,15 +23,21 @@ import org.springframework.web.bind.annotation.RequestParam;
 @Controller
 public class GenericController extends BasePortalController {
   private GenericService genericService;
+  private SLDRegistryService sldRegistry;
+
     @Autowired
-    public GenericController(GenericService genericService) {
+    public GenericController(GenericService genericService, SLDRegistryService sldRegistry) {
         this.genericService = genericService;
+        this.sldRegistry = sldRegistry;
     }
 
     /**
      * Handles getting the style of the generic borehole filter queries. (If the bbox elements are specified, they will limit the output response to 200 records
      * implicitly)
      *
+     * The generated style is also registered with the SLD registry, its URL is returned in the X-SLD-Url header
+     * so that it can be referenced in subsequent WMS requests instead of being sent as SLD_BODY.
+     *
      * @param layerName
      *            the name of the mine to query for
      * @param spatialPropertyName
@@ -38,7 +45,9 @@ public class GenericController extends BasePortalController {
      * @param styleType
      * @param color
      * @param labelProperty
-     * @param optionalFilters 
+     * @param optionalFilters
+     *            JSON encoded filters that are added to the generated style's filter
+     *
      * @throws Exception
      */
     @RequestMapping("/doGenericFilterStyle.do")
@@ -54,18 +63,27 @@ public class GenericController extends BasePortalController {
 
                     throws Exception {
 
-        FilterBoundingBox bbox = FilterBoundingBox.attemptParseFromJSON(bboxJson);
         response.setContentType("text/xml");
-        String filter = "";
-        String style = "";
-        if (optionalFilters != null) {
-          filter = this.genericService.getFilter(bbox,optionalFilters);
-        }
-        if (labelProperty == null) {
-          style = this.getStyle(filter, layerName, spatialPropertyName, styleType, styleColor);
-        } else {
-          style = this.getStyleWithLabel(filter, layerName, spatialPropertyName, styleType, styleColor, labelProperty);
+
+        // Identical requests reuse the previously generated style
+        String styleKey = String.join("|", "doGenericFilterStyle", layerName, spatialPropertyName, String.valueOf(bboxJson),
+                styleType, styleColor, String.valueOf(labelProperty), String.valueOf(optionalFilters));
+        String hash = this.sldRegistry.getHashByKey(styleKey);
+        String style = hash == null ? null : this.sldRegistry.getSld(hash);
+        if (style == null) {
+            FilterBoundingBox bbox = FilterBoundingBox.attemptParseFromJSON(bboxJson);
+            String filter = "";
+            if (optionalFilters != null) {
+              filter = this.genericService.getFilter(bbox,optionalFilters);
+            }
+            if (labelProperty == null) {
+              style = this.getStyle(filter, layerName, spatialPropertyName, styleType, styleColor);
+            } else {
+              style = this.getStyleWithLabel(filter, layerName, spatialPropertyName, styleType, styleColor, labelProperty);
+            }
+            hash = this.sldRegistry.register(styleKey, style);
         }
+        response.setHeader("X-SLD-Url", this.sldRegistry.getSldUrl(hash));
         ByteArrayInputStream styleStream = new ByteArrayInputStream(style.getBytes());
         OutputStream outputStream = response.getOutputStream();
 
@@ -2,21 +2,29 @@ package org.auscope.portal.server.web.controllers;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletResponse;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
 
 import org.auscope.portal.core.server.controllers.BasePortalController;
 import org.auscope.portal.core.server.http.HttpServiceCaller;
 import org.auscope.portal.core.services.namespaces.IterableNamespace;
 import org.auscope.portal.core.util.DOMUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -24,7 +32,6 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.ModelAndView;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
-import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
@@ -40,6 +47,64 @@ public class IRISController extends BasePortalController {
      */
     private static final String ENCODING = "ISO-8859-1";
 
+    private static final long DEFAULT_STATION_CACHE_TTL_MINUTES = 60;
+
+    private static final int MAX_CACHED_NETWORKS = 100;
+
+    /** Timeouts (in ms) for requests to IRIS, so a hung server doesn't hold a request thread indefinitely */
+    private static final int CONNECT_TIMEOUT_MS = 30000;
+    private static final int READ_TIMEOUT_MS = 120000;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Station KML keyed by serviceUrl and network code, least recently used entries are evicted
+     */
+    private final Map<String, CachedKml> stationKmlCache = new LinkedHashMap<String, CachedKml>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedKml> eldest) {
+            return size() > MAX_CACHED_NETWORKS;
+        }
+    };
+
+    private volatile long stationCacheTtlMs;
+
+    private static class CachedKml {
+        final String kml;
+        final String eTag;
+        final String lastModified;
+        final long validated;
+
+        CachedKml(String kml, String eTag, String lastModified, long validated) {
+            this.kml = kml;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.validated = validated;
+        }
+    }
+
+    /**
+     * A response from IRIS along with the validators needed to make a conditional request for it later
+     */
+    protected static class IrisResponse {
+        /** The response body or null if the resource was not modified */
+        final InputStream body;
+        final String eTag;
+        final String lastModified;
+
+        public IrisResponse(InputStream body, String eTag, String lastModified) {
+            this.body = body;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
+
     /**
      * Makes sure that a string has a trailing forward slash.
      *
@@ -60,13 +125,71 @@ public class IRISController extends BasePortalController {
         };
     }
 
+    /**
+     * Instantiates the IRISController object with the default station cache TTL.
+     */
+    public IRISController(HttpServiceCaller httpService) {
+        this(httpService, DEFAULT_STATION_CACHE_TTL_MINUTES);
+    }
+
     /**
      * Instantiates the IRISController object.
      *
-     * Initialises the xPath object.
+     * @param stationCacheTtlMinutes
+     *            How long converted station KML is served before IRIS is asked whether it has changed
      */
     @Autowired
-    public IRISController(HttpServiceCaller httpService) {
+    public IRISController(HttpServiceCaller httpService,
+            @Value("${irisStationCacheTtlMinutes:" + DEFAULT_STATION_CACHE_TTL_MINUTES + "}") long stationCacheTtlMinutes) {
+        this.stationCacheTtlMs = TimeUnit.MINUTES.toMillis(stationCacheTtlMinutes);
+    }
+
+    /**
+     * Sets how long (in ms) converted station KML is served before being revalidated
+     *
+     * @param stationCacheTtlMs
+     */
+    public void setStationCacheTtlMs(long stationCacheTtlMs) {
+        this.stationCacheTtlMs = stationCacheTtlMs;
+    }
+
+    /**
+     * Makes a (conditional) request to IRIS.
+     *
+     * @param queryUrl
+     *            The URL of the resource you require.
+     * @param eTag
+     *            ETag of the previously fetched response (can be null)
+     * @param lastModified
+     *            Last-Modified of the previously fetched response (can be null)
+     * @return The response, with a null body if IRIS reports the resource as unmodified.
+     * @throws IOException
+     */
+    protected IrisResponse getIrisResponse(String queryUrl, String eTag, String lastModified) throws IOException {
+        // NB: This method is protected so that it can be overridden in order to break external dependencies in tests.
+        HttpURLConnection connection = (HttpURLConnection) new URL(queryUrl).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        if (eTag != null) {
+            connection.setRequestProperty("If-None-Match", eTag);
+        }
+        if (lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+
+        int status = connection.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            connection.disconnect();
+            return new IrisResponse(null, eTag, lastModified);
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException(Integer.toString(status));
+        }
+
+        return new IrisResponse(connection.getInputStream(),
+                connection.getHeaderField("ETag"),
+                connection.getHeaderField("Last-Modified"));
     }
 
     /**
@@ -108,7 +231,9 @@ public class IRISController extends BasePortalController {
     /**
      * Makes a request to the IRIS service specified, for all the stations on the network code provided.
      *
-     * The response is converted to some KML points to be rendered on the map.
+     * The response is converted to some KML points to be rendered on the map. Converted KML is cached per
+     * (serviceUrl, networkCode) and revalidated against IRIS (using ETag/Last-Modified where available) once it
+     * is older than the cache TTL.
      *
      * The request will look something like this: http://service.iris.edu/fdsnws/station/1/query?net=S
      *
@@ -123,89 +248,272 @@ public class IRISController extends BasePortalController {
             @RequestParam("serviceUrl") String serviceUrl,
             @RequestParam("networkCode") String networkCode) {
         serviceUrl = ensureTrailingForwardslash(serviceUrl);
-        
-        // System.out.println("[getIRISStations] serviceUrl ="+serviceUrl+",networkCode ="+networkCode);
 
         try {
-            Document irisDoc = getDocumentFromURL(serviceUrl + "fdsnws/station/1/query?net=" + networkCode + "&level=channel");
+            String kml = getStationKml(serviceUrl, networkCode);
+            return generateJSONResponseMAV(true, "gml", kml, null);
+        } catch (Exception e) {
+            return generateJSONResponseMAV(false, e.getMessage(), "Failed.");
+        }
+    }
 
-            //TODO VT: As part of the review for AGOS-15 , we should be following the same architecture as the rest of portal and
-            // create a xslt file to do the transformation from xml to kml
-            NodeList stations = irisDoc.getDocumentElement().getElementsByTagName("Station");
-            NamespaceContext nc = getIrisNamespace();
-            XPathExpression nameExpression = DOMUtil.compileXPathExpr("default:Site/default:Name/text()", nc);
-            XPathExpression countryExpression = DOMUtil.compileXPathExpr("default:Site/default:Country/text()", nc);
-            XPathExpression latExpression = DOMUtil.compileXPathExpr("default:Latitude/text()", nc);
-            XPathExpression lonExpression = DOMUtil.compileXPathExpr("default:Longitude/text()", nc);
-            XPathExpression elevationExpression = DOMUtil.compileXPathExpr("default:Elevation/text()", nc);
+    /**
+     * Returns the station KML for a network, from the cache if it is still fresh (or IRIS reports it unchanged)
+     *
+     * @param serviceUrl
+     *            The IRIS web service URL (with trailing forward slash)
+     * @param networkCode
+     *            The network code that you're interested in.
+     * @return
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    private String getStationKml(String serviceUrl, String networkCode) throws IOException, XMLStreamException {
+        String cacheKey = serviceUrl + '\u0000' + networkCode;
+        CachedKml cached;
+        synchronized (stationKmlCache) {
+            cached = stationKmlCache.get(cacheKey);
+        }
 
-            StringBuilder kml = new StringBuilder(
-                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document><name>GML Links to KML</name><description>GeoSciML data converted to KML</description>");
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.validated <= stationCacheTtlMs) {
+            return cached.kml;
+        }
 
-            // For each station:
-            for (int i = 0; i < stations.getLength(); i++) {
-                Node station = stations.item(i);
-                Node staCode = station.getAttributes().getNamedItem("code");
-                Node startDate = station.getAttributes().getNamedItem("startDate");
-                Node endDate = station.getAttributes().getNamedItem("endDate");
-                XPathExpression azimuthExpression = DOMUtil.compileXPathExpr("default:Azimuth /text()", nc);
-                XPathExpression dipExpression = DOMUtil.compileXPathExpr("default:Dip /text()", nc);
-                XPathExpression sampleRateExpression = DOMUtil.compileXPathExpr("default:SampleRate /text()", nc);
-
-                Element staElement = (Element)station;
-                NodeList channels =staElement.getElementsByTagName("Channel");
-                StringBuilder channelExpr = new StringBuilder();
-                // For each channel:
-                for (int j = 0; j < channels.getLength(); j++) {
-                    Node channel = channels.item(j);
-                    Node channelCode = channel.getAttributes().getNamedItem("code");
-                    channelExpr.append(
-                            String.format(  
-                                    "<Channel Code=\"%s\">"+
-                                        "<Azimuth>%s</Azimuth>\""+
-                                        "<Dip>%s</Dip>"+
-                                        "<SampleRate>%s</SampleRate>"+
-                                    "</Channel>",
-                                    channelCode.getTextContent(),
-                                    azimuthExpression.evaluate(channel, XPathConstants.STRING),
-                                    dipExpression.evaluate(channel, XPathConstants.STRING),
-                                    sampleRateExpression.evaluate(channel, XPathConstants.STRING)));                                   
+        String queryUrl = serviceUrl + "fdsnws/station/1/query?net=" + networkCode + "&level=channel";
+        CachedKml updated;
+        try {
+            IrisResponse response = cached == null ?
+                    getIrisResponse(queryUrl, null, null) :
+                    getIrisResponse(queryUrl, cached.eTag, cached.lastModified);
+            if (response.body == null) {
+                updated = new CachedKml(cached.kml, cached.eTag, cached.lastModified, now);
+            } else {
+                try (InputStream body = response.body) {
+                    updated = new CachedKml(parseStationKml(body), response.eTag, response.lastModified, now);
                 }
-                String xmlStr = String.format(
-                    "<Placemark><name>%s</name>"+
-                            "<description>IRIS layer for station: %s></description>" +
-                            "<MultiGeometry><Point><coordinates>%s,%s,%s</coordinates></Point></MultiGeometry>"+
-                            "<ExtendedData>" +
-                                "<Data name=\"Country\"><value>%s</value></Data>"+
-                                "<Data name=\"Code\"><value>%s</value></Data>" +
-                                "<Data name=\"StartDate\"><value>%s</value></Data>",
-                                nameExpression.evaluate(station, XPathConstants.STRING),
-                                staCode.getTextContent(),
-                                lonExpression.evaluate(station, XPathConstants.STRING),
-                                latExpression.evaluate(station, XPathConstants.STRING),
-                                elevationExpression.evaluate(station, XPathConstants.STRING),
-                                countryExpression.evaluate(station, XPathConstants.STRING),
-                                staCode.getTextContent(),
-                                startDate.getTextContent());
-                // Skip end date as some AusPASS projects have not ended yet
-                if (endDate != null) {
-                    xmlStr += String.format("<Data name=\"EndDate\"><value>%s</value></Data>", endDate.getTextContent());
+            }
+        } catch (IOException | XMLStreamException e) {
+            if (cached == null) {
+                throw e;
+            }
+            log.warn(String.format("Unable to revalidate IRIS stations for '%1$s', using cached copy: %2$s", queryUrl, e.getMessage()));
+            return cached.kml;
+        }
+
+        synchronized (stationKmlCache) {
+            stationKmlCache.put(cacheKey, updated);
+        }
+        return updated.kml;
+    }
+
+    /**
+     * Converts an FDSN station XML response (at level=channel) into KML in a single streaming pass.
+     *
+     * @param fdsnXml
+     *            The FDSN station XML
+     * @return
+     * @throws XMLStreamException
+     */
+    protected String parseStationKml(InputStream fdsnXml) throws XMLStreamException {
+        //TODO VT: As part of the review for AGOS-15 , we should be following the same architecture as the rest of portal and
+        // create a xslt file to do the transformation from xml to kml
+        StringBuilder kml = new StringBuilder(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?><kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document><name>GML Links to KML</name><description>GeoSciML data converted to KML</description>");
+
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(fdsnXml);
+        try {
+            int depth = 0;
+            int stationDepth = -1;
+            int channelDepth = -1;
+            boolean inSite = false;
+            StationBuilder station = null;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (station == null) {
+                        if ("Station".equals(name)) {
+                            stationDepth = depth;
+                            station = new StationBuilder(
+                                    attribute(reader, "code"),
+                                    attribute(reader, "startDate"),
+                                    reader.getAttributeValue(null, "endDate"));
+                        }
+                    } else if (depth == stationDepth + 1) {
+                        switch (name) {
+                        case "Latitude":
+                            station.latitude = readText(reader);
+                            depth--;
+                            break;
+                        case "Longitude":
+                            station.longitude = readText(reader);
+                            depth--;
+                            break;
+                        case "Elevation":
+                            station.elevation = readText(reader);
+                            depth--;
+                            break;
+                        case "Site":
+                            inSite = true;
+                            break;
+                        case "Channel":
+                            channelDepth = depth;
+                            station.startChannel(attribute(reader, "code"));
+                            break;
+                        default:
+                            break;
+                        }
+                    } else if (inSite && depth == stationDepth + 2) {
+                        if ("Name".equals(name)) {
+                            station.name = readText(reader);
+                            depth--;
+                        } else if ("Country".equals(name)) {
+                            station.country = readText(reader);
+                            depth--;
+                        }
+                    } else if (channelDepth != -1 && depth == channelDepth + 1) {
+                        if ("Azimuth".equals(name)) {
+                            station.azimuth = readText(reader);
+                            depth--;
+                        } else if ("Dip".equals(name)) {
+                            station.dip = readText(reader);
+                            depth--;
+                        } else if ("SampleRate".equals(name)) {
+                            station.sampleRate = readText(reader);
+                            depth--;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (station != null) {
+                        if (depth == stationDepth) {
+                            station.appendPlacemark(kml);
+                            station = null;
+                        } else if (depth == channelDepth) {
+                            station.endChannel();
+                            channelDepth = -1;
+                        } else if (inSite && depth == stationDepth + 1) {
+                            inSite = false;
+                        }
+                    }
+                    depth--;
                 }
-                xmlStr += String.format(
-                            "</ExtendedData>"+
-                            "<Channels>%s</Channels>"+
-                            "</Placemark>",
-                                channelExpr
-                );
-                kml.append(xmlStr);
             }
-            kml.append("</Document></kml>");
+        } finally {
+            reader.close();
+        }
 
-            // & character needs to be escaped i.e. &amp
-            String irisResponse = kml.toString().replaceAll("&(?!amp;|apos;|quot;|lt;|gt;)", "&amp;");
-            return generateJSONResponseMAV(true, "gml", irisResponse, null);
-        } catch (Exception e) {
-            return generateJSONResponseMAV(false, e.getMessage(), "Failed.");
+        kml.append("</Document></kml>");
+        return kml.toString();
+    }
+
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Reads the text content of a (leaf) element, leaving the reader on its end element
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        return reader.getElementText().trim();
+    }
+
+    /**
+     * Escapes text for inclusion in KML element content/attribute values
+     */
+    private static void appendEscaped(StringBuilder sb, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Accumulates the values of a single Station element until its Placemark can be written
+     */
+    private static class StationBuilder {
+        final String code;
+        final String startDate;
+        final String endDate;
+        String name = "";
+        String country = "";
+        String latitude = "";
+        String longitude = "";
+        String elevation = "";
+        String azimuth;
+        String dip;
+        String sampleRate;
+        String channelCode;
+        final StringBuilder channels = new StringBuilder();
+
+        StationBuilder(String code, String startDate, String endDate) {
+            this.code = code;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        void startChannel(String channelCode) {
+            this.channelCode = channelCode;
+            this.azimuth = "";
+            this.dip = "";
+            this.sampleRate = "";
+        }
+
+        void endChannel() {
+            channels.append("<Channel Code=\"");
+            appendEscaped(channels, channelCode);
+            channels.append("\"><Azimuth>");
+            appendEscaped(channels, azimuth);
+            channels.append("</Azimuth>\"<Dip>");
+            appendEscaped(channels, dip);
+            channels.append("</Dip><SampleRate>");
+            appendEscaped(channels, sampleRate);
+            channels.append("</SampleRate></Channel>");
+        }
+
+        void appendPlacemark(StringBuilder kml) {
+            kml.append("<Placemark><name>");
+            appendEscaped(kml, name);
+            kml.append("</name><description>IRIS layer for station: ");
+            appendEscaped(kml, code);
+            kml.append("></description><MultiGeometry><Point><coordinates>");
+            appendEscaped(kml, longitude);
+            kml.append(',');
+            appendEscaped(kml, latitude);
+            kml.append(',');
+            appendEscaped(kml, elevation);
+            kml.append("</coordinates></Point></MultiGeometry><ExtendedData><Data name=\"Country\"><value>");
+            appendEscaped(kml, country);
+            kml.append("</value></Data><Data name=\"Code\"><value>");
+            appendEscaped(kml, code);
+            kml.append("</value></Data><Data name=\"StartDate\"><value>");
+            appendEscaped(kml, startDate);
+            kml.append("</value></Data>");
+            // Skip end date as some AusPASS projects have not ended yet
+            if (endDate != null) {
+                kml.append("<Data name=\"EndDate\"><value>");
+                appendEscaped(kml, endDate);
+                kml.append("</value></Data>");
+            }
+            kml.append("</ExtendedData><Channels>").append(channels).append("</Channels></Placemark>");
         }
     }
 
@@ -1,26 +1,14 @@
 package org.auscope.portal.server.web.controllers;
 
-import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
-
-
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.auscope.portal.core.server.controllers.BasePortalController;
-import org.auscope.portal.core.services.namespaces.IterableNamespace;
-import org.auscope.portal.core.services.responses.ows.OWSExceptionParser;
+import org.auscope.portal.mscl.MSCLObservationSeries;
 import org.auscope.portal.mscl.MSCLWFSService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -28,9 +16,6 @@ import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.ModelAndView;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * This class handles requests for MSCL observation data; it does so without requiring the same to have defined SRSs. This is important as the GML Point, into
@@ -92,77 +77,45 @@ public class MSCLController extends BasePortalController {
         }
         // If this serviceUrl's response is a simple shallow model 
         try {
-            String wfsResponse = msclWfsService.getObservations(serviceUrl, boreholeHeaderId, startDepth, endDepth);
-
-            DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
-            domFactory.setNamespaceAware(true); // never forget this!
-            DocumentBuilder builder = domFactory.newDocumentBuilder();
-            Document msclDoc = builder.parse(new ByteArrayInputStream(wfsResponse.getBytes("UTF-8")));
-
-            XPath xPath = XPathFactory.newInstance().newXPath();
-            xPath.setNamespaceContext(new IterableNamespace() {
-                {
-                    map.put("mscl", "http://example.org/mscl");
-                    map.put("ogc", "http://www.opengis.net/ogc");
-                    map.put("sa", "http://www.opengis.net/sampling/1.0");
-                    map.put("om", "http://www.opengis.net/om/1.0");
-                    map.put("wfs", "http://www.opengis.net/wfs");
-                    map.put("xsi", "http://www.w3.org/2001/XMLSchema-instance");
-                    map.put("gsml", "urn:cgi:xmlns:CGI:GeoSciML:2.0");
-                    map.put("ows", "http://www.opengis.net/ows");
-                    map.put("gml", "http://www.opengis.net/gml");
-                    map.put("xlink", "http://www.w3.org/1999/xlink");
-                }
-            });
-
-            // Do some rudimentary error testing:
-            OWSExceptionParser.checkForExceptionResponse(msclDoc);
-            ModelMap data = new ModelMap();
-
-            // Build the XPath, always including depth:
-            StringBuilder xPathString = new StringBuilder("//mscl:scanned_data/mscl:depth");
-            for (int i = 0; i < observationsToReturn.length; i++) {
-                xPathString.append(" | //mscl:scanned_data/mscl:" + observationsToReturn[i]);
+            MSCLObservationSeries observations = msclWfsService.getObservationSeries(serviceUrl, boreholeHeaderId,
+                    startDepth, endDepth);
+
+            // The cached observations may cover more than the requested depth range
+            int from = 0, to = observations.size();
+            try {
+                from = observations.fromIndex(Double.parseDouble(startDepth));
+                to = observations.toIndex(Double.parseDouble(endDepth));
+            } catch (NumberFormatException ex) {
+                log.trace("Error in depth parameter: " + ex.getMessage());
             }
 
-            XPathExpression expr = xPath.compile(xPathString.toString());
-            NodeList results = (NodeList) expr.evaluate(msclDoc, XPathConstants.NODESET);
-            ArrayList<ModelMap> series = new ArrayList<ModelMap>();
-
-            ModelMap relatedValues = null;
-            Node targetParentNode = null;
-
-            for (int i = 0; i < results.getLength(); i++) {
-                Node result = results.item(i);
-
-                // Avoid blank or empty value strings
-                if (result.getTextContent() == null || result.getTextContent().trim().isEmpty()) {
-                    continue;
+            float[][] columns = new float[observationsToReturn.length][];
+            for (int i = 0; i < observationsToReturn.length; i++) {
+                if (!MSCLObservationSeries.DEPTH.equals(observationsToReturn[i])) {
+                    columns[i] = observations.getObservation(observationsToReturn[i]);
                 }
-                Node currentParentNode = result.getParentNode();
-                if (currentParentNode != null && !currentParentNode.equals(targetParentNode)) {
-                    targetParentNode = currentParentNode;
+            }
 
-                    // relatedValues will be null on the first entry so we don't add it.
-                    // We also don't want to add it if it only has one value; if this has
-                    // occurred it basically means that we have a depth but no observations.
-                    if (relatedValues != null && relatedValues.size() > 1) {
-                        series.add(relatedValues);
+            // Rows are already ordered by depth, rows without any of the requested observations are skipped
+            ArrayList<ModelMap> series = new ArrayList<ModelMap>(Math.max(to - from, 0));
+            for (int row = from; row < to; row++) {
+                ModelMap relatedValues = null;
+                for (int i = 0; i < columns.length; i++) {
+                    if (columns[i] == null || Float.isNaN(columns[i][row])) {
+                        continue;
                     }
-                    relatedValues = new ModelMap();
+                    if (relatedValues == null) {
+                        relatedValues = new ModelMap();
+                        relatedValues.put(MSCLObservationSeries.DEPTH, observations.getDepth(row));
+                    }
+                    relatedValues.put(observationsToReturn[i], columns[i][row]);
                 }
                 if (relatedValues != null) {
-                    relatedValues.put(result.getLocalName(), Float.parseFloat(result.getTextContent()));
+                    series.add(relatedValues);
                 }
             }
 
-            Collections.<ModelMap> sort(series, new Comparator<ModelMap>() {
-                public int compare(ModelMap o1, ModelMap o2) {
-                    // Just use float's comparison implementation:
-                    return ((Float) o1.get("depth")).compareTo((Float) o2.get("depth"));
-                }
-            });
-
+            ModelMap data = new ModelMap();
             data.put("series", series);
             return generateJSONResponseMAV(true, data, null);
         } catch (Exception e) {
@@ -1,9 +1,14 @@
 package org.auscope.portal.server.web.controllers;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
@@ -45,12 +50,12 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.ModelAndView;
 
 
-import java.util.ArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import org.auscope.portal.core.configuration.ServiceConfiguration;
 import org.auscope.portal.core.server.http.HttpServiceCaller;
 import org.auscope.portal.core.server.http.download.DownloadResponse;
+import org.auscope.portal.core.server.http.download.DownloadResponseHandler;
 import org.auscope.portal.core.server.http.download.ServiceDownloadManager;
 /**
  * Controller for handling requests for the NVCL boreholes
@@ -689,32 +694,36 @@ public class NVCLController extends BasePortalController {
 
         ServiceDownloadManager downloadManager = new ServiceDownloadManager(serviceUrls, serviceCaller, threadpool, this.serviceConfiguration, extension);
         //build the tsgFileUrls fore each record in downloadCSV.
-        String retTsgFileUrls = "";
-        int totalUrls = 0;
+        final StringBuilder retTsgFileUrls = new StringBuilder();
         if (email != null && email.length() > 0 && outputFormat.equals("csv")) {
             // set the content type for text
             response.setContentType("text");
-            ArrayList<DownloadResponse> gmlDownloads = downloadManager.downloadAll();
-            //Loop all serviceUrls to find the matched datasetName and URI for it.
-            for (int i = 0; i < gmlDownloads.size(); i++) {
-                String csv = FileIOUtil.writeResponseToString(gmlDownloads.get(i));
-                if (csv == null) {
-                    continue;
+            //Resolve the matched datasetName of each CSV row as each serviceUrl completes.
+            downloadManager.downloadAll(download -> {
+                if (download.hasException() || download.getResponseAsStream() == null) {
+                    return;
                 }
-                String endpoint = gmlDownloads.get(i).getRequestURL();
-                endpoint = "https://" + new URL(endpoint).getHost() + "/";
-
-                String tsgFileUrls = this.dataService.getTsgFileUrls(endpoint, csv);
-                if (tsgFileUrls == null || tsgFileUrls.isEmpty() || tsgFileUrls.indexOf("http") < 0) {
-                    continue;
+                String endpoint = "https://" + new URL(download.getRequestURL()).getHost() + "/";
+
+                StringWriter tsgFileUrls = new StringWriter();
+                try {
+                    if (this.dataService.writeTsgFileUrls(endpoint, new InputStreamReader(download.getResponseAsStream(),
+                            StandardCharsets.UTF_8), tsgFileUrls) <= 0) {
+                        return;
+                    }
+                } catch (IOException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    log.warn("Unable to resolve TSG files for " + endpoint + ": " + ex.getMessage());
+                    return;
                 }
-                retTsgFileUrls += tsgFileUrls;
-                totalUrls++;
-                outputStream.write(tsgFileUrls.getBytes());
-            }
+                retTsgFileUrls.append(tsgFileUrls);
+                outputStream.write(tsgFileUrls.toString().getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            });
             outputStream.close();
-            if (totalUrls > 0) {
-                this.dataService.sendMail(email, retTsgFileUrls);
+            if (retTsgFileUrls.length() > 0) {
+                this.dataService.sendMail(email, retTsgFileUrls.toString());
             }
         }
         return;
@@ -769,17 +778,47 @@ public class NVCLController extends BasePortalController {
         if (outputFormat.equals("csv")) {
             // set the content type for text
             response.setContentType("text");
-            ArrayList<DownloadResponse> gmlDownloads = downloadManager.downloadAll();
-            //Loop all serviceUrls to find the matched datasetName and URI for it.
-            for (int i = 0; i < gmlDownloads.size(); i++) {
-                String csv = FileIOUtil.writeResponseToString(gmlDownloads.get(i));
-                if (csv == null || csv.split("\n").length == 1) {
-                    continue;
-                }
-                outputStream.write(csv.getBytes());
-            }
-            outputStream.close();
+            //Write each serviceUrl's rows as soon as it completes, under a single header.
+            Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+            downloadManager.downloadAll(new CSVMerger(writer));
+            writer.close();
         }
         return;
     }
+
+    /**
+     * Concatenates the rows of CSV downloads, writing the header of the first non empty download only
+     */
+    private static class CSVMerger implements DownloadResponseHandler {
+        private final Writer writer;
+        private boolean headerWritten = false;
+
+        public CSVMerger(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void handle(DownloadResponse download) throws IOException {
+            if (download.hasException() || download.getResponseAsStream() == null) {
+                return;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(download.getResponseAsStream(), StandardCharsets.UTF_8));
+            String header = reader.readLine();
+            String line = reader.readLine();
+            if (header == null || line == null) {
+                return; //no rows
+            }
+
+            if (!headerWritten) {
+                writer.write(header);
+                writer.write('\n');
+                headerWritten = true;
+            }
+            do {
+                writer.write(line);
+                writer.write('\n');
+            } while ((line = reader.readLine()) != null);
+            writer.flush();
+        }
+    }
 }
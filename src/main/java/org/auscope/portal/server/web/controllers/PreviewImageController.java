@@ -1,17 +1,10 @@
 package org.auscope.portal.server.web.controllers;
 
-import java.io.File;
-import java.io.IOException;
-
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.util.ResourceUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 
 /**
@@ -21,25 +14,20 @@ import org.springframework.web.bind.annotation.RequestMapping;
 @RequestMapping(value = "/preview")
 public class PreviewImageController {
 	
-	private final String IMAGE_PATH = "classpath:images/preview/";
-	private final Log logger = LogFactory.getLog(getClass());
+	private final ClasspathImageCache images = new ClasspathImageCache("images/preview/");
 
 	/**
-	 * Retrieve a preview from the image folder defined in RESOURCE_ROOT
+	 * Retrieve a preview from the image folder defined in RESOURCE_ROOT. Images are served from memory with an ETag and
+	 * long lived cache headers.
 	 *
 	 * @param filename the name of the preview file
-	 * @return preview image
+	 * @param ifNoneMatch the If-None-Match header, if it matches the image ETag a 304 is returned
+	 * @return preview image, or 404 if there is no such image
 	 */
     @GetMapping("/{image}")
-    public ResponseEntity<byte[]> getImage(@PathVariable("image") String filename) {
-        byte[] image = new byte[0];
-        try {
-        	File f = ResourceUtils.getFile(IMAGE_PATH + filename);
-        	image = FileUtils.readFileToByteArray(f);
-        } catch (IOException e) {
-            logger.warn("Unable to find preview: " + filename);
-        }
-        return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG).body(image);
+    public ResponseEntity<byte[]> getImage(@PathVariable("image") String filename,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        return images.getImageResponse(filename, ifNoneMatch);
     }
 
 }
@@ -0,0 +1,51 @@
+package org.auscope.portal.server.web.controllers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.auscope.portal.core.services.SLDRegistryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+/**
+ * Serves SLD documents held in the {@link SLDRegistryService} by their content hash. As the content of a hash
+ * can never change the responses are cacheable indefinitely.
+ */
+@Controller
+@RequestMapping(value = "/sld")
+public class SLDRegistryController {
+
+    private static final MediaType SLD_MEDIA_TYPE = MediaType.parseMediaType("application/vnd.ogc.sld+xml");
+
+    private SLDRegistryService sldRegistry;
+
+    @Autowired
+    public SLDRegistryController(SLDRegistryService sldRegistry) {
+        this.sldRegistry = sldRegistry;
+    }
+
+    /**
+     * Retrieve a registered SLD
+     *
+     * @param hash the content hash of the SLD
+     * @return SLD document or 404 if the hash is unknown (or has been evicted)
+     */
+    @GetMapping("/{hash}")
+    public ResponseEntity<String> getSld(@PathVariable("hash") String hash) {
+        String sld = sldRegistry.getSld(hash);
+        if (sld == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok()
+                .contentType(SLD_MEDIA_TYPE)
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                .eTag("\"" + hash + "\"")
+                .body(sld);
+    }
+}
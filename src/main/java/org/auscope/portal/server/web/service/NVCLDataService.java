@@ -1,18 +1,29 @@
 package org.auscope.portal.server.web.service;
 
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.opencsv.CSVParser;
 import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
@@ -20,6 +31,7 @@ import com.opencsv.CSVReaderBuilder;
 
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,6 +49,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.MailSender;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.stereotype.Service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -57,41 +71,81 @@ public class NVCLDataService {
     private MailSender mailSender;
     private HttpServiceCaller httpServiceCaller;
     private NVCLDataServiceMethodMaker methodMaker;
-	class Dataset{
-        String datasetID;
-        String boreholeURI;
-        String datasetName;
-        String description;
-        String spectralLogCollection;
-        String imageLogCollection;
-        String profLogCollection;
-        String logCollection;
-        String trayID;
-        String sectionID;
-        String domainID;
-    }
-    class DatasetCollection {
-        Dataset[] datasetCollection;
+    public static final long DEFAULT_TSG_REFRESH_MINUTES = 24 * 60;
+    /** Connect and read timeout (in ms) for a provider's getDatasetCollection request */
+    private static final int TSG_LOAD_TIMEOUT_MS = 90000;
+
+    /**
+     * The boreholeURI to datasetName map of a single TSG provider, along with where its TSG files are cached
+     */
+    static class TsgDatasetCollection {
+        private final String cacheUrl;
+        private final Map<String, String> datasetNames;
+
+        TsgDatasetCollection(String cacheUrl, Map<String, String> datasetNames) {
+            this.cacheUrl = cacheUrl;
+            this.datasetNames = Collections.unmodifiableMap(datasetNames);
+        }
+
+        String getCacheUrl() {
+            return cacheUrl;
+        }
+
+        /**
+         * Lower case boreholeURI (without scheme) to datasetName
+         */
+        Map<String, String> getDatasetNames() {
+            return datasetNames;
+        }
     }
-    private HashMap<String, HashMap> mapEndpoint = new HashMap<String, HashMap>();
-    private HashMap<String, String> mapTsgCachePath = new HashMap<String,String>();
+
+    /** Immutable snapshot of the TSG dataset collections keyed by provider endpoint, swapped as each provider loads */
+    private final AtomicReference<Map<String, TsgDatasetCollection>> tsgDatasetCollections =
+            new AtomicReference<Map<String, TsgDatasetCollection>>(Collections.<String, TsgDatasetCollection>emptyMap());
+    private ScheduledExecutorService tsgRefreshExecutor;
+    private long tsgRefreshMinutes;
     private String nvclTsgFileCacheUrl;
     private String nvclTsgDownloadServiceMsg;    
+
+    /**
+     * Creates a new NVCLDataService with the specified dependencies and the default TSG dataset refresh period
+     */
+    public NVCLDataService(HttpServiceCaller httpServiceCaller, 
+                            NVCLDataServiceMethodMaker methodMaker,
+                            WFSGetFeatureMethodMaker wfsMethodMaker, 
+                            String nvclTsgFileCacheUrl,
+                            String nvclTsgDownloadServiceMsg) {
+        this(httpServiceCaller, methodMaker, wfsMethodMaker, nvclTsgFileCacheUrl, nvclTsgDownloadServiceMsg,
+                DEFAULT_TSG_REFRESH_MINUTES);
+    }
+
     /**
      * Creates a new NVCLDataService with the specified dependencies
+     *
+     * @param tsgRefreshMinutes
+     *            How often the TSG dataset collections of every provider are reloaded
      */
     @Autowired
     public NVCLDataService(HttpServiceCaller httpServiceCaller, 
                             NVCLDataServiceMethodMaker methodMaker,
                             WFSGetFeatureMethodMaker wfsMethodMaker, 
                             @Value("${env.nvcl.tsgFileCacheUrl:#{null}}") String nvclTsgFileCacheUrl,
-                            @Value("${env.nvcl.tsgDownloadServiceMsg:#{null}}") String nvclTsgDownloadServiceMsg) {
+                            @Value("${env.nvcl.tsgDownloadServiceMsg:#{null}}") String nvclTsgDownloadServiceMsg,
+                            @Value("${env.nvcl.tsgDatasetRefreshMinutes:" + DEFAULT_TSG_REFRESH_MINUTES + "}") long tsgRefreshMinutes) {
         this.httpServiceCaller = httpServiceCaller;
         this.methodMaker = methodMaker;
         this.nvclTsgFileCacheUrl = nvclTsgFileCacheUrl;
         this.nvclTsgDownloadServiceMsg = nvclTsgDownloadServiceMsg;
-        this.loadTsgDownloadMaps();
+        this.tsgRefreshMinutes = tsgRefreshMinutes;
     }
+
+    @PreDestroy
+    public void shutdown() {
+        if (tsgRefreshExecutor != null) {
+            tsgRefreshExecutor.shutdownNow();
+        }
+    }
+
     public void sendMail(String email, String tsgFileUrls) {
 
         //filter out NoMatchedDatasetName:
@@ -304,44 +358,55 @@ public class NVCLDataService {
     /**
      * getTsgFileUrls to get TSG File download Urls.
      *
-     * @param serviceUrl
-     *            The URL of the NVCLDataService
      * @param endpoint
      * @param csv 
-     * @param email
-     *            The user's email address
-     * @return
+     * @return The URLs (one per line) or null if no dataset collection has been loaded for endpoint
      * @throws Exception
      */
     public String  getTsgFileUrls(String endpoint, String  csv) throws Exception {
-        HashMap<String, String> mapDatasetCollection = this.mapEndpoint.get(endpoint);
-        String cacheUrlPath  = this.mapTsgCachePath.get(endpoint);
-        if (mapDatasetCollection == null) {
+        StringWriter tsgFileUrls = new StringWriter();
+        if (this.writeTsgFileUrls(endpoint, new StringReader(csv), tsgFileUrls) < 0) {
             return null;
         }
-        InputStream inputstreamCSV = new ByteArrayInputStream(csv.getBytes());
+        return tsgFileUrls.toString();
+    }
 
-        StringBuilder sb = new StringBuilder();
+    /**
+     * Resolves the TSG File download Url of each borehole row as the CSV is read, writing one Url per line.
+     *
+     * @param endpoint
+     * @param csv
+     *            A borehole CSV with a gsmlp:identifier column
+     * @param out
+     *            Receives the Urls
+     * @return The number of Urls written or -1 if no dataset collection has been loaded for endpoint
+     * @throws Exception
+     */
+    public int writeTsgFileUrls(String endpoint, Reader csv, Writer out) throws Exception {
+        TsgDatasetCollection datasetCollection = this.tsgDatasetCollections.get().get(endpoint);
+        if (datasetCollection == null) {
+            return -1;
+        }
+        Map<String, String> mapDatasetCollection = datasetCollection.getDatasetNames();
+        String cacheUrlPath  = datasetCollection.getCacheUrl();
 
         CSVParser parser = new CSVParserBuilder().withSeparator(',').withQuoteChar('"').build();
-        CSVReader reader = new CSVReaderBuilder(new InputStreamReader(inputstreamCSV)).withCSVParser(parser).build();
+        CSVReader reader = new CSVReaderBuilder(csv).withCSVParser(parser).build();
         String[] headerLine = reader.readNext();
-        int indexOfIdentifier = Arrays.asList(headerLine).indexOf("gsmlp:identifier");
-        int indexOfNvclCollection = Arrays.asList(headerLine).indexOf("gsmlp:nvclCollection");
-
-        if (headerLine == null || headerLine.length <= 2 || indexOfIdentifier < 0) {
+        if (headerLine == null || headerLine.length <= 2 || Arrays.asList(headerLine).indexOf("gsmlp:identifier") < 0) {
             throw new Exception("No or malformed CSV header sent");
         }
+        int indexOfIdentifier = Arrays.asList(headerLine).indexOf("gsmlp:identifier");
+        int indexOfNvclCollection = Arrays.asList(headerLine).indexOf("gsmlp:nvclCollection");
 
-
-        //Start parsing our data - loading it into bins
+        //Resolve each row as it is read
         String[] dataLine = null;
-        ArrayList<String> tsgFileCacheUrlList =new ArrayList<String> ();
+        int count = 0;
         while ((dataLine = reader.readNext()) != null) {
             if (dataLine.length != headerLine.length) {
                 continue; //skip malformed lines
             }
-            if (dataLine[indexOfNvclCollection].trim().equalsIgnoreCase("false")){
+            if (indexOfNvclCollection >= 0 && dataLine[indexOfNvclCollection].trim().equalsIgnoreCase("false")){
                 continue; //skip none nvclCollection lines.
             }
             //example: http://geossdi.dmp.wa.gov.au/resource/feature/gswa/borehole/ABDP1
@@ -364,15 +429,17 @@ public class NVCLDataService {
                 tsgFileCacheURL = cacheUrlPath + bhDatasetName + ".zip\n"; 
                 //LINGBO https://nvclanalyticscache.z8.web.core.windows.net/WA/PDD446.zip
             }
-            sb.append(tsgFileCacheURL);
-            tsgFileCacheUrlList.add(tsgFileCacheURL);
+            out.write(tsgFileCacheURL);
+            count++;
         }
-        return sb.toString();
+        return count;
     }    
 
     /**
      * getDatasetCollectionMap to get a map for <boreholeURI, datasetName> 
      *
+     * The JSON response is read as a stream so only the boreholeURI and datasetName of each dataset are kept.
+     *
      * @param serviceUrl
      *            The URL of the NVCLDataService
      * @param holeIdentifier
@@ -384,79 +451,133 @@ public class NVCLDataService {
         HashMap<String, String> mapDatasetCollection = new HashMap<String, String>();
         HttpGet method = new HttpGet();
         URIBuilder builder = new URIBuilder(serviceUrl + "getDatasetCollection.html");
-        System.out.println("getDatasetCollectionMap:" + serviceUrl);
         //set all of the parameters.
         builder.setParameter("holeidentifier", holeIdentifier);
         builder.setParameter("headersonly", "yes");
         builder.setParameter("outputformat", "json");
         method.setURI(builder.build());
+        method.setConfig(RequestConfig.custom().setConnectTimeout(TSG_LOAD_TIMEOUT_MS)
+                .setSocketTimeout(TSG_LOAD_TIMEOUT_MS).build());
+
+        try (InputStream responseStream = httpServiceCaller.getMethodResponseAsStream(method);
+                JsonReader reader = new JsonReader(new InputStreamReader(responseStream, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("datasetCollection") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
 
-        HttpServiceCaller httpServiceCaller = new HttpServiceCaller(90000);
-        //Make our request, parse it into a DOM document
-        String response = httpServiceCaller.getMethodResponseAsString(method);
-        DatasetCollection datasetCollection = new Gson().fromJson(response, DatasetCollection.class);
-
-        for (Dataset dataset : datasetCollection.datasetCollection) {
-            String boreholeURI =dataset.boreholeURI;
-            //remove starter of http or https.
-            int index = dataset.boreholeURI.indexOf("//");
-            if (index > 0 ) {
-                boreholeURI = boreholeURI.substring( index +2);
-            }  
-            mapDatasetCollection.put(boreholeURI.toLowerCase(), dataset.datasetName);
-            //System.out.println(boreholeURI +  ',' + dataset.datasetName);
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String boreholeURI = null;
+                    String datasetName = null;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if (reader.peek() == JsonToken.STRING && name.equals("boreholeURI")) {
+                            boreholeURI = reader.nextString();
+                        } else if (reader.peek() == JsonToken.STRING && name.equals("datasetName")) {
+                            datasetName = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+
+                    if (boreholeURI == null) {
+                        continue;
+                    }
+                    //remove starter of http or https.
+                    int index = boreholeURI.indexOf("//");
+                    if (index > 0 ) {
+                        boreholeURI = boreholeURI.substring( index +2);
+                    }  
+                    mapDatasetCollection.put(boreholeURI.toLowerCase(), datasetName);
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } finally {
+            method.releaseConnection();
         }
-        System.out.println("getDatasetCollectionMap:" + mapDatasetCollection.size());
+
+        log.debug("getDatasetCollectionMap: " + mapDatasetCollection.size() + " datasets from " + serviceUrl);
         return mapDatasetCollection;
     }
 
     /**
-     * loadTsgDownloadMaps to prepare map for DatasetCollection. 
-     * @return
+     * Parses the provider endpoints and their TSG file cache URLs from tsgFileCacheUrl
+     *
+     * @return cache URL keyed by provider endpoint
      */
-    private void loadTsgDownloadMaps() {
+    private Map<String, String> parseTsgProviders() {
+        Map<String, String> providers = new LinkedHashMap<String, String>();
         if (this.nvclTsgFileCacheUrl == null) {
-            return;
-        }
-        if (this.mapEndpoint.size() > 0) {
-            return;
+            return providers;
         }
-        this.mapEndpoint.clear();
-        this.mapTsgCachePath.clear();
-
-        try {
 
-            String[] urlArrays = this.nvclTsgFileCacheUrl.split(",");
-            //Sample:tsgFileCacheUrl: DEFAULT, https://nvclanalyticscache.z8.web.core.windows.net, https://www.mrt.tas.gov.au/,$DEFAULT/Tas/,https://geossdi.dmp.wa.gov.au/,$DEFAULT/WA/,https://geology.data.nt.gov.au/,$DEFAULT/NT/,https://gs.geoscience.nsw.gov.au/,$DEFAULT/NSW/,https://sarigdata.pir.sa.gov.au/,$DEFAULT/SA/
+        String[] urlArrays = this.nvclTsgFileCacheUrl.split(",");
+        //Sample:tsgFileCacheUrl: DEFAULT, https://nvclanalyticscache.z8.web.core.windows.net, https://www.mrt.tas.gov.au/,$DEFAULT/Tas/,https://geossdi.dmp.wa.gov.au/,$DEFAULT/WA/,https://geology.data.nt.gov.au/,$DEFAULT/NT/,https://gs.geoscience.nsw.gov.au/,$DEFAULT/NSW/,https://sarigdata.pir.sa.gov.au/,$DEFAULT/SA/
 
-            String endpoint, cacheUrl;
-            String defaultUrl = null;
-            int start = 0;
-            if (urlArrays[0].contains("DEFAULT")) {
-                defaultUrl = urlArrays[1].trim();
-                start = 2; //skip the default;
-            }
-            for (int i = start; i<urlArrays.length; i+=2) {
-                endpoint = urlArrays[i].trim();
-                cacheUrl = urlArrays[i+1].trim();
-                if (defaultUrl != null) {
-                    cacheUrl = cacheUrl.replace("$DEFAULT",defaultUrl);
-                }
-                HashMap<String, String> datasetCollectionMap;
-                // Recover if a 'getDatasetCollection.html' request to a state/territory provider fails
-                try {
-                    datasetCollectionMap = this.getDatasetCollectionMap(endpoint + "NVCLDataServices/", "all");
-                } catch (IOException e) {
-                    log.warn("An NVCL 'getDatasetCollection.html' call to "+ endpoint + " failed. Error: " + e.getMessage());
-                    continue;
-                } 
-                this.mapTsgCachePath.put(endpoint,cacheUrl);
-                this.mapEndpoint.put(endpoint,datasetCollectionMap);
+        String defaultUrl = null;
+        int start = 0;
+        if (urlArrays[0].contains("DEFAULT") && urlArrays.length > 1) {
+            defaultUrl = urlArrays[1].trim();
+            start = 2; //skip the default;
+        }
+        for (int i = start; i + 1 < urlArrays.length; i+=2) {
+            String endpoint = urlArrays[i].trim();
+            String cacheUrl = urlArrays[i+1].trim();
+            if (defaultUrl != null) {
+                cacheUrl = cacheUrl.replace("$DEFAULT",defaultUrl);
             }
+            providers.put(endpoint, cacheUrl);
+        }
+        if ((urlArrays.length - start) % 2 != 0) {
+            log.warn("Ignoring unpaired entry at the end of tsgFileCacheUrl: " + urlArrays[urlArrays.length - 1]);
+        }
+        return providers;
+    }
 
+    /**
+     * Starts loading the TSG dataset collections of every provider in the background, reloading each one every
+     * tsgRefreshMinutes. Providers are loaded concurrently so a slow provider doesn't hold up the others.
+     */
+    @PostConstruct
+    public void scheduleTsgDownloadMaps() {
+        Map<String, String> providers = parseTsgProviders();
+        if (providers.isEmpty()) {
+            return;
+        }
+
+        tsgRefreshExecutor = Executors.newScheduledThreadPool(providers.size(), runnable -> {
+            Thread thread = new Thread(runnable, "nvcl-tsg-dataset-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Map.Entry<String, String> provider : providers.entrySet()) {
+            tsgRefreshExecutor.scheduleWithFixedDelay(() -> loadTsgDownloadMap(provider.getKey(), provider.getValue()),
+                    0, Math.max(1, tsgRefreshMinutes), TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Loads the dataset collection of a single provider and publishes it in a new snapshot. A provider that fails keeps
+     * whatever was previously loaded for it, and never affects the other providers.
+     */
+    void loadTsgDownloadMap(String endpoint, String cacheUrl) {
+        try {
+            TsgDatasetCollection datasetCollection = new TsgDatasetCollection(cacheUrl,
+                    this.getDatasetCollectionMap(endpoint + "NVCLDataServices/", "all"));
+            tsgDatasetCollections.updateAndGet(current -> {
+                Map<String, TsgDatasetCollection> updated = new HashMap<String, TsgDatasetCollection>(current);
+                updated.put(endpoint, datasetCollection);
+                return Collections.unmodifiableMap(updated);
+            });
         } catch (Exception e) {
-            e.printStackTrace();
+            // Recover if a 'getDatasetCollection.html' request to a state/territory provider fails
+            log.warn("An NVCL 'getDatasetCollection.html' call to "+ endpoint + " failed. Error: " + e.getMessage());
         }
-        return;
-    }        
+    }
 }
@@ -13,7 +13,8 @@ import org.springframework.scheduling.quartz.QuartzJobBean;
 
 /**
  * This class implements a Quartz jobs to regularly update the service status of the known layers.
- * The update is done through the class KnownLayerService 
+ * The update is done through the class KnownLayerService. Only the status is refreshed, the known layers
+ * are regrouped when the CSW records are updated (or here if they have never been grouped).
  * 
  * @author Carsten Friedrich, CSIRO
  *
@@ -38,7 +39,9 @@ public class KnownLayerStatusMonitor extends QuartzJobBean {
     @Override
     protected void executeInternal(JobExecutionContext context) throws JobExecutionException {
         try {
-            cswKnownLayerService.updateKnownLayersCache(!manualUpdateOnly);
+            if (!cswKnownLayerService.refreshKnownLayerStatuses()) {
+                cswKnownLayerService.updateKnownLayersCache(!manualUpdateOnly);
+            }
         } catch (Exception ex) {
             LOG.info(String.format("Error updating status of known layers: %1$s", ex.getMessage()));
             LOG.debug("Exception:", ex);
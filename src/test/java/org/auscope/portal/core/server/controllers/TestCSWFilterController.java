@@ -564,6 +564,107 @@ public class TestCSWFilterController extends PortalTestClass {
         CSWFilterController.catalogueKeywordCache.clear();
     }
 
+    /**
+     * Test that getFilteredCSWKeywords only fetches a registry's keywords once and filters them case insensitively.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetFilteredCSWKeywordsCached() throws Exception {
+
+        final String[] cswServiceIds = {"serviceIdDNE"};
+        final ArrayList<CSWRecord> list = new ArrayList<CSWRecord>();
+        final CSWGetRecordResponse filteredResponse = context.mock(CSWGetRecordResponse.class, "cswResponse1");
+
+        CSWRecord c1 = new CSWRecord("c1");
+        c1.setDescriptiveKeywords(new String[] {"Gold", "Copper"});
+        list.add(c1);
+
+        context.checking(new Expectations() {
+            {
+                oneOf(mockService).getCapabilitiesByServiceId(cswServiceIds[0]);
+                oneOf(mockService).getFilteredRecords(cswServiceIds[0], null, CSWFilterController.DEFAULT_MAX_RECORDS,
+                        1);
+                will(returnValue(filteredResponse));
+                oneOf(filteredResponse).getRecords();
+                will(returnValue(list));
+
+                exactly(2).of(filteredResponse).getNextRecord();
+                will(returnValue(0));
+
+                oneOf(filteredResponse).getRecordsMatched();
+                will(returnValue(1));
+            }
+        });
+
+        ModelAndView mav = controller.getFilteredCSWKeywords(cswServiceIds, "");
+        Assert.assertEquals(2, ((List<ModelMap>) mav.getModel().get("data")).size());
+
+        mav = controller.getFilteredCSWKeywords(cswServiceIds, "GOL");
+        Assert.assertTrue((Boolean) mav.getModel().get("success"));
+        List<ModelMap> actual = (List<ModelMap>) mav.getModel().get("data");
+        Assert.assertEquals(1, actual.size());
+        Assert.assertEquals("Gold", actual.get(0).get("keyword"));
+
+        CSWFilterController.catalogueKeywordCache.clear();
+    }
+
+    /**
+     * Test that the keyword indexes built at startup are used by getFilteredCSWKeywords and that results are capped.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWarmKeywordCaches() throws Exception {
+
+        final CSWServiceItem hidden = new CSWServiceItem("hidden", "serviceUrl2", "infoUrl2", "title2");
+        hidden.setHideFromCatalogue(true);
+        final CSWServiceItem[] serviceItems = {new CSWServiceItem("id1", "serviceUrl1", "infoUrl1", "title1"), hidden};
+        final ArrayList<CSWRecord> list = new ArrayList<CSWRecord>();
+        final CSWGetRecordResponse filteredResponse = context.mock(CSWGetRecordResponse.class, "cswResponse1");
+
+        CSWRecord c1 = new CSWRecord("c1");
+        c1.setDescriptiveKeywords(new String[] {"Gold", "Copper", "Goldfields"});
+        list.add(c1);
+
+        context.checking(new Expectations() {
+            {
+                oneOf(mockService).getCSWServiceItems();
+                will(returnValue(serviceItems));
+                oneOf(mockService).getCapabilitiesByServiceId("id1");
+                oneOf(mockService).getFilteredRecords("id1", null, CSWFilterController.DEFAULT_MAX_RECORDS, 1);
+                will(returnValue(filteredResponse));
+                oneOf(filteredResponse).getRecords();
+                will(returnValue(list));
+
+                exactly(2).of(filteredResponse).getNextRecord();
+                will(returnValue(0));
+
+                oneOf(filteredResponse).getRecordsMatched();
+                will(returnValue(1));
+            }
+        });
+
+        controller.warmKeywordCaches();
+        controller.setKeywordMaxResults(2);
+
+        ModelAndView mav = controller.getFilteredCSWKeywords(new String[] {"id1"}, "");
+        Assert.assertTrue((Boolean) mav.getModel().get("success"));
+        List<ModelMap> actual = (List<ModelMap>) mav.getModel().get("data");
+        Assert.assertEquals(2, actual.size());
+        Assert.assertEquals("Copper", actual.get(0).get("keyword"));
+        Assert.assertEquals("Gold", actual.get(1).get("keyword"));
+
+        // A negative cap returns every matching keyword
+        controller.setKeywordMaxResults(-1);
+        mav = controller.getFilteredCSWKeywords(new String[] {"id1"}, "");
+        Assert.assertTrue((Boolean) mav.getModel().get("success"));
+        actual = (List<ModelMap>) mav.getModel().get("data");
+        Assert.assertEquals(3, actual.size());
+
+        CSWFilterController.catalogueKeywordCache.clear();
+    }
+
     /**
      * Test that getFilteredCSWKeywords returns the keywords cache as expected.
      *
@@ -12,17 +12,25 @@ import jakarta.servlet.http.HttpServletResponse;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
 import org.auscope.portal.core.configuration.ServiceConfiguration;
 import org.auscope.portal.core.server.http.HttpClientResponse;
 import org.auscope.portal.core.server.http.HttpServiceCaller;
+import org.auscope.portal.core.server.http.ProxyResponseCache;
 import org.auscope.portal.core.server.http.download.MyHttpResponse;
 import org.auscope.portal.core.test.ByteBufferedServletOutputStream;
 import org.auscope.portal.core.test.PortalTestClass;
 import org.jmock.Expectations;
+import org.jmock.lib.action.CustomAction;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
 
 /**
  * @version $Id$
@@ -382,4 +390,120 @@ public class TestDownloadController extends PortalTestClass {
         zipInputStream.close();
     }
 
+    /**
+     * Returns an upstream response and records the request it was made for
+     */
+    private static CustomAction respondWith(final HttpRequestBase[] requested, final int statusCode, final byte[] body,
+            final String... headers) {
+        return new CustomAction("upstream response") {
+            @Override
+            public Object invoke(org.jmock.api.Invocation invocation) throws Throwable {
+                requested[0] = (HttpRequestBase) invocation.getParameter(0);
+                BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null);
+                for (int i = 0; i < headers.length; i += 2) {
+                    response.addHeader(headers[i], headers[i + 1]);
+                }
+                if (body != null) {
+                    response.setEntity(new ByteArrayEntity(body));
+                }
+                return new HttpClientResponse(response, null);
+            }
+        };
+    }
+
+    /**
+     * Tests conditional headers are passed upstream and a 304 response (with its validators) back
+     */
+    @Test
+    public void testGetViaProxyNotModified() throws Exception {
+        final HttpRequestBase[] requested = new HttpRequestBase[1];
+        context.checking(new Expectations() {
+            {
+                oneOf(httpServiceCaller).getConditionalMethodResponse(with(any(HttpRequestBase.class)));
+                will(respondWith(requested, 304, null, "ETag", "\"abc\"", "Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT"));
+            }
+        });
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/getViaProxy.do");
+        request.addHeader("If-None-Match", "\"abc\"");
+        request.addHeader("If-Modified-Since", "Wed, 21 Oct 2015 07:28:00 GMT");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        downloadController.getViaProxy(response, request, "http://example.com/legend.png", false, false);
+
+        Assert.assertEquals("\"abc\"", requested[0].getFirstHeader("If-None-Match").getValue());
+        Assert.assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", requested[0].getFirstHeader("If-Modified-Since").getValue());
+        Assert.assertEquals(304, response.getStatus());
+        Assert.assertEquals("\"abc\"", response.getHeader("ETag"));
+        Assert.assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", response.getHeader("Last-Modified"));
+        // Upstream gave no caching directives
+        Assert.assertEquals("public, max-age=604800, must-revalidate, no-transform", response.getHeader("Cache-Control"));
+        Assert.assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    /**
+     * Tests a range request is passed upstream uncompressed and the partial response back
+     */
+    @Test
+    public void testGetViaProxyRange() throws Exception {
+        final HttpRequestBase[] requested = new HttpRequestBase[1];
+        final byte[] part = "0123456789".getBytes();
+        context.checking(new Expectations() {
+            {
+                oneOf(httpServiceCaller).getConditionalMethodResponse(with(any(HttpRequestBase.class)));
+                will(respondWith(requested, 206, part, "Content-Range", "bytes 0-9/1000", "Accept-Ranges", "bytes",
+                        "Expires", "Wed, 21 Oct 2015 07:28:00 GMT"));
+            }
+        });
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/getViaProxy.do");
+        request.addHeader("Range", "bytes=0-9");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        downloadController.getViaProxy(response, request, "http://example.com/report.pdf", false, false);
+
+        Assert.assertEquals("bytes=0-9", requested[0].getFirstHeader("Range").getValue());
+        Assert.assertEquals("identity", requested[0].getFirstHeader("Accept-Encoding").getValue());
+        Assert.assertEquals(206, response.getStatus());
+        Assert.assertEquals("bytes 0-9/1000", response.getHeader("Content-Range"));
+        Assert.assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        Assert.assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", response.getHeader("Expires"));
+        Assert.assertNull(response.getHeader("Cache-Control"));
+        Assert.assertEquals(part.length, response.getContentLengthLong());
+        Assert.assertArrayEquals(part, response.getContentAsByteArray());
+    }
+
+    /**
+     * Tests cacheable whitelisted responses are served (and revalidated) from the proxy response cache
+     */
+    @Test
+    public void testGetViaProxyCached() throws Exception {
+        final HttpRequestBase[] requested = new HttpRequestBase[1];
+        final byte[] body = "<kml/>".getBytes();
+        final String url = "http://data.example.com/stations.kml";
+        ReflectionTestUtils.setField(downloadController, "whitelist", "example.com");
+        downloadController.setProxyResponseCache(new ProxyResponseCache(10, 1024, 60000, 3600000));
+        context.checking(new Expectations() {
+            {
+                oneOf(httpServiceCaller).getConditionalMethodResponse(with(any(HttpRequestBase.class)));
+                will(respondWith(requested, 200, body, "ETag", "W/\"v1\"", "Cache-Control", "max-age=60"));
+            }
+        });
+
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            downloadController.getViaProxy(response, new MockHttpServletRequest("GET", "/getViaProxy.do"), url, false, true);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("W/\"v1\"", response.getHeader("ETag"));
+            Assert.assertEquals("max-age=60", response.getHeader("Cache-Control"));
+            Assert.assertEquals(i == 1, response.containsHeader("Age"));
+            Assert.assertArrayEquals(body, response.getContentAsByteArray());
+        }
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/getViaProxy.do");
+        request.addHeader("If-None-Match", "\"v1\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        downloadController.getViaProxy(response, request, url, false, true);
+        Assert.assertEquals(304, response.getStatus());
+        Assert.assertEquals("max-age=60", response.getHeader("Cache-Control"));
+        Assert.assertEquals(0, response.getContentAsByteArray().length);
+    }
 }
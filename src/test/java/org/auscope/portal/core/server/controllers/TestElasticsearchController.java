@@ -0,0 +1,258 @@
+package org.auscope.portal.core.server.controllers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.auscope.portal.core.services.ElasticsearchService;
+import org.auscope.portal.core.services.responses.csw.AbstractCSWOnlineResource;
+import org.auscope.portal.core.services.responses.csw.CSWContact;
+import org.auscope.portal.core.services.responses.csw.CSWGeographicBoundingBox;
+import org.auscope.portal.core.services.responses.csw.CSWGeographicElement;
+import org.auscope.portal.core.services.responses.csw.CSWOnlineResourceImpl;
+import org.auscope.portal.core.services.responses.csw.CSWRecord;
+import org.auscope.portal.core.services.responses.csw.CSWResponsibleParty;
+import org.auscope.portal.core.services.responses.csw.CSWTemporalExtent;
+import org.auscope.portal.core.services.responses.es.CSWRecordSearchResponse;
+import org.auscope.portal.core.test.PortalTestClass;
+import org.auscope.portal.core.view.ViewCSWRecordFactory;
+import org.jmock.Expectations;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.ui.ModelMap;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unit tests for ElasticsearchController
+ */
+public class TestElasticsearchController extends PortalTestClass {
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private ElasticsearchController controller;
+    private ElasticsearchService mockElasticsearchService;
+
+    @Before
+    public void setUp() {
+        mockElasticsearchService = context.mock(ElasticsearchService.class);
+        controller = new ElasticsearchController();
+        controller.elasticsearchService = mockElasticsearchService;
+        controller.viewCSWRecordFactory = new ViewCSWRecordFactory();
+    }
+
+    private void expectSearch(final CSWRecordSearchResponse response) {
+        context.checking(new Expectations() {
+            {
+                oneOf(mockElasticsearchService).searchCSWRecords("gold", null, null, null, null, null, null, null, null, null, null);
+                will(returnValue(response));
+            }
+        });
+    }
+
+    private CSWRecord createRecord(int i) throws Exception {
+        CSWRecord record = new CSWRecord("id-" + i);
+        record.setServiceName("Service \"" + i + "\"");
+        record.setResourceProvider("Provider & Co <" + i + ">");
+        record.setRecordInfoUrl("http://example.org/record?id=" + i);
+        record.setDataIdentificationAbstract("Abstract with unicode é中 and a\ttab\n" + i);
+        record.setService(i % 2 == 0);
+        record.setNoCache(i % 3 == 0);
+
+        CSWResponsibleParty contact = new CSWResponsibleParty();
+        contact.setOrganisationName("Org " + i);
+        contact.setIndividualName(i % 2 == 0 ? "" : "Person " + i);
+        CSWContact contactInfo = new CSWContact();
+        contactInfo.setAddressAdministrativeArea("WA");
+        contact.setContactInfo(contactInfo);
+        record.setContact(contact);
+
+        CSWResponsibleParty author = new CSWResponsibleParty();
+        author.setIndividualName("Author " + i);
+        record.setAuthors(new CSWResponsibleParty[] {author, new CSWResponsibleParty()});
+
+        List<AbstractCSWOnlineResource> onlineResources = new ArrayList<>();
+        onlineResources.add(new CSWOnlineResourceImpl(new URL("http://example.org/wms"), "OGC:WMS-1.3.0-http-get-map", "layer" + i, "desc", "", null));
+        onlineResources.add(new CSWOnlineResourceImpl(null, "WWW:LINK-1.0-http--link", "nolink", "desc"));
+        record.setOnlineResources(onlineResources);
+
+        record.setCSWGeographicElements(new CSWGeographicElement[] {new CSWGeographicBoundingBox(110.5, 155.0 + i, -44.25, -9.0)});
+        record.setTemporalExtent(new CSWTemporalExtent(new Date(1000000000000L), new Date(1600000000000L)));
+        record.setDescriptiveKeywords(new String[] {"keyword", null, "other \\ keyword"});
+        record.setConstraints(new String[] {"constraint"});
+        record.setDate(new Date(1500000000000L + i));
+        record.setMinScale(i % 2 == 0 ? null : 1000.0);
+        record.setMaxScale(0.5);
+        if (i % 2 == 0) {
+            record.setKnownLayerIds(new HashSet<>(Arrays.asList("kl-a", "kl-b")));
+            record.setKnownLayerNames(new HashSet<>(Arrays.asList("Known Layer")));
+            record.setKnownLayerDescriptions(new HashSet<>());
+        }
+        if (i % 5 == 0) {
+            record.addChildRecord(createRecord(i + 1));
+        }
+        return record;
+    }
+
+    private CSWRecordSearchResponse createResponse(int count) throws Exception {
+        List<CSWRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(createRecord(i));
+        }
+        return new CSWRecordSearchResponse(count * 10L, records, Arrays.asList("kl-a", "kl-b"));
+    }
+
+    /**
+     * Builds the response model the way searchKnownLayersAndCSWRecords did before records were streamed
+     */
+    private ModelAndView createModelAndView(CSWRecordSearchResponse response) {
+        ModelMap modelMap = new ModelMap();
+        modelMap.put("totalCSWRecordHits", response.getTotalCSWRecordHits());
+        List<ModelMap> cswRecords = new ArrayList<ModelMap>(response.getCSWRecords().size());
+        for (CSWRecord record : response.getCSWRecords()) {
+            cswRecords.add(controller.viewCSWRecordFactory.toView(record));
+        }
+        modelMap.put("cswRecords", cswRecords);
+        modelMap.put("knownLayerIds", response.getKnownLayerIds());
+        return controller.generateJSONResponseMAV(true, modelMap, "");
+    }
+
+    /**
+     * Tests the streamed search response is byte identical to rendering the equivalent ModelMap based response
+     */
+    @Test
+    public void testStreamedResponseMatchesView() throws Exception {
+        CSWRecordSearchResponse response = createResponse(25);
+
+        ModelAndView mav = createModelAndView(response);
+        MockHttpServletResponse expected = new MockHttpServletResponse();
+        mav.getView().render(mav.getModel(), new MockHttpServletRequest(), expected);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        controller.writeSearchResponse(response, actual);
+
+        Assert.assertArrayEquals(expected.getContentAsByteArray(), actual.toByteArray());
+    }
+
+    /**
+     * Tests a null knownLayerIds list and an empty page are written the same way as the view
+     */
+    @Test
+    public void testStreamedResponseMatchesViewEmpty() throws Exception {
+        CSWRecordSearchResponse response = new CSWRecordSearchResponse(0, new ArrayList<CSWRecord>(), null);
+
+        ModelAndView mav = createModelAndView(response);
+        MockHttpServletResponse expected = new MockHttpServletResponse();
+        mav.getView().render(mav.getModel(), new MockHttpServletRequest(), expected);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        controller.writeSearchResponse(response, actual);
+
+        Assert.assertArrayEquals(expected.getContentAsByteArray(), actual.toByteArray());
+    }
+
+    /**
+     * Tests searchCSWRecords.do writes the complete page to the response
+     */
+    @Test
+    public void testSearchKnownLayersAndCSWRecords() throws Exception {
+        CSWRecordSearchResponse response = createResponse(5);
+        expectSearch(response);
+
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+        ModelAndView mav = controller.searchKnownLayersAndCSWRecords("gold", null, null, null, null, null, null, null,
+                null, null, null, servletResponse);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        controller.writeSearchResponse(response, expected);
+        Assert.assertNull(mav);
+        Assert.assertEquals("application/json;charset=UTF-8", servletResponse.getContentType());
+        Assert.assertEquals(expected.size(), servletResponse.getContentLength());
+        Assert.assertArrayEquals(expected.toByteArray(), servletResponse.getContentAsByteArray());
+    }
+
+    /**
+     * Tests a record that fails to serialise part way through the page results in an error response rather than
+     * truncated JSON
+     */
+    @Test
+    public void testSearchKnownLayersAndCSWRecordsWriteError() throws Exception {
+        expectSearch(createResponse(5));
+        controller.viewCSWRecordFactory = new ViewCSWRecordFactory() {
+            @Override
+            public void writeView(CSWRecord record, JsonGenerator gen) throws IOException {
+                if (record.getFileIdentifier().equals("id-3")) {
+                    throw new IllegalStateException("bad record");
+                }
+                super.writeView(record, gen);
+            }
+        };
+
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+        ModelAndView mav = controller.searchKnownLayersAndCSWRecords("gold", null, null, null, null, null, null, null,
+                null, null, null, servletResponse);
+
+        Assert.assertNotNull(mav);
+        Assert.assertFalse((Boolean) mav.getModel().get("success"));
+        Assert.assertFalse(servletResponse.isCommitted());
+        Assert.assertEquals(0, servletResponse.getContentAsByteArray().length);
+    }
+
+    /**
+     * Compares the bytes allocated serialising 1000 records through the ModelMap view against streaming them directly
+     */
+    @Test
+    public void benchmarkAllocationPer1000Records() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        CSWRecordSearchResponse response = createResponse(1000);
+        ObjectMapper mapper = new ObjectMapper();
+        // Discards everything and ignores close() so it can be reused
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up both paths so class loading and JIT don't count against either
+        for (int i = 0; i < 5; i++) {
+            mapper.writeValue(sink, createModelAndView(response).getModel());
+            controller.writeSearchResponse(response, sink);
+        }
+
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        mapper.writeValue(sink, createModelAndView(response).getModel());
+        long viewBytes = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+        start = threadBean.getThreadAllocatedBytes(threadId);
+        controller.writeSearchResponse(response, sink);
+        long streamedBytes = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+        log.info(String.format("Allocation per 1000 records: ModelMap view %1$d bytes, streamed %2$d bytes", viewBytes, streamedBytes));
+        Assert.assertTrue(String.format("streamed (%1$d) should allocate less than view (%2$d)", streamedBytes, viewBytes),
+                streamedBytes < viewBytes);
+    }
+}
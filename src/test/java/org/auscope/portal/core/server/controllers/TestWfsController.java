@@ -8,7 +8,6 @@ import jakarta.servlet.http.HttpServletRequest;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.auscope.portal.core.services.WFSService;
 import org.auscope.portal.core.services.responses.wfs.WFSResponse;
-import org.auscope.portal.core.services.responses.wfs.WFSTransformedResponse;
 import org.auscope.portal.core.test.ByteBufferedServletOutputStream;
 import org.auscope.portal.core.test.PortalTestClass;
 import org.jmock.Expectations;
@@ -136,7 +135,6 @@ public class TestWfsController extends PortalTestClass {
         final String typeName = "wfs:typeName";
         final String featureId = "idString";
         final String convertedData = "gmlToKMLResult";
-        final String wfsResponse = "wfsResponseString";
         final String baseUrl = "http://portal.org/api";
         final ByteBufferedServletOutputStream outputStream = new ByteBufferedServletOutputStream(
                 convertedData.getBytes().length);
@@ -147,8 +145,8 @@ public class TestWfsController extends PortalTestClass {
                 will(returnValue(new StringBuffer("http://portal.org/api/wfsFeaturePopup.do")));
                 allowing(mockResponse).setContentType(with(any(String.class)));
 
-                oneOf(mockWfsService).getWfsResponseAsHtml(serviceUrl, typeName, featureId, baseUrl);
-                will(returnValue(new WFSTransformedResponse(wfsResponse, convertedData, mockMethod)));
+                oneOf(mockWfsService).getWfsPopupHtml(serviceUrl, typeName, featureId, baseUrl);
+                will(returnValue(convertedData));
 
                 oneOf(mockResponse).getOutputStream();
                 will(returnValue(outputStream));
@@ -171,7 +169,6 @@ public class TestWfsController extends PortalTestClass {
         final String typeName = null;
         final String featureId = null;
         final String convertedData = "gmlToKMLResult";
-        final String wfsResponse = "wfsResponseString";
         final String baseUrl = "http://portal.org/api";
         final ByteBufferedServletOutputStream outputStream = new ByteBufferedServletOutputStream(
                 convertedData.getBytes().length);
@@ -183,8 +180,8 @@ public class TestWfsController extends PortalTestClass {
                 allowing(mockRequest).getRequestURL();
                 will(returnValue(new StringBuffer("http://portal.org/api/wfsFeaturePopup.do")));
 
-                oneOf(mockWfsService).getWfsResponseAsHtml(serviceUrl, baseUrl);
-                will(returnValue(new WFSTransformedResponse(wfsResponse, convertedData, mockMethod)));
+                oneOf(mockWfsService).getWfsPopupHtml(serviceUrl, null, null, baseUrl);
+                will(returnValue(convertedData));
 
                 oneOf(mockResponse).getOutputStream();
                 will(returnValue(outputStream));
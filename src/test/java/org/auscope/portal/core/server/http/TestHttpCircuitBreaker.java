@@ -0,0 +1,213 @@
+package org.auscope.portal.core.server.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.client.methods.HttpGet;
+import org.auscope.portal.core.server.http.HttpCircuitBreaker.State;
+import org.auscope.portal.core.services.responses.ows.OWSException;
+import org.auscope.portal.core.services.responses.ows.OWSExceptionParser;
+import org.auscope.portal.core.test.PortalTestClass;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for HttpCircuitBreaker, run against a local HTTP stub that can be made to hang or fail
+ */
+public class TestHttpCircuitBreaker extends PortalTestClass {
+
+    private enum Mode {
+        OK, HANG, FAIL
+    }
+
+    private static final int CALLER_TIMEOUT_MS = 10000;
+    private static final int MIN_TIMEOUT_MS = 300;
+    private static final int OPEN_MS = 500;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private String url;
+    private final AtomicReference<Mode> mode = new AtomicReference<>(Mode.OK);
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final CountDownLatch released = new CountDownLatch(1);
+    private HttpCircuitBreaker circuitBreaker;
+    private HttpServiceCaller serviceCaller;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/wms", exchange -> {
+            requestCount.incrementAndGet();
+            switch (mode.get()) {
+            case HANG:
+                try {
+                    released.await(CALLER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+                break;
+            case FAIL:
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                break;
+            default:
+                byte[] body = "<ok/>".getBytes();
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/wms?service=WMS&request=GetMap";
+
+        circuitBreaker = new HttpCircuitBreaker(3, OPEN_MS, MIN_TIMEOUT_MS, 4, 5, 10);
+        serviceCaller = new HttpServiceCaller(CALLER_TIMEOUT_MS);
+        serviceCaller.setCircuitBreaker(circuitBreaker);
+        serviceCaller.setDerivedTimeouts(true);
+    }
+
+    @After
+    public void tearDown() {
+        released.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void assertFails(Class<? extends IOException> expected) {
+        try {
+            serviceCaller.getMethodResponseAsString(new HttpGet(url));
+            Assert.fail("Exception should have been thrown");
+        } catch (IOException ex) {
+            Assert.assertTrue(ex.getClass().getName(), expected.isInstance(ex));
+        }
+    }
+
+    /**
+     * Tests a hanging host is timed out based on its latency, its circuit opens after repeated failures (failing
+     * fast without contacting it) and closes again once a probe succeeds
+     */
+    @Test
+    public void testHangFailRecover() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("<ok/>", serviceCaller.getMethodResponseAsString(new HttpGet(url)));
+        }
+        Assert.assertEquals(MIN_TIMEOUT_MS, circuitBreaker.timeoutMs("localhost", "GetMap", CALLER_TIMEOUT_MS));
+        Assert.assertEquals(CALLER_TIMEOUT_MS, circuitBreaker.timeoutMs("localhost", "GetFeature", CALLER_TIMEOUT_MS));
+
+        // Hangs are given up on long before the caller's own timeout, without counting as failures
+        mode.set(Mode.HANG);
+        long start = System.currentTimeMillis();
+        assertFails(SocketTimeoutException.class);
+        Assert.assertTrue(System.currentTimeMillis() - start < CALLER_TIMEOUT_MS / 2);
+        Assert.assertEquals(State.CLOSED, circuitBreaker.getState("localhost"));
+
+        mode.set(Mode.FAIL);
+        assertFails(IOException.class);
+        assertFails(IOException.class);
+        Assert.assertEquals(State.CLOSED, circuitBreaker.getState("localhost"));
+        assertFails(IOException.class);
+        Assert.assertEquals(State.OPEN, circuitBreaker.getState("localhost"));
+
+        // Open circuits fail fast
+        int requestsBefore = requestCount.get();
+        assertFails(CircuitOpenException.class);
+        Assert.assertEquals(requestsBefore, requestCount.get());
+
+        // A failed probe reopens the circuit
+        Thread.sleep(OPEN_MS + 50);
+        assertFails(IOException.class);
+        Assert.assertEquals(State.OPEN, circuitBreaker.getState("localhost"));
+        assertFails(CircuitOpenException.class);
+
+        // A successful probe closes it
+        mode.set(Mode.OK);
+        Thread.sleep(OPEN_MS + 50);
+        Assert.assertEquals("<ok/>", serviceCaller.getMethodResponseAsString(new HttpGet(url)));
+        Assert.assertEquals(State.CLOSED, circuitBreaker.getState("localhost"));
+        Assert.assertEquals("<ok/>", serviceCaller.getMethodResponseAsString(new HttpGet(url)));
+    }
+
+    /**
+     * Tests only a single probe is let through a half open circuit and that client errors don't count as failures
+     */
+    @Test
+    public void testHalfOpen() throws Exception {
+        circuitBreaker.recordResponse("example.com", "GetMap", 404, 0);
+        circuitBreaker.recordFailure("example.com");
+        circuitBreaker.recordFailure("example.com");
+        Assert.assertEquals(State.CLOSED, circuitBreaker.getState("example.com"));
+        circuitBreaker.recordFailure("example.com");
+        Assert.assertEquals(State.OPEN, circuitBreaker.getState("example.com"));
+
+        Thread.sleep(OPEN_MS + 50);
+        circuitBreaker.beforeRequest("example.com");
+        Assert.assertEquals(State.HALF_OPEN, circuitBreaker.getState("example.com"));
+        try {
+            circuitBreaker.beforeRequest("example.com");
+            Assert.fail("Exception should have been thrown");
+        } catch (CircuitOpenException ex) {
+            Assert.assertEquals("example.com", ex.getHost());
+        }
+
+        // A probe given up on by its derived timeout lets the next request probe
+        circuitBreaker.recordAbandoned("example.com");
+        Assert.assertEquals(State.OPEN, circuitBreaker.getState("example.com"));
+        circuitBreaker.beforeRequest("example.com");
+        Assert.assertEquals(State.HALF_OPEN, circuitBreaker.getState("example.com"));
+
+        circuitBreaker.recordResponse("example.com", "GetMap", 200, 0);
+        Assert.assertEquals(State.CLOSED, circuitBreaker.getState("example.com"));
+        circuitBreaker.beforeRequest("example.com");
+    }
+
+    /**
+     * Tests latency derived timeouts are only applied by callers that opt in to them
+     */
+    @Test
+    public void testDerivedTimeoutsOptIn() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("<ok/>", serviceCaller.getMethodResponseAsString(new HttpGet(url)));
+        }
+
+        HttpGet derived = new HttpGet(url);
+        serviceCaller.getMethodResponseAsString(derived);
+        Assert.assertEquals(MIN_TIMEOUT_MS, derived.getConfig().getSocketTimeout());
+
+        HttpServiceCaller longCaller = new HttpServiceCaller(CALLER_TIMEOUT_MS);
+        longCaller.setCircuitBreaker(circuitBreaker);
+        HttpGet own = new HttpGet(url);
+        Assert.assertEquals("<ok/>", longCaller.getMethodResponseAsString(own));
+        Assert.assertNull(own.getConfig());
+    }
+
+    /**
+     * Tests the fail fast error is a parseable OWS exception report
+     */
+    @Test
+    public void testExceptionReport() throws Exception {
+        CircuitOpenException ex = new CircuitOpenException("example.com", 1500);
+        Assert.assertEquals(2, ex.getRetryAfterSeconds());
+        try {
+            OWSExceptionParser.checkForExceptionResponse(ex.toExceptionReport());
+            Assert.fail("Exception should have been thrown");
+        } catch (OWSException owsEx) {
+            Assert.assertTrue(owsEx.getMessage().contains("example.com"));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.auscope.portal.core.server.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.auscope.portal.core.test.PortalTestClass;
+import org.auscope.portal.server.web.UpstreamMetricsEndpoint;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for HttpServiceCallerMetrics, run against a local HTTP stub
+ */
+public class TestHttpServiceCallerMetrics extends PortalTestClass {
+
+    private static final byte[] BODY = new byte[1000];
+
+    private HttpServer server;
+    private String baseUrl;
+    private SimpleMeterRegistry registry;
+    private HttpServiceCaller serviceCaller;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/wfs", exchange -> {
+            exchange.sendResponseHeaders(200, BODY.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(BODY);
+            }
+        });
+        server.createContext("/broken", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        registry = new SimpleMeterRegistry();
+        serviceCaller = new HttpServiceCaller(5000);
+        serviceCaller.setMetrics(new HttpServiceCallerMetrics(registry));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private Timer timer(String request, String status) {
+        return registry.find(HttpServiceCallerMetrics.REQUESTS)
+                .tag(HttpServiceCallerMetrics.TAG_HOST, "localhost")
+                .tag(HttpServiceCallerMetrics.TAG_METHOD, "GET")
+                .tag(HttpServiceCallerMetrics.TAG_REQUEST, request)
+                .tag(HttpServiceCallerMetrics.TAG_STATUS, status)
+                .timer();
+    }
+
+    /**
+     * Tests latency and response size are recorded against the host, method and OGC request type
+     */
+    @Test
+    public void testSuccessfulRequests() throws IOException {
+        String url = baseUrl + "/wfs?service=WFS&REQUEST=GetFeature&typeName=gsmlp:BoreholeView";
+        Assert.assertEquals(BODY.length, serviceCaller.getMethodResponseAsString(new HttpGet(url)).length());
+        try (InputStream is = serviceCaller.getMethodResponseAsStream(new HttpGet(url))) {
+            Assert.assertEquals(BODY.length, IOUtils.toByteArray(is).length);
+        }
+
+        Timer timer = timer("GetFeature", "2xx");
+        Assert.assertNotNull(timer);
+        Assert.assertEquals(2, timer.count());
+
+        DistributionSummary bytes = registry.find(HttpServiceCallerMetrics.RESPONSE_BYTES)
+                .tag(HttpServiceCallerMetrics.TAG_REQUEST, "GetFeature")
+                .summary();
+        Assert.assertNotNull(bytes);
+        Assert.assertEquals(2, bytes.count());
+        Assert.assertEquals(2.0 * BODY.length, bytes.totalAmount(), 0.0001);
+        Assert.assertTrue(registry.find(HttpServiceCallerMetrics.ERRORS).counters().isEmpty());
+    }
+
+    /**
+     * Tests error responses are recorded with their status class
+     */
+    @Test
+    public void testErrorResponse() throws IOException {
+        try {
+            serviceCaller.getMethodResponseAsString(new HttpGet(baseUrl + "/broken?request=GetMap"));
+            Assert.fail("Exception should have been thrown");
+        } catch (IOException ex) {
+            Assert.assertEquals("500", ex.getMessage());
+        }
+
+        Assert.assertEquals(1, timer("GetMap", "5xx").count());
+        Counter errors = registry.find(HttpServiceCallerMetrics.ERRORS)
+                .tag(HttpServiceCallerMetrics.TAG_ERROR, "5xx")
+                .counter();
+        Assert.assertNotNull(errors);
+        Assert.assertEquals(1, errors.count(), 0.0001);
+    }
+
+    /**
+     * Tests requests that fail without a response are recorded with the exception that ended them
+     */
+    @Test
+    public void testConnectionFailure() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+
+        try {
+            serviceCaller.getMethodResponseAsString(new HttpGet("http://localhost:" + closedPort + "/csw"));
+            Assert.fail("Exception should have been thrown");
+        } catch (IOException ex) {
+            // expected
+        }
+
+        Assert.assertEquals(1, timer("unknown", "none").count());
+        List<Counter> errors = List.copyOf(registry.find(HttpServiceCallerMetrics.ERRORS).counters());
+        Assert.assertEquals(1, errors.size());
+        Assert.assertFalse(errors.get(0).getId().getTag(HttpServiceCallerMetrics.TAG_ERROR).endsWith("xx"));
+
+        List<Map<String, Object>> summaries = new UpstreamMetricsEndpoint(registry).upstream("localhost");
+        Assert.assertEquals(1, summaries.size());
+        Assert.assertEquals("none", summaries.get(0).get("status"));
+        Assert.assertEquals(1, ((Map<?, ?>) summaries.get(0).get("failures")).size());
+    }
+
+    /**
+     * Tests the OGC request type is only taken from the REQUEST parameter and is bounded
+     */
+    @Test
+    public void testRequestType() {
+        Assert.assertEquals("GetCapabilities",
+                HttpServiceCallerMetrics.requestType(URI.create("http://example.com/wms?SERVICE=WMS&request=GetCapabilities")));
+        Assert.assertEquals("unknown", HttpServiceCallerMetrics.requestType(URI.create("http://example.com/wms")));
+        Assert.assertEquals("unknown", HttpServiceCallerMetrics.requestType(URI.create("http://example.com/wms?typeRequest=GetMap")));
+        Assert.assertEquals("other", HttpServiceCallerMetrics.requestType(URI.create("http://example.com/wms?request=%3Cscript%3E")));
+        Assert.assertEquals("2xx", HttpServiceCallerMetrics.statusClass(204));
+        Assert.assertEquals("unknown", HttpServiceCallerMetrics.statusClass(0));
+    }
+}
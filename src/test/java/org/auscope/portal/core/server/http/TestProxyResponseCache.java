@@ -0,0 +1,121 @@
+package org.auscope.portal.core.server.http;
+
+import java.util.Date;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.auscope.portal.core.test.PortalTestClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for ProxyResponseCache
+ */
+public class TestProxyResponseCache extends PortalTestClass {
+
+    private static final long DEFAULT_TTL_MS = 60000;
+    private static final long MAX_TTL_MS = 3600000;
+
+    private ProxyResponseCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ProxyResponseCache(2, 100, DEFAULT_TTL_MS, MAX_TTL_MS);
+    }
+
+    private static HttpResponse response(int statusCode, String... headers) {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null);
+        for (int i = 0; i < headers.length; i += 2) {
+            response.addHeader(headers[i], headers[i + 1]);
+        }
+        return response;
+    }
+
+    /**
+     * Tests upstream cache directives determine whether (and how long) responses are cached
+     */
+    @Test
+    public void testFreshness() {
+        long now = System.currentTimeMillis();
+        Assert.assertEquals(DEFAULT_TTL_MS, cache.freshnessMs(response(200), now));
+        Assert.assertEquals(30000, cache.freshnessMs(response(200, "Cache-Control", "public, max-age=30"), now));
+        Assert.assertEquals(10000, cache.freshnessMs(response(200, "Cache-Control", "max-age=30, s-maxage=10"), now));
+        Assert.assertEquals(MAX_TTL_MS, cache.freshnessMs(response(200, "Cache-Control", "max-age=604800"), now));
+        Assert.assertEquals(120000, cache.freshnessMs(
+                response(200, "Expires", DateUtils.formatDate(new Date(now + 120000))), now), 1000);
+
+        Assert.assertEquals(0, cache.freshnessMs(response(200, "Cache-Control", "no-store"), now));
+        Assert.assertEquals(0, cache.freshnessMs(response(200, "Cache-Control", "private, max-age=30"), now));
+        Assert.assertEquals(0, cache.freshnessMs(response(200, "Cache-Control", "max-age=0"), now));
+        Assert.assertEquals(0, cache.freshnessMs(response(200, "Set-Cookie", "session=1"), now));
+        Assert.assertEquals(0, cache.freshnessMs(response(200, "Vary", "*"), now));
+        Assert.assertEquals(0, cache.freshnessMs(response(206, "Content-Range", "bytes 0-9/100"), now));
+        Assert.assertEquals(0, cache.freshnessMs(response(200, "Expires", "0"), now));
+
+        Assert.assertTrue(cache.isCacheable(response(200), 100));
+        Assert.assertFalse(cache.isCacheable(response(200), 101));
+        Assert.assertFalse(cache.isCacheable(response(200), -1));
+        Assert.assertFalse(new ProxyResponseCache(0, 100, DEFAULT_TTL_MS, MAX_TTL_MS).isCacheable(response(200), 10));
+    }
+
+    /**
+     * Tests responses are held up to maxEntries, least recently used first out
+     */
+    @Test
+    public void testEviction() {
+        cache.put("a", response(200), new byte[] {1});
+        cache.put("b", response(200), new byte[] {2});
+        Assert.assertNotNull(cache.get("a"));
+        cache.put("c", response(200), new byte[] {3});
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertArrayEquals(new byte[] {3}, cache.get("c").getBody());
+        Assert.assertEquals(3, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        Assert.assertEquals(0.75, registry.get("portal.proxy.cache.hit.ratio").gauge().value(), 0.001);
+        Assert.assertEquals(2, registry.get("portal.proxy.cache.size").gauge().value(), 0);
+
+        cache.put("c", response(200, "Cache-Control", "public", "Cache-Control", "max-age=30"), new byte[] {3});
+        Assert.assertEquals("public, max-age=30", cache.get("c").getCacheControl());
+
+        cache.put("d", response(200, "Cache-Control", "no-cache"), new byte[] {4});
+        cache.put("e", response(200), new byte[101]);
+        Assert.assertNull(cache.get("d"));
+        Assert.assertNull(cache.get("e"));
+    }
+
+    /**
+     * Tests conditional request headers are evaluated against the cached validators
+     */
+    @Test
+    public void testIsNotModified() {
+        cache.put("url", response(200, "ETag", "W/\"v1\"", "Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT"),
+                new byte[] {1});
+        ProxyResponseCache.CachedResponse cached = cache.get("url");
+        Assert.assertNull(cached.getCacheControl());
+        Assert.assertNull(cached.getExpiresHeader());
+
+        Assert.assertTrue(ProxyResponseCache.isNotModified(cached, "\"v1\"", null));
+        Assert.assertTrue(ProxyResponseCache.isNotModified(cached, "\"v0\", W/\"v1\"", null));
+        Assert.assertTrue(ProxyResponseCache.isNotModified(cached, "*", null));
+        Assert.assertFalse(ProxyResponseCache.isNotModified(cached, "\"v2\"", null));
+        // If-None-Match takes precedence
+        Assert.assertFalse(ProxyResponseCache.isNotModified(cached, "\"v2\"", "Wed, 21 Oct 2015 07:28:00 GMT"));
+
+        Assert.assertTrue(ProxyResponseCache.isNotModified(cached, null, "Wed, 21 Oct 2015 07:28:00 GMT"));
+        Assert.assertTrue(ProxyResponseCache.isNotModified(cached, null, "Thu, 22 Oct 2015 07:28:00 GMT"));
+        Assert.assertFalse(ProxyResponseCache.isNotModified(cached, null, "Tue, 20 Oct 2015 07:28:00 GMT"));
+        Assert.assertFalse(ProxyResponseCache.isNotModified(cached, null, "not a date"));
+        Assert.assertFalse(ProxyResponseCache.isNotModified(cached, null, null));
+    }
+}
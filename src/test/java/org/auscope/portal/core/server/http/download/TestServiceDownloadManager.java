@@ -66,6 +66,42 @@ public class TestServiceDownloadManager extends PortalTestClass {
         }
     }
 
+    /**
+     * Responses should be handed over in the order they complete rather than the order they were requested
+     */
+    @Test
+    public void testDownloadAllStreaming() throws IOException, URISyntaxException {
+        final String[] serviceUrls = {
+                "http://localhost:8088/AuScope-Portal/doBoreholeFilter.do?&serviceUrl=http://slow.example/wfs",
+                "http://localhost:8088/AuScope-Portal/doBoreholeFilter.do?&serviceUrl=http://fast.example/wfs"};
+        final HttpResponse slowResponse = new MyHttpResponse(new ByteArrayInputStream("slow".getBytes()));
+        final HttpResponse fastResponse = new MyHttpResponse(new ByteArrayInputStream("fast".getBytes()));
+
+        context.checking(new Expectations() {
+            {
+                oneOf(mockServiceCaller).getMethodResponseAsHttpResponse(with(aHttpMethodBase(null, serviceUrls[0], null)));
+                will(delayReturnValue(1000, slowResponse));
+                oneOf(mockServiceCaller).getMethodResponseAsHttpResponse(with(aHttpMethodBase(null, serviceUrls[1], null)));
+                will(returnValue(fastResponse));
+
+                allowing(mockServiceConfiguration).getServiceConfigurationItem(with(any(String.class)));
+                will(returnValue(null));
+            }
+        });
+
+        final ArrayList<String> handled = new ArrayList<>();
+        ServiceDownloadManager sdm = new ServiceDownloadManager(serviceUrls, mockServiceCaller, threadPool,
+                mockServiceConfiguration);
+        sdm.downloadAll(response -> {
+            Assert.assertFalse(response.hasException());
+            handled.add(response.getResponseAsString());
+        });
+
+        Assert.assertEquals(2, handled.size());
+        Assert.assertEquals("fast\n", handled.get(0));
+        Assert.assertEquals("slow\n", handled.get(1));
+    }
+
     @Test
     public void testDownloadAllWithPaging() throws IOException, URISyntaxException, InCompleteDownloadException {
 
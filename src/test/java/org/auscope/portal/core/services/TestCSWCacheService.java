@@ -70,6 +70,8 @@ public class TestCSWCacheService extends PortalTestClass {
             {
             	allowing(mockElasticsearchService).getAllCSWRecords();
             	will(returnValue(cswRecordList));
+            	// The completion index is built from the suggestion index at startup
+            	oneOf(mockElasticsearchService).restoreCompletionTerms();
             }
         });
         
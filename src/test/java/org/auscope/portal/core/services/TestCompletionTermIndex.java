@@ -0,0 +1,80 @@
+package org.auscope.portal.core.services;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.auscope.portal.core.test.PortalTestClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for CompletionTermIndex
+ */
+public class TestCompletionTermIndex extends PortalTestClass {
+
+    private CompletionTermIndex createIndex(int maxSuggestions) {
+        Map<String, Integer> terms = new HashMap<>();
+        terms.put("gold", 50);
+        terms.put("goldfields", 7);
+        terms.put("golden", 7);
+        terms.put("gravity", 20);
+        terms.put("granite", 30);
+        terms.put("copper", 40);
+        terms.put("go-kart", 1);
+        return new CompletionTermIndex(terms, maxSuggestions);
+    }
+
+    /**
+     * Tests short (precomputed) prefixes are ranked by count then alphabetically
+     */
+    @Test
+    public void testShortPrefix() {
+        CompletionTermIndex index = createIndex(10);
+
+        Assert.assertEquals(Arrays.asList("gold", "granite", "gravity", "golden", "goldfields", "go-kart"), index.suggest("g"));
+        Assert.assertEquals(Arrays.asList("granite", "gravity"), index.suggest("gr"));
+        Assert.assertEquals(7, index.size());
+    }
+
+    /**
+     * Tests longer prefixes are ranked by count then alphabetically
+     */
+    @Test
+    public void testLongPrefix() {
+        CompletionTermIndex index = createIndex(10);
+
+        Assert.assertEquals(Arrays.asList("gold", "golden", "goldfields"), index.suggest("gol"));
+        Assert.assertEquals(Arrays.asList("golden"), index.suggest("golde"));
+        Assert.assertEquals(Arrays.asList("goldfields"), index.suggest("goldf"));
+        Assert.assertEquals(Collections.emptyList(), index.suggest("goldmine"));
+    }
+
+    /**
+     * Tests the prefix is case insensitive and trimmed, and that empty prefixes match nothing
+     */
+    @Test
+    public void testPrefixNormalisation() {
+        CompletionTermIndex index = createIndex(10);
+
+        Assert.assertEquals(Arrays.asList("copper"), index.suggest("  COP "));
+        Assert.assertEquals(Collections.emptyList(), index.suggest(""));
+        Assert.assertEquals(Collections.emptyList(), index.suggest(null));
+    }
+
+    /**
+     * Tests the number of suggestions is limited for both short and long prefixes
+     */
+    @Test
+    public void testMaxSuggestions() {
+        CompletionTermIndex index = createIndex(2);
+
+        List<String> shortPrefix = index.suggest("g");
+        List<String> longPrefix = index.suggest("gol");
+
+        Assert.assertEquals(Arrays.asList("gold", "granite"), shortPrefix);
+        Assert.assertEquals(Arrays.asList("gold", "golden"), longPrefix);
+    }
+}
@@ -14,7 +14,9 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpPost;
@@ -24,20 +26,35 @@ import org.auscope.portal.core.repositories.CSWRecordRepository;
 import org.auscope.portal.core.repositories.CSWSuggestionRepository;
 import org.auscope.portal.core.server.http.HttpServiceCaller;
 import org.auscope.portal.core.services.responses.csw.CSWRecord;
+import org.auscope.portal.core.services.responses.csw.CSWSuggestion;
 import org.auscope.portal.core.services.responses.es.CSWRecordSearchResponse;
+import org.auscope.portal.core.test.BasicThreadExecutor;
 import org.auscope.portal.core.test.PortalTestClass;
+import org.hamcrest.Description;
+import org.hamcrest.TypeSafeMatcher;
 import org.jmock.Expectations;
 import org.jmock.lib.action.CustomAction;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
 import org.springframework.data.elasticsearch.core.SearchScrollHits;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
 import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
 import org.springframework.data.elasticsearch.core.query.Query;
 
+import co.elastic.clients.elasticsearch._types.GeoShapeRelation;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Operator;
+
 public class TestElasticsearchService extends PortalTestClass {
 
     private CSWRecordRepository recordRepository;
@@ -46,6 +63,7 @@ public class TestElasticsearchService extends PortalTestClass {
     private ElasticsearchTemplate elasticsearchTemplate;
     private HttpServiceCaller httpServiceCaller;
     private ElasticsearchService elasticsearchService;
+    private BasicThreadExecutor bulkExecutor;
 
     @Before
     public void setUp() {
@@ -59,6 +77,8 @@ public class TestElasticsearchService extends PortalTestClass {
         elasticsearchService.setSuggestionRepository(suggestionRepository);
         elasticsearchService.setElasticsearchOperations(elasticsearchOperations);
         elasticsearchService.setElasticsearchTemplate(elasticsearchTemplate);
+        bulkExecutor = new BasicThreadExecutor();
+        elasticsearchService.setBulkExecutor(bulkExecutor);
         try {
         	elasticsearchService.setElasticsearchSuggestionUrl(new URL("http://localhost:9200/suggestion-index/_search"));
         } catch(MalformedURLException e) {
@@ -66,6 +86,11 @@ public class TestElasticsearchService extends PortalTestClass {
         }
     }
 
+    @After
+    public void tearDown() {
+        bulkExecutor.getExecutorService().shutdownNow();
+    }
+
     @Test
     public void testIndexCSWRecords() {
     	CSWRecord record1 = new CSWRecord();
@@ -75,12 +100,219 @@ public class TestElasticsearchService extends PortalTestClass {
     	CSWRecord record2 = new CSWRecord();
     	record2.setFileIdentifier("def456");
         List<CSWRecord> cswRecords = Arrays.asList(record1, record2);
+        IndexOperations indexOps = context.mock(IndexOperations.class);
         context.checking(new Expectations() {{
-            oneOf(recordRepository).saveAll(cswRecords);
+            oneOf(elasticsearchOperations).save(cswRecords, IndexCoordinates.of("test-index"));
+            allowing(elasticsearchOperations).indexOps(IndexCoordinates.of("test-index"));
+            will(returnValue(indexOps));
+            oneOf(indexOps).refresh();
         }});
         assertDoesNotThrow(() -> elasticsearchService.indexCSWRecords(cswRecords));
     }
 
+    private List<CSWRecord> createRecords(int count) {
+        List<CSWRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CSWRecord record = new CSWRecord("record-" + i);
+            record.setServiceName("Service " + i);
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Records every batch passed to ElasticsearchOperations.save or CSWRecordRepository.saveAll, returning the batch
+     */
+    private static CustomAction recordBatch(final List<String> savedIds, final List<String> savedIndexes) {
+        return new CustomAction("save batch") {
+            @Override
+            public Object invoke(org.jmock.api.Invocation invocation) throws Throwable {
+                @SuppressWarnings("unchecked")
+                Iterable<CSWRecord> batch = (Iterable<CSWRecord>) invocation.getParameter(0);
+                synchronized (savedIds) {
+                    for (CSWRecord record : batch) {
+                        savedIds.add(record.getFileIdentifier());
+                    }
+                    if (invocation.getParameterCount() > 1) {
+                        savedIndexes.add(((IndexCoordinates) invocation.getParameter(1)).getIndexName());
+                    }
+                }
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * Tests incremental indexing saves every record in concurrent batches and refreshes the index only once
+     */
+    @Test
+    public void testBulkUpdateCSWRecords() {
+        List<CSWRecord> cswRecords = createRecords(1000);
+        List<String> savedIds = new ArrayList<>();
+        List<String> savedIndexes = new ArrayList<>();
+        IndexOperations indexOps = context.mock(IndexOperations.class);
+        context.checking(new Expectations() {{
+            exactly(5).of(elasticsearchOperations).save(with(any(Iterable.class)), with(any(IndexCoordinates.class)));
+            will(recordBatch(savedIds, savedIndexes));
+            allowing(elasticsearchOperations).indexOps(IndexCoordinates.of("test-index"));
+            will(returnValue(indexOps));
+            oneOf(indexOps).refresh();
+        }});
+
+        double recordsPerSecond = elasticsearchService.bulkUpdateCSWRecords(cswRecords);
+
+        assertEquals(1000, savedIds.size());
+        assertEquals(1000, new HashSet<>(savedIds).size());
+        assertEquals(Collections.nCopies(5, "test-index"), savedIndexes);
+        assertTrue(recordsPerSecond > 0);
+    }
+
+    /**
+     * Tests updated records are saved in concurrent batches through the repository
+     */
+    @Test
+    public void testUpdateCSWRecords() {
+        List<CSWRecord> cswRecords = createRecords(450);
+        List<String> savedIds = new ArrayList<>();
+        context.checking(new Expectations() {{
+            exactly(3).of(recordRepository).saveAll(with(any(Iterable.class)));
+            will(recordBatch(savedIds, new ArrayList<String>()));
+        }});
+
+        elasticsearchService.updateCSWRecords(cswRecords);
+
+        assertEquals(450, new HashSet<>(savedIds).size());
+    }
+
+    /**
+     * Tests a full reindex loads a new index with refresh disabled, restores its settings, then swaps the alias
+     * over from the previous index and deletes it
+     */
+    @Test
+    public void testReindexCSWRecords() {
+        List<CSWRecord> cswRecords = createRecords(450);
+        List<String> savedIds = new ArrayList<>();
+        List<String> savedIndexes = new ArrayList<>();
+        List<String> updatedSettings = new ArrayList<>();
+        ElasticsearchService service = new ElasticsearchService(httpServiceCaller) {
+            @Override
+            protected void updateIndexSettings(String indexName, String refreshInterval, int replicas) {
+                updatedSettings.add(indexName + " " + refreshInterval + " " + replicas);
+            }
+        };
+        service.setElasticsearchOperations(elasticsearchOperations);
+        service.setBulkExecutor(bulkExecutor);
+        service.setAliasReindex(true);
+
+        IndexOperations versionedOps = context.mock(IndexOperations.class, "versionedOps");
+        IndexOperations aliasOps = context.mock(IndexOperations.class, "aliasOps");
+        IndexOperations previousOps = context.mock(IndexOperations.class, "previousOps");
+        IndexOperations mappingOps = context.mock(IndexOperations.class, "mappingOps");
+        AliasActions[] aliasActions = new AliasActions[1];
+        context.checking(new Expectations() {{
+            allowing(elasticsearchOperations).indexOps(with(new IndexNameMatcher("test-index-\\d{13}")));
+            will(returnValue(versionedOps));
+            allowing(elasticsearchOperations).indexOps(IndexCoordinates.of("test-index"));
+            will(returnValue(aliasOps));
+            allowing(elasticsearchOperations).indexOps(IndexCoordinates.of("test-index-1"));
+            will(returnValue(previousOps));
+            allowing(elasticsearchOperations).indexOps(CSWRecord.class);
+            will(returnValue(mappingOps));
+            allowing(mappingOps).createMapping();
+            will(returnValue(Document.create()));
+
+            oneOf(versionedOps).create(Map.of("index.refresh_interval", "-1", "index.number_of_replicas", 0));
+            will(returnValue(true));
+            exactly(2).of(versionedOps).putMapping(with(any(Document.class)));
+            will(returnValue(true));
+            exactly(3).of(elasticsearchOperations).save(with(any(Iterable.class)), with(any(IndexCoordinates.class)));
+            will(recordBatch(savedIds, savedIndexes));
+            oneOf(versionedOps).refresh();
+
+            oneOf(aliasOps).getAliases("test-index");
+            will(returnValue(Map.of("test-index-1", Collections.emptySet())));
+            oneOf(aliasOps).alias(with(any(AliasActions.class)));
+            will(new CustomAction("swap alias") {
+                @Override
+                public Object invoke(org.jmock.api.Invocation invocation) throws Throwable {
+                    aliasActions[0] = (AliasActions) invocation.getParameter(0);
+                    return true;
+                }
+            });
+            oneOf(previousOps).delete();
+            will(returnValue(true));
+            never(versionedOps).delete();
+        }});
+
+        double recordsPerSecond = service.reindexCSWRecords(cswRecords);
+
+        assertEquals(450, new HashSet<>(savedIds).size());
+        String versionedIndex = savedIndexes.get(0);
+        assertTrue(versionedIndex.matches("test-index-\\d{13}"));
+        assertEquals(Collections.nCopies(3, versionedIndex), savedIndexes);
+        assertEquals(Arrays.asList(versionedIndex + " 1s 1"), updatedSettings);
+
+        AliasAction[] actions = aliasActions[0].getActions();
+        assertEquals(2, actions.length);
+        assertTrue(actions[0] instanceof AliasAction.Remove);
+        assertArrayEquals(new String[] {"test-index-1"}, actions[0].getParameters().getIndices());
+        assertTrue(actions[1] instanceof AliasAction.Add);
+        assertArrayEquals(new String[] {versionedIndex}, actions[1].getParameters().getIndices());
+        assertArrayEquals(new String[] {"test-index"}, actions[1].getParameters().getAliases());
+        assertTrue(recordsPerSecond > 0);
+    }
+
+    /**
+     * Tests a failed reindex deletes the partially loaded index and leaves the alias alone
+     */
+    @Test
+    public void testReindexCSWRecordsFailure() {
+        List<CSWRecord> cswRecords = createRecords(10);
+        IndexOperations versionedOps = context.mock(IndexOperations.class, "versionedOps");
+        IndexOperations mappingOps = context.mock(IndexOperations.class, "mappingOps");
+        context.checking(new Expectations() {{
+            allowing(elasticsearchOperations).indexOps(with(new IndexNameMatcher("test-index-\\d{13}")));
+            will(returnValue(versionedOps));
+            allowing(elasticsearchOperations).indexOps(CSWRecord.class);
+            will(returnValue(mappingOps));
+            allowing(mappingOps).createMapping();
+            will(returnValue(Document.create()));
+            allowing(versionedOps).create(with(any(Map.class)));
+            will(returnValue(true));
+            allowing(versionedOps).putMapping(with(any(Document.class)));
+            will(returnValue(true));
+
+            oneOf(elasticsearchOperations).save(with(any(Iterable.class)), with(any(IndexCoordinates.class)));
+            will(throwException(new DataAccessResourceFailureException("Bulk request failed")));
+            oneOf(versionedOps).delete();
+            will(returnValue(true));
+            never(elasticsearchOperations).indexOps(IndexCoordinates.of("test-index"));
+        }});
+
+        assertThrows(DataAccessResourceFailureException.class, () -> elasticsearchService.reindexCSWRecords(cswRecords));
+    }
+
+    /**
+     * Matches IndexCoordinates whose (first) index name matches a regular expression
+     */
+    private static class IndexNameMatcher extends TypeSafeMatcher<IndexCoordinates> {
+        private final String regex;
+
+        public IndexNameMatcher(String regex) {
+            this.regex = regex;
+        }
+
+        @Override
+        protected boolean matchesSafely(IndexCoordinates item) {
+            return item.getIndexName().matches(regex);
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendText("IndexCoordinates matching " + regex);
+        }
+    }
+
     @Test
     public void testUpdateCSWRecord() {
         CSWRecord cswRecord = new CSWRecord();
@@ -159,6 +391,119 @@ public class TestElasticsearchService extends PortalTestClass {
         assertNotNull(response);
     }
     
+    /**
+     * Tests the text query is scored while the spatial and OGC service restrictions are applied as filters
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testSearchCSWRecordsFilterContext() {
+        SearchHits<CSWRecord> searchHits = context.mock(SearchHits.class);
+        Query[] queries = new Query[1];
+        context.checking(new Expectations() {{
+            oneOf(elasticsearchOperations).search(with(any(Query.class)), with(CSWRecord.class), with(any(IndexCoordinates.class)));
+            will(new CustomAction("search") {
+                @Override
+                public Object invoke(org.jmock.api.Invocation invocation) throws Throwable {
+                    queries[0] = (Query) invocation.getParameter(0);
+                    return searchHits;
+                }
+            });
+            allowing(searchHits).iterator();
+            will(returnValue(Collections.emptyIterator()));
+            allowing(searchHits).getTotalHits();
+            will(returnValue(0L));
+        }});
+
+        elasticsearchService.searchCSWRecords("gold deposits", Arrays.asList("serviceName"), 0, 10,
+                Arrays.asList("OGC:WMS", "OGC:WFS"), "within", 110.0, 155.0, -44.0, -9.0, null);
+
+        assertInstanceOf(NativeQuery.class, queries[0]);
+        BoolQuery query = ((NativeQuery) queries[0]).getQuery().bool();
+        assertEquals(1, query.must().size());
+        assertEquals(2, query.must().get(0).bool().should().size());
+        assertEquals(2, query.filter().size());
+        assertEquals(GeoShapeRelation.Within, query.filter().get(0).geoShape().shape().relation());
+        BoolQuery servicesQuery = query.filter().get(1).bool();
+        assertEquals(2, servicesQuery.should().size());
+        assertEquals("*OGC\\:WMS*", servicesQuery.should().get(0).queryString().query());
+    }
+
+    /**
+     * Tests the terms of a text query must all match, rather than query_string's default of any term
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testSearchCSWRecordsDefaultOperator() {
+        SearchHits<CSWRecord> searchHits = context.mock(SearchHits.class);
+        Query[] queries = new Query[1];
+        context.checking(new Expectations() {{
+            oneOf(elasticsearchOperations).search(with(any(Query.class)), with(CSWRecord.class), with(any(IndexCoordinates.class)));
+            will(new CustomAction("search") {
+                @Override
+                public Object invoke(org.jmock.api.Invocation invocation) throws Throwable {
+                    queries[0] = (Query) invocation.getParameter(0);
+                    return searchHits;
+                }
+            });
+            allowing(searchHits).iterator();
+            will(returnValue(Collections.emptyIterator()));
+            allowing(searchHits).getTotalHits();
+            will(returnValue(0L));
+        }});
+
+        elasticsearchService.searchCSWRecords("gold deposits", Arrays.asList("serviceName", "fileIdentifier"), 0, 10,
+                null, null, null, null, null, null, null);
+
+        BoolQuery textQuery = ((NativeQuery) queries[0]).getQuery().bool().must().get(0).bool();
+        assertEquals(4, textQuery.should().size());
+        for (co.elastic.clients.elasticsearch._types.query_dsl.Query fieldQuery : textQuery.should()) {
+            assertEquals(Operator.And, fieldQuery.queryString().defaultOperator());
+        }
+    }
+
+    /**
+     * Tests equivalent searches are served from the cache until the CSWRecord index is written to
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testSearchCSWRecordsCache() {
+        SearchHits<CSWRecord> searchHits = context.mock(SearchHits.class);
+        SearchHit<CSWRecord> searchHit = context.mock(SearchHit.class);
+        CSWRecord cswRecord = new CSWRecord("gold-record");
+        cswRecord.setServiceName("Gold Service");
+        context.checking(new Expectations() {{
+            exactly(2).of(elasticsearchOperations).search(with(any(Query.class)), with(CSWRecord.class), with(any(IndexCoordinates.class)));
+            will(returnValue(searchHits));
+            allowing(searchHits).iterator();
+            will(returnIterator(Arrays.asList(searchHit)));
+            allowing(searchHits).getTotalHits();
+            will(returnValue(1L));
+            allowing(searchHit).getContent();
+            will(returnValue(cswRecord));
+            oneOf(recordRepository).saveAll(with(any(Iterable.class)));
+        }});
+
+        CSWRecordSearchResponse first = elasticsearchService.searchCSWRecords("gold", Arrays.asList("serviceName", "fileIdentifier"),
+                null, null, Arrays.asList("OGC:WMS", "OGC:WFS"), null, null, null, null, null, null);
+        // Modifying a response mustn't affect the responses later served from the cache
+        first.getCSWRecords().get(0).setServiceName("Modified");
+        first.getCSWRecords().add(new CSWRecord("extra-record"));
+
+        CSWRecordSearchResponse second = elasticsearchService.searchCSWRecords("gold", Arrays.asList("fileIdentifier", "serviceName"),
+                0, 200, Arrays.asList("OGC:WFS", "OGC:WMS"), null, null, null, null, null, null);
+        assertEquals(1L, second.getTotalCSWRecordHits());
+        assertEquals(1, second.getCSWRecords().size());
+        assertEquals("gold-record", second.getCSWRecords().get(0).getFileIdentifier());
+        assertEquals("Gold Service", second.getCSWRecords().get(0).getServiceName());
+        assertNotSame(first.getCSWRecords().get(0), second.getCSWRecords().get(0));
+
+        elasticsearchService.updateCSWRecords(Arrays.asList(new CSWRecord("abc123")));
+
+        CSWRecordSearchResponse third = elasticsearchService.searchCSWRecords("gold", Arrays.asList("serviceName", "fileIdentifier"),
+                null, null, Arrays.asList("OGC:WMS", "OGC:WFS"), null, null, null, null, null, null);
+        assertNotSame(first, third);
+    }
+
     @Test
     public void testCreateSuggestTermMethod() throws URISyntaxException {
         String prefix = "test";
@@ -201,6 +546,298 @@ public class TestElasticsearchService extends PortalTestClass {
         assertEquals(Arrays.asList("test2", "test1"), result);
     }
     
+    /**
+     * Sets up the suggestion index to contain the given term and weight pairs
+     */
+    @SuppressWarnings("unchecked")
+    private void expectIndexedSuggestions(Object... termWeights) {
+        final SearchScrollHits<CSWSuggestion> page = context.mock(SearchScrollHits.class, "suggestionPage");
+        final SearchScrollHits<CSWSuggestion> lastPage = context.mock(SearchScrollHits.class, "lastSuggestionPage");
+        final List<SearchHit<CSWSuggestion>> hits = new ArrayList<>();
+        for (int i = 0; i < termWeights.length; i += 2) {
+            final SearchHit<CSWSuggestion> hit = context.mock(SearchHit.class, "suggestionHit" + i);
+            final CSWSuggestion suggestion = new CSWSuggestion((String) termWeights[i], (Integer) termWeights[i + 1]);
+            context.checking(new Expectations() {{
+                allowing(hit).getContent();
+                will(returnValue(suggestion));
+            }});
+            hits.add(hit);
+        }
+        final IndexCoordinates index = IndexCoordinates.of("test-suggestion-index");
+
+        context.checking(new Expectations() {{
+            oneOf(elasticsearchTemplate).searchScrollStart(with(any(Long.class)), with(any(Query.class)), with(equal(CSWSuggestion.class)), with(equal(index)));
+            will(returnValue(page));
+            allowing(page).getScrollId();
+            will(returnValue("suggestions"));
+            allowing(page).hasSearchHits();
+            will(returnValue(true));
+            allowing(page).getSearchHits();
+            will(returnValue(hits));
+            oneOf(elasticsearchTemplate).searchScrollContinue(with(equal("suggestions")), with(any(Long.class)), with(equal(CSWSuggestion.class)), with(equal(index)));
+            will(returnValue(lastPage));
+            allowing(lastPage).getScrollId();
+            will(returnValue("suggestions"));
+            allowing(lastPage).hasSearchHits();
+            will(returnValue(false));
+            oneOf(elasticsearchTemplate).searchScrollClear("suggestions");
+        }});
+    }
+
+    @Test
+    public void testSuggestTermsFromCompletionIndex() {
+        CSWRecord record1 = new CSWRecord();
+        record1.setServiceName("Gold deposits");
+        record1.setDataIdentificationAbstract("Gold and granite in the goldfields");
+        CSWRecord record2 = new CSWRecord();
+        record2.setServiceName("Granite gold");
+        record2.setDataIdentificationAbstract("Gold");
+
+        expectIndexedSuggestions();
+        context.checking(new Expectations() {{
+            allowing(suggestionRepository).saveAll(with(any(Iterable.class)));
+            never(httpServiceCaller);
+        }});
+
+        elasticsearchService.indexCompletionTerms(Arrays.asList(record1, record2));
+
+        assertEquals(Arrays.asList("gold", "goldfields"), elasticsearchService.suggestTerms("gol"));
+        assertEquals(Arrays.asList("granite"), elasticsearchService.suggestTerms("GR"));
+        assertEquals(Collections.emptyList(), elasticsearchService.suggestTerms("xyz"));
+    }
+
+    /**
+     * Tests suggestions are served from memory straight after startup, before any harvest has indexed completion terms
+     */
+    @Test
+    public void testSuggestTermsAfterRestore() {
+        elasticsearchService.setSuggestionFallback(false);
+        expectIndexedSuggestions("gold", 3, "goldfields", 1, "granite", 2);
+        context.checking(new Expectations() {{
+            never(httpServiceCaller);
+        }});
+
+        elasticsearchService.restoreCompletionTerms();
+        // The suggestion index is only read once
+        elasticsearchService.restoreCompletionTerms();
+
+        assertEquals(Arrays.asList("gold", "goldfields"), elasticsearchService.suggestTerms("gol"));
+        assertEquals(Arrays.asList("granite"), elasticsearchService.suggestTerms("GR"));
+    }
+
+    @Test
+    public void testSuggestTermsWithoutFallback() {
+        elasticsearchService.setSuggestionFallback(false);
+        context.checking(new Expectations() {{
+            never(httpServiceCaller);
+        }});
+
+        assertEquals(Collections.emptyList(), elasticsearchService.suggestTerms("test"));
+    }
+
+    private CSWRecord createSuggestionRecord(int i, String serviceId, String extra) {
+        CSWRecord record = new CSWRecord("record-" + i);
+        record.setServiceId(serviceId);
+        record.setServiceName("Geological survey map sheet" + i);
+        record.setDataIdentificationAbstract("Regional mapping of granite and greenstone with unique term" + i + " " + extra);
+        record.setDescriptiveKeywords(new String[] {"geology", "keyword" + (i % 50)});
+        return record;
+    }
+
+    /**
+     * Compares the suggestion writes for a full index with a harvest changing 1% of the records
+     */
+    @Test
+    public void testIndexCompletionTermsIncremental() {
+        final int[] written = new int[1];
+        final List<String> deleted = new ArrayList<>();
+        expectIndexedSuggestions();
+        context.checking(new Expectations() {{
+            allowing(suggestionRepository).saveAll(with(any(Iterable.class)));
+            will(new CustomAction("count saved suggestions") {
+                @Override
+                public Object invoke(org.jmock.api.Invocation invocation) throws Throwable {
+                    written[0] += ((List<?>) invocation.getParameter(0)).size();
+                    return invocation.getParameter(0);
+                }
+            });
+            allowing(suggestionRepository).deleteAllById(with(any(Iterable.class)));
+            will(new CustomAction("count deleted suggestions") {
+                @Override
+                public Object invoke(org.jmock.api.Invocation invocation) throws Throwable {
+                    for (Object id : (Iterable<?>) invocation.getParameter(0)) {
+                        deleted.add(id.toString());
+                    }
+                    return null;
+                }
+            });
+        }});
+
+        List<CSWRecord> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            records.add(createSuggestionRecord(i, i < 500 ? "service-a" : "service-b", ""));
+        }
+        elasticsearchService.indexCompletionTerms(records);
+        int fullWrites = written[0];
+        assertEquals(elasticsearchService.getCompletionTermIndex().size(), fullWrites);
+
+        // Change 1% of the records, the same harvest again should write nothing
+        written[0] = 0;
+        elasticsearchService.indexCompletionTerms(records);
+        assertEquals(0, written[0]);
+
+        List<CSWRecord> changedRecords = new ArrayList<>(records);
+        for (int i = 0; i < 10; i++) {
+            changedRecords.set(i * 100, createSuggestionRecord(i * 100, i * 100 < 500 ? "service-a" : "service-b", "changed"));
+        }
+        elasticsearchService.indexCompletionTerms(changedRecords);
+        int incrementalWrites = written[0];
+
+        // Every other term count is unaffected, "changed" appears in the 10 changed records
+        assertEquals(1, incrementalWrites);
+        assertEquals(Arrays.asList("changed"), elasticsearchService.suggestTerms("chang"));
+        assertTrue(deleted.isEmpty());
+    }
+
+    /**
+     * Tests records missing from a harvested service are removed, while services not in the harvest are untouched
+     */
+    @Test
+    public void testIndexCompletionTermsRemovedRecords() {
+        final List<String> deleted = new ArrayList<>();
+        expectIndexedSuggestions();
+        context.checking(new Expectations() {{
+            allowing(suggestionRepository).saveAll(with(any(Iterable.class)));
+            allowing(suggestionRepository).deleteAllById(with(any(Iterable.class)));
+            will(new CustomAction("record deleted suggestions") {
+                @Override
+                public Object invoke(org.jmock.api.Invocation invocation) throws Throwable {
+                    for (Object id : (Iterable<?>) invocation.getParameter(0)) {
+                        deleted.add(id.toString());
+                    }
+                    return null;
+                }
+            });
+        }});
+
+        elasticsearchService.indexCompletionTerms(Arrays.asList(
+                createSuggestionRecord(1, "service-a", "alpha"),
+                createSuggestionRecord(2, "service-a", ""),
+                createSuggestionRecord(3, "service-b", "bravo")));
+
+        // Re-harvest service-a without record 1
+        elasticsearchService.indexCompletionTerms(Arrays.asList(createSuggestionRecord(2, "service-a", "")));
+
+        Collections.sort(deleted);
+        assertEquals(Arrays.asList("alpha", "keyword1", "sheet1", "term1"), deleted);
+        assertEquals(Arrays.asList("bravo"), elasticsearchService.suggestTerms("bra"));
+        assertEquals(Collections.emptyList(), elasticsearchService.suggestTerms("alp"));
+    }
+
+    /**
+     * Records the IDs of suggestions saved to and deleted from the suggestion repository
+     */
+    private void recordSuggestionWrites(final List<String> saved, final List<String> deleted) {
+        context.checking(new Expectations() {{
+            allowing(suggestionRepository).saveAll(with(any(Iterable.class)));
+            will(new CustomAction("record saved suggestions") {
+                @Override
+                public Object invoke(org.jmock.api.Invocation invocation) throws Throwable {
+                    for (Object suggestion : (Iterable<?>) invocation.getParameter(0)) {
+                        saved.add(((CSWSuggestion) suggestion).getId());
+                    }
+                    return invocation.getParameter(0);
+                }
+            });
+            allowing(suggestionRepository).deleteAllById(with(any(Iterable.class)));
+            will(new CustomAction("record deleted suggestions") {
+                @Override
+                public Object invoke(org.jmock.api.Invocation invocation) throws Throwable {
+                    for (Object id : (Iterable<?>) invocation.getParameter(0)) {
+                        deleted.add(id.toString());
+                    }
+                    return null;
+                }
+            });
+        }});
+    }
+
+    /**
+     * Tests suggestions indexed before a restart are only rewritten if their weight has changed, and are removed by
+     * a full harvest if no record contains them any more
+     */
+    @Test
+    public void testIndexCompletionTermsAfterRestart() {
+        final List<String> saved = new ArrayList<>();
+        final List<String> deleted = new ArrayList<>();
+        expectIndexedSuggestions("alpha", 1, "bravo", 5, "stale", 3);
+        recordSuggestionWrites(saved, deleted);
+
+        CSWRecord record = new CSWRecord("record-1");
+        record.setServiceId("service-a");
+        record.setServiceName("alpha bravo");
+        elasticsearchService.indexCompletionTerms(Arrays.asList(record), true);
+
+        assertEquals(Arrays.asList("bravo"), saved);
+        assertEquals(Arrays.asList("stale"), deleted);
+        assertEquals(Collections.emptyList(), elasticsearchService.suggestTerms("sta"));
+        assertEquals(Arrays.asList("alpha"), elasticsearchService.suggestTerms("alp"));
+    }
+
+    /**
+     * Tests a partial harvest after a restart keeps the suggestions of the services it doesn't include
+     */
+    @Test
+    public void testIndexCompletionTermsPartialAfterRestart() {
+        final List<String> saved = new ArrayList<>();
+        final List<String> deleted = new ArrayList<>();
+        expectIndexedSuggestions("alpha", 1, "other", 3);
+        recordSuggestionWrites(saved, deleted);
+
+        CSWRecord record = new CSWRecord("record-1");
+        record.setServiceId("service-a");
+        record.setServiceName("alpha bravo");
+        elasticsearchService.indexCompletionTerms(Arrays.asList(record));
+
+        assertEquals(Arrays.asList("bravo"), saved);
+        assertTrue(deleted.isEmpty());
+        assertEquals(Arrays.asList("other"), elasticsearchService.suggestTerms("oth"));
+    }
+
+    /**
+     * Tests a full harvest removes the terms of a service that is no longer harvested
+     */
+    @Test
+    public void testIndexCompletionTermsDroppedService() {
+        final List<String> saved = new ArrayList<>();
+        final List<String> deleted = new ArrayList<>();
+        expectIndexedSuggestions();
+        recordSuggestionWrites(saved, deleted);
+
+        CSWRecord recordA = new CSWRecord("record-1");
+        recordA.setServiceId("service-a");
+        recordA.setServiceName("alpha shared");
+        CSWRecord recordB = new CSWRecord("record-2");
+        recordB.setServiceId("service-b");
+        recordB.setServiceName("bravo shared");
+        elasticsearchService.indexCompletionTerms(Arrays.asList(recordA, recordB), true);
+
+        saved.clear();
+        elasticsearchService.indexCompletionTerms(Arrays.asList(recordB), true);
+
+        assertEquals(Arrays.asList("alpha"), deleted);
+        assertEquals(Arrays.asList("shared"), saved);
+        assertEquals(Collections.emptyList(), elasticsearchService.suggestTerms("alp"));
+        assertEquals(Arrays.asList("shared"), elasticsearchService.suggestTerms("sha"));
+
+        // Unchanged harvests write nothing
+        saved.clear();
+        deleted.clear();
+        elasticsearchService.indexCompletionTerms(Arrays.asList(recordB), true);
+        assertTrue(saved.isEmpty());
+        assertTrue(deleted.isEmpty());
+    }
+
     /**
      * Convenience method to return the content of a StringEntity 
      * @param stringEntity the StringEntity
@@ -0,0 +1,127 @@
+package org.auscope.portal.core.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.auscope.portal.core.services.methodmakers.GoogleCloudMonitoringMethodMaker;
+import org.auscope.portal.core.services.responses.stackdriver.ServiceStatusResponse;
+import org.auscope.portal.core.test.PortalTestClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the caching behaviour of GoogleCloudMonitoringCachedService
+ */
+public class TestGoogleCloudMonitoringCachedService extends PortalTestClass {
+
+    /**
+     * Returns a new (distinct) status map for every remote request, or throws if error is set
+     */
+    private class TestService extends GoogleCloudMonitoringCachedService {
+        int requestCount = 0;
+        PortalServiceException error = null;
+
+        TestService() {
+            super(new GoogleCloudMonitoringMethodMaker());
+        }
+
+        @Override
+        public Map<String, List<ServiceStatusResponse>> getStatuses(List<String> checkIds) throws PortalServiceException {
+            requestCount++;
+            if (error != null) {
+                throw error;
+            }
+            Map<String, List<ServiceStatusResponse>> responses = new HashMap<String, List<ServiceStatusResponse>>();
+            responses.put("host" + requestCount, new ArrayList<ServiceStatusResponse>());
+            return responses;
+        }
+    }
+
+    private TestService service;
+    /** Background updates, run when the test chooses */
+    private List<Runnable> backgroundTasks;
+
+    @Before
+    public void setup() {
+        backgroundTasks = new ArrayList<Runnable>();
+        service = new TestService();
+        service.setExecutor(backgroundTasks::add);
+        service.setRefreshJitter(0);
+
+        HashMap<String, List<String>> servicesMap = new HashMap<String, List<String>>();
+        servicesMap.put("EarthResourcesLayers", Arrays.asList("wfsgetcaps"));
+        servicesMap.put("TenementsLayers", Arrays.asList("wfsgetfeaturetenements"));
+        service.setServicesMap(servicesMap);
+    }
+
+    /**
+     * Tests fresh entries are returned without a remote request and that service groups are cached separately
+     */
+    @Test
+    public void testCachedStatuses() throws Exception {
+        Map<String, List<ServiceStatusResponse>> first = service.getStatuses("EarthResourcesLayers");
+        Assert.assertSame(first, service.getStatuses("EarthResourcesLayers"));
+        Assert.assertEquals(1, service.requestCount);
+
+        Assert.assertNotSame(first, service.getStatuses("TenementsLayers"));
+        Assert.assertEquals(2, service.requestCount);
+        Assert.assertTrue(backgroundTasks.isEmpty());
+    }
+
+    /**
+     * Tests stale entries are returned immediately while a single background update replaces them
+     */
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        service.setTtlSeconds(0);
+        Map<String, List<ServiceStatusResponse>> first = service.getStatuses("EarthResourcesLayers");
+
+        Assert.assertSame(first, service.getStatuses("EarthResourcesLayers"));
+        Assert.assertSame(first, service.getStatuses("EarthResourcesLayers"));
+        Assert.assertEquals(1, service.requestCount);
+        Assert.assertEquals(1, backgroundTasks.size());
+
+        backgroundTasks.remove(0).run();
+        Assert.assertEquals(2, service.requestCount);
+
+        Map<String, List<ServiceStatusResponse>> second = service.getStatuses("EarthResourcesLayers");
+        Assert.assertNotSame(first, second);
+        Assert.assertTrue(second.containsKey("host2"));
+    }
+
+    /**
+     * Tests entries that have been stale for longer than the maximum staleness are updated before being returned
+     */
+    @Test
+    public void testMaxStaleness() throws Exception {
+        service.setTtlSeconds(0);
+        service.setMaxStalenessSeconds(0);
+        Map<String, List<ServiceStatusResponse>> first = service.getStatuses("EarthResourcesLayers");
+        Map<String, List<ServiceStatusResponse>> second = service.getStatuses("EarthResourcesLayers");
+
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(2, service.requestCount);
+        Assert.assertTrue(backgroundTasks.isEmpty());
+    }
+
+    /**
+     * Tests errors are cached like statuses
+     */
+    @Test
+    public void testErrorCached() throws Exception {
+        service.error = new PortalServiceException("Unable to connect");
+        for (int i = 0; i < 2; i++) {
+            try {
+                service.getStatuses("EarthResourcesLayers");
+                Assert.fail("Expected PortalServiceException");
+            } catch (PortalServiceException ex) {
+                Assert.assertSame(service.error, ex);
+            }
+        }
+        Assert.assertEquals(1, service.requestCount);
+    }
+}
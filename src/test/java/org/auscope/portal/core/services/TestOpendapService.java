@@ -26,6 +26,8 @@ import ucar.nc2.dataset.NetcdfDataset;
 
 import com.google.common.collect.ImmutableList;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 public class TestOpendapService extends PortalTestClass {
     private HttpServiceCaller mockServiceCaller = context.mock(HttpServiceCaller.class);
     private OPeNDAPGetDataMethodMaker mockMethodMaker = context.mock(OPeNDAPGetDataMethodMaker.class);
@@ -38,6 +40,8 @@ public class TestOpendapService extends PortalTestClass {
     private class TestableOpendapService extends OpendapService {
         // NetcdfDataset dataset;
 
+        int fetchCount = 0;
+
         public TestableOpendapService(HttpServiceCaller serviceCaller,
                 OPeNDAPGetDataMethodMaker getDataMethodMaker,
                 NetcdfDataset dataset) {
@@ -45,8 +49,15 @@ public class TestOpendapService extends PortalTestClass {
             // this.dataset = dataset;
         }
 
+        public TestableOpendapService(HttpServiceCaller serviceCaller,
+                OPeNDAPGetDataMethodMaker getDataMethodMaker,
+                int maxCachedDatasets, long datasetTtlMs) {
+            super(serviceCaller, getDataMethodMaker, maxCachedDatasets, datasetTtlMs);
+        }
+
         @Override
         protected NetcdfDataset fetchDataset(String serviceUrl) {
+            fetchCount++;
             return mockDataset;
         }
     }
@@ -59,6 +70,37 @@ public class TestOpendapService extends PortalTestClass {
         service = new TestableOpendapService(mockServiceCaller, mockMethodMaker, mockDataset);
     }
 
+    /**
+     * Sets up mockDataset to contain a single 1 dimensional variable called name
+     */
+    private void expectAxisVariable(final String name) throws IOException, InvalidRangeException {
+        final Variable mockVariable = context.mock(Variable.class, name + "Variable");
+        final Dimension mockDimension = context.mock(Dimension.class, name + "Dimension");
+        final Array mockArray = context.mock(Array.class, name + "Array");
+
+        context.checking(new Expectations() {
+            {
+                oneOf(mockDataset).getVariables();
+                will(returnValue(ImmutableList.of(mockVariable)));
+
+                allowing(mockVariable).getName();
+                will(returnValue(name));
+                allowing(mockVariable).getDimensions();
+                will(returnValue(ImmutableList.of(mockDimension)));
+                allowing(mockVariable).getDataType();
+                will(returnValue(DataType.DOUBLE));
+                allowing(mockVariable).getUnitsString();
+                will(returnValue("ms/s"));
+                allowing(mockVariable).read(with(any(int[].class)), with(any(int[].class)));
+                will(returnValue(mockArray));
+                allowing(mockDimension).getLength();
+                will(returnValue(5));
+                allowing(mockArray).getDouble(0);
+                will(returnValue(1.0));
+            }
+        });
+    }
+
     /**
      * Tests simple axis parsing
      * @throws PortalServiceException 
@@ -137,12 +179,14 @@ public class TestOpendapService extends PortalTestClass {
     }
 
     @Test
-    public void testGetData() throws IOException, PortalServiceException {
+    public void testGetData() throws IOException, PortalServiceException, InvalidRangeException {
         final String serviceUrl = "http://example.org/opendap";
         final AbstractViewVariable[] constraints = new AbstractViewVariable[] {new SimpleAxis("foo", "DOUBLE", "ms/s",
                 null, new SimpleBounds(1.1, 1.3))};
         final OPeNDAPFormat format = OPeNDAPFormat.ASCII;
 
+        expectAxisVariable("foo");
+
         final HttpRequestBase mockMethod = context.mock(HttpRequestBase.class);
 
         try (final HttpClientInputStream mockResponse = context.mock(HttpClientInputStream.class)) {
@@ -164,12 +208,14 @@ public class TestOpendapService extends PortalTestClass {
     }
 
     @Test(expected = PortalServiceException.class)
-    public void testGetDataErrorRequest() throws IOException, PortalServiceException {
+    public void testGetDataErrorRequest() throws IOException, PortalServiceException, InvalidRangeException {
         final String serviceUrl = "http://example.org/opendap";
         final AbstractViewVariable[] constraints = new AbstractViewVariable[] {new SimpleAxis("foo", "DOUBLE", "ms/s",
                 null, new SimpleBounds(1.1, 1.3))};
         final OPeNDAPFormat format = OPeNDAPFormat.ASCII;
 
+        expectAxisVariable("foo");
+
         final HttpRequestBase mockMethod = context.mock(HttpRequestBase.class);
 
         context.checking(new Expectations() {
@@ -183,4 +229,115 @@ public class TestOpendapService extends PortalTestClass {
 
         service.getData(serviceUrl, format, constraints);
     }
+
+    /**
+     * Tests constraints are validated against the variables parsed from the dataset before any request is made
+     */
+    @Test
+    public void testGetDataUnknownVariable() throws IOException, InvalidRangeException {
+        final String serviceUrl = "http://example.org/opendap";
+        final AbstractViewVariable[] constraints = new AbstractViewVariable[] {new SimpleAxis("bar", "DOUBLE", "ms/s",
+                null, new SimpleBounds(1.1, 1.3))};
+
+        //No request is made for an unknown variable (the mock method maker and service caller expect no calls)
+        expectAxisVariable("foo");
+
+        try {
+            service.getData(serviceUrl, OPeNDAPFormat.ASCII, constraints);
+            Assert.fail("Exception should have been thrown");
+        } catch (PortalServiceException ex) {
+            Assert.assertTrue(ex.getMessage().contains("bar"));
+        }
+        try {
+            service.getQueryDetails(serviceUrl, OPeNDAPFormat.ASCII, constraints);
+            Assert.fail("Exception should have been thrown");
+        } catch (PortalServiceException ex) {
+            Assert.assertTrue(ex.getMessage().contains("bar"));
+        }
+    }
+
+    /**
+     * Tests repeated requests against the same endpoint reuse the opened dataset and its parsed variables
+     */
+    @Test
+    public void testGetVariablesCached() throws PortalServiceException {
+        final String serviceUrl = "http://example.org/opendap";
+        final TestableOpendapService cachingService = new TestableOpendapService(mockServiceCaller, mockMethodMaker, 10, 60000);
+        final HttpRequestBase mockMethod = context.mock(HttpRequestBase.class);
+
+        context.checking(new Expectations() {
+            {
+                //Parsed once for both getVariables calls
+                oneOf(mockDataset).getVariables();
+                will(returnValue(ImmutableList.of()));
+
+                oneOf(mockMethodMaker).getMethod(serviceUrl, OPeNDAPFormat.ASCII, mockDataset, null);
+                will(returnValue(mockMethod));
+                allowing(mockMethod).getURI();
+                will(returnValue(java.net.URI.create(serviceUrl + ".ascii")));
+
+                never(mockDataset).close();
+            }
+        });
+
+        Assert.assertEquals(0, cachingService.getVariables(serviceUrl, null).length);
+        Assert.assertEquals(0, cachingService.getVariables(serviceUrl, null).length);
+        Assert.assertNotNull(cachingService.getQueryDetails(serviceUrl, OPeNDAPFormat.ASCII, null));
+
+        Assert.assertEquals(1, cachingService.fetchCount);
+        Assert.assertEquals(2, cachingService.getDatasetCacheHits());
+        Assert.assertEquals(1, cachingService.getDatasetCacheMisses());
+        Assert.assertEquals(2.0 / 3.0, cachingService.getDatasetCacheHitRatio(), 0.001);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cachingService.bindTo(registry);
+        Assert.assertEquals(2, registry.get("portal.opendap.dataset.cache.hits").gauge().value(), 0);
+        Assert.assertEquals(1, registry.get("portal.opendap.dataset.cache.misses").gauge().value(), 0);
+    }
+
+    /**
+     * Tests expired and evicted datasets are closed and re-opened
+     */
+    @Test
+    public void testExpiredDatasetClosed() throws PortalServiceException, IOException {
+        final String serviceUrl = "http://example.org/opendap";
+        final TestableOpendapService expiringService = new TestableOpendapService(mockServiceCaller, mockMethodMaker, 10, -1);
+
+        context.checking(new Expectations() {
+            {
+                exactly(2).of(mockDataset).getVariables();
+                will(returnValue(ImmutableList.of()));
+
+                //The first dataset is closed when the second replaces it, the second when the service is closed
+                exactly(2).of(mockDataset).close();
+            }
+        });
+
+        expiringService.getVariables(serviceUrl, null);
+        expiringService.getVariables(serviceUrl, null);
+        expiringService.close();
+
+        Assert.assertEquals(2, expiringService.fetchCount);
+        Assert.assertEquals(0, expiringService.getDatasetCacheHits());
+    }
+
+    /**
+     * Tests datasets are closed after use when caching is disabled
+     */
+    @Test
+    public void testUncachedDatasetClosed() throws PortalServiceException, IOException {
+        final String serviceUrl = "http://example.org/opendap";
+        final TestableOpendapService uncachedService = new TestableOpendapService(mockServiceCaller, mockMethodMaker, 0, 60000);
+
+        context.checking(new Expectations() {
+            {
+                oneOf(mockDataset).getVariables();
+                will(returnValue(ImmutableList.of()));
+                oneOf(mockDataset).close();
+            }
+        });
+
+        uncachedService.getVariables(serviceUrl, null);
+        Assert.assertEquals(1, uncachedService.getDatasetCacheMisses());
+    }
 }
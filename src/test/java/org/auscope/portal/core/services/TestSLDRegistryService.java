@@ -0,0 +1,71 @@
+package org.auscope.portal.core.services;
+
+import org.auscope.portal.core.test.PortalTestClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for SLDRegistryService
+ */
+public class TestSLDRegistryService extends PortalTestClass {
+
+    /**
+     * Tests SLDs are stored under their content hash
+     */
+    @Test
+    public void testRegister() {
+        SLDRegistryService registry = new SLDRegistryService("http://portal.example/api/sld", 10, false);
+
+        String hash = registry.register("<sld>1</sld>");
+        Assert.assertEquals(hash, registry.register("<sld>1</sld>"));
+        Assert.assertNotEquals(hash, registry.register("<sld>2</sld>"));
+        Assert.assertEquals("<sld>1</sld>", registry.getSld(hash));
+        Assert.assertEquals("http://portal.example/api/sld/" + hash, registry.getSldUrl(hash));
+        Assert.assertNull(registry.getSld("unknown"));
+    }
+
+    /**
+     * Tests SLDs can be looked up by the key of the inputs that generated them
+     */
+    @Test
+    public void testRegisterByKey() {
+        SLDRegistryService registry = new SLDRegistryService("http://portal.example/api/sld/", 10, false);
+
+        Assert.assertNull(registry.getHashByKey("key"));
+        String hash = registry.register("key", "<sld>1</sld>");
+        Assert.assertEquals(hash, registry.getHashByKey("key"));
+    }
+
+    /**
+     * Tests SLDs are only removed once they haven't been used for the TTL, even when the registry is over maxEntries
+     */
+    @Test
+    public void testExpiry() throws InterruptedException {
+        SLDRegistryService registry = new SLDRegistryService("http://portal.example/api/sld/", 2, 200, false);
+
+        String hash1 = registry.register("key1", "<sld>1</sld>");
+        String hash2 = registry.register("<sld>2</sld>");
+        String hash3 = registry.register("<sld>3</sld>");
+
+        // Over maxEntries but nothing has expired yet
+        Assert.assertNotNull(registry.getSld(hash1));
+        Assert.assertNotNull(registry.getSld(hash2));
+        Assert.assertNotNull(registry.getSld(hash3));
+
+        // Accessing an SLD refreshes its TTL
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(100);
+            Assert.assertNotNull(registry.getSld(hash1));
+        }
+        Assert.assertEquals(hash1, registry.getHashByKey("key1"));
+        Assert.assertNull(registry.getSld(hash2));
+
+        String hash4 = registry.register("<sld>4</sld>");
+        Assert.assertNull(registry.getSld(hash3));
+        Assert.assertNotNull(registry.getSld(hash4));
+
+        Thread.sleep(250);
+        Assert.assertNull(registry.getHashByKey("key1"));
+        Assert.assertNull(registry.getSld(hash1));
+    }
+}
@@ -1,11 +1,13 @@
 package org.auscope.portal.core.services;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.jena.rdf.model.Model;
@@ -18,7 +20,9 @@ import org.auscope.portal.core.server.http.HttpServiceCaller;
 import org.auscope.portal.core.services.methodmakers.VocabularyMethodMaker;
 import org.auscope.portal.core.services.methodmakers.VocabularyMethodMaker.Format;
 import org.auscope.portal.core.services.methodmakers.VocabularyMethodMaker.View;
+import org.auscope.portal.core.services.vocabs.VocabularyIndex;
 import org.auscope.portal.core.services.vocabs.VocabularyServiceItem;
+import org.auscope.portal.core.services.vocabs.VocabularySnapshotStore;
 import org.auscope.portal.core.test.BasicThreadExecutor;
 import org.auscope.portal.core.test.PortalTestClass;
 import org.auscope.portal.core.util.ResourceUtil;
@@ -27,7 +31,9 @@ import org.jmock.Sequence;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class TestVocabularyCacheService extends PortalTestClass {
 
@@ -55,6 +61,9 @@ public class TestVocabularyCacheService extends PortalTestClass {
 
     private static final String serviceUrlFormatString = "http://vocabservice.%1$s.url/";
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
 
     @Before
     public void setUp() throws Exception {
@@ -191,6 +200,11 @@ public class TestVocabularyCacheService extends PortalTestClass {
 
             Assert.assertEquals(VOCABULARY_COUNT_TOTAL, numberOfTerms);
             Assert.assertFalse(this.vocabularyCacheService.updateRunning);
+
+            for (String id : cache.keySet()) {
+                Assert.assertNotNull(this.vocabularyCacheService.getVocabularyIndexById(id));
+            }
+            Assert.assertNull(this.vocabularyCacheService.getVocabularyIndexById("id:nonexistent"));
         }
 
     }
@@ -301,4 +315,115 @@ public class TestVocabularyCacheService extends PortalTestClass {
             Assert.assertFalse(this.vocabularyCacheService.updateRunning);
         }
     }
+
+    /**
+     * Snapshot store that counts the snapshots written
+     */
+    private static class CountingSnapshotStore extends VocabularySnapshotStore {
+        private final AtomicInteger writes = new AtomicInteger();
+
+        public CountingSnapshotStore(File directory) {
+            super(directory);
+        }
+
+        @Override
+        public void write(String vocabularyId, Model model) throws IOException {
+            writes.incrementAndGet();
+            super.write(vocabularyId, model);
+        }
+    }
+
+    private void waitForUpdate(VocabularyCacheService service, BasicThreadExecutor executor) throws InterruptedException {
+        do {
+            Thread.sleep(100);
+        } while (service.updateRunning);
+        executor.getExecutorService().shutdown();
+        Assert.assertTrue(executor.getExecutorService().awaitTermination(180, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Expects the mine status vocabulary (a single page) to be requested from the second service once for each of
+     * responses
+     */
+    private void expectMineStatusRequests(final HttpClientInputStream... responses) throws Exception {
+        context.checking(new Expectations() {
+            {
+                exactly(responses.length).of(mockMethodMaker2).getAllConcepts(serviceList.get(1).getVocabularyService().getServiceUrl(), Format.Rdf, View.description, 1000, 0);
+                will(returnValue(mockMethod2));
+                exactly(responses.length).of(mockServiceCaller).getMethodResponseAsStream(mockMethod2);
+                will(onConsecutiveCalls(returnValue(responses[0]), returnValue(responses[responses.length - 1])));
+                exactly(responses.length).of(mockMethod2).releaseConnection();
+            }
+        });
+    }
+
+    /**
+     * Tests a restarted cache is populated (and indexed) from the snapshots written by a previous run before any
+     * remote vocabulary service is contacted
+     */
+    @Test
+    public void testRestoreSnapshots() throws Exception {
+        final String mineStatusVocabulary = ResourceUtil.loadResourceAsString("org/auscope/portal/core/test/responses/vocabulary/mineStatusConcepts_NoMoreData.xml");
+        File snapshotDir = new File(folder.getRoot(), "snapshots");
+        ArrayList<VocabularyServiceItem> mineStatusList = new ArrayList<>();
+        mineStatusList.add(serviceList.get(1));
+
+        try (final HttpClientInputStream response = new HttpClientInputStream(new ByteArrayInputStream(mineStatusVocabulary.getBytes()), null)) {
+            expectMineStatusRequests(response);
+
+            VocabularyCacheService firstRun = new VocabularyCacheService(threadExecutor, mineStatusList);
+            firstRun.setSnapshotStore(new VocabularySnapshotStore(snapshotDir));
+            Assert.assertEquals(0, firstRun.restoreSnapshots());
+            Assert.assertTrue(firstRun.updateCache());
+            waitForUpdate(firstRun, threadExecutor);
+
+            // No further remote requests are expected
+            VocabularyCacheService restarted = new VocabularyCacheService(new BasicThreadExecutor(), mineStatusList);
+            restarted.setSnapshotStore(new VocabularySnapshotStore(snapshotDir));
+            Assert.assertNull(restarted.getVocabularyIndexById("id:2"));
+            Assert.assertEquals(1, restarted.restoreSnapshots());
+
+            Model restored = restarted.getVocabularyCacheById("id:2");
+            Assert.assertNotNull(restored);
+            Assert.assertTrue(firstRun.getVocabularyCacheById("id:2").isIsomorphicWith(restored));
+            Assert.assertSame(restored, restarted.getVocabularyIndexById("id:2").getModel());
+        }
+    }
+
+    /**
+     * Tests a remote vocabulary whose content hash matches its restored snapshot doesn't replace the restored model,
+     * its index or its snapshot
+     */
+    @Test
+    public void testUnchangedVocabularyKeepsSnapshot() throws Exception {
+        final String mineStatusVocabulary = ResourceUtil.loadResourceAsString("org/auscope/portal/core/test/responses/vocabulary/mineStatusConcepts_NoMoreData.xml");
+        File snapshotDir = new File(folder.getRoot(), "snapshots");
+        ArrayList<VocabularyServiceItem> mineStatusList = new ArrayList<>();
+        mineStatusList.add(serviceList.get(1));
+
+        try (final HttpClientInputStream r1 = new HttpClientInputStream(new ByteArrayInputStream(mineStatusVocabulary.getBytes()), null);
+             final HttpClientInputStream r2 = new HttpClientInputStream(new ByteArrayInputStream(mineStatusVocabulary.getBytes()), null)) {
+            expectMineStatusRequests(r1, r2);
+
+            VocabularyCacheService firstRun = new VocabularyCacheService(threadExecutor, mineStatusList);
+            firstRun.setSnapshotStore(new VocabularySnapshotStore(snapshotDir));
+            Assert.assertTrue(firstRun.updateCache());
+            waitForUpdate(firstRun, threadExecutor);
+
+            BasicThreadExecutor restartedExecutor = new BasicThreadExecutor();
+            CountingSnapshotStore snapshotStore = new CountingSnapshotStore(snapshotDir);
+            VocabularyCacheService restarted = new VocabularyCacheService(restartedExecutor, mineStatusList);
+            restarted.setSnapshotStore(snapshotStore);
+            Assert.assertEquals(1, restarted.restoreSnapshots());
+            Model restored = restarted.getVocabularyCacheById("id:2");
+            VocabularyIndex restoredIndex = restarted.getVocabularyIndexById("id:2");
+
+            Assert.assertTrue(restarted.updateCache());
+            waitForUpdate(restarted, restartedExecutor);
+
+            Assert.assertSame(restored, restarted.getVocabularyCacheById("id:2"));
+            Assert.assertSame(restoredIndex, restarted.getVocabularyIndexById("id:2"));
+            Assert.assertEquals(0, snapshotStore.writes.get());
+        }
+    }
 }
\ No newline at end of file
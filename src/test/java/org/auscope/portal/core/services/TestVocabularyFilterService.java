@@ -1,6 +1,7 @@
 package org.auscope.portal.core.services;
 
 import org.apache.jena.rdf.model.*;
+import org.auscope.portal.core.services.vocabs.VocabularyIndex;
 import org.auscope.portal.core.test.PortalTestClass;
 import org.auscope.portal.core.util.structure.RDFTriple;
 import org.jmock.Expectations;
@@ -95,8 +96,8 @@ public class TestVocabularyFilterService extends PortalTestClass {
 
         context.checking(new Expectations() {
             {
-                oneOf(mockCacheService).getVocabularyCacheById(mockVocabularyCacheId);
-                will(returnValue(mockModel1));
+                oneOf(mockCacheService).getVocabularyIndexById(mockVocabularyCacheId);
+                will(returnValue(new VocabularyIndex(mockModel1)));
             }
         });
 
@@ -111,8 +112,8 @@ public class TestVocabularyFilterService extends PortalTestClass {
 
         context.checking(new Expectations() {
             {
-                oneOf(mockCacheService).getVocabularyCacheById(mockVocabularyCacheId);
-                will(returnValue(mockModel1));
+                oneOf(mockCacheService).getVocabularyIndexById(mockVocabularyCacheId);
+                will(returnValue(new VocabularyIndex(mockModel1)));
             }
         });
 
@@ -125,8 +126,8 @@ public class TestVocabularyFilterService extends PortalTestClass {
     public void testGetAllNarrowerWithTransitive() {
         context.checking(new Expectations() {
             {
-                oneOf(mockCacheService).getVocabularyCacheById(mockVocabularyCacheId);
-                will(returnValue(mockModel1));
+                oneOf(mockCacheService).getVocabularyIndexById(mockVocabularyCacheId);
+                will(returnValue(new VocabularyIndex(mockModel1)));
             }
         });
 
@@ -139,8 +140,8 @@ public class TestVocabularyFilterService extends PortalTestClass {
     public void testGetAllNarrowerWithRecursive() {
         context.checking(new Expectations() {
             {
-                oneOf(mockCacheService).getVocabularyCacheById(mockVocabularyCacheId);
-                will(returnValue(mockModel1));
+                oneOf(mockCacheService).getVocabularyIndexById(mockVocabularyCacheId);
+                will(returnValue(new VocabularyIndex(mockModel1)));
             }
         });
 
@@ -154,8 +155,8 @@ public class TestVocabularyFilterService extends PortalTestClass {
 
         context.checking(new Expectations() {
             {
-                oneOf(mockCacheService).getVocabularyCacheById(mockVocabularyCacheId);
-                will(returnValue(mockModel2));
+                oneOf(mockCacheService).getVocabularyIndexById(mockVocabularyCacheId);
+                will(returnValue(new VocabularyIndex(mockModel2)));
             }
         });
 
@@ -168,8 +169,8 @@ public class TestVocabularyFilterService extends PortalTestClass {
     public void testGetNarrower() {
         context.checking(new Expectations() {
             {
-                oneOf(mockCacheService).getVocabularyCacheById(mockVocabularyCacheId);
-                will(returnValue(mockModel1));
+                oneOf(mockCacheService).getVocabularyIndexById(mockVocabularyCacheId);
+                will(returnValue(new VocabularyIndex(mockModel1)));
             }
         });
 
@@ -182,8 +183,8 @@ public class TestVocabularyFilterService extends PortalTestClass {
     public void testGetNarrowerTransitive() {
         context.checking(new Expectations() {
             {
-                oneOf(mockCacheService).getVocabularyCacheById(mockVocabularyCacheId);
-                will(returnValue(mockModel1));
+                oneOf(mockCacheService).getVocabularyIndexById(mockVocabularyCacheId);
+                will(returnValue(new VocabularyIndex(mockModel1)));
             }
         });
 
@@ -196,8 +197,8 @@ public class TestVocabularyFilterService extends PortalTestClass {
     public void testGetVocabularyByIdWithProperty() {
         context.checking(new Expectations() {
             {
-                oneOf(mockCacheService).getVocabularyCacheById(mockVocabularyCacheId);
-                will(returnValue(mockModel2));
+                oneOf(mockCacheService).getVocabularyIndexById(mockVocabularyCacheId);
+                will(returnValue(new VocabularyIndex(mockModel2)));
             }
         });
         ArrayList<String> defns = vocabularyFilterService.getVocabularyById(mockVocabularyCacheId, "prefLabel", mockDefaultProperty);
@@ -11,6 +11,7 @@ import org.auscope.portal.core.services.namespaces.ErmlNamespaceContext;
 import org.auscope.portal.core.services.responses.ows.OWSException;
 import org.auscope.portal.core.services.responses.wfs.WFSResponse;
 import org.auscope.portal.core.services.responses.wfs.WFSTransformedResponse;
+import org.auscope.portal.core.services.wfs.WFSPopupCache;
 import org.auscope.portal.core.test.PortalTestClass;
 import org.auscope.portal.core.util.ResourceUtil;
 import org.auscope.portal.core.xslt.GmlToHtml;
@@ -419,4 +420,35 @@ public class TestWFSService extends PortalTestClass {
             Assert.assertNotNull(ex.getRootMethod());
         }
     }
+
+    /**
+     * Tests repeated popup requests for the same feature are rendered once when a popup cache is set
+     */
+    @Test
+    public void testGetWfsPopupHtmlCached() throws Exception {
+        final String responseString = ResourceUtil
+                .loadResourceAsString("org/auscope/portal/core/test/responses/wfs/EmptyWFSResponse.xml");
+        final String responseHtml = "<html/>";
+        final String serviceUrl = "http://service/wfs";
+        final String featureId = "feature-Id-string";
+        final String typeName = "type:Name";
+        final String baseUrl = "https://portal.org/api";
+
+        context.checking(new Expectations() {
+            {
+                oneOf(mockServiceCaller).getMethodResponseAsString(mockMethod);
+                will(returnValue(responseString));
+
+                exactly(2).of(mockMethodMaker).makeGetMethod(serviceUrl, typeName, featureId, BaseWFSService.DEFAULT_SRS, null);
+                will(returnValue(mockMethod));
+
+                oneOf(mockGmlToHtml).convert(with(any(String.class)), with(any(ErmlNamespaceContext.class)), with(any(String.class)));
+                will(returnValue(responseHtml));
+            }
+        });
+
+        service.setPopupCache(new WFSPopupCache(10, 60000));
+        Assert.assertEquals(responseHtml, service.getWfsPopupHtml(serviceUrl, typeName, featureId, baseUrl));
+        Assert.assertEquals(responseHtml, service.getWfsPopupHtml(serviceUrl, typeName, featureId, baseUrl));
+    }
 }
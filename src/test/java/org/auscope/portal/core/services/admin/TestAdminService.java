@@ -4,7 +4,9 @@ import java.io.IOException;
 import java.net.ConnectException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -188,4 +190,79 @@ public class TestAdminService extends PortalTestClass {
         Assert.assertEquals(0, response.getWarnings().size());
         Assert.assertEquals(6, response.getErrors().size());
     }
+
+    /**
+     * Tests that the result of each probe (with its latency) is passed to the listener
+     * @throws IOException
+     */
+    @Test
+    public void testExternalConnectivityListener() throws IOException {
+        final URL[] urls = new URL[] {
+                new URL("http://example.fake/path"),
+                new URL("https://example2.fake.secure/path"),
+        };
+
+        context.checking(new Expectations() {
+            {
+                oneOf(mockServiceCaller).getMethodResponseAsString(
+                        with(aHttpMethodBase(HttpMethodType.GET, urls[0].toString(), null)));
+                will(returnValue(""));
+                oneOf(mockServiceCaller).getMethodResponseAsString(
+                        with(aHttpMethodBase(HttpMethodType.GET, urls[1].toString(), null)));
+                will(throwException(new ConnectException()));
+            }
+        });
+
+        final List<AdminProbeResult> results = Collections.synchronizedList(new ArrayList<AdminProbeResult>());
+        AdminDiagnosticResponse response = adminService.externalConnectivity(urls, results::add);
+        Assert.assertEquals(1, response.getDetails().size());
+        Assert.assertEquals(1, response.getWarnings().size());
+
+        Assert.assertEquals(2, results.size());
+        for (AdminProbeResult result : results) {
+            Assert.assertTrue(result.getLatencyMs() >= 0);
+            if (result.getEndpoint().equals(urls[0].toString())) {
+                Assert.assertEquals(1, result.getResponse().getDetails().size());
+            } else {
+                Assert.assertEquals(urls[1].toString(), result.getEndpoint());
+                Assert.assertEquals(1, result.getResponse().getWarnings().size());
+            }
+        }
+    }
+
+    /**
+     * Tests that probes still running at the deadline are reported as errors without holding up the other results
+     * @throws IOException
+     */
+    @Test
+    public void testCSWConnectivityDeadline() throws IOException {
+        final List<CSWServiceItem> items = Arrays.asList(
+                new CSWServiceItem("id-1", "http://example.fake/thisWillBeSlow"),
+                new CSWServiceItem("id-2", "http://example2.fake/thisWillWork"));
+        try (final HttpClientInputStream cswResponse = new HttpClientInputStream(ResourceUtil
+                .loadResourceAsStream("org/auscope/portal/core/test/responses/csw/cswRecordResponse_SingleRecord.xml"), null)) {
+
+            context.checking(new Expectations() {
+                {
+                    oneOf(mockServiceCaller).getMethodResponseAsStream(
+                            with(aHttpMethodBase(null, items.get(0).getServiceUrl(), null)));
+                    will(delayReturnValue(5000, null));
+
+                    oneOf(mockServiceCaller).getMethodResponseAsStream(
+                            with(aHttpMethodBase(null, items.get(1).getServiceUrl(), null)));
+                    will(returnValue(cswResponse));
+                }
+            });
+
+            adminService.setDeadlineMs(500);
+            startTimer();
+            AdminDiagnosticResponse response = adminService.cswConnectivity(items);
+            long elapsed = endTimer();
+
+            Assert.assertTrue(elapsed < 5000);
+            Assert.assertEquals(1, response.getDetails().size());
+            Assert.assertEquals(1, response.getErrors().size());
+            Assert.assertTrue(response.getErrors().get(0).contains(items.get(0).getServiceUrl()));
+        }
+    }
 }
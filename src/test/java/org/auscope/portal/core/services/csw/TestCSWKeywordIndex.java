@@ -0,0 +1,83 @@
+package org.auscope.portal.core.services.csw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.auscope.portal.core.test.PortalTestClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for CSWKeywordIndex
+ */
+public class TestCSWKeywordIndex extends PortalTestClass {
+
+    private CSWKeywordIndex createIndex() {
+        return new CSWKeywordIndex(Arrays.asList("Gold", "goldfields", "Copper", "Geochemistry", "Banana", "", null, "Gold"));
+    }
+
+    /**
+     * Substring matches are case insensitive and returned in case insensitive order
+     */
+    @Test
+    public void testSearch() {
+        CSWKeywordIndex index = createIndex();
+
+        Assert.assertEquals(5, index.size());
+        Assert.assertEquals(Arrays.asList("Gold", "goldfields"), index.search("OLD", -1));
+        Assert.assertEquals(Arrays.asList("Copper", "Geochemistry", "goldfields"), index.search("e", -1));
+        Assert.assertEquals(Collections.emptyList(), index.search("silver", -1));
+    }
+
+    /**
+     * A keyword containing the query more than once is only returned once
+     */
+    @Test
+    public void testRepeatedOccurrences() {
+        Assert.assertEquals(Arrays.asList("Banana"), createIndex().search("an", -1));
+        Assert.assertEquals(Arrays.asList("Banana"), createIndex().search("a", 1));
+    }
+
+    /**
+     * An empty query matches every keyword
+     */
+    @Test
+    public void testEmptyQuery() {
+        CSWKeywordIndex index = createIndex();
+
+        Assert.assertEquals(Arrays.asList("Banana", "Copper", "Geochemistry", "Gold", "goldfields"), index.search("", -1));
+        Assert.assertEquals(Arrays.asList("Banana", "Copper"), index.search(null, 2));
+    }
+
+    @Test
+    public void testMaxResults() {
+        CSWKeywordIndex index = createIndex();
+
+        Assert.assertEquals(1, index.search("o", 1).size());
+        Assert.assertEquals(0, index.search("o", 0).size());
+    }
+
+    /**
+     * Compares lookups against a brute force scan of a large vocabulary
+     */
+    @Test
+    public void testLargeVocabulary() {
+        List<String> keywords = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            keywords.add("Keyword " + Integer.toString(i * 7919, 36));
+        }
+        CSWKeywordIndex index = new CSWKeywordIndex(keywords);
+
+        for (String query : new String[] {"zz", "D 1", "abc", "9"}) {
+            int expected = 0;
+            for (String keyword : keywords) {
+                if (keyword.toLowerCase().contains(query.toLowerCase())) {
+                    expected++;
+                }
+            }
+            Assert.assertEquals(query, expected, index.search(query, -1).size());
+        }
+    }
+}
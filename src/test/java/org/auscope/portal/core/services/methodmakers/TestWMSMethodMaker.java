@@ -3,8 +3,10 @@ package org.auscope.portal.core.services.methodmakers;
 import java.io.IOException;
 import java.net.URISyntaxException;
 
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.auscope.portal.core.services.SLDRegistryService;
 import org.auscope.portal.core.test.PortalTestClass;
 import org.junit.Assert;
 import org.junit.Test;
@@ -166,4 +168,27 @@ public class TestWMSMethodMaker extends PortalTestClass {
         Assert.assertTrue(getLegendMethod.getURI().getQuery().contains("param1=val1"));
         Assert.assertTrue(getLegendMethod.getURI().getQuery().contains("param2=val2"));
     }
+
+    /**
+     * Tests that WMS 1.3.0 GetMap requests reference the SLD registry instead of inlining SLD_BODY when enabled
+     */
+    @Test
+    public void testGetMapSldReference() throws URISyntaxException, IOException {
+        SLDRegistryService registry = new SLDRegistryService("http://portal.example/api/sld/", 10, true);
+        WMS_1_3_0_MethodMaker mm = new WMS_1_3_0_MethodMaker(null);
+        mm.setSldRegistry(registry);
+
+        String sldBody = "<StyledLayerDescriptor/>";
+        HttpRequestBase getMapMethod = mm.getMap("http://example.com", "layer", "0,0,1,1", sldBody, "EPSG:3857");
+
+        Assert.assertTrue(getMapMethod instanceof HttpGet);
+        String query = getMapMethod.getURI().getQuery();
+        Assert.assertTrue(query.contains("SLD=http://portal.example/api/sld/" + SLDRegistryService.contentHash(sldBody)));
+        Assert.assertFalse(query.contains("SLD_BODY"));
+        Assert.assertEquals(sldBody, registry.getSld(SLDRegistryService.contentHash(sldBody)));
+
+        // Registry present but referencing disabled keeps the inline SLD_BODY POST
+        mm.setSldRegistry(new SLDRegistryService("http://portal.example/api/sld/", 10, false));
+        Assert.assertTrue(mm.getMap("http://example.com", "layer", "0,0,1,1", sldBody, "EPSG:3857") instanceof HttpPost);
+    }
 }
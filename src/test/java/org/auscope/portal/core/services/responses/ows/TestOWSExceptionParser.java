@@ -1,12 +1,17 @@
 package org.auscope.portal.core.services.responses.ows;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.apache.commons.io.IOUtils;
 import org.auscope.portal.core.test.PortalTestClass;
 import org.auscope.portal.core.util.DOMUtil;
 import org.auscope.portal.core.util.ResourceUtil;
+import org.junit.Assert;
 import org.junit.Test;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
@@ -23,6 +28,20 @@ public class TestOWSExceptionParser extends PortalTestClass {
         OWSExceptionParser.checkForExceptionResponse(doc);
     }
 
+    /**
+     * Generates a GML feature collection with the specified number of features
+     */
+    private static String largeGml(int features) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs\" xmlns:gml=\"http://www.opengis.net/gml\" xmlns:ows=\"http://www.opengis.net/ows\"><gml:featureMembers>");
+        for (int i = 0; i < features; i++) {
+            sb.append("<gml:Point gml:id=\"p").append(i).append("\"><gml:pos>").append(i).append(" -").append(i)
+                    .append("</gml:pos></gml:Point>");
+        }
+        sb.append("</gml:featureMembers></wfs:FeatureCollection>");
+        return sb.toString();
+    }
+
     @Test(expected = OWSException.class)
     public void testThrowException1() throws IOException, ParserConfigurationException, SAXException, OWSException  {
         check("org/auscope/portal/core/test/responses/ows/OWSExceptionSample1.xml");
@@ -32,4 +51,48 @@ public class TestOWSExceptionParser extends PortalTestClass {
     public void testDontThrowException() throws IOException, ParserConfigurationException, SAXException, OWSException  {
         check("org/auscope/portal/core/test/responses/wfs/EmptyWFSResponse.xml");
     }
+
+    @Test(expected = OWSException.class)
+    public void testThrowExceptionStream() throws IOException, OWSException {
+        try (InputStream is = ResourceUtil.loadResourceAsStream("org/auscope/portal/core/test/responses/ows/OWSExceptionSample1.xml")) {
+            OWSExceptionParser.checkForExceptionResponse(is);
+        }
+    }
+
+    /**
+     * The stream variant should hand back all of the original content
+     */
+    @Test
+    public void testDontThrowExceptionStream() throws IOException, OWSException {
+        final String xmlString = ResourceUtil.loadResourceAsString("org/auscope/portal/core/test/responses/wfs/EmptyWFSResponse.xml");
+        try (InputStream is = ResourceUtil.loadResourceAsStream("org/auscope/portal/core/test/responses/wfs/EmptyWFSResponse.xml")) {
+            InputStream checked = OWSExceptionParser.checkForExceptionResponse(is);
+            Assert.assertEquals(xmlString, IOUtils.toString(checked, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Only the root element of a large response should be read, so a malformed body is not detected
+     */
+    @Test
+    public void testLargeResponseBodyNotParsed() throws IOException, OWSException {
+        final String xmlString = largeGml(100000) + "<unclosed>";
+
+        OWSExceptionParser.checkForExceptionResponse(xmlString);
+        InputStream checked = OWSExceptionParser.checkForExceptionResponse(new ByteArrayInputStream(xmlString.getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(xmlString, IOUtils.toString(checked, StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = OWSException.class)
+    public void testMalformedProlog() throws OWSException {
+        OWSExceptionParser.checkForExceptionResponse("Not XML at all");
+    }
+
+    /**
+     * An ows:ExceptionReport in a different namespace isn't an exception response
+     */
+    @Test
+    public void testOtherNamespaceRoot() throws OWSException {
+        OWSExceptionParser.checkForExceptionResponse("<ows:ExceptionReport xmlns:ows=\"http://example.org/ows\"><ows:Exception exceptionCode=\"a\"/></ows:ExceptionReport>");
+    }
 }
@@ -0,0 +1,68 @@
+package org.auscope.portal.core.services.vocabs;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.SKOS;
+import org.auscope.portal.core.test.PortalTestClass;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for VocabularySnapshotStore
+ */
+public class TestVocabularySnapshotStore extends PortalTestClass {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Model createModel(String... labels) {
+        Model model = ModelFactory.createDefaultModel();
+        for (String label : labels) {
+            Resource res = model.createResource("http://www.example.org/vocab/" + label);
+            res.addProperty(SKOS.prefLabel, label, "en");
+        }
+        return model;
+    }
+
+    /**
+     * Tests a model can be written and read back again
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        VocabularySnapshotStore store = new VocabularySnapshotStore(new File(folder.getRoot(), "snapshots"));
+        Model model = createModel("a", "b", "c");
+
+        store.write("vocab:id", model);
+        Model restored = store.read("vocab:id");
+
+        Assert.assertNotNull(restored);
+        Assert.assertTrue(model.isIsomorphicWith(restored));
+        Assert.assertEquals(VocabularySnapshotStore.contentHash(model), VocabularySnapshotStore.contentHash(restored));
+    }
+
+    /**
+     * Tests missing snapshots return null
+     */
+    @Test
+    public void testReadMissing() {
+        VocabularySnapshotStore store = new VocabularySnapshotStore(folder.getRoot());
+        Assert.assertNull(store.read("does-not-exist"));
+    }
+
+    /**
+     * Tests the content hash is independent of insertion order but changes with content
+     */
+    @Test
+    public void testContentHash() {
+        String hash = VocabularySnapshotStore.contentHash(createModel("a", "b", "c"));
+
+        Assert.assertEquals(hash, VocabularySnapshotStore.contentHash(createModel("c", "a", "b")));
+        Assert.assertNotEquals(hash, VocabularySnapshotStore.contentHash(createModel("a", "b")));
+    }
+}
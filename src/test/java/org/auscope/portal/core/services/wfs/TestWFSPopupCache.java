@@ -0,0 +1,117 @@
+package org.auscope.portal.core.services.wfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.auscope.portal.core.services.PortalServiceException;
+import org.auscope.portal.core.test.PortalTestClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for WFSPopupCache
+ */
+public class TestWFSPopupCache extends PortalTestClass {
+
+    private static final String HTML = "<html>popup</html>";
+
+    /**
+     * Tests popups are only rendered once and served from the cache after that
+     */
+    @Test
+    public void testHit() throws PortalServiceException {
+        WFSPopupCache cache = new WFSPopupCache(10, 60000);
+        AtomicInteger calls = new AtomicInteger();
+        String key = WFSPopupCache.popupKey("http://example.com/wfs", "gsmlp:BoreholeView", "bh.1", "http://portal.org/api");
+
+        Assert.assertEquals(HTML, cache.get(key, () -> { calls.incrementAndGet(); return HTML; }));
+        Assert.assertEquals(HTML, cache.get(key, () -> { calls.incrementAndGet(); return HTML; }));
+
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * Tests that failures are never cached
+     */
+    @Test
+    public void testFailuresNotCached() {
+        WFSPopupCache cache = new WFSPopupCache(10, 60000);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("key", () -> { calls.incrementAndGet(); throw new PortalServiceException("failed"); });
+                Assert.fail("Exception should have been thrown");
+            } catch (PortalServiceException ex) {
+                Assert.assertEquals("failed", ex.getMessage());
+            }
+        }
+
+        Assert.assertEquals(2, calls.get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * Tests the least recently used popups are evicted and expired popups are rendered again
+     */
+    @Test
+    public void testEvictionAndTtl() throws PortalServiceException {
+        WFSPopupCache cache = new WFSPopupCache(2, 60000);
+        cache.get("a", () -> "a");
+        cache.get("b", () -> "b");
+        cache.get("a", () -> "a");
+        cache.get("c", () -> "c");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("a", cache.get("a", () -> { throw new PortalServiceException("should be cached"); }));
+        Assert.assertEquals("b2", cache.get("b", () -> "b2"));
+
+        WFSPopupCache expiring = new WFSPopupCache(2, -1);
+        AtomicInteger calls = new AtomicInteger();
+        expiring.get("a", () -> { calls.incrementAndGet(); return "a"; });
+        expiring.get("a", () -> { calls.incrementAndGet(); return "a"; });
+        Assert.assertEquals(2, calls.get());
+    }
+
+    /**
+     * Tests concurrent misses for the same popup only make a single upstream request
+     */
+    @Test
+    public void testSingleFlight() throws Exception {
+        WFSPopupCache cache = new WFSPopupCache(10, 60000);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> cache.get("key", () -> {
+                    calls.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new PortalServiceException("interrupted", e);
+                    }
+                    return HTML;
+                })));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> result : results) {
+                Assert.assertEquals(HTML, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(1, calls.get());
+    }
+}
@@ -0,0 +1,106 @@
+package org.auscope.portal.mscl;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.auscope.portal.core.services.responses.ows.OWSException;
+import org.auscope.portal.core.test.PortalTestClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for MSCLObservationSeries
+ */
+public class TestMSCLObservationSeries extends PortalTestClass {
+
+    private static MSCLObservationSeries parse(String xml) throws Exception {
+        return MSCLObservationSeries.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String scannedData(String properties) {
+        return "<gml:featureMember><mscl:scanned_data gml:id=\"sd\">" + properties + "</mscl:scanned_data></gml:featureMember>";
+    }
+
+    private static String response(String... features) {
+        StringBuilder sb = new StringBuilder("<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                + "xmlns:gml=\"http://www.opengis.net/gml\" xmlns:mscl=\"http://example.org/mscl\">");
+        for (String feature : features) {
+            sb.append(feature);
+        }
+        return sb.append("</wfs:FeatureCollection>").toString();
+    }
+
+    /**
+     * Tests rows are ordered by depth (keeping document order for equal depths) with NaN for missing values
+     */
+    @Test
+    public void testParse() throws Exception {
+        MSCLObservationSeries series = parse(response(
+                scannedData("<mscl:borehole_header_id>12</mscl:borehole_header_id><mscl:depth>2.5</mscl:depth><mscl:density>1.25</mscl:density>"),
+                scannedData("<mscl:depth>1.0</mscl:depth><mscl:density> </mscl:density><mscl:p_wave_amplitude>7</mscl:p_wave_amplitude>"),
+                scannedData("<mscl:density>3</mscl:density>"),
+                scannedData("<mscl:depth>2.5</mscl:depth><mscl:density>2.0</mscl:density>"
+                        + "<mscl:location><gml:Point><gml:pos>1 2</gml:pos></gml:Point></mscl:location><mscl:name>abc</mscl:name>")));
+
+        Assert.assertEquals(3, series.size());
+        Assert.assertEquals(1.0f, series.getDepth(0), 0);
+        Assert.assertEquals(2.5f, series.getDepth(1), 0);
+        Assert.assertEquals(2.5f, series.getDepth(2), 0);
+
+        Assert.assertArrayEquals(new float[] {Float.NaN, 1.25f, 2.0f}, series.getObservation("density"), 0);
+        Assert.assertArrayEquals(new float[] {7f, Float.NaN, Float.NaN}, series.getObservation("p_wave_amplitude"), 0);
+        Assert.assertNull(series.getObservation("location"));
+        Assert.assertNull(series.getObservation("name"));
+        Assert.assertNull(series.getObservation("depth"));
+    }
+
+    /**
+     * Tests depth ranges are mapped to row indexes (inclusive of both bounds)
+     */
+    @Test
+    public void testDepthRange() throws Exception {
+        StringBuilder features = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            features.append(scannedData("<mscl:depth>" + (i / 10.0) + "</mscl:depth><mscl:density>" + i + "</mscl:density>"));
+        }
+        MSCLObservationSeries series = parse(response(features.toString()));
+
+        Assert.assertEquals(1000, series.size());
+        Assert.assertEquals(100, series.fromIndex(10.0));
+        Assert.assertEquals(201, series.toIndex(20.0));
+        Assert.assertEquals(0, series.fromIndex(-5));
+        Assert.assertEquals(1000, series.toIndex(500));
+        Assert.assertEquals(0, series.toIndex(-5));
+    }
+
+    /**
+     * Tests a row whose depth isn't exactly representable as a float is included by a range ending or starting at
+     * that depth
+     */
+    @Test
+    public void testDepthRangeBoundary() throws Exception {
+        MSCLObservationSeries series = parse(response(
+                scannedData("<mscl:depth>10.0</mscl:depth><mscl:density>1</mscl:density>"),
+                scannedData("<mscl:depth>10.1</mscl:depth><mscl:density>2</mscl:density>"),
+                scannedData("<mscl:depth>10.2</mscl:depth><mscl:density>3</mscl:density>")));
+
+        Assert.assertTrue(series.getDepth(1) > 10.1);
+        Assert.assertEquals(2, series.toIndex(10.1));
+        Assert.assertEquals(1, series.fromIndex(10.1));
+        Assert.assertEquals(1, series.toIndex(10.1) - series.fromIndex(10.1));
+    }
+
+    /**
+     * Tests an ows:ExceptionReport is raised as an OWSException
+     */
+    @Test
+    public void testExceptionReport() throws Exception {
+        try {
+            parse("<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows\"><ows:Exception exceptionCode=\"NoApplicableCode\">"
+                    + "<ows:ExceptionText>Unknown type</ows:ExceptionText></ows:Exception></ows:ExceptionReport>");
+            Assert.fail("Expected OWSException");
+        } catch (OWSException ex) {
+            Assert.assertEquals("Code='NoApplicableCode' Message='Unknown type'", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.auscope.portal.server.web.controllers;
+
+import java.io.InputStream;
+
+import org.auscope.portal.core.test.PortalTestClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Unit tests for ClasspathImageCache
+ */
+public class TestClasspathImageCache extends PortalTestClass {
+
+    private static final String IMAGE_PATH = "org/auscope/portal/iris/";
+    private static final String IMAGE_NAME = "stationResponse.xml";
+
+    private ClasspathImageCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ClasspathImageCache(IMAGE_PATH);
+    }
+
+    /**
+     * Tests images are served with their content, a strong ETag and cache headers
+     */
+    @Test
+    public void testGetImage() throws Exception {
+        byte[] expected;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(IMAGE_PATH + IMAGE_NAME)) {
+            expected = is.readAllBytes();
+        }
+
+        ResponseEntity<byte[]> response = cache.getImageResponse(IMAGE_NAME, null);
+
+        Assert.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assert.assertArrayEquals(expected, response.getBody());
+        Assert.assertEquals(MediaType.APPLICATION_XML, response.getHeaders().getContentType());
+        Assert.assertTrue(response.getHeaders().getETag().matches("\"[0-9a-f]{64}\""));
+        Assert.assertEquals("max-age=604800, public", response.getHeaders().getCacheControl());
+        Assert.assertEquals(5, cache.size());
+
+        // Served from memory after the first request
+        Assert.assertSame(response.getBody(), cache.getImageResponse(IMAGE_NAME, null).getBody());
+    }
+
+    /**
+     * Tests a matching If-None-Match header is answered with a 304 and no body
+     */
+    @Test
+    public void testNotModified() {
+        String eTag = cache.getImageResponse(IMAGE_NAME, null).getHeaders().getETag();
+
+        ResponseEntity<byte[]> response = cache.getImageResponse(IMAGE_NAME, "\"other\", W/" + eTag);
+        Assert.assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        Assert.assertNull(response.getBody());
+        Assert.assertEquals(eTag, response.getHeaders().getETag());
+
+        Assert.assertEquals(HttpStatus.OK, cache.getImageResponse(IMAGE_NAME, "\"other\"").getStatusCode());
+    }
+
+    /**
+     * Tests unknown images (including attempts to leave the image directory) are 404s
+     */
+    @Test
+    public void testMissingImage() {
+        Assert.assertEquals(HttpStatus.NOT_FOUND, cache.getImageResponse("missing.png", null).getStatusCode());
+        Assert.assertEquals(HttpStatus.NOT_FOUND, cache.getImageResponse("../iris/stationResponse.xml", null).getStatusCode());
+        Assert.assertEquals(HttpStatus.NOT_FOUND, cache.getImageResponse(null, null).getStatusCode());
+    }
+}
@@ -14,6 +14,10 @@ public class TestIRISController extends PortalTestClass {
 
     private IRISController controller;
 
+    private int irisRequests;
+
+    private String lastETag;
+
     @Before
     public void startUp() {
 
@@ -26,7 +30,19 @@ public class TestIRISController extends PortalTestClass {
 
                 return ResourceUtil.loadResourceAsString(queryUrl.substring(0, queryUrl.indexOf(".xml") + 4));
             }
+
+            @Override
+            protected IrisResponse getIrisResponse(String queryUrl, String eTag, String lastModified) throws IOException {
+                irisRequests++;
+                lastETag = eTag;
+                if ("\"v1\"".equals(eTag)) {
+                    return new IrisResponse(null, eTag, lastModified);
+                }
+                return new IrisResponse(ResourceUtil.loadResourceAsStream(queryUrl.substring(0, queryUrl.indexOf(".xml") + 4)), "\"v1\"", null);
+            }
         };
+        this.irisRequests = 0;
+        this.lastETag = null;
     }
 
     @After
@@ -81,4 +97,26 @@ public class TestIRISController extends PortalTestClass {
         Assert.assertTrue((Boolean) result.getModel().get("msg").toString().contains("Burke &amp;amp Wills Roadhouse, Stokes, QLD"));
         Assert.assertFalse((Boolean) result.getModel().get("msg").toString().contains("Burke & Wills Roadhouse, Stokes, QLD"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getIRISStations_repeatedRequest_ServedFromCache() {
+        ModelAndView first = this.controller.getIRISStations("org/auscope/portal/iris/stationResponse.xml", "S");
+        ModelAndView second = this.controller.getIRISStations("org/auscope/portal/iris/stationResponse.xml", "S");
+
+        Assert.assertTrue((Boolean) second.getModel().get("success"));
+        Assert.assertEquals(first.getModel().get("msg"), second.getModel().get("msg"));
+        Assert.assertEquals(1, irisRequests);
+    }
+
+    @Test
+    public void getIRISStations_expiredEntry_RevalidatedWithETag() {
+        this.controller.setStationCacheTtlMs(-1);
+        ModelAndView first = this.controller.getIRISStations("org/auscope/portal/iris/stationResponse.xml", "S");
+        ModelAndView second = this.controller.getIRISStations("org/auscope/portal/iris/stationResponse.xml", "S");
+
+        Assert.assertTrue((Boolean) second.getModel().get("success"));
+        Assert.assertEquals(first.getModel().get("msg"), second.getModel().get("msg"));
+        Assert.assertEquals(2, irisRequests);
+        Assert.assertEquals("\"v1\"", lastETag);
+    }
+}
@@ -1,7 +1,9 @@
 package org.auscope.portal.server.web.service;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import org.apache.http.client.methods.HttpRequestBase;
@@ -219,4 +221,38 @@ public class TestNVCLDataService extends PortalTestClass {
         dataService.getMosaic(serviceUrl, logId, width, startSampleNo, endSampleNo);
     }
 
+    /**
+     * Tests that TSG dataset collections are loaded per provider and that a failing provider neither affects the
+     * others nor loses what was previously loaded for it
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetTsgFileUrls() throws Exception {
+        final NVCLDataService tsgService = new NVCLDataService(mockServiceCaller, mockMethodMaker, mockWFSMethodMaker,
+                "https://a.example/,https://cache.example/A/,https://b.example/,https://cache.example/B/", TSGFILECache_SERVICES_MSG);
+        final String json = "{\"datasetCollection\":[{\"datasetID\":\"1\",\"boreholeURI\":\"http://a.example/bh/ONE\",\"datasetName\":\"DS1\",\"trayID\":null}],\"other\":{\"a\":[1,2]}}";
+        final String csv = "gml:id,gsmlp:identifier,gsmlp:nvclCollection\nbh.1,http://a.example/bh/one,true\nbh.2,http://a.example/bh/two,true\nbh.3,http://a.example/bh/three,false\n";
+
+        context.checking(new Expectations() {
+            {
+                exactly(3).of(mockServiceCaller).getMethodResponseAsStream(with(any(HttpRequestBase.class)));
+                will(onConsecutiveCalls(
+                        returnValue(new HttpClientInputStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), null)),
+                        throwException(new IOException("b is down")),
+                        throwException(new IOException("a is down"))));
+            }
+        });
+
+        tsgService.loadTsgDownloadMap("https://a.example/", "https://cache.example/A/");
+        tsgService.loadTsgDownloadMap("https://b.example/", "https://cache.example/B/");
+
+        String expected = "https://cache.example/A/DS1.zip\nNoMatchedDatasetName-https://a.example/bh/two\n";
+        Assert.assertEquals(expected, tsgService.getTsgFileUrls("https://a.example/", csv));
+        Assert.assertNull(tsgService.getTsgFileUrls("https://b.example/", csv));
+
+        tsgService.loadTsgDownloadMap("https://a.example/", "https://cache.example/A/");
+        Assert.assertEquals(expected, tsgService.getTsgFileUrls("https://a.example/", csv));
+    }
+
 }
@@ -207,4 +207,45 @@ public class TestKnownLayerServiceStatusMonitor extends PortalTestClass {
         
     }
 
+    /**
+     * Tests that refreshing the service status overlays the latest status without regrouping the known layers
+     * @throws Exception
+     */
+    @Test
+    public void testRefreshKnownLayerStatuses() throws Exception {
+        Assert.assertFalse(knownLayerService.refreshKnownLayerStatuses()); // Never grouped, nothing to refresh
+
+        knownLayerService.updateKnownLayersCache(false);
+        List<ModelMap> data = knownLayerService.getKnownLayersCache();
+        Assert.assertFalse(data.get(0).containsKey("stackdriverFailingHosts"));
+        Assert.assertTrue(data.get(1).containsKey("stackdriverFailingHosts"));
+
+        final HashMap<String, List<ServiceStatusResponse>> servGroup1Response = new HashMap<String, List<ServiceStatusResponse>>();
+        final HashMap<String, List<ServiceStatusResponse>> servGroup2Response = new HashMap<String, List<ServiceStatusResponse>>();
+        servGroup1Response.put("host.name.1", Arrays.asList(new ServiceStatusResponse(false, "getfeatureminoccview")));
+        servGroup2Response.put("host.name.2", Arrays.asList(new ServiceStatusResponse(true, "getfeatureboreholeview")));
+
+        // getKnownLayers is only expected once (in setup) so any regrouping will fail this test
+        context.checking(new Expectations() {{
+            oneOf(mockStackDriverService).getStatuses("ERML");will(returnValue(servGroup1Response));
+            oneOf(mockStackDriverService).getStatuses("NVCL");will(returnValue(servGroup2Response));
+            oneOf(mockStackDriverService).getStatuses("Tenements");will(throwException(new PortalServiceException("tenements error")));
+        }});
+
+        Assert.assertTrue(knownLayerService.refreshKnownLayerStatuses());
+        List<ModelMap> refreshed = knownLayerService.getKnownLayersCache();
+        Assert.assertEquals(4, refreshed.size());
+
+        @SuppressWarnings("unchecked")
+        List<String> failingHosts = (List<String>) refreshed.get(0).get("stackdriverFailingHosts");
+        Assert.assertEquals(Arrays.asList("host.name.1"), failingHosts);
+        Assert.assertFalse(refreshed.get(1).containsKey("stackdriverFailingHosts"));
+        Assert.assertFalse(refreshed.get(2).containsKey("stackdriverFailingHosts"));
+        Assert.assertFalse(refreshed.get(3).containsKey("stackdriverFailingHosts"));
+        Assert.assertSame(data.get(1).get("cswRecords"), refreshed.get(1).get("cswRecords"));
+
+        // The previous results are left untouched
+        Assert.assertFalse(data.get(0).containsKey("stackdriverFailingHosts"));
+        Assert.assertTrue(data.get(1).containsKey("stackdriverFailingHosts"));
+    }
 }